@@ -0,0 +1,75 @@
+package LDS.Person.config;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+import org.slf4j.Marker;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 高频日志采样过滤器（在 logback-spring.xml 中配置）
+ * 在日志事件构建之前执行，被丢弃的日志不会格式化消息、不会进入异步队列
+ *
+ * 规则：对名称以 loggerPrefix 开头的 logger，INFO 及以下级别每秒前 maxPerSecond 条全部输出，
+ * 超出部分每 sampleRate 条输出 1 条；WARN / ERROR 始终输出
+ */
+public class LogSamplingTurboFilter extends TurboFilter {
+
+    private String loggerPrefix = "LDS.Person.traffic";
+    private int maxPerSecond = 20;
+    private int sampleRate = 10;
+
+    // logger 名称 -> 当前秒的计数窗口
+    private final Map<String, Window> windows = new ConcurrentHashMap<>();
+
+    @Override
+    public FilterReply decide(Marker marker, Logger logger, Level level, String format, Object[] params, Throwable t) {
+        if (!isStarted() || level == null || level.isGreaterOrEqual(Level.WARN)) {
+            return FilterReply.NEUTRAL;
+        }
+        String name = logger.getName();
+        if (!name.startsWith(loggerPrefix)) {
+            return FilterReply.NEUTRAL;
+        }
+
+        long count = windows.computeIfAbsent(name, k -> new Window()).next();
+        if (count <= maxPerSecond) {
+            return FilterReply.NEUTRAL;
+        }
+        long overflow = count - maxPerSecond;
+        return sampleRate <= 1 || overflow % sampleRate == 1 ? FilterReply.NEUTRAL : FilterReply.DENY;
+    }
+
+    public void setLoggerPrefix(String loggerPrefix) {
+        this.loggerPrefix = loggerPrefix;
+    }
+
+    public void setMaxPerSecond(int maxPerSecond) {
+        this.maxPerSecond = Math.max(0, maxPerSecond);
+    }
+
+    public void setSampleRate(int sampleRate) {
+        this.sampleRate = Math.max(1, sampleRate);
+    }
+
+    /**
+     * 按秒滚动的计数窗口
+     */
+    private static final class Window {
+        private final AtomicLong second = new AtomicLong();
+        private final AtomicLong count = new AtomicLong();
+
+        long next() {
+            long now = System.currentTimeMillis() / 1000;
+            long current = second.get();
+            if (current != now && second.compareAndSet(current, now)) {
+                count.set(0);
+            }
+            return count.incrementAndGet();
+        }
+    }
+}
@@ -1,8 +1,5 @@
 package LDS.Person.config;
 
-import LDS.Person.tasks.MsgLisKeyWordTask;
-import LDS.Person.tasks.MsgLisVipCmdTask;
-import LDS.Person.tasks.MsgLisUserCmdTask;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -11,9 +8,12 @@ import org.springframework.context.event.EventListener;
 import org.springframework.context.ApplicationContext;
 import org.springframework.beans.factory.annotation.Autowired;
 
-import LDS.Person.tasks.MsgLisATTask;
+import LDS.Person.napcat.WsActionChannel;
 import LDS.Person.websocket.RemoteOneBotClient;
 import LDS.Person.websocket.RemoteWebSocketClientHandler;
+import LDS.Person.websocket.dispatch.EventDispatcher;
+import LDS.Person.websocket.listener.MessageListenerChain;
+import LDS.Person.websocket.replay.FrameRecorder;
 
 import java.io.InputStream;
 import java.util.Properties;
@@ -29,16 +29,16 @@ public class RemoteOneBotClientConfig {
     private ApplicationContext applicationContext;
 
     @Autowired
-    private MsgLisATTask msgLisATTask;
+    private MessageListenerChain messageListenerChain;
 
     @Autowired
-    private MsgLisKeyWordTask msgLisKeyWordTask;
+    private EventDispatcher eventDispatcher;
 
     @Autowired
-    private MsgLisVipCmdTask msgLisVipCmdTask;
+    private FrameRecorder frameRecorder;
 
     @Autowired
-    private MsgLisUserCmdTask msgLisUserCmdTask;
+    private WsActionChannel wsActionChannel;
 
     private static boolean NCAT_IS_OPEN;
 
@@ -76,6 +76,13 @@ public class RemoteOneBotClientConfig {
      */
     @EventListener(ContextRefreshedEvent.class)
     public void startRemoteClient() {
+        // 注入消息监听链到 WebSocket 处理器（NapCat 禁用时离线回放同样需要）
+        RemoteWebSocketClientHandler.setListenerChain(messageListenerChain);
+        RemoteWebSocketClientHandler.setEventDispatcher(eventDispatcher);
+        RemoteWebSocketClientHandler.setFrameRecorder(frameRecorder);
+        RemoteWebSocketClientHandler.setActionChannel(wsActionChannel);
+        System.out.println("[CONFIG] 消息监听任务已注入");
+
         // 检查 NapCat 是否启用
         if (!NCAT_IS_OPEN) {
             System.out.println("[CONFIG] NapCat 已禁用 (NapCatIsOpen=false)，跳过启动远程 OneBot 客户端");
@@ -89,13 +96,6 @@ public class RemoteOneBotClientConfig {
         try {
             System.out.println("[CONFIG] 开始启动远程 OneBot 客户端...");
 
-            // 注入消息监听任务到 WebSocket 处理器
-            RemoteWebSocketClientHandler.setMessageListenerTask(msgLisATTask);
-            RemoteWebSocketClientHandler.setMessageListenerKeyWordTask(msgLisKeyWordTask);
-            RemoteWebSocketClientHandler.setMsgLisVipATTask(msgLisVipCmdTask);
-            RemoteWebSocketClientHandler.setMsgLisUserCmdTask(msgLisUserCmdTask);
-            System.out.println("[CONFIG] 消息监听任务已注入");
-
             if (!client.isConnected()) {
                 client.start();
             }
@@ -0,0 +1,77 @@
+package LDS.Person.config;
+
+import io.netty.channel.ChannelOption;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+import reactor.netty.transport.ProxyProvider;
+
+import java.time.Duration;
+
+/**
+ * 共享的非阻塞 WebClient 配置（reactor-netty）
+ * 所有 WebClient 共用一个连接池提供者，reactor-netty 按远程主机分别建池，
+ * pool.max.connections 为每个主机的连接上限
+ *
+ * - napCatWebClient   访问 NapCat，不走代理
+ * - externalWebClient 访问 Steam 等外部站点，proxy.is.open=true 时走 HTTP 代理
+ *
+ * 配置项（config.properties）：
+ * - webclient.pool.max.connections   每个主机的最大连接数，默认 50
+ * - webclient.pool.pending.max       等待连接的最大请求数，默认 1000
+ * - webclient.pool.max.idle.ms       空闲连接保留时间（毫秒），默认 30000
+ * - webclient.connect.timeout.ms     建立连接超时（毫秒），默认 5000
+ * - webclient.response.timeout.ms    响应超时（毫秒），默认 30000
+ * - webclient.max.in.memory.kb       单个响应体最大缓存（KB），默认 16384
+ */
+@Configuration
+public class WebClientConfig {
+
+    private static final ConfigManager configManager = ConfigManager.getInstance();
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider outboundConnectionProvider() {
+        return ConnectionProvider.builder("outbound")
+                .maxConnections(configManager.getInt("webclient.pool.max.connections", 50))
+                .pendingAcquireMaxCount(configManager.getInt("webclient.pool.pending.max", 1000))
+                .maxIdleTime(Duration.ofMillis(configManager.getInt("webclient.pool.max.idle.ms", 30000)))
+                .evictInBackground(Duration.ofSeconds(30))
+                .metrics(false)
+                .build();
+    }
+
+    @Bean
+    public WebClient napCatWebClient(WebClient.Builder builder, ConnectionProvider outboundConnectionProvider) {
+        return builder.clone()
+                .clientConnector(new ReactorClientHttpConnector(baseHttpClient(outboundConnectionProvider)))
+                .codecs(configurer -> configurer.defaultCodecs().maxInMemorySize(maxInMemoryBytes()))
+                .build();
+    }
+
+    @Bean
+    public WebClient externalWebClient(WebClient.Builder builder, ConnectionProvider outboundConnectionProvider) {
+        HttpClient httpClient = baseHttpClient(outboundConnectionProvider);
+        if (configManager.isProxyOpen()) {
+            httpClient = httpClient.proxy(spec -> spec.type(ProxyProvider.Proxy.HTTP)
+                    .host(configManager.getProxyHost())
+                    .port(configManager.getProxyPort()));
+        }
+        return builder.clone()
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .codecs(configurer -> configurer.defaultCodecs().maxInMemorySize(maxInMemoryBytes()))
+                .build();
+    }
+
+    private static HttpClient baseHttpClient(ConnectionProvider provider) {
+        return HttpClient.create(provider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, configManager.getInt("webclient.connect.timeout.ms", 5000))
+                .responseTimeout(Duration.ofMillis(configManager.getInt("webclient.response.timeout.ms", 30000)));
+    }
+
+    private static int maxInMemoryBytes() {
+        return configManager.getInt("webclient.max.in.memory.kb", 16384) * 1024;
+    }
+}
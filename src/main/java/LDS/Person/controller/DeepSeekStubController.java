@@ -0,0 +1,153 @@
+package LDS.Person.controller;
+
+import LDS.Person.config.ConfigManager;
+import LDS.Person.util.TokenEstimator;
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * DeepSeek chat/completions 接口桩 - 本地测试流式回复时代替真实 DeepSeek
+ * stream=true 时按 SSE 格式逐字推送固定回复，每个分块之间注入延迟；stream=false 时一次性返回完整回复
+ * 响应附带估算的 usage：与上一次请求 messages 的公共前缀计为缓存命中，用于本地观察上下文窗口的前缀是否稳定
+ * 使用方式：config.properties 中设置 stub.deepseek.enabled=true，并将 deepseek.base.url 指向 http://localhost:8090/stub/deepseek
+ *
+ * 配置项（config.properties）：
+ * - stub.deepseek.enabled            是否启用桩接口，默认 false（未启用时返回 404）
+ * - stub.deepseek.first.token.ms     首个分块前的延迟（毫秒），模拟首字延迟，默认 300
+ * - stub.deepseek.chunk.delay.ms     相邻分块之间的延迟（毫秒），默认 50
+ * - stub.deepseek.chunk.chars        每个分块的字数，默认 4
+ */
+@RestController
+@RequestMapping("/stub/deepseek")
+@Api(tags = "DeepSeek 接口桩", description = "本地测试流式回复使用的 DeepSeek chat/completions 接口桩")
+@Slf4j
+public class DeepSeekStubController {
+
+    private static final ConfigManager configManager = ConfigManager.getInstance();
+    private static final boolean ENABLED = configManager.getBoolean("stub.deepseek.enabled", false);
+    private static final long FIRST_TOKEN_MS = Math.max(0, configManager.getInt("stub.deepseek.first.token.ms", 300));
+    private static final long CHUNK_DELAY_MS = Math.max(0, configManager.getInt("stub.deepseek.chunk.delay.ms", 50));
+    private static final int CHUNK_CHARS = Math.max(1, configManager.getInt("stub.deepseek.chunk.chars", 4));
+
+    private static final String REPLY = "收到啦！这是来自本地接口桩的回复，用来测试流式输出。\n\n"
+            + "第二段会在第一段发出之后继续生成，长回答不必等到全部生成完才开始发送。"
+            + "每一句话都会在句号处切开，然后交给发送调度器排队。\n\n"
+            + "最后一段比较短。";
+
+    // 上一次请求的 messages，用于模拟服务端前缀缓存
+    private static volatile String lastMessages = "";
+
+    /**
+     * 模拟 chat/completions
+     */
+    @PostMapping("/chat/completions")
+    @ApiOperation(value = "模拟 DeepSeek 对话补全", notes = "stream=true 时返回 text/event-stream")
+    public ResponseEntity<?> chatCompletions(@RequestBody(required = false) String body) {
+        if (!ENABLED) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+        JSONObject request = body == null ? new JSONObject() : JSONObject.parseObject(body);
+        String model = request.getString("model");
+        JSONObject usage = usage(request);
+
+        if (!request.getBooleanValue("stream")) {
+            JSONObject message = new JSONObject();
+            message.put("role", "assistant");
+            message.put("content", REPLY);
+            JSONObject choice = new JSONObject();
+            choice.put("index", 0);
+            choice.put("message", message);
+            choice.put("finish_reason", "stop");
+            JSONObject response = new JSONObject();
+            response.put("model", model);
+            response.put("choices", JSONArray.of(choice));
+            response.put("usage", usage);
+            return ResponseEntity.ok(response);
+        }
+
+        JSONObject streamOptions = request.getJSONObject("stream_options");
+        boolean includeUsage = streamOptions != null && streamOptions.getBooleanValue("include_usage");
+        StreamingResponseBody stream = out -> {
+            sleep(FIRST_TOKEN_MS);
+            for (int i = 0; i < REPLY.length(); i += CHUNK_CHARS) {
+                if (i > 0) {
+                    sleep(CHUNK_DELAY_MS);
+                }
+                writeChunk(out, model, REPLY.substring(i, Math.min(REPLY.length(), i + CHUNK_CHARS)));
+            }
+            if (includeUsage) {
+                JSONObject chunk = new JSONObject();
+                chunk.put("model", model);
+                chunk.put("choices", new JSONArray());
+                chunk.put("usage", usage);
+                out.write(("data: " + chunk.toJSONString() + "\n\n").getBytes(StandardCharsets.UTF_8));
+            }
+            out.write("data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        };
+        return ResponseEntity.ok().contentType(MediaType.TEXT_EVENT_STREAM).body(stream);
+    }
+
+    /**
+     * 估算 usage：prompt 按 messages 文本估算，与上一次请求 messages 的公共前缀计为缓存命中
+     */
+    private static JSONObject usage(JSONObject request) {
+        JSONArray messages = request.getJSONArray("messages");
+        String current = messages == null ? "" : messages.toJSONString();
+        String previous = lastMessages;
+        lastMessages = current;
+        int common = 0;
+        int limit = Math.min(current.length(), previous.length());
+        while (common < limit && current.charAt(common) == previous.charAt(common)) {
+            common++;
+        }
+        int prompt = TokenEstimator.estimate(current);
+        int hit = Math.min(prompt, TokenEstimator.estimate(current.substring(0, common)));
+        int completion = TokenEstimator.estimate(REPLY);
+        JSONObject usage = new JSONObject();
+        usage.put("prompt_tokens", prompt);
+        usage.put("completion_tokens", completion);
+        usage.put("total_tokens", prompt + completion);
+        usage.put("prompt_cache_hit_tokens", hit);
+        usage.put("prompt_cache_miss_tokens", prompt - hit);
+        return usage;
+    }
+
+    private static void writeChunk(OutputStream out, String model, String content) throws java.io.IOException {
+        JSONObject delta = new JSONObject();
+        delta.put("content", content);
+        JSONObject choice = new JSONObject();
+        choice.put("index", 0);
+        choice.put("delta", delta);
+        JSONObject chunk = new JSONObject();
+        chunk.put("model", model);
+        chunk.put("choices", JSONArray.of(choice));
+        out.write(("data: " + chunk.toJSONString() + "\n\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
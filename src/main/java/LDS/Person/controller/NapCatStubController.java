@@ -0,0 +1,94 @@
+package LDS.Person.controller;
+
+import LDS.Person.config.ConfigManager;
+import com.alibaba.fastjson2.JSONObject;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * NapCat HTTP 接口桩 - 离线回放和压测时代替真实 NapCat，所有动作直接返回成功
+ * 使用方式：config.properties 中设置 stub.napcat.enabled=true，并将 NapCatApiBase 指向 http://localhost:8090/stub/napcat
+ *
+ * 配置项（config.properties）：
+ * - stub.napcat.enabled     是否启用桩接口，默认 false（未启用时返回 404）
+ * - stub.napcat.latency.ms  每次调用注入的延迟（毫秒），用于模拟真实 NapCat 的响应时间，默认 0
+ */
+@RestController
+@RequestMapping("/stub/napcat")
+@Api(tags = "NapCat 接口桩", description = "离线回放与压测使用的 NapCat HTTP 接口桩")
+@Slf4j
+public class NapCatStubController {
+
+    private static final ConfigManager configManager = ConfigManager.getInstance();
+    private static final boolean ENABLED = configManager.getBoolean("stub.napcat.enabled", false);
+    private static final long LATENCY_MS = Math.max(0, configManager.getInt("stub.napcat.latency.ms", 0));
+
+    private final AtomicLong messageIdSequence = new AtomicLong(1_000_000L);
+    private final Map<String, LongAdder> callCounts = new ConcurrentHashMap<>();
+
+    /**
+     * 模拟任意 NapCat 动作（send_group_msg、send_msg、get_status 等）
+     */
+    @PostMapping("/{action}")
+    @ApiOperation(value = "模拟 NapCat 动作调用", notes = "按配置注入延迟后返回 status=ok")
+    public ResponseEntity<?> handleAction(@PathVariable String action,
+                                          @RequestBody(required = false) String body) {
+        if (!ENABLED) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+        callCounts.computeIfAbsent(action, k -> new LongAdder()).increment();
+
+        if (LATENCY_MS > 0) {
+            try {
+                Thread.sleep(LATENCY_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        JSONObject data = new JSONObject();
+        data.put("message_id", messageIdSequence.incrementAndGet());
+
+        JSONObject response = new JSONObject();
+        response.put("status", "ok");
+        response.put("retcode", 0);
+        response.put("data", data);
+        response.put("message", "");
+        response.put("wording", "");
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * 获取各动作的调用次数
+     */
+    @GetMapping("/stats")
+    @ApiOperation(value = "获取桩接口调用统计")
+    public ResponseEntity<?> getStats() {
+        if (!ENABLED) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+        Map<String, Object> calls = new LinkedHashMap<>();
+        callCounts.forEach((action, count) -> calls.put(action, count.sum()));
+
+        JSONObject response = new JSONObject();
+        response.put("status", "success");
+        response.put("latency_ms", LATENCY_MS);
+        response.put("calls", calls);
+        return ResponseEntity.ok(response);
+    }
+}
@@ -2,17 +2,32 @@ package LDS.Person.controller;
 
 import LDS.Person.util.OldGameGetTask;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import LDS.Person.napcat.DurableOutbox;
+import LDS.Person.napcat.IdempotencyCache;
+import LDS.Person.napcat.NapCatClient;
+import LDS.Person.napcat.SendScheduler;
+import LDS.Person.service.GroupMessageService;
 import LDS.Person.websocket.OneBotWebSocketHandler;
+import LDS.Person.websocket.RemoteWebSocketClientHandler;
+import LDS.Person.websocket.dispatch.EventDispatcher;
+import LDS.Person.websocket.listener.LoadShedder;
+import LDS.Person.websocket.listener.MessageListenerChain;
+import LDS.Person.websocket.replay.FrameRecorder;
+import LDS.Person.websocket.replay.FrameReplayer;
 import LDS.Person.util.DSchatNcatQQ;
 import LDS.Person.config.NapCatTaskIsOpen;
 import LDS.Person.tasks.MsgLisVipCmdTask;
+import LDS.Person.tasks.MsgLisLogic.AtMentionBatcher;
+import LDS.Person.tasks.MsgSchLogic.PrefetchedLinePool;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import lombok.extern.slf4j.Slf4j;
@@ -49,6 +64,42 @@ public class OneBotWebSocketController {
     @Autowired
     private OldGameGetTask oldGameGetTask;
 
+    @Autowired
+    private EventDispatcher eventDispatcher;
+
+    @Autowired
+    private MessageListenerChain messageListenerChain;
+
+    @Autowired
+    private LoadShedder loadShedder;
+
+    @Autowired
+    private FrameRecorder frameRecorder;
+
+    @Autowired
+    private FrameReplayer frameReplayer;
+
+    @Autowired
+    private NapCatClient napCatClient;
+
+    @Autowired
+    private GroupMessageService groupMessageService;
+
+    @Autowired
+    private SendScheduler sendScheduler;
+
+    @Autowired
+    private IdempotencyCache idempotencyCache;
+
+    @Autowired
+    private AtMentionBatcher atMentionBatcher;
+
+    @Autowired
+    private PrefetchedLinePool prefetchedLinePool;
+
+    @Autowired
+    private DurableOutbox durableOutbox;
+
     /**
      * 获取 WebSocket 连接状态
      */
@@ -97,6 +148,73 @@ public class OneBotWebSocketController {
         }
     }
 
+    /**
+     * 获取事件分发器的运行统计
+     */
+    @GetMapping("/dispatch-stats")
+    @ApiOperation(value = "获取事件分发统计", notes = "返回事件分发队列深度、排队等待时长、拒绝次数、各类帧的接收计数、各监听任务的认领次数与耗时、过载降级次数、本地客户端出站缓冲区状态、NapCat 接口调用耗时与 WebSocket 动作通道状态、发送调度器排队情况、持久化发件箱状态、幂等去重次数、@机器人 合并批次、DeepSeek 流式回复的首字延迟、DeepSeek token 用量与上下文缓存命中率、预生成文本池命中情况以及图片发送的内存开销")
+    public ResponseEntity<?> getDispatchStats() {
+        JSONObject response = new JSONObject();
+        response.put("status", "success");
+        response.put("data", eventDispatcher.getStats());
+        response.put("frames", RemoteWebSocketClientHandler.getFrameStats());
+        response.put("listeners", messageListenerChain.getStats());
+        response.put("shedding", loadShedder.getStats());
+        response.put("outbound", OneBotWebSocketHandler.getOutboundStats());
+        response.put("napcat", napCatClient.getStats());
+        response.put("group_message", groupMessageService.getStats());
+        response.put("send_scheduler", sendScheduler.getStats());
+        response.put("outbox", durableOutbox.getStats());
+        response.put("idempotency", idempotencyCache.getStats());
+        response.put("at_coalesce", atMentionBatcher.getStats());
+        response.put("deepseek", DSchatNcatQQ.getStreamStats());
+        response.put("deepseek_usage", DSchatNcatQQ.getUsageStats());
+        response.put("prefetch", prefetchedLinePool.getStats());
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * 回放录制的 NapCat 原始帧
+     */
+    @PostMapping("/replay")
+    @ApiOperation(value = "回放录制的 NapCat 原始帧", notes = "需要 replay.enabled=true，且 NapCatApiBase 指向本机 /stub/napcat、传输不是 WEBSOCKET；file 为录制目录内的文件；speed=1 按原始节奏，N 为 N 倍速，0 为最快速度")
+    public ResponseEntity<?> startReplay(@RequestParam String file,
+                                         @RequestParam(defaultValue = "1") double speed) {
+        if (!frameReplayer.isEnabled()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+        JSONObject response = new JSONObject();
+        boolean started;
+        try {
+            started = frameReplayer.start(file, speed);
+        } catch (IllegalStateException | IllegalArgumentException e) {
+            response.put("status", "error");
+            response.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+        if (!started) {
+            response.put("status", "error");
+            response.put("message", "已有回放正在进行");
+            return ResponseEntity.badRequest().body(response);
+        }
+        response.put("status", "success");
+        response.put("message", "回放已开始");
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * 获取录制与回放状态
+     */
+    @GetMapping("/replay-status")
+    @ApiOperation(value = "获取录制与回放状态", notes = "返回录制帧数、回放进度、送入与排空耗时以及吞吐")
+    public ResponseEntity<?> getReplayStatus() {
+        JSONObject response = new JSONObject();
+        response.put("status", "success");
+        response.put("capture", frameRecorder.getStats());
+        response.put("replay", frameReplayer.getStats());
+        return ResponseEntity.ok(response);
+    }
+
     /**
      * 获取所有用户的AI对话历史（JSON格式）
      */
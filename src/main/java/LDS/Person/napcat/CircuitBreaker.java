@@ -0,0 +1,172 @@
+package LDS.Person.napcat;
+
+import LDS.Person.config.ConfigManager;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * NapCat 调用熔断器
+ *
+ * - CLOSED：正常放行，连续 failure.threshold 次失败后转为 OPEN
+ * - OPEN：open.ms 内所有调用直接失败，不再访问 NapCat
+ * - HALF_OPEN：OPEN 到期后只放行一个探测调用，成功则 CLOSED，失败则重新 OPEN
+ *
+ * 只有说明 NapCat 不可用的结果才计入失败次数：连接失败、超时、HTTP 5xx / 408 / 429（见 RetryPolicy.isUnavailable）；
+ * 4xx 与 retcode 非零的业务失败是请求本身的问题，NapCat 仍在正常工作，按成功处理。
+ * 状态切换会记录日志并保留最近若干条切换记录，可在 dispatch-stats 中查看
+ *
+ * 配置项（config.properties）：
+ * - napcat.breaker.failure.threshold  触发熔断的连续失败次数，默认 5
+ * - napcat.breaker.open.ms            熔断持续时间（毫秒），默认 30000
+ */
+@Component
+@Slf4j
+public class CircuitBreaker {
+
+    private static final ConfigManager configManager = ConfigManager.getInstance();
+
+    private static final int MAX_TRANSITION_HISTORY = 20;
+
+    /**
+     * 熔断器状态
+     */
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openNanos;
+
+    // 以下状态由 this 锁保护
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAtNanos;
+    private boolean probeInFlight;
+    private final ArrayDeque<Map<String, Object>> transitions = new ArrayDeque<>();
+
+    private final LongAdder rejectedCount = new LongAdder();
+    private final LongAdder openedCount = new LongAdder();
+
+    public CircuitBreaker() {
+        this.failureThreshold = Math.max(1, configManager.getInt("napcat.breaker.failure.threshold", 5));
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, configManager.getInt("napcat.breaker.open.ms", 30000)));
+    }
+
+    /**
+     * 申请一次调用许可
+     *
+     * @return false 表示熔断中，调用方应直接失败
+     */
+    public synchronized boolean tryAcquire() {
+        if (state == State.OPEN) {
+            if (System.nanoTime() - openedAtNanos < openNanos) {
+                rejectedCount.increment();
+                return false;
+            }
+            transition(State.HALF_OPEN, "熔断时间到期，放行探测调用");
+        }
+        if (state == State.HALF_OPEN) {
+            if (probeInFlight) {
+                rejectedCount.increment();
+                return false;
+            }
+            probeInFlight = true;
+        }
+        return true;
+    }
+
+    /**
+     * 记录一次已放行调用的结果
+     *
+     * @param healthy true 表示 NapCat 正常处理了请求（包括 4xx 与非零 retcode），
+     *                false 表示连接失败、超时或 HTTP 5xx / 408 / 429
+     */
+    public synchronized void onResult(boolean healthy) {
+        if (state == State.HALF_OPEN) {
+            probeInFlight = false;
+            if (healthy) {
+                consecutiveFailures = 0;
+                transition(State.CLOSED, "探测调用成功");
+            } else {
+                open("探测调用失败");
+            }
+            return;
+        }
+        if (healthy) {
+            consecutiveFailures = 0;
+            return;
+        }
+        consecutiveFailures++;
+        if (state == State.CLOSED && consecutiveFailures >= failureThreshold) {
+            open("连续失败 " + consecutiveFailures + " 次");
+        }
+    }
+
+    /**
+     * OPEN 状态还需持续的毫秒数，其他状态为 0
+     */
+    public synchronized long remainingOpenMillis() {
+        if (state != State.OPEN) {
+            return 0;
+        }
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(openNanos - (System.nanoTime() - openedAtNanos)));
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * 获取熔断器状态与最近的状态切换记录
+     */
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("state", state.name());
+        stats.put("consecutive_failures", consecutiveFailures);
+        stats.put("failure_threshold", failureThreshold);
+        stats.put("open_ms", TimeUnit.NANOSECONDS.toMillis(openNanos));
+        stats.put("remaining_open_ms", remainingOpenMillis());
+        stats.put("opened", openedCount.sum());
+        stats.put("rejected", rejectedCount.sum());
+        List<Map<String, Object>> history = new ArrayList<>(transitions);
+        stats.put("transitions", history);
+        return stats;
+    }
+
+    private void open(String reason) {
+        openedAtNanos = System.nanoTime();
+        openedCount.increment();
+        transition(State.OPEN, reason);
+    }
+
+    private void transition(State next, String reason) {
+        State previous = state;
+        state = next;
+        if (next == State.OPEN) {
+            log.warn("[CircuitBreaker] {} -> {}：{}", previous, next, reason);
+        } else {
+            log.info("[CircuitBreaker] {} -> {}：{}", previous, next, reason);
+        }
+
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("time", Instant.now().toString());
+        record.put("from", previous.name());
+        record.put("to", next.name());
+        record.put("reason", reason);
+        if (transitions.size() >= MAX_TRANSITION_HISTORY) {
+            transitions.removeFirst();
+        }
+        transitions.addLast(record);
+    }
+}
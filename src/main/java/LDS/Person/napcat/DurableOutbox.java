@@ -0,0 +1,551 @@
+package LDS.Person.napcat;
+
+import LDS.Person.config.ConfigManager;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+/**
+ * 持久化发件箱 - 定时问候、@回复等重要发送先写入只追加的内存映射日志，再交给 SendScheduler 发送
+ * 发送得到最终结果（成功或致命失败）后追加确认记录；进程重启或 NapCat 宕机时未确认的发送不会丢失，
+ * 启动时从日志中恢复并重新投递，语义为至少一次
+ * 幂等键只保存在内存中随发送一起交给 SendScheduler：进程内的重新投递仍按幂等键去重，重启后恢复的发送不带幂等键
+ *
+ * 日志格式：目录下按序号命名的分段文件 outbox-000001.log，每段预分配固定大小并内存映射，逐条追加
+ * [int 负载长度][int 负载 CRC32][负载]，负载长度为 0 表示该段数据结束
+ * 负载：SEND = [byte 1][long seq][long 创建时间 epoch 毫秒][long 群号][short 动作名长度][动作名][int 请求体长度][请求体]
+ *      ACK  = [byte 2][long seq]
+ *
+ * checkpoint 文件记录最小的未确认 seq，启动时只恢复不小于它的记录；
+ * 所有记录都小于 checkpoint 的旧分段会被删除（压缩），超过保留时长的未确认发送视为过期丢弃
+ *
+ * 追加只是一次内存拷贝，刷盘策略可配置：
+ * - always  每次追加后立即 force，最安全，追加延迟最高
+ * - batch   后台线程按 outbox.fsync.interval.ms 批量 force（默认）
+ * - never   交给操作系统回写，仅在分段切换和关闭时 force
+ *
+ * 配置项（config.properties）：
+ * - outbox.enabled              是否启用，默认 true；关闭时重要发送直接走 SendScheduler
+ * - outbox.dir                  日志目录，默认 outbox
+ * - outbox.segment.size.mb      单个分段大小（MB），默认 32
+ * - outbox.fsync                刷盘策略 always / batch / never，默认 batch
+ * - outbox.fsync.interval.ms    batch 策略的刷盘间隔（毫秒），默认 200
+ * - outbox.redeliver.interval.ms  未确认发送的重新投递间隔（毫秒），默认 60000
+ * - outbox.retention.minutes    未确认发送的最长保留时间（分钟），默认 360
+ */
+@Component
+@Slf4j
+public class DurableOutbox {
+
+    private static final ConfigManager configManager = ConfigManager.getInstance();
+
+    private static final byte TYPE_SEND = 1;
+    private static final byte TYPE_ACK = 2;
+    private static final int FRAME_HEADER_BYTES = 8;
+    private static final String SEGMENT_PREFIX = "outbox-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+
+    /**
+     * 刷盘策略
+     */
+    public enum FsyncPolicy {
+        ALWAYS,
+        BATCH,
+        NEVER
+    }
+
+    private final SendScheduler sendScheduler;
+    private final RetryPolicy retryPolicy;
+
+    private final boolean enabled;
+    private final Path dir;
+    private final int segmentBytes;
+    private final FsyncPolicy fsyncPolicy;
+    private final long redeliverIntervalMs;
+    private final long retentionMillis;
+
+    // 以下字段由 this 锁保护
+    private final List<Segment> segments = new ArrayList<>();
+    private Segment current;
+    private long nextSeq = 1;
+    private boolean dirty;
+
+    // 未确认的发送，按 seq 排序，firstKey 即 checkpoint
+    private final ConcurrentSkipListMap<Long, Entry> pending = new ConcurrentSkipListMap<>();
+
+    private ScheduledExecutorService background;
+
+    private final LongAdder appendedCount = new LongAdder();
+    private final LongAdder ackedCount = new LongAdder();
+    private final LongAdder redeliveredCount = new LongAdder();
+    private final LongAdder expiredCount = new LongAdder();
+    private final LongAdder recoveredCount = new LongAdder();
+    private final LongAdder appendFailedCount = new LongAdder();
+    private final LongAdder appendNanos = new LongAdder();
+    private final LongAdder compactedSegments = new LongAdder();
+
+    @Autowired
+    public DurableOutbox(SendScheduler sendScheduler, RetryPolicy retryPolicy) {
+        this(sendScheduler, retryPolicy,
+                configManager.getBoolean("outbox.enabled", true),
+                Paths.get(configManager.getString("outbox.dir", "outbox")),
+                Math.max(1, configManager.getInt("outbox.segment.size.mb", 32)) * 1024 * 1024,
+                parseFsyncPolicy(configManager.getString("outbox.fsync", "batch")),
+                Math.max(1000, configManager.getInt("outbox.redeliver.interval.ms", 60000)),
+                TimeUnit.MINUTES.toMillis(Math.max(1, configManager.getInt("outbox.retention.minutes", 360))));
+    }
+
+    /**
+     * 不读取配置，直接指定目录和参数，用于测试
+     *
+     * @param segmentBytes 单个分段大小（字节）
+     */
+    DurableOutbox(SendScheduler sendScheduler, RetryPolicy retryPolicy, boolean enabled, Path dir, int segmentBytes,
+                  FsyncPolicy fsyncPolicy, long redeliverIntervalMs, long retentionMillis) {
+        this.sendScheduler = sendScheduler;
+        this.retryPolicy = retryPolicy;
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        this.fsyncPolicy = fsyncPolicy;
+        this.redeliverIntervalMs = redeliverIntervalMs;
+        this.retentionMillis = retentionMillis;
+        this.enabled = enabled && open();
+    }
+
+    /**
+     * 记录一次群发送并交给 SendScheduler 发送
+     * 未启用或写入日志失败时退化为普通排队发送
+     *
+     * @param body UTF-8 JSON 请求体
+     */
+    public CompletableFuture<NapCatResponse> submit(long groupId, String action, byte[] body) {
+        return submit(groupId, action, body, IdempotencyCache.NONE);
+    }
+
+    /**
+     * 记录一次携带幂等键的群发送并交给 SendScheduler 发送
+     *
+     * @param body           UTF-8 JSON 请求体
+     * @param idempotencyKey IdempotencyCache.key 生成的幂等键，NONE 表示不去重
+     */
+    public CompletableFuture<NapCatResponse> submit(long groupId, String action, byte[] body, long idempotencyKey) {
+        Entry entry = enabled ? append(groupId, action, body) : null;
+        if (entry == null) {
+            return sendScheduler.submit(groupId, action, body, 0, idempotencyKey);
+        }
+        entry.idempotencyKey = idempotencyKey;
+        return dispatch(entry);
+    }
+
+    /**
+     * 获取发件箱统计
+     */
+    public Map<String, Object> getStats() {
+        long appended = appendedCount.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("dir", dir.toAbsolutePath().toString());
+        stats.put("fsync", fsyncPolicy.name());
+        synchronized (this) {
+            stats.put("segments", segments.size());
+        }
+        stats.put("pending", pending.size());
+        stats.put("checkpoint", checkpoint());
+        stats.put("appended", appended);
+        stats.put("acked", ackedCount.sum());
+        stats.put("recovered_on_startup", recoveredCount.sum());
+        stats.put("redelivered", redeliveredCount.sum());
+        stats.put("expired", expiredCount.sum());
+        stats.put("append_failed", appendFailedCount.sum());
+        stats.put("compacted_segments", compactedSegments.sum());
+        stats.put("avg_append_us", appended == 0 ? 0.0 : appendNanos.sum() / 1000.0 / appended);
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (background != null) {
+            background.shutdownNow();
+        }
+        synchronized (this) {
+            if (current != null) {
+                current.force();
+            }
+            writeCheckpoint();
+        }
+    }
+
+    private CompletableFuture<NapCatResponse> dispatch(Entry entry) {
+        entry.inFlight = true;
+        return sendScheduler.submit(entry.groupId, entry.action, entry.body, 0, entry.idempotencyKey)
+                .whenComplete((response, e) -> {
+            entry.inFlight = false;
+            if (retryPolicy.classify(response) != RetryPolicy.Outcome.RETRYABLE) {
+                // 成功或致命失败都不再重发
+                ack(entry.seq);
+            }
+        });
+    }
+
+    /**
+     * 重新投递失败且未过期的发送，丢弃过期的发送，并压缩旧分段
+     * 由后台线程按 outbox.redeliver.interval.ms 调用
+     */
+    void redeliver() {
+        long now = System.currentTimeMillis();
+        for (Entry entry : pending.values()) {
+            if (entry.inFlight) {
+                continue;
+            }
+            if (now - entry.createdMillis > retentionMillis) {
+                expiredCount.increment();
+                log.warn("[DurableOutbox] 发送已过期，放弃投递 - seq: {}，群ID: {}", entry.seq, entry.groupId);
+                ack(entry.seq);
+                continue;
+            }
+            redeliveredCount.increment();
+            dispatch(entry);
+        }
+        compact();
+    }
+
+    // ------------------------------------------------------------------ 日志写入
+
+    private Entry append(long groupId, String action, byte[] body) {
+        long start = System.nanoTime();
+        byte[] actionBytes = action.getBytes(StandardCharsets.UTF_8);
+        int payloadLength = 1 + 8 + 8 + 8 + 2 + actionBytes.length + 4 + body.length;
+        if (payloadLength + FRAME_HEADER_BYTES * 2 > segmentBytes) {
+            log.warn("[DurableOutbox] 请求体过大（{} 字节），不写入发件箱", body.length);
+            return null;
+        }
+        long createdMillis = System.currentTimeMillis();
+        ByteBuffer payload = ByteBuffer.allocate(payloadLength);
+        Entry entry;
+        synchronized (this) {
+            long seq = nextSeq++;
+            payload.put(TYPE_SEND).putLong(seq).putLong(createdMillis).putLong(groupId)
+                    .putShort((short) actionBytes.length).put(actionBytes)
+                    .putInt(body.length).put(body);
+            if (!write(payload.array())) {
+                return null;
+            }
+            entry = new Entry(seq, createdMillis, groupId, action, body);
+            // 先标记为发送中再放入 pending，避免 redeliver 在 dispatch 之前把它当作失败项重发
+            entry.inFlight = true;
+            pending.put(seq, entry);
+        }
+        appendedCount.increment();
+        appendNanos.add(System.nanoTime() - start);
+        return entry;
+    }
+
+    private void ack(long seq) {
+        if (pending.remove(seq) == null) {
+            return;
+        }
+        ackedCount.increment();
+        ByteBuffer payload = ByteBuffer.allocate(9).put(TYPE_ACK).putLong(seq);
+        synchronized (this) {
+            write(payload.array());
+        }
+    }
+
+    /**
+     * 写入一条记录，当前分段剩余空间不足时切换到新分段（调用方持有 this 锁）
+     */
+    private boolean write(byte[] payload) {
+        try {
+            int frameLength = FRAME_HEADER_BYTES + payload.length;
+            if (current == null || current.buffer.remaining() < frameLength + 4) {
+                rollSegment();
+            }
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            current.buffer.putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+            current.lastSeq = nextSeq - 1;
+            if (fsyncPolicy == FsyncPolicy.ALWAYS) {
+                current.force();
+            } else {
+                dirty = true;
+            }
+            return true;
+        } catch (IOException e) {
+            appendFailedCount.increment();
+            log.error("[DurableOutbox] 写入发件箱失败: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private void rollSegment() throws IOException {
+        if (current != null) {
+            current.force();
+        }
+        int index = segments.isEmpty() ? 1 : segments.get(segments.size() - 1).index + 1;
+        Path path = dir.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            current = new Segment(index, path, channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes));
+        }
+        current.lastSeq = nextSeq - 1;
+        segments.add(current);
+    }
+
+    private synchronized void flush() {
+        if (dirty && current != null) {
+            current.force();
+            dirty = false;
+        }
+    }
+
+    // ------------------------------------------------------------------ 启动恢复与压缩
+
+    /**
+     * 打开日志目录，恢复未确认的发送并启动后台刷盘与重新投递
+     */
+    private boolean open() {
+        try {
+            Files.createDirectories(dir);
+            long checkpoint = readCheckpoint();
+            List<Segment> existing = listSegments();
+            Map<Long, Entry> recovered = new LinkedHashMap<>();
+            Set<Long> acked = new HashSet<>();
+            for (Segment segment : existing) {
+                segment.lastSeq = scanSegment(segment.path, checkpoint, recovered, acked);
+                nextSeq = Math.max(nextSeq, segment.lastSeq + 1);
+            }
+            segments.addAll(existing);
+            nextSeq = Math.max(nextSeq, checkpoint);
+            for (Entry entry : recovered.values()) {
+                if (!acked.contains(entry.seq)) {
+                    pending.put(entry.seq, entry);
+                }
+            }
+            recoveredCount.add(pending.size());
+            if (!pending.isEmpty()) {
+                log.info("[DurableOutbox] 从发件箱恢复 {} 条未确认的发送，稍后重新投递", pending.size());
+            }
+            // 每次启动写入新分段，旧分段只读，待全部确认后删除
+            rollSegment();
+            compact();
+        } catch (IOException e) {
+            log.error("[DurableOutbox] 打开发件箱失败，重要发送将不做持久化: {}", dir.toAbsolutePath(), e);
+            return false;
+        }
+
+        background = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "DurableOutbox");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (fsyncPolicy == FsyncPolicy.BATCH) {
+            long interval = Math.max(10, configManager.getInt("outbox.fsync.interval.ms", 200));
+            background.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.MILLISECONDS);
+        }
+        background.scheduleWithFixedDelay(this::redeliverSafely, 10_000, redeliverIntervalMs, TimeUnit.MILLISECONDS);
+        return true;
+    }
+
+    private void redeliverSafely() {
+        try {
+            redeliver();
+        } catch (Exception e) {
+            log.error("[DurableOutbox] 重新投递异常", e);
+        }
+    }
+
+    /**
+     * 读取一个分段中的记录，遇到空记录、截断或校验失败（写入中途崩溃）时停止
+     *
+     * @return 分段中最大的 seq
+     */
+    private long scanSegment(Path path, long checkpoint, Map<Long, Entry> recovered, Set<Long> acked) throws IOException {
+        long lastSeq = 0;
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        while (buffer.remaining() >= FRAME_HEADER_BYTES) {
+            int length = buffer.getInt();
+            int expectedCrc = buffer.getInt();
+            if (length <= 0 || length > buffer.remaining()) {
+                break;
+            }
+            byte[] payload = new byte[length];
+            buffer.get(payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            if ((int) crc.getValue() != expectedCrc) {
+                log.warn("[DurableOutbox] 分段 {} 存在损坏记录，后续内容忽略", path.getFileName());
+                break;
+            }
+
+            ByteBuffer record = ByteBuffer.wrap(payload);
+            byte type = record.get();
+            long seq = record.getLong();
+            // ACK 也计入，保证含有未过 checkpoint 的确认记录的分段不会被提前删除
+            lastSeq = Math.max(lastSeq, seq);
+            if (type == TYPE_ACK) {
+                acked.add(seq);
+                continue;
+            }
+            if (type != TYPE_SEND || seq < checkpoint) {
+                continue;
+            }
+            long createdMillis = record.getLong();
+            long groupId = record.getLong();
+            byte[] action = new byte[record.getShort()];
+            record.get(action);
+            byte[] body = new byte[record.getInt()];
+            record.get(body);
+            recovered.put(seq, new Entry(seq, createdMillis, groupId, new String(action, StandardCharsets.UTF_8), body));
+        }
+        return lastSeq;
+    }
+
+    /**
+     * 更新 checkpoint 并删除所有记录都已确认的旧分段
+     */
+    private synchronized void compact() {
+        long checkpoint = checkpoint();
+        writeCheckpoint();
+        segments.removeIf(segment -> {
+            if (segment == current || segment.lastSeq >= checkpoint) {
+                return false;
+            }
+            try {
+                Files.deleteIfExists(segment.path);
+                compactedSegments.increment();
+                return true;
+            } catch (IOException e) {
+                // 仍被映射的分段在部分系统上无法删除，下次压缩时重试
+                return false;
+            }
+        });
+    }
+
+    private long checkpoint() {
+        Map.Entry<Long, Entry> first = pending.firstEntry();
+        if (first != null) {
+            return first.getKey();
+        }
+        synchronized (this) {
+            return nextSeq;
+        }
+    }
+
+    private void writeCheckpoint() {
+        try {
+            Path tmp = dir.resolve(CHECKPOINT_FILE + ".tmp");
+            Files.writeString(tmp, String.valueOf(checkpoint()));
+            Files.move(tmp, dir.resolve(CHECKPOINT_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("[DurableOutbox] 写入 checkpoint 失败: {}", e.getMessage());
+        }
+    }
+
+    private long readCheckpoint() {
+        Path file = dir.resolve(CHECKPOINT_FILE);
+        try {
+            return Files.exists(file) ? Long.parseLong(Files.readString(file).trim()) : 0;
+        } catch (Exception e) {
+            log.warn("[DurableOutbox] checkpoint 无法读取，将扫描全部分段: {}", e.getMessage());
+            return 0;
+        }
+    }
+
+    private List<Segment> listSegments() throws IOException {
+        List<Segment> list = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                try {
+                    int index = Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+                    list.add(new Segment(index, path, null));
+                } catch (NumberFormatException e) {
+                    log.warn("[DurableOutbox] 忽略无法识别的文件: {}", name);
+                }
+            }
+        }
+        list.sort((a, b) -> Integer.compare(a.index, b.index));
+        return list;
+    }
+
+    private static FsyncPolicy parseFsyncPolicy(String value) {
+        try {
+            return FsyncPolicy.valueOf(value.trim().toUpperCase());
+        } catch (Exception e) {
+            log.warn("无效的发件箱刷盘策略配置: {}，使用默认值 batch", value);
+            return FsyncPolicy.BATCH;
+        }
+    }
+
+    /**
+     * 日志分段
+     */
+    private static final class Segment {
+        final int index;
+        final Path path;
+        // 只有当前写入分段持有映射
+        final MappedByteBuffer buffer;
+        long lastSeq;
+
+        Segment(int index, Path path, MappedByteBuffer buffer) {
+            this.index = index;
+            this.path = path;
+            this.buffer = buffer;
+        }
+
+        void force() {
+            if (buffer != null) {
+                buffer.force();
+            }
+        }
+    }
+
+    /**
+     * 一条未确认的发送
+     */
+    private static final class Entry {
+        final long seq;
+        final long createdMillis;
+        final long groupId;
+        final String action;
+        final byte[] body;
+        volatile boolean inFlight;
+        // 只在内存中保存，重启恢复的发送为 NONE
+        volatile long idempotencyKey = IdempotencyCache.NONE;
+
+        Entry(long seq, long createdMillis, long groupId, String action, byte[] body) {
+            this.seq = seq;
+            this.createdMillis = createdMillis;
+            this.groupId = groupId;
+            this.action = action;
+            this.body = body;
+        }
+    }
+}
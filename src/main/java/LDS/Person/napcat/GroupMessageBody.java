@@ -0,0 +1,119 @@
+package LDS.Person.napcat;
+
+import com.alibaba.fastjson2.JSONWriter;
+
+import java.util.Arrays;
+
+/**
+ * send_group_msg 请求体构建器 - 直接序列化为 UTF-8 字节
+ * 生成 {"group_id":...,"message":[{"type":...,"data":{...}}, ...]}，
+ * 不再先构建 JSONObject / JSONArray 树、转成 String 后再由 HTTP 客户端编码一遍
+ *
+ * 消息段只以 (类型, 字段名, 值) 三元组暂存，toBytes() 时一次性写入 fastjson2 的 UTF-8 JSONWriter，
+ * 写入缓冲区在 close 时归还 fastjson2 的缓冲池，连续发送时复用同一块缓冲区
+ *
+ * 非线程安全，在构建请求的线程内使用
+ */
+public final class GroupMessageBody {
+
+    private final long groupId;
+    // 每个消息段占 3 个位置：type、data 字段名、data 字段值
+    private String[] segments = new String[6];
+    private int size;
+
+    private GroupMessageBody(long groupId) {
+        this.groupId = groupId;
+    }
+
+    public static GroupMessageBody of(long groupId) {
+        return new GroupMessageBody(groupId);
+    }
+
+    /**
+     * 文本消息段
+     */
+    public GroupMessageBody text(String text) {
+        return segment("text", "text", text);
+    }
+
+    /**
+     * 图片消息段
+     *
+     * @param file 图片 URL、本地路径或 base64://... 数据
+     */
+    public GroupMessageBody image(String file) {
+        return segment("image", "file", file);
+    }
+
+    /**
+     * 语音消息段
+     *
+     * @param file 语音 URL、本地路径或 base64://... 数据
+     */
+    public GroupMessageBody record(String file) {
+        return segment("record", "file", file);
+    }
+
+    /**
+     * 回复消息段（引用指定消息）
+     */
+    public GroupMessageBody reply(String messageId) {
+        return segment("reply", "id", messageId);
+    }
+
+    /**
+     * @ 某人消息段
+     */
+    public GroupMessageBody at(long userId) {
+        return segment("at", "qq", String.valueOf(userId));
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * 序列化为 UTF-8 JSON 字节
+     */
+    public byte[] toBytes() {
+        try (JSONWriter writer = JSONWriter.ofUTF8()) {
+            writer.startObject();
+            writer.writeName("group_id");
+            writer.writeColon();
+            writer.writeInt64(groupId);
+            writer.writeName("message");
+            writer.writeColon();
+            writer.startArray();
+            for (int i = 0; i < size; i += 3) {
+                if (i > 0) {
+                    writer.writeComma();
+                }
+                writer.startObject();
+                writer.writeName("type");
+                writer.writeColon();
+                writer.writeString(segments[i]);
+                writer.writeName("data");
+                writer.writeColon();
+                writer.startObject();
+                writer.writeName(segments[i + 1]);
+                writer.writeColon();
+                writer.writeString(segments[i + 2]);
+                writer.endObject();
+                writer.endObject();
+            }
+            writer.endArray();
+            writer.endObject();
+            return writer.getBytes();
+        }
+    }
+
+    private GroupMessageBody segment(String type, String key, String value) {
+        if (size + 3 > segments.length) {
+            segments = Arrays.copyOf(segments, segments.length * 2);
+        }
+        segments[size++] = type;
+        segments[size++] = key;
+        segments[size++] = value;
+        return this;
+    }
+}
@@ -0,0 +1,259 @@
+package LDS.Person.napcat;
+
+import LDS.Person.config.ConfigManager;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 发送幂等键去重缓存 - 带过期时间的紧凑哈希集合
+ *
+ * 幂等键由触发消息的 message_id 与处理器名称哈希为一个非零 long，同一条消息经同一处理器只会发送一次：
+ * 断线重连后 NapCat 重放的帧、重复触发的关键词图片等在 window.ms 内再次提交时直接被抑制，不再调用 NapCat
+ *
+ * 存储为开放寻址的两个并行数组（键 + 过期时刻），不为每个键分配对象；
+ * 过期的槽位在查找时视为墓碑复用，墓碑与有效键合计超过半数时整体重建，有效键过多时扩容到 max.entries 为止，
+ * 达到上限后一次淘汰最早过期的一半有效键，而不是每次插入只腾出一个槽位，避免每次插入都触发整表重建
+ *
+ * 配置项（config.properties）：
+ * - napcat.idempotency.window.ms     去重窗口（毫秒），默认 600000
+ * - napcat.idempotency.max.entries   最多保留的键数量，默认 65536
+ */
+@Component
+public class IdempotencyCache {
+
+    private static final ConfigManager configManager = ConfigManager.getInstance();
+
+    /**
+     * 不携带幂等键
+     */
+    public static final long NONE = 0L;
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final long windowNanos;
+    private final int maxEntries;
+
+    // 以下字段由 this 锁保护；keys[i] == 0 表示从未使用过的空槽
+    private long[] keys = new long[INITIAL_CAPACITY];
+    private long[] expiresAt = new long[INITIAL_CAPACITY];
+    private int used;
+
+    private final LongAdder claimedCount = new LongAdder();
+    private final LongAdder suppressedCount = new LongAdder();
+    private final LongAdder releasedCount = new LongAdder();
+    private final LongAdder evictedCount = new LongAdder();
+
+    public IdempotencyCache() {
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, configManager.getInt("napcat.idempotency.window.ms", 600000)));
+        this.maxEntries = Math.max(INITIAL_CAPACITY / 2, configManager.getInt("napcat.idempotency.max.entries", 65536));
+    }
+
+    /**
+     * 由触发消息 ID 和处理器名称生成幂等键
+     *
+     * @param messageId 触发消息的 message_id，0 表示没有触发消息
+     * @param handler   处理器名称，同一条消息被不同处理器响应时互不影响
+     * @return 幂等键，没有触发消息时为 NONE
+     */
+    public static long key(long messageId, String handler) {
+        if (messageId == 0) {
+            return NONE;
+        }
+        long h = messageId * 0x9E3779B97F4A7C15L;
+        for (byte b : handler.getBytes(StandardCharsets.UTF_8)) {
+            h = (h ^ b) * 0x100000001B3L;
+        }
+        h = mix(h);
+        return h == NONE ? 1 : h;
+    }
+
+    /**
+     * 由一个幂等键派生出第 index 个子键，用于一次触发分多条发送的场景（如流式回复的各个片段）
+     *
+     * @return 子键，key 为 NONE 时同样为 NONE
+     */
+    public static long derive(long key, int index) {
+        if (key == NONE) {
+            return NONE;
+        }
+        long h = mix(key + (index + 1) * 0x9E3779B97F4A7C15L);
+        return h == NONE ? 1 : h;
+    }
+
+    /**
+     * 占用一个幂等键
+     *
+     * @return true 表示首次出现（或上次已过期），应当发送；false 表示窗口内重复，应当抑制
+     */
+    public boolean tryClaim(long key) {
+        if (key == NONE) {
+            return true;
+        }
+        long now = System.nanoTime();
+        synchronized (this) {
+            int mask = keys.length - 1;
+            int tombstone = -1;
+            for (int i = (int) key & mask; ; i = (i + 1) & mask) {
+                long k = keys[i];
+                if (k == NONE) {
+                    break;
+                }
+                boolean expired = expiresAt[i] - now <= 0;
+                if (k == key && !expired) {
+                    suppressedCount.increment();
+                    return false;
+                }
+                if (expired && tombstone < 0) {
+                    tombstone = i;
+                }
+                if (k == key) {
+                    break;
+                }
+            }
+            if (tombstone >= 0) {
+                keys[tombstone] = key;
+                expiresAt[tombstone] = now + windowNanos;
+            } else {
+                insert(key, now);
+            }
+        }
+        claimedCount.increment();
+        return true;
+    }
+
+    /**
+     * 释放一个幂等键：发送确定失败时调用，之后同一触发消息可以再次发送
+     */
+    public void release(long key) {
+        if (key == NONE) {
+            return;
+        }
+        long now = System.nanoTime();
+        synchronized (this) {
+            int mask = keys.length - 1;
+            for (int i = (int) key & mask; keys[i] != NONE; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    // 置为已过期，保留槽位作为墓碑，不破坏探测链
+                    expiresAt[i] = now;
+                    releasedCount.increment();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * 获取去重统计
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("window_ms", TimeUnit.NANOSECONDS.toMillis(windowNanos));
+        synchronized (this) {
+            stats.put("capacity", keys.length);
+            stats.put("live_keys", countLive(System.nanoTime()));
+        }
+        stats.put("claimed", claimedCount.sum());
+        stats.put("suppressed", suppressedCount.sum());
+        stats.put("released", releasedCount.sum());
+        stats.put("evicted", evictedCount.sum());
+        return stats;
+    }
+
+    private void insert(long key, long now) {
+        if ((used + 1) * 2 > keys.length) {
+            rebuild(now);
+        }
+        int mask = keys.length - 1;
+        int i = (int) key & mask;
+        while (keys[i] != NONE) {
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        expiresAt[i] = now + windowNanos;
+        used++;
+    }
+
+    /**
+     * 丢弃过期键后重建；有效键仍占四分之一以上时扩容，已达上限则按过期时刻淘汰最早的一半有效键
+     */
+    private void rebuild(long now) {
+        int live = countLive(now);
+        int capacity = keys.length;
+        // 过期时刻早于 cutoff 的键丢弃，等于 cutoff 的键再丢弃 evictAtCutoff 个
+        long cutoff = now;
+        int evictAtCutoff = 0;
+        if (live * 4 > capacity) {
+            if (capacity < Integer.highestOneBit(maxEntries) * 2) {
+                capacity *= 2;
+            } else {
+                long[] expiries = liveExpiries(now, live);
+                Arrays.sort(expiries, 0, live);
+                int batch = live / 2;
+                cutoff = expiries[batch - 1];
+                evictAtCutoff = batch;
+                for (int j = 0; j < batch && expiries[j] != cutoff; j++) {
+                    evictAtCutoff--;
+                }
+                evictedCount.add(batch);
+            }
+        }
+        long[] oldKeys = keys;
+        long[] oldExpires = expiresAt;
+        keys = new long[capacity];
+        expiresAt = new long[capacity];
+        used = 0;
+        int mask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] == NONE || oldExpires[j] - now <= 0 || oldExpires[j] - cutoff < 0) {
+                continue;
+            }
+            if (oldExpires[j] == cutoff && evictAtCutoff > 0) {
+                evictAtCutoff--;
+                continue;
+            }
+            int i = (int) oldKeys[j] & mask;
+            while (keys[i] != NONE) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = oldKeys[j];
+            expiresAt[i] = oldExpires[j];
+            used++;
+        }
+    }
+
+    private int countLive(long now) {
+        int live = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != NONE && expiresAt[i] - now > 0) {
+                live++;
+            }
+        }
+        return live;
+    }
+
+    private long[] liveExpiries(long now, int live) {
+        long[] expiries = new long[live];
+        int n = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != NONE && expiresAt[i] - now > 0) {
+                expiries[n++] = expiresAt[i];
+            }
+        }
+        return expiries;
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB53A87E85A63L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
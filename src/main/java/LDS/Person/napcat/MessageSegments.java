@@ -0,0 +1,93 @@
+package LDS.Person.napcat;
+
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+
+/**
+ * OneBot 消息段构建工具
+ * 统一生成 {"type": ..., "data": {...}} 结构，避免各处手写嵌套 JSONObject
+ */
+public final class MessageSegments {
+
+    private MessageSegments() {
+    }
+
+    /**
+     * 文本消息段
+     */
+    public static JSONObject text(String text) {
+        return segment("text", "text", text);
+    }
+
+    /**
+     * 图片消息段
+     *
+     * @param file 图片 URL、本地路径或 base64://... 数据
+     */
+    public static JSONObject image(String file) {
+        return segment("image", "file", file);
+    }
+
+    /**
+     * 语音消息段
+     *
+     * @param file 语音 URL、本地路径或 base64://... 数据
+     */
+    public static JSONObject record(String file) {
+        return segment("record", "file", file);
+    }
+
+    /**
+     * 回复消息段（引用指定消息）
+     */
+    public static JSONObject reply(String messageId) {
+        return segment("reply", "id", messageId);
+    }
+
+    /**
+     * @ 某人消息段
+     */
+    public static JSONObject at(long userId) {
+        return segment("at", "qq", String.valueOf(userId));
+    }
+
+    /**
+     * 合并转发的自定义节点
+     *
+     * @param userId   节点显示的发送者 QQ
+     * @param nickname 节点显示的发送者昵称
+     * @param content  节点内容（消息段数组）
+     */
+    public static JSONObject node(long userId, String nickname, JSONArray content) {
+        JSONObject data = new JSONObject();
+        data.put("user_id", String.valueOf(userId));
+        data.put("nickname", nickname);
+        data.put("content", content);
+
+        JSONObject node = new JSONObject();
+        node.put("type", "node");
+        node.put("data", data);
+        return node;
+    }
+
+    /**
+     * 把若干消息段组成消息数组
+     */
+    public static JSONArray of(JSONObject... segments) {
+        JSONArray message = new JSONArray(segments.length);
+        for (JSONObject segment : segments) {
+            message.add(segment);
+        }
+        return message;
+    }
+
+    private static JSONObject segment(String type, String key, String value) {
+        JSONObject data = new JSONObject();
+        data.put(key, value);
+
+        JSONObject segment = new JSONObject();
+        segment.put("type", type);
+        segment.put("data", data);
+        return segment;
+    }
+}
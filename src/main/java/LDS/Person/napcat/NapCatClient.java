@@ -0,0 +1,387 @@
+package LDS.Person.napcat;
+
+import LDS.Person.config.ConfigManager;
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * NapCat 接口客户端 - 所有向 NapCat 发送消息的地方统一经过这里
+ *
+ * 传输层使用独立的 JDK HttpClient（HTTP/1.1、不走代理），连接由客户端内部连接池保持长连接复用，
+ * 连续回复不再重复建立 TCP 连接；鉴权和 Content-Type 请求头在启动时构建一次；
+ * 请求体以 UTF-8 字节直接交给 HttpClient，常用的文本 / 图片 / 回复消息由 GroupMessageBody 直接写成字节
+ * 调用不抛异常，结果统一封装为 NapCatResponse，并按动作记录调用次数、失败次数和耗时
+ * 所有调用先经过 CircuitBreaker，NapCat 持续不可用时直接失败，不再占用线程等待超时
+ *
+ * 传输方式为 WEBSOCKET 时动作经 WsActionChannel 走 NapCat 长连接，连接不可用时自动回退到 HTTP；
+ * 为 WEBCLIENT 时经共享的 reactor-netty WebClient（按主机建连接池）发送，异步调用不占用任何线程等待
+ *
+ * 配置项（config.properties）：
+ * - NapCatApiBase / NapCatAuthToken  NapCat 地址与令牌
+ * - napcat.connect.timeout.ms        建立连接超时（毫秒），默认 5000
+ * - napcat.request.timeout.ms        单次请求超时（毫秒），默认 30000
+ * - napcat.action.transport          动作传输方式 HTTP / WEBSOCKET / WEBCLIENT，默认 HTTP
+ */
+@Service
+@Slf4j
+public class NapCatClient {
+
+    private static final ConfigManager configManager = ConfigManager.getInstance();
+
+    private static final byte[] EMPTY_BODY = {'{', '}'};
+
+    // NapCatStubController 的路径，离线回放只允许在动作发往该桩时进行
+    private static final String STUB_PATH = "/stub/napcat";
+
+    private final String apiBase;
+    private final String[] headers;
+    private final Duration requestTimeout;
+    private final HttpClient httpClient;
+
+    private final Map<String, ActionMetrics> metrics = new ConcurrentHashMap<>();
+
+    private final WsActionChannel wsActionChannel;
+    private final Transport transport;
+    private final CircuitBreaker circuitBreaker;
+    private final WebClient webClient;
+
+    /**
+     * 动作传输方式
+     */
+    public enum Transport {
+        HTTP,
+        WEBSOCKET,
+        WEBCLIENT;
+
+        static Transport parse(String value) {
+            try {
+                return Transport.valueOf(value.trim().toUpperCase());
+            } catch (Exception e) {
+                log.warn("无效的 NapCat 传输方式配置: {}，使用默认值 HTTP", value);
+                return HTTP;
+            }
+        }
+    }
+
+    public NapCatClient(WsActionChannel wsActionChannel, CircuitBreaker circuitBreaker,
+                        @Qualifier("napCatWebClient") WebClient webClient) {
+        this.wsActionChannel = wsActionChannel;
+        this.circuitBreaker = circuitBreaker;
+        this.webClient = webClient;
+        this.transport = Transport.parse(configManager.getString("napcat.action.transport", "HTTP"));
+        String base = configManager.getNapCatApiBase();
+        this.apiBase = base.endsWith("/") ? base.substring(0, base.length() - 1) : base;
+        this.headers = new String[] {
+                "Authorization", "Bearer " + configManager.getNapCatAuthToken(),
+                "Content-Type", "application/json"
+        };
+        this.requestTimeout = Duration.ofMillis(configManager.getInt("napcat.request.timeout.ms", 30000));
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofMillis(configManager.getInt("napcat.connect.timeout.ms", 5000)))
+                .proxy(HttpClient.Builder.NO_PROXY)
+                .build();
+    }
+
+    /**
+     * 发送群消息
+     *
+     * @param message 消息段数组（JSONArray）或 CQ 码字符串
+     */
+    public NapCatResponse sendGroupMessage(long groupId, Object message) {
+        JSONObject params = new JSONObject();
+        params.put("group_id", groupId);
+        params.put("message", message);
+        return callAction("send_group_msg", params);
+    }
+
+    /**
+     * 发送纯文本群消息（不解析 CQ 码）
+     */
+    public NapCatResponse sendText(long groupId, String text) {
+        return callAction("send_group_msg", GroupMessageBody.of(groupId).text(text).toBytes());
+    }
+
+    /**
+     * 发送图片群消息
+     *
+     * @param file 图片 URL、本地路径或 base64://... 数据
+     */
+    public NapCatResponse sendImage(long groupId, String file) {
+        return callAction("send_group_msg", GroupMessageBody.of(groupId).image(file).toBytes());
+    }
+
+    /**
+     * 发送语音群消息
+     *
+     * @param file 语音 URL、本地路径或 base64://... 数据
+     */
+    public NapCatResponse sendRecord(long groupId, String file) {
+        return callAction("send_group_msg", GroupMessageBody.of(groupId).record(file).toBytes());
+    }
+
+    /**
+     * 引用回复指定消息
+     */
+    public NapCatResponse reply(long groupId, String messageId, String text) {
+        return callAction("send_group_msg", GroupMessageBody.of(groupId).reply(messageId).text(text).toBytes());
+    }
+
+    /**
+     * 发送群合并转发消息
+     *
+     * @param nodes MessageSegments.node 构建的节点数组
+     */
+    public NapCatResponse sendForward(long groupId, JSONArray nodes) {
+        JSONObject params = new JSONObject();
+        params.put("group_id", groupId);
+        params.put("messages", nodes);
+        return callAction("send_group_forward_msg", params);
+    }
+
+    /**
+     * 调用任意 NapCat 动作（阻塞直到得到结果）
+     *
+     * @param action 动作名，如 send_group_msg、get_group_list
+     * @param params 请求参数，可为 null
+     */
+    public NapCatResponse callAction(String action, JSONObject params) {
+        return callAction(action, toBytes(params));
+    }
+
+    /**
+     * 以已序列化的请求体调用 NapCat 动作（阻塞直到得到结果）
+     *
+     * @param body UTF-8 JSON 请求体，如 GroupMessageBody.toBytes() 的结果
+     */
+    public NapCatResponse callAction(String action, byte[] body) {
+        if (!circuitBreaker.tryAcquire()) {
+            return record(NapCatResponse.circuitOpen(action));
+        }
+        if (useWebSocket()) {
+            return record(wsActionChannel.callAction(action, body).join());
+        }
+        if (transport == Transport.WEBCLIENT) {
+            return callOverWebClient(action, body).join();
+        }
+        long start = System.nanoTime();
+        NapCatResponse response;
+        try {
+            HttpResponse<String> httpResponse = httpClient.send(buildRequest(action, body),
+                    HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+            response = toResponse(action, httpResponse, start);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            response = new NapCatResponse(action, 0, null, "请求被中断", System.nanoTime() - start);
+        } catch (Exception e) {
+            response = transportFailure(action, e, start);
+        }
+        return record(response);
+    }
+
+    /**
+     * 异步调用任意 NapCat 动作，返回的 future 不会异常完成
+     * WebSocket 传输下多个动作可以同时在同一连接上等待响应
+     */
+    public CompletableFuture<NapCatResponse> callActionAsync(String action, JSONObject params) {
+        return callActionAsync(action, toBytes(params));
+    }
+
+    /**
+     * 以已序列化的请求体异步调用 NapCat 动作，返回的 future 不会异常完成
+     *
+     * @param body UTF-8 JSON 请求体
+     */
+    public CompletableFuture<NapCatResponse> callActionAsync(String action, byte[] body) {
+        if (!circuitBreaker.tryAcquire()) {
+            return CompletableFuture.completedFuture(record(NapCatResponse.circuitOpen(action)));
+        }
+        if (useWebSocket()) {
+            return wsActionChannel.callAction(action, body).thenApply(this::record);
+        }
+        if (transport == Transport.WEBCLIENT) {
+            return callOverWebClient(action, body);
+        }
+        long start = System.nanoTime();
+        return httpClient.sendAsync(buildRequest(action, body), HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8))
+                .handle((httpResponse, error) -> record(error == null
+                        ? toResponse(action, httpResponse, start)
+                        : transportFailure(action, error, start)));
+    }
+
+    /**
+     * 获取各动作的调用统计
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> actions = new LinkedHashMap<>();
+        metrics.forEach((action, m) -> actions.put(action, m.toMap()));
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("api_base", apiBase);
+        stats.put("transport", useWebSocket() || transport == Transport.WEBCLIENT ? transport.name() : Transport.HTTP.name());
+        stats.put("ws_channel", wsActionChannel.getStats());
+        stats.put("circuit_breaker", circuitBreaker.getStats());
+        stats.put("actions", actions);
+        return stats;
+    }
+
+    /**
+     * 动作是否只会发往本机的 NapCat 桩：apiBase 指向本机 /stub/napcat，且没有配置 WEBSOCKET 传输
+     * （WEBSOCKET 传输下动作走 NapCat 长连接，会真实发送到群聊）
+     */
+    public boolean targetsStub() {
+        if (transport == Transport.WEBSOCKET || !apiBase.endsWith(STUB_PATH)) {
+            return false;
+        }
+        try {
+            String host = URI.create(apiBase).getHost();
+            return "localhost".equals(host) || "127.0.0.1".equals(host) || "[::1]".equals(host);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * WebSocket 传输已启用且连接可用；连接不可用时回退到 HTTP
+     */
+    private boolean useWebSocket() {
+        return transport == Transport.WEBSOCKET && wsActionChannel.isAvailable();
+    }
+
+    /**
+     * 经共享的 reactor-netty WebClient 发送，全程不占用调用线程；返回的 future 不会异常完成
+     */
+    private CompletableFuture<NapCatResponse> callOverWebClient(String action, byte[] body) {
+        long start = System.nanoTime();
+        return webClient.post()
+                .uri(apiBase + "/" + action)
+                .headers(h -> {
+                    for (int i = 0; i < headers.length; i += 2) {
+                        h.set(headers[i], headers[i + 1]);
+                    }
+                })
+                .bodyValue(body)
+                .exchangeToMono(response -> response.bodyToMono(String.class)
+                        .defaultIfEmpty("")
+                        .map(text -> new NapCatResponse(action, response.statusCode().value(), parseBody(text),
+                                null, System.nanoTime() - start)))
+                .timeout(requestTimeout)
+                .toFuture()
+                .handle((response, error) -> record(error == null ? response : transportFailure(action, error, start)));
+    }
+
+    /**
+     * 请求参数直接序列化为 UTF-8 字节，不经过中间 String
+     */
+    static byte[] toBytes(JSONObject params) {
+        return params == null ? EMPTY_BODY : JSON.toJSONBytes(params);
+    }
+
+    private HttpRequest buildRequest(String action, byte[] body) {
+        return HttpRequest.newBuilder(URI.create(apiBase + "/" + action))
+                .headers(headers)
+                .timeout(requestTimeout)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+    }
+
+    private static NapCatResponse toResponse(String action, HttpResponse<String> httpResponse, long startNanos) {
+        return new NapCatResponse(action, httpResponse.statusCode(), parseBody(httpResponse.body()),
+                null, System.nanoTime() - startNanos);
+    }
+
+    private static NapCatResponse transportFailure(String action, Throwable error, long startNanos) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        String message = cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName();
+        if (cause instanceof HttpTimeoutException || cause instanceof TimeoutException) {
+            return NapCatResponse.timedOut(action, message, System.nanoTime() - startNanos);
+        }
+        return new NapCatResponse(action, 0, null, message, System.nanoTime() - startNanos);
+    }
+
+    private NapCatResponse record(NapCatResponse response) {
+        metrics.computeIfAbsent(response.getAction(), k -> new ActionMetrics()).record(response);
+        if (response.isCircuitOpen()) {
+            return response;
+        }
+        // 4xx 和非零 retcode 是请求本身的问题，NapCat 仍在正常工作，不计入熔断失败
+        circuitBreaker.onResult(!RetryPolicy.isUnavailable(response));
+        if (!response.isOk()) {
+            log.warn("[NapCatClient] {}", response);
+        }
+        return response;
+    }
+
+    private static JSONObject parseBody(String body) {
+        if (body == null || body.isEmpty()) {
+            return null;
+        }
+        try {
+            return JSONObject.parseObject(body);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * 单个动作的调用统计
+     */
+    private static final class ActionMetrics {
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder transportErrors = new LongAdder();
+        private final LongAdder shortCircuited = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+        void record(NapCatResponse response) {
+            if (response.isCircuitOpen()) {
+                shortCircuited.increment();
+                return;
+            }
+            long latencyNanos = response.getLatencyNanos();
+            calls.increment();
+            totalNanos.add(latencyNanos);
+            maxNanos.accumulate(latencyNanos);
+            if (!response.isOk()) {
+                failures.increment();
+                if (response.isTransportError()) {
+                    transportErrors.increment();
+                }
+            }
+        }
+
+        Map<String, Object> toMap() {
+            long count = calls.sum();
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("calls", count);
+            map.put("failures", failures.sum());
+            map.put("transport_errors", transportErrors.sum());
+            map.put("short_circuited", shortCircuited.sum());
+            map.put("avg_latency_ms", count == 0 ? 0.0 : totalNanos.sum() / 1_000_000.0 / count);
+            map.put("max_latency_ms", maxNanos.get() / 1_000_000.0);
+            return map;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package LDS.Person.napcat;
+
+import com.alibaba.fastjson2.JSONObject;
+
+/**
+ * NapCat 动作调用结果
+ * httpStatus 为 0 表示请求未得到 HTTP 响应（连接失败、超时等），此时 errorMessage 为异常信息；
+ * 被熔断器拒绝的调用 httpStatus 同样为 0，且 isCircuitOpen() 为 true；
+ * 等待响应超时的调用 isTimedOut() 为 true，此时 NapCat 可能已经执行了该动作；
+ * 幂等键重复而被抑制的发送 isDuplicate() 为 true，未访问 NapCat
+ */
+public final class NapCatResponse {
+
+    private final String action;
+    private final int httpStatus;
+    private final JSONObject body;
+    private final String errorMessage;
+    private final long latencyNanos;
+    private final Kind kind;
+
+    /**
+     * 未得到正常响应时的细分原因
+     */
+    private enum Kind {
+        NORMAL,
+        CIRCUIT_OPEN,
+        TIMED_OUT,
+        DUPLICATE
+    }
+
+    NapCatResponse(String action, int httpStatus, JSONObject body, String errorMessage, long latencyNanos) {
+        this(action, httpStatus, body, errorMessage, latencyNanos, Kind.NORMAL);
+    }
+
+    private NapCatResponse(String action, int httpStatus, JSONObject body, String errorMessage, long latencyNanos,
+                           Kind kind) {
+        this.action = action;
+        this.httpStatus = httpStatus;
+        this.body = body;
+        this.errorMessage = errorMessage;
+        this.latencyNanos = latencyNanos;
+        this.kind = kind;
+    }
+
+    /**
+     * 熔断器拒绝的调用结果，未访问 NapCat
+     */
+    static NapCatResponse circuitOpen(String action) {
+        return new NapCatResponse(action, 0, null, "NapCat 熔断中，调用被拒绝", 0, Kind.CIRCUIT_OPEN);
+    }
+
+    /**
+     * 等待响应超时的调用结果，请求可能已被 NapCat 执行
+     */
+    static NapCatResponse timedOut(String action, String errorMessage, long latencyNanos) {
+        return new NapCatResponse(action, 0, null, errorMessage, latencyNanos, Kind.TIMED_OUT);
+    }
+
+    /**
+     * 幂等键重复而被抑制的发送结果，未访问 NapCat
+     */
+    static NapCatResponse duplicate(String action) {
+        return new NapCatResponse(action, 0, null, "重复发送已抑制", 0, Kind.DUPLICATE);
+    }
+
+    /**
+     * HTTP 200 且 status=ok
+     */
+    public boolean isOk() {
+        return httpStatus == 200 && body != null && "ok".equals(body.getString("status"));
+    }
+
+    /**
+     * HTTP 5xx，通常是 NapCat 暂时不可用，可以重试
+     */
+    public boolean isServerError() {
+        return httpStatus >= 500;
+    }
+
+    /**
+     * 请求未得到 HTTP 响应（连接失败、超时等）
+     */
+    public boolean isTransportError() {
+        return httpStatus == 0;
+    }
+
+    /**
+     * 调用被熔断器拒绝，未访问 NapCat
+     */
+    public boolean isCircuitOpen() {
+        return kind == Kind.CIRCUIT_OPEN;
+    }
+
+    /**
+     * 等待响应超时，NapCat 可能已经执行了该动作
+     */
+    public boolean isTimedOut() {
+        return kind == Kind.TIMED_OUT;
+    }
+
+    /**
+     * 幂等键在去重窗口内重复，发送被抑制，未访问 NapCat
+     */
+    public boolean isDuplicate() {
+        return kind == Kind.DUPLICATE;
+    }
+
+    public String getAction() {
+        return action;
+    }
+
+    public int getHttpStatus() {
+        return httpStatus;
+    }
+
+    /**
+     * 响应 JSON，非 JSON 响应或请求失败时为 null
+     */
+    public JSONObject getBody() {
+        return body;
+    }
+
+    /**
+     * OneBot 返回码，非 JSON 响应或请求失败时为 null
+     */
+    public Integer getRetcode() {
+        return body == null ? null : body.getInteger("retcode");
+    }
+
+    public JSONObject getData() {
+        return body == null ? null : body.getJSONObject("data");
+    }
+
+    /**
+     * 发送消息类动作返回的消息 ID，没有时为 null
+     */
+    public Integer getMessageId() {
+        JSONObject data = getData();
+        return data == null ? null : data.getInteger("message_id");
+    }
+
+    public long getLatencyMillis() {
+        return latencyNanos / 1_000_000;
+    }
+
+    long getLatencyNanos() {
+        return latencyNanos;
+    }
+
+    /**
+     * 失败原因：NapCat 返回的 message/wording、HTTP 状态或传输异常信息
+     */
+    public String getErrorMessage() {
+        if (errorMessage != null) {
+            return errorMessage;
+        }
+        if (body != null) {
+            String message = body.getString("message");
+            if (message == null || message.isEmpty()) {
+                message = body.getString("wording");
+            }
+            if (message != null && !message.isEmpty()) {
+                return message;
+            }
+        }
+        return isOk() ? null : "HTTP " + httpStatus;
+    }
+
+    @Override
+    public String toString() {
+        return isOk()
+                ? action + " ok (" + getLatencyMillis() + " ms)"
+                : action + " failed: " + getErrorMessage() + " (" + getLatencyMillis() + " ms)";
+    }
+}
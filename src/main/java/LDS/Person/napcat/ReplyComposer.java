@@ -0,0 +1,196 @@
+package LDS.Person.napcat;
+
+import com.alibaba.fastjson2.JSONArray;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 一次逻辑回复的消息组装器
+ * 收集同一条回复里的文本和图片，由 GroupMessageService.queueReply 决定最终形态：
+ * - 文本总长度不超过阈值：合成一条多消息段的 send_group_msg
+ * - 超过阈值：合成一条 send_group_forward_msg，每段文本 / 每张图片一个转发节点
+ * 无论哪种形态都只调用一次 NapCat，不再按行或按段逐条发送；
+ * 只有 NapCat 拒绝了这一次调用时才退回 toTextBody / toPlainBodies 的形态重发
+ *
+ * 非线程安全，在构建回复的线程内使用
+ */
+public final class ReplyComposer {
+
+    private final List<Part> parts = new ArrayList<>();
+    private int textLength;
+
+    private ReplyComposer() {
+    }
+
+    public static ReplyComposer create() {
+        return new ReplyComposer();
+    }
+
+    /**
+     * 追加一段文本，空文本忽略
+     */
+    public ReplyComposer text(String text) {
+        if (text != null && !text.isEmpty()) {
+            parts.add(new Part(false, text));
+            textLength += text.length();
+        }
+        return this;
+    }
+
+    /**
+     * 追加一张图片，空地址忽略
+     *
+     * @param file 图片 URL、本地路径或 base64://... 数据
+     */
+    public ReplyComposer image(String file) {
+        if (file != null && !file.isEmpty()) {
+            parts.add(new Part(true, file));
+        }
+        return this;
+    }
+
+    public boolean isEmpty() {
+        return parts.isEmpty();
+    }
+
+    public int getTextLength() {
+        return textLength;
+    }
+
+    public int getPartCount() {
+        return parts.size();
+    }
+
+    public boolean hasImage() {
+        return parts.size() > textParts();
+    }
+
+    /**
+     * 合成单条多消息段消息的请求体
+     */
+    public GroupMessageBody toBody(long groupId) {
+        GroupMessageBody body = GroupMessageBody.of(groupId);
+        for (Part part : parts) {
+            if (part.image) {
+                body.image(part.value);
+            } else {
+                body.text(part.value);
+            }
+        }
+        return body;
+    }
+
+    /**
+     * 只含文本部分的单条消息请求体，图片被拒绝时用于重发文本
+     *
+     * @return 请求体，没有文本时为 null
+     */
+    public GroupMessageBody toTextBody(long groupId) {
+        if (textParts() == 0) {
+            return null;
+        }
+        GroupMessageBody body = GroupMessageBody.of(groupId);
+        for (Part part : parts) {
+            if (!part.image) {
+                body.text(part.value);
+            }
+        }
+        return body;
+    }
+
+    /**
+     * 按原有顺序拆成多条普通消息的请求体，合并转发被拒绝时使用
+     * 每张图片单独一条，文本按 maxChars 切块
+     *
+     * @param maxChars 单条消息的最大文本长度
+     */
+    public List<GroupMessageBody> toPlainBodies(long groupId, int maxChars) {
+        List<GroupMessageBody> bodies = new ArrayList<>();
+        for (Part part : parts) {
+            if (part.image) {
+                bodies.add(GroupMessageBody.of(groupId).image(part.value));
+                continue;
+            }
+            for (String chunk : splitText(part.value, maxChars)) {
+                bodies.add(GroupMessageBody.of(groupId).text(chunk));
+            }
+        }
+        return bodies;
+    }
+
+    /**
+     * 合成合并转发的节点数组
+     * 超过 maxNodeChars 的文本按行拆成多个节点，单行仍然过长时按长度硬切
+     *
+     * @param userId       节点显示的发送者 QQ
+     * @param nickname     节点显示的发送者昵称
+     * @param maxNodeChars 单个节点的最大文本长度
+     */
+    public JSONArray toForwardNodes(long userId, String nickname, int maxNodeChars) {
+        JSONArray nodes = new JSONArray();
+        for (Part part : parts) {
+            if (part.image) {
+                nodes.add(MessageSegments.node(userId, nickname, MessageSegments.of(MessageSegments.image(part.value))));
+                continue;
+            }
+            for (String chunk : splitText(part.value, maxNodeChars)) {
+                nodes.add(MessageSegments.node(userId, nickname, MessageSegments.of(MessageSegments.text(chunk))));
+            }
+        }
+        return nodes;
+    }
+
+    /**
+     * 按行把文本拆成不超过 maxChars 的块，块内各行以换行符连接，换行符同样计入长度
+     */
+    static List<String> splitText(String text, int maxChars) {
+        List<String> chunks = new ArrayList<>();
+        if (text.length() <= maxChars) {
+            chunks.add(text);
+            return chunks;
+        }
+        StringBuilder current = new StringBuilder();
+        for (String line : text.split("\n")) {
+            if (current.length() > 0 && current.length() + 1 + line.length() > maxChars) {
+                chunks.add(current.toString());
+                current.setLength(0);
+            }
+            while (line.length() > maxChars) {
+                chunks.add(line.substring(0, maxChars));
+                line = line.substring(maxChars);
+            }
+            if (current.length() > 0) {
+                current.append('\n');
+            }
+            current.append(line);
+        }
+        if (current.length() > 0) {
+            chunks.add(current.toString());
+        }
+        return chunks;
+    }
+
+    private int textParts() {
+        int count = 0;
+        for (Part part : parts) {
+            if (!part.image) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 组成回复的一部分：文本或图片
+     */
+    private static final class Part {
+        final boolean image;
+        final String value;
+
+        Part(boolean image, String value) {
+            this.image = image;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package LDS.Person.napcat;
+
+import LDS.Person.config.ConfigManager;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * NapCat 调用的重试策略
+ * 判断一次调用结果是否值得重试，并给出带抖动的指数退避时长
+ *
+ * 可重试：熔断拒绝、未得到响应（连接失败、超时）、HTTP 5xx / 408 / 429、未列入致命列表的非零 retcode
+ * 不重试：其他 HTTP 4xx、非 JSON 响应、致命 retcode（参数错误、鉴权失败、动作不存在等）、幂等键重复被抑制的发送
+ *
+ * 配置项（config.properties）：
+ * - napcat.retry.max.attempts    含首次在内的最大尝试次数，默认 3
+ * - napcat.retry.base.delay.ms   首次重试的基础退避（毫秒），之后每次翻倍，默认 1000
+ * - napcat.retry.max.delay.ms    单次退避上限（毫秒），默认 30000
+ * - napcat.retry.fatal.retcodes  不重试的 retcode 列表（逗号分隔），默认 100,102,104,1400,1401,1403,1404
+ */
+@Component
+@Slf4j
+public class RetryPolicy {
+
+    private static final ConfigManager configManager = ConfigManager.getInstance();
+
+    /**
+     * 调用结果分类
+     */
+    public enum Outcome {
+        SUCCESS,
+        RETRYABLE,
+        FATAL
+    }
+
+    private final int maxAttempts;
+    private final long baseDelayMs;
+    private final long maxDelayMs;
+    private final Set<Integer> fatalRetcodes = new HashSet<>();
+
+    public RetryPolicy() {
+        this.maxAttempts = Math.max(1, configManager.getInt("napcat.retry.max.attempts", 3));
+        this.baseDelayMs = Math.max(1, configManager.getInt("napcat.retry.base.delay.ms", 1000));
+        this.maxDelayMs = Math.max(baseDelayMs, configManager.getInt("napcat.retry.max.delay.ms", 30000));
+        for (String code : configManager.getString("napcat.retry.fatal.retcodes", "100,102,104,1400,1401,1403,1404").split(",")) {
+            if (!code.isBlank()) {
+                try {
+                    fatalRetcodes.add(Integer.parseInt(code.trim()));
+                } catch (NumberFormatException e) {
+                    log.warn("无效的 retcode 配置: {}", code);
+                }
+            }
+        }
+    }
+
+    /**
+     * 对一次调用结果分类
+     */
+    public Outcome classify(NapCatResponse response) {
+        if (response.isOk()) {
+            return Outcome.SUCCESS;
+        }
+        if (response.isDuplicate()) {
+            return Outcome.FATAL;
+        }
+        if (response.isCircuitOpen() || isUnavailable(response)) {
+            return Outcome.RETRYABLE;
+        }
+        if (response.getHttpStatus() != 200) {
+            return Outcome.FATAL;
+        }
+        Integer retcode = response.getRetcode();
+        if (retcode == null || fatalRetcodes.contains(retcode)) {
+            return Outcome.FATAL;
+        }
+        return Outcome.RETRYABLE;
+    }
+
+    /**
+     * NapCat 本身不可用：未得到响应（连接失败、超时）或 HTTP 5xx / 408 / 429
+     * 其余结果（包括 4xx 与非零 retcode）说明 NapCat 正常收到并处理了请求，熔断器按健康处理
+     */
+    public static boolean isUnavailable(NapCatResponse response) {
+        if (response.isTransportError()) {
+            return true;
+        }
+        int status = response.getHttpStatus();
+        return status >= 500 || status == 408 || status == 429;
+    }
+
+    /**
+     * 第 attempt 次尝试失败后是否还能重试
+     */
+    public boolean canRetry(int attempt) {
+        return attempt < maxAttempts;
+    }
+
+    /**
+     * 第 attempt 次尝试失败后的退避时长：基础值按次数翻倍并封顶，实际取其一半到全额之间的随机值，
+     * 避免 NapCat 恢复时所有排队消息同时重发
+     */
+    public long backoffMillis(int attempt) {
+        long delay = baseDelayMs << Math.min(attempt - 1, 20);
+        delay = Math.min(delay, maxDelayMs);
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+}
@@ -0,0 +1,474 @@
+package LDS.Person.napcat;
+
+import LDS.Person.config.ConfigManager;
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 群消息发送调度器 - 由定时器驱动的限速发送，替代调用线程里的 Thread.sleep 间隔
+ *
+ * 限速规则：
+ * - 全局令牌桶：所有群合计每秒最多发送 global.rate.per.sec 条，允许 global.burst 条突发
+ * - 单群间隔：同一群上一条消息发送完成后至少间隔 group.interval.ms，再叠加 0~group.jitter.ms 的随机抖动
+ * - 同一群内按提交顺序发送：同一群任意时刻最多一条在途发送，上一条（含重试）完成前车道保持占用
+ *
+ * 调用方提交后立即拿到 future，不占用自身线程等待；所有排队状态只在单个调度线程内读写，无需加锁。
+ * 到期的发送通过 NapCatClient.callActionAsync 发出，调度线程本身不等待网络
+ *
+ * 失败重试：RetryPolicy 判定为可重试的结果按指数退避重新排到该群队首，车道在此期间一直占用，同一群的后续消息随之顺延；
+ * 熔断期间的重试至少等到熔断结束，重试等待全部由定时器完成，不占用任何线程
+ *
+ * 幂等键：携带幂等键的发送提交时先在 IdempotencyCache 中占用该键，窗口内重复提交直接以 isDuplicate() 结果完成；
+ * 等待响应超时时 NapCat 可能已经发出消息，携带幂等键的发送默认不再重试，以免重复刷屏，
+ * 确定失败（致命失败或重试用尽）时释放该键，允许同一触发消息再次发送
+ *
+ * 配置项（config.properties）：
+ * - napcat.send.global.rate.per.sec  全局每秒发送条数，默认 5
+ * - napcat.send.global.burst         全局突发条数，默认 5
+ * - napcat.send.group.interval.ms    同一群两条消息的最小间隔（毫秒），默认 1000
+ * - napcat.send.group.jitter.ms      同一群消息间隔的随机抖动上限（毫秒），默认 2000
+ * - napcat.send.group.max.pending    单群最多排队条数，超出直接失败，默认 100
+ * - napcat.idempotency.retry.on.timeout  携带幂等键的发送超时后是否仍然重试，默认 false
+ */
+@Component
+@Slf4j
+public class SendScheduler {
+
+    private static final ConfigManager configManager = ConfigManager.getInstance();
+
+    private final NapCatClient napCatClient;
+    private final RetryPolicy retryPolicy;
+    private final CircuitBreaker circuitBreaker;
+    private final IdempotencyCache idempotencyCache;
+
+    private final double globalRatePerNano;
+    private final double globalBurst;
+    private final long groupIntervalNanos;
+    private final long groupJitterNanos;
+    private final int groupMaxPending;
+    private final boolean retryOnTimeout;
+
+    private final ScheduledExecutorService timer;
+
+    // 以下字段只在调度线程内访问
+    private final Map<Long, GroupLane> lanes = new HashMap<>();
+    private final PriorityQueue<GroupLane> readyLanes =
+            new PriorityQueue<>((a, b) -> Long.compare(a.readyAtNanos, b.readyAtNanos));
+    private double globalTokens;
+    private long lastRefillNanos;
+    private long wakeupAtNanos = Long.MAX_VALUE;
+
+    private final AtomicInteger queued = new AtomicInteger();
+    private final LongAdder submittedCount = new LongAdder();
+    private final LongAdder dispatchedCount = new LongAdder();
+    private final LongAdder rejectedCount = new LongAdder();
+    private final LongAdder retriedCount = new LongAdder();
+    private final LongAdder failedCount = new LongAdder();
+    private final LongAdder duplicateCount = new LongAdder();
+    private final LongAdder ambiguousTimeoutCount = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+
+    public SendScheduler(NapCatClient napCatClient, RetryPolicy retryPolicy, CircuitBreaker circuitBreaker,
+                         IdempotencyCache idempotencyCache) {
+        this.napCatClient = napCatClient;
+        this.retryPolicy = retryPolicy;
+        this.circuitBreaker = circuitBreaker;
+        this.idempotencyCache = idempotencyCache;
+        double ratePerSec = Math.max(0.1, configManager.getInt("napcat.send.global.rate.per.sec", 5));
+        this.globalRatePerNano = ratePerSec / TimeUnit.SECONDS.toNanos(1);
+        this.globalBurst = Math.max(1, configManager.getInt("napcat.send.global.burst", 5));
+        this.groupIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, configManager.getInt("napcat.send.group.interval.ms", 1000)));
+        this.groupJitterNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, configManager.getInt("napcat.send.group.jitter.ms", 2000)));
+        this.groupMaxPending = Math.max(1, configManager.getInt("napcat.send.group.max.pending", 100));
+        this.retryOnTimeout = configManager.getBoolean("napcat.idempotency.retry.on.timeout", false);
+        this.globalTokens = globalBurst;
+        this.lastRefillNanos = System.nanoTime();
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "napcat-send-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 排队发送纯文本群消息
+     */
+    public CompletableFuture<NapCatResponse> sendText(long groupId, String text) {
+        return sendGroupMessage(groupId, GroupMessageBody.of(groupId).text(text));
+    }
+
+    /**
+     * 排队发送图片群消息
+     *
+     * @param file 图片 URL、本地路径或 base64://... 数据
+     */
+    public CompletableFuture<NapCatResponse> sendImage(long groupId, String file) {
+        return sendGroupMessage(groupId, GroupMessageBody.of(groupId).image(file));
+    }
+
+    /**
+     * 排队发送已构建好的群消息请求体
+     */
+    public CompletableFuture<NapCatResponse> sendGroupMessage(long groupId, GroupMessageBody body) {
+        return sendGroupMessage(groupId, body, IdempotencyCache.NONE);
+    }
+
+    /**
+     * 排队发送已构建好的群消息请求体
+     *
+     * @param idempotencyKey IdempotencyCache.key 生成的幂等键，NONE 表示不去重
+     */
+    public CompletableFuture<NapCatResponse> sendGroupMessage(long groupId, GroupMessageBody body, long idempotencyKey) {
+        return submit(groupId, "send_group_msg", body.toBytes(), 0, idempotencyKey);
+    }
+
+    /**
+     * 排队发送群消息
+     *
+     * @param message 消息段数组（JSONArray）或 CQ 码字符串
+     */
+    public CompletableFuture<NapCatResponse> sendGroupMessage(long groupId, Object message) {
+        return sendGroupMessage(groupId, message, IdempotencyCache.NONE);
+    }
+
+    /**
+     * 排队发送群消息
+     *
+     * @param message        消息段数组（JSONArray）或 CQ 码字符串
+     * @param idempotencyKey IdempotencyCache.key 生成的幂等键，NONE 表示不去重
+     */
+    public CompletableFuture<NapCatResponse> sendGroupMessage(long groupId, Object message, long idempotencyKey) {
+        return submit(groupId, "send_group_msg", NapCatClient.toBytes(groupMessageParams(groupId, message)), 0, idempotencyKey);
+    }
+
+    /**
+     * 排队发送群合并转发消息
+     *
+     * @param nodes MessageSegments.node 构建的节点数组
+     */
+    public CompletableFuture<NapCatResponse> sendForward(long groupId, JSONArray nodes) {
+        return sendForward(groupId, nodes, IdempotencyCache.NONE);
+    }
+
+    /**
+     * 排队发送群合并转发消息
+     *
+     * @param nodes          MessageSegments.node 构建的节点数组
+     * @param idempotencyKey IdempotencyCache.key 生成的幂等键，NONE 表示不去重
+     */
+    public CompletableFuture<NapCatResponse> sendForward(long groupId, JSONArray nodes, long idempotencyKey) {
+        JSONObject params = new JSONObject();
+        params.put("group_id", groupId);
+        params.put("messages", nodes);
+        return submit(groupId, "send_group_forward_msg", NapCatClient.toBytes(params), 0, idempotencyKey);
+    }
+
+    /**
+     * 构建 send_group_msg 的请求参数
+     */
+    public JSONObject groupMessageParams(long groupId, Object message) {
+        JSONObject params = new JSONObject();
+        params.put("group_id", groupId);
+        params.put("message", message);
+        return params;
+    }
+
+    /**
+     * 提交一个针对某群的动作
+     * 返回的 future 在成功、致命失败或重试次数用尽后完成，不会异常完成：
+     * 队列已满或调度器已关闭时以 isTransportError() 为 true 的结果完成
+     *
+     * @param delayMs 最早在多少毫秒后发送，0 表示尽快
+     */
+    public CompletableFuture<NapCatResponse> submit(long groupId, String action, JSONObject params, long delayMs) {
+        return submit(groupId, action, NapCatClient.toBytes(params), delayMs);
+    }
+
+    /**
+     * 提交一个针对某群的动作，请求体已序列化；重试时直接复用同一份字节
+     *
+     * @param body    UTF-8 JSON 请求体
+     * @param delayMs 最早在多少毫秒后发送，0 表示尽快
+     */
+    public CompletableFuture<NapCatResponse> submit(long groupId, String action, byte[] body, long delayMs) {
+        return submit(groupId, action, body, delayMs, IdempotencyCache.NONE);
+    }
+
+    /**
+     * 提交一个携带幂等键的动作，同一幂等键在去重窗口内只会发送一次
+     *
+     * @param body           UTF-8 JSON 请求体
+     * @param delayMs        最早在多少毫秒后发送，0 表示尽快
+     * @param idempotencyKey IdempotencyCache.key 生成的幂等键，NONE 表示不去重
+     */
+    public CompletableFuture<NapCatResponse> submit(long groupId, String action, byte[] body, long delayMs,
+                                                    long idempotencyKey) {
+        if (!idempotencyCache.tryClaim(idempotencyKey)) {
+            duplicateCount.increment();
+            log.info("[SendScheduler] {} 重复发送已抑制 - 群ID: {}", action, groupId);
+            return CompletableFuture.completedFuture(NapCatResponse.duplicate(action));
+        }
+        PendingSend send = new PendingSend(groupId, action, body, idempotencyKey,
+                System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMs)));
+        submittedCount.increment();
+        try {
+            timer.execute(() -> enqueue(send));
+        } catch (Exception e) {
+            rejectedCount.increment();
+            idempotencyCache.release(send.idempotencyKey);
+            send.reject("发送调度器已关闭");
+        }
+        return send.result;
+    }
+
+    /**
+     * 获取调度统计
+     */
+    public Map<String, Object> getStats() {
+        long dispatched = dispatchedCount.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("global_rate_per_sec", globalRatePerNano * TimeUnit.SECONDS.toNanos(1));
+        stats.put("group_interval_ms", TimeUnit.NANOSECONDS.toMillis(groupIntervalNanos));
+        stats.put("group_jitter_ms", TimeUnit.NANOSECONDS.toMillis(groupJitterNanos));
+        stats.put("queued", queued.get());
+        stats.put("submitted", submittedCount.sum());
+        stats.put("dispatched", dispatched);
+        stats.put("rejected", rejectedCount.sum());
+        stats.put("retried", retriedCount.sum());
+        stats.put("failed", failedCount.sum());
+        stats.put("suppressed_duplicates", duplicateCount.sum());
+        stats.put("ambiguous_timeouts", ambiguousTimeoutCount.sum());
+        stats.put("max_attempts", retryPolicy.getMaxAttempts());
+        stats.put("avg_queue_wait_ms", dispatched == 0 ? 0.0 : totalWaitNanos.sum() / 1_000_000.0 / dispatched);
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timer.shutdownNow();
+    }
+
+    private void enqueue(PendingSend send) {
+        GroupLane lane = lanes.computeIfAbsent(send.groupId, GroupLane::new);
+        if (lane.queue.size() >= groupMaxPending) {
+            rejectedCount.increment();
+            idempotencyCache.release(send.idempotencyKey);
+            send.reject("群 " + send.groupId + " 待发送消息过多");
+            return;
+        }
+        lane.queue.add(send);
+        activate(lane, send);
+    }
+
+    /**
+     * 在途发送完成（成功、最终失败或需要重试）后释放车道，从此刻开始计算单群间隔
+     * 需要重试的消息排到该群队首，保证同一群的消息仍按提交顺序送达
+     *
+     * @param retry 需要重试的发送，null 表示该条发送已结束
+     */
+    private void release(long groupId, PendingSend retry) {
+        GroupLane lane = lanes.computeIfAbsent(groupId, GroupLane::new);
+        lane.inFlight = false;
+        long now = System.nanoTime();
+        long jitter = groupJitterNanos == 0 ? 0 : ThreadLocalRandom.current().nextLong(groupJitterNanos + 1);
+        lane.readyAtNanos = now + groupIntervalNanos + jitter;
+        if (retry != null) {
+            lane.queue.addFirst(retry);
+            queued.incrementAndGet();
+        }
+        if (lane.queue.isEmpty()) {
+            if (groupIntervalNanos + jitter == 0) {
+                lanes.remove(groupId);
+            }
+            return;
+        }
+        schedule(lane, lane.queue.peek());
+        drain();
+    }
+
+    private void activate(GroupLane lane, PendingSend send) {
+        queued.incrementAndGet();
+        schedule(lane, send);
+        drain();
+    }
+
+    /**
+     * 车道空闲（既不在就绪队列中，也没有在途发送）时加入就绪队列
+     */
+    private void schedule(GroupLane lane, PendingSend head) {
+        if (!lane.scheduled && !lane.inFlight) {
+            lane.readyAtNanos = Math.max(lane.readyAtNanos, head.notBeforeNanos);
+            lane.scheduled = true;
+            readyLanes.add(lane);
+        }
+    }
+
+    /**
+     * 发出所有已到期且有全局令牌的消息，然后按最早可发送时间安排下一次唤醒
+     */
+    private void drain() {
+        long now = System.nanoTime();
+        refill(now);
+
+        while (!readyLanes.isEmpty() && globalTokens >= 1) {
+            GroupLane lane = readyLanes.peek();
+            if (lane.readyAtNanos > now) {
+                break;
+            }
+            readyLanes.poll();
+            PendingSend send = lane.queue.peek();
+            if (send.notBeforeNanos > now) {
+                // 队首消息带有延迟（如重试），推迟整条车道
+                lane.readyAtNanos = send.notBeforeNanos;
+                readyLanes.add(lane);
+                continue;
+            }
+            lane.queue.poll();
+            queued.decrementAndGet();
+            globalTokens -= 1;
+            // 车道占用到这条发送完成，由 release 重新加入就绪队列
+            lane.scheduled = false;
+            lane.inFlight = true;
+            dispatch(send, now);
+        }
+
+        removeIdleLanes(now);
+        scheduleWakeup(now);
+    }
+
+    private void dispatch(PendingSend send, long now) {
+        dispatchedCount.increment();
+        totalWaitNanos.add(now - send.notBeforeNanos);
+        napCatClient.callActionAsync(send.action, send.body)
+                .whenComplete((response, error) -> onResult(send, response != null ? response
+                        : new NapCatResponse(send.action, 0, null, String.valueOf(error), System.nanoTime() - send.submittedNanos)));
+    }
+
+    private void onResult(PendingSend send, NapCatResponse response) {
+        RetryPolicy.Outcome outcome = retryPolicy.classify(response);
+        // 超时的消息可能已经送达，带幂等键的发送不再重试，幂等键保持占用
+        boolean ambiguous = response.isTimedOut() && send.idempotencyKey != IdempotencyCache.NONE;
+        if (ambiguous && !retryOnTimeout) {
+            ambiguousTimeoutCount.increment();
+            log.warn("[SendScheduler] {} 等待响应超时（群 {}），消息可能已送达，不再重试", send.action, send.groupId);
+        } else if (outcome == RetryPolicy.Outcome.RETRYABLE && retryPolicy.canRetry(send.attempt)) {
+            long delayMs = Math.max(retryPolicy.backoffMillis(send.attempt), circuitBreaker.remainingOpenMillis());
+            log.info("[SendScheduler] {} 第 {} 次发送失败（群 {}：{}），{} 毫秒后重试",
+                    send.action, send.attempt, send.groupId, response.getErrorMessage(), delayMs);
+            send.attempt++;
+            send.notBeforeNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMs);
+            try {
+                timer.execute(() -> release(send.groupId, send));
+                retriedCount.increment();
+                return;
+            } catch (Exception e) {
+                // 调度器已关闭，直接返回最后一次结果
+            }
+        }
+        if (outcome != RetryPolicy.Outcome.SUCCESS) {
+            failedCount.increment();
+            if (!ambiguous) {
+                idempotencyCache.release(send.idempotencyKey);
+            }
+        }
+        // 先释放车道再完成 future，调用方回调不会占用调度线程
+        try {
+            timer.execute(() -> release(send.groupId, null));
+        } catch (Exception e) {
+            // 调度器已关闭
+        }
+        send.result.complete(response);
+    }
+
+    private void refill(long now) {
+        globalTokens = Math.min(globalBurst, globalTokens + (now - lastRefillNanos) * globalRatePerNano);
+        lastRefillNanos = now;
+    }
+
+    /**
+     * 清理已过间隔期的空闲车道，避免群号表无限增长
+     */
+    private void removeIdleLanes(long now) {
+        if (lanes.size() > readyLanes.size() + 64) {
+            lanes.values().removeIf(lane -> !lane.scheduled && !lane.inFlight && lane.readyAtNanos <= now);
+        }
+    }
+
+    private void scheduleWakeup(long now) {
+        if (readyLanes.isEmpty()) {
+            return;
+        }
+        long next = readyLanes.peek().readyAtNanos;
+        if (globalTokens < 1) {
+            long tokenAt = now + (long) Math.ceil((1 - globalTokens) / globalRatePerNano);
+            next = Math.max(next, tokenAt);
+        }
+        // 已有更早（或相同）的唤醒时，不重复安排
+        if (wakeupAtNanos > now && wakeupAtNanos <= next) {
+            return;
+        }
+        wakeupAtNanos = next;
+        timer.schedule(() -> {
+            wakeupAtNanos = Long.MAX_VALUE;
+            drain();
+        }, Math.max(0, next - now), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 单个群的发送车道
+     */
+    private static final class GroupLane {
+        final long groupId;
+        final ArrayDeque<PendingSend> queue = new ArrayDeque<>();
+        long readyAtNanos = Long.MIN_VALUE;
+        boolean scheduled;
+        // 是否有已发出、尚未完成的发送
+        boolean inFlight;
+
+        GroupLane(long groupId) {
+            this.groupId = groupId;
+        }
+    }
+
+    /**
+     * 一条排队中的发送
+     */
+    private static final class PendingSend {
+        final long groupId;
+        final String action;
+        final byte[] body;
+        final long idempotencyKey;
+        final long submittedNanos = System.nanoTime();
+        long notBeforeNanos;
+        int attempt = 1;
+        final CompletableFuture<NapCatResponse> result = new CompletableFuture<>();
+
+        PendingSend(long groupId, String action, byte[] body, long idempotencyKey, long notBeforeNanos) {
+            this.groupId = groupId;
+            this.action = action;
+            this.body = body;
+            this.idempotencyKey = idempotencyKey;
+            this.notBeforeNanos = notBeforeNanos;
+        }
+
+        void reject(String reason) {
+            result.complete(new NapCatResponse(action, 0, null, reason, System.nanoTime() - submittedNanos));
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package LDS.Person.napcat;
+
+import LDS.Person.config.ConfigManager;
+import LDS.Person.websocket.RemoteOneBotClient;
+import com.alibaba.fastjson2.JSONObject;
+import com.alibaba.fastjson2.JSONWriter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 基于 NapCat 长连接 WebSocket 的动作通道
+ * 以 {"action", "params", "echo"} 帧发送 OneBot 动作，按 echo 关联响应帧并完成对应的 CompletableFuture，
+ * 同一连接上可同时有多个动作在途，不再为每次调用建立 HTTP 请求
+ *
+ * 响应帧由 RemoteWebSocketClientHandler 在识别为 API 响应后交给 onResponse；
+ * 超时的请求会从待响应表中移除，超时后才到达的响应按"未匹配"计数丢弃；连接断开时所有在途请求立即失败
+ *
+ * 配置项（config.properties）：
+ * - napcat.ws.action.timeout.ms  单个动作等待响应的超时（毫秒），默认 15000
+ */
+@Component
+@Slf4j
+public class WsActionChannel {
+
+    private static final ConfigManager configManager = ConfigManager.getInstance();
+
+    // echo 前缀，用于与心跳 get_status 等其他请求的响应区分
+    private static final String ECHO_PREFIX = "act-";
+
+    private final ObjectProvider<RemoteOneBotClient> clientProvider;
+    private final long timeoutMs;
+
+    private final AtomicLong echoSequence = new AtomicLong();
+    private final Map<String, PendingAction> pending = new ConcurrentHashMap<>();
+
+    private final LongAdder sentCount = new LongAdder();
+    private final LongAdder completedCount = new LongAdder();
+    private final LongAdder sendFailedCount = new LongAdder();
+    private final LongAdder timedOutCount = new LongAdder();
+    private final LongAdder abortedCount = new LongAdder();
+    private final LongAdder unmatchedCount = new LongAdder();
+
+    public WsActionChannel(ObjectProvider<RemoteOneBotClient> clientProvider) {
+        this.clientProvider = clientProvider;
+        this.timeoutMs = Math.max(1, configManager.getInt("napcat.ws.action.timeout.ms", 15000));
+    }
+
+    /**
+     * NapCat WebSocket 连接是否可用
+     */
+    public boolean isAvailable() {
+        RemoteOneBotClient client = clientProvider.getIfAvailable();
+        return client != null && client.isConnected();
+    }
+
+    /**
+     * 通过 WebSocket 发送动作
+     * 返回的 future 不会异常完成：发送失败、超时或连接断开时以 isTransportError() 为 true 的结果完成
+     *
+     * @param action 动作名，如 send_group_msg
+     * @param params 已序列化的请求参数 JSON（UTF-8）
+     */
+    public CompletableFuture<NapCatResponse> callAction(String action, byte[] params) {
+        String echo = ECHO_PREFIX + echoSequence.incrementAndGet();
+        PendingAction entry = new PendingAction(action);
+        pending.put(echo, entry);
+
+        // 参数字节原样嵌入帧中，不再解析回 JSONObject
+        String frame;
+        try (JSONWriter writer = JSONWriter.ofUTF8()) {
+            writer.startObject();
+            writer.writeName("action");
+            writer.writeColon();
+            writer.writeString(action);
+            writer.writeName("params");
+            writer.writeColon();
+            writer.writeRaw(params);
+            writer.writeName("echo");
+            writer.writeColon();
+            writer.writeString(echo);
+            writer.endObject();
+            frame = writer.toString();
+        }
+
+        try {
+            RemoteOneBotClient client = clientProvider.getIfAvailable();
+            if (client == null) {
+                throw new IllegalStateException("远程 OneBot 客户端不存在");
+            }
+            client.sendMessage(frame);
+            sentCount.increment();
+        } catch (Exception e) {
+            sendFailedCount.increment();
+            entry.fail("WebSocket 发送失败: " + e.getMessage());
+            pending.remove(echo);
+            return entry.future;
+        }
+
+        // 完成（含超时）时先移除待响应条目再交给调用方，避免 NapCat 丢失响应时条目永久残留，
+        // 调用方拿到结果时该请求已不在在途计数中
+        return entry.future.orTimeout(timeoutMs, TimeUnit.MILLISECONDS).handle((response, error) -> {
+            pending.remove(echo);
+            if (error == null) {
+                return response;
+            }
+            if (error instanceof TimeoutException) {
+                timedOutCount.increment();
+                return NapCatResponse.timedOut(entry.action, "等待响应超时（" + timeoutMs + " ms）",
+                        System.nanoTime() - entry.startNanos);
+            }
+            return entry.failure(error.getMessage());
+        });
+    }
+
+    /**
+     * 处理 NapCat 的 API 响应帧（由 RemoteWebSocketClientHandler 调用）
+     * echo 带本通道前缀的响应都由本通道认领：匹配到在途请求时完成它，
+     * 已超时移除的请求迟到的响应只计入 unmatched 后丢弃
+     *
+     * @return true 表示响应属于本通道，调用方不应再转发给本地客户端
+     */
+    public boolean onResponse(String frame) {
+        String echo;
+        JSONObject body;
+        try {
+            body = JSONObject.parseObject(frame);
+            echo = body.getString("echo");
+        } catch (Exception e) {
+            return false;
+        }
+        if (echo == null || !echo.startsWith(ECHO_PREFIX)) {
+            // 心跳 get_status 等非本通道请求的响应
+            return false;
+        }
+
+        PendingAction entry = pending.remove(echo);
+        if (entry == null) {
+            unmatchedCount.increment();
+            return true;
+        }
+        // 超时与条目移除之间到达的响应：future 已以超时结束，同样按未匹配计数
+        if (entry.future.complete(new NapCatResponse(entry.action, 200, body, null, System.nanoTime() - entry.startNanos))) {
+            completedCount.increment();
+        } else {
+            unmatchedCount.increment();
+        }
+        return true;
+    }
+
+    /**
+     * 连接断开时让所有在途请求立即失败（由 RemoteWebSocketClientHandler 调用）
+     */
+    public void failAll(String reason) {
+        pending.forEach((echo, entry) -> {
+            if (pending.remove(echo, entry)) {
+                abortedCount.increment();
+                entry.fail(reason);
+            }
+        });
+    }
+
+    /**
+     * 获取通道统计
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("available", isAvailable());
+        stats.put("timeout_ms", timeoutMs);
+        stats.put("in_flight", pending.size());
+        stats.put("sent", sentCount.sum());
+        stats.put("completed", completedCount.sum());
+        stats.put("send_failed", sendFailedCount.sum());
+        stats.put("timed_out", timedOutCount.sum());
+        stats.put("aborted", abortedCount.sum());
+        stats.put("unmatched_responses", unmatchedCount.sum());
+        return stats;
+    }
+
+    /**
+     * 一个等待响应的动作
+     */
+    private static final class PendingAction {
+        final String action;
+        final long startNanos = System.nanoTime();
+        final CompletableFuture<NapCatResponse> future = new CompletableFuture<>();
+
+        PendingAction(String action) {
+            this.action = action;
+        }
+
+        NapCatResponse failure(String reason) {
+            return new NapCatResponse(action, 0, null, reason, System.nanoTime() - startNanos);
+        }
+
+        void fail(String reason) {
+            future.complete(failure(reason));
+        }
+    }
+}
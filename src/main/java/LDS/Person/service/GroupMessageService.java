@@ -0,0 +1,364 @@
+package LDS.Person.service;
+
+import LDS.Person.config.ConfigManager;
+import LDS.Person.napcat.DurableOutbox;
+import LDS.Person.napcat.GroupMessageBody;
+import LDS.Person.napcat.IdempotencyCache;
+import LDS.Person.napcat.NapCatClient;
+import LDS.Person.napcat.NapCatResponse;
+import LDS.Person.napcat.ReplyComposer;
+import LDS.Person.napcat.RetryPolicy;
+import LDS.Person.napcat.SendScheduler;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 群消息发送服务层
+ * 定时任务、监听任务和 NCatSendMessageController 共用的进程内发送入口，
+ * 业务代码直接调用本服务，不再经由 http://localhost:8090/api/ncat/send/* 绕回自身
+ *
+ * 同步发送图片（sendImage）会记录调用线程在一次发送中分配的堆内存（需 JVM 支持线程内存分配统计），
+ * 用于观察大体积 Data URI 图片的内存开销；排队发送的图片在其他线程上编码和发送，只计入发送数量，
+ * 平均分配量只按实际测量过的图片计算
+ *
+ * queueReply 把一次逻辑回复的多个部分合成一次调用：短回复为多消息段消息，长回复为合并转发；
+ * NapCat 拒绝图文消息时只重发文本，拒绝合并转发时改为按顺序发送多条普通消息
+ * queueDurable* 方法先写入 DurableOutbox 再发送，重启后未确认的发送会重新投递
+ * queue* 方法交给 SendScheduler 按全局与单群限速排队发送，立即返回 future，失败时按 RetryPolicy 自动重试
+ *
+ * 由群消息触发的发送应传入 IdempotencyCache.key(messageId, 处理器名) 生成的幂等键，
+ * 同一条消息被重放或重复处理时只发送一次，被抑制的发送以 isDuplicate() 为 true 的结果完成
+ */
+@Service
+@Slf4j
+public class GroupMessageService {
+
+    // 固定图片图库地址：https://gitee.com/LDS7871/LDS_Memes_Hub/raw/master/BIGHead/1.png
+    private static final String FIXED_IMAGE_BASE_URL = "https://gitee.com/LDS7871/LDS_Memes_Hub/raw/master/";
+
+    private static final ConfigManager configManager = ConfigManager.getInstance();
+
+    private static final com.sun.management.ThreadMXBean THREAD_MX_BEAN =
+            ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+                    && bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled()
+                    ? bean : null;
+
+    @Autowired
+    private NapCatClient napCatClient;
+
+    @Autowired
+    private SendScheduler sendScheduler;
+
+    @Autowired
+    private DurableOutbox durableOutbox;
+
+    // 文本总长度超过该值的回复改用合并转发
+    private final int forwardThresholdChars = Math.max(1, configManager.getInt("napcat.forward.threshold.chars", 1500));
+    // 合并转发中单个节点的最大文本长度
+    private final int forwardNodeMaxChars = Math.max(100, configManager.getInt("napcat.forward.node.max.chars", 3000));
+    private final String forwardNickname = configManager.getString("napcat.forward.nickname", "GlazedTile");
+    private final long botQQId = parseBotQQId();
+
+    private final LongAdder imageCount = new LongAdder();
+    private final LongAdder imagePayloadChars = new LongAdder();
+    private final LongAdder measuredImageCount = new LongAdder();
+    private final LongAdder imageAllocatedBytes = new LongAdder();
+    private final LongAdder singleReplyCount = new LongAdder();
+    private final LongAdder forwardReplyCount = new LongAdder();
+    private final LongAdder replyPartCount = new LongAdder();
+    private final LongAdder replyFallbackCount = new LongAdder();
+
+    /**
+     * 发送纯文本群消息
+     */
+    public NapCatResponse sendText(long groupId, String text) {
+        return napCatClient.sendText(groupId, text);
+    }
+
+    /**
+     * 发送图片群消息
+     *
+     * @param file 图片 URL、本地路径或 Data URI
+     */
+    public NapCatResponse sendImage(long groupId, String file) {
+        long allocatedBefore = allocatedBytes();
+        NapCatResponse response = napCatClient.sendImage(groupId, file);
+        long allocatedAfter = allocatedBytes();
+
+        imageCount.increment();
+        imagePayloadChars.add(file.length());
+        if (allocatedBefore >= 0 && allocatedAfter >= 0) {
+            measuredImageCount.increment();
+            imageAllocatedBytes.add(allocatedAfter - allocatedBefore);
+        }
+        return response;
+    }
+
+    /**
+     * 发送语音群消息
+     */
+    public NapCatResponse sendRecord(long groupId, String file) {
+        return napCatClient.sendRecord(groupId, file);
+    }
+
+    /**
+     * 引用回复指定消息
+     */
+    public NapCatResponse reply(long groupId, String messageId, String text) {
+        return napCatClient.reply(groupId, messageId, text);
+    }
+
+    /**
+     * 排队引用回复指定消息，同一幂等键只发送一次
+     */
+    public CompletableFuture<NapCatResponse> queueQuoteReply(long groupId, String messageId, String text,
+                                                             long idempotencyKey) {
+        return sendScheduler.sendGroupMessage(groupId, GroupMessageBody.of(groupId).reply(messageId).text(text),
+                idempotencyKey);
+    }
+
+    /**
+     * 排队发送纯文本群消息
+     */
+    public CompletableFuture<NapCatResponse> queueText(long groupId, String text) {
+        return queueText(groupId, text, IdempotencyCache.NONE);
+    }
+
+    /**
+     * 排队发送纯文本群消息，同一幂等键只发送一次
+     */
+    public CompletableFuture<NapCatResponse> queueText(long groupId, String text, long idempotencyKey) {
+        return sendScheduler.sendGroupMessage(groupId, GroupMessageBody.of(groupId).text(text), idempotencyKey);
+    }
+
+    /**
+     * 持久化后排队发送纯文本群消息，进程重启或 NapCat 宕机后仍会重新投递（至少一次）
+     * 用于定时问候、@回复等不能丢失的发送
+     */
+    public CompletableFuture<NapCatResponse> queueDurableText(long groupId, String text) {
+        return queueDurableText(groupId, text, IdempotencyCache.NONE);
+    }
+
+    /**
+     * 持久化后排队发送纯文本群消息，同一幂等键只发送一次
+     */
+    public CompletableFuture<NapCatResponse> queueDurableText(long groupId, String text, long idempotencyKey) {
+        return durableOutbox.submit(groupId, "send_group_msg", GroupMessageBody.of(groupId).text(text).toBytes(),
+                idempotencyKey);
+    }
+
+    /**
+     * 持久化后排队发送组装好的群消息（可包含 @ 等多个消息段），同一幂等键只发送一次
+     */
+    public CompletableFuture<NapCatResponse> queueDurableMessage(long groupId, GroupMessageBody body, long idempotencyKey) {
+        return durableOutbox.submit(groupId, "send_group_msg", body.toBytes(), idempotencyKey);
+    }
+
+    /**
+     * 持久化后排队发送图片群消息
+     *
+     * @param file 图片 URL、本地路径或 Data URI
+     */
+    public CompletableFuture<NapCatResponse> queueDurableImage(long groupId, String file) {
+        imageCount.increment();
+        imagePayloadChars.add(file.length());
+        return durableOutbox.submit(groupId, "send_group_msg", GroupMessageBody.of(groupId).image(file).toBytes());
+    }
+
+    /**
+     * 排队发送群消息
+     *
+     * @param message 消息段数组（JSONArray）或 CQ 码字符串
+     */
+    public CompletableFuture<NapCatResponse> queueMessage(long groupId, Object message) {
+        return queueMessage(groupId, message, IdempotencyCache.NONE);
+    }
+
+    /**
+     * 排队发送群消息，同一幂等键只发送一次
+     *
+     * @param message 消息段数组（JSONArray）或 CQ 码字符串
+     */
+    public CompletableFuture<NapCatResponse> queueMessage(long groupId, Object message, long idempotencyKey) {
+        return sendScheduler.sendGroupMessage(groupId, message, idempotencyKey);
+    }
+
+    /**
+     * 排队发送图片群消息
+     *
+     * @param file 图片 URL、本地路径或 Data URI
+     */
+    public CompletableFuture<NapCatResponse> queueImage(long groupId, String file) {
+        return queueImage(groupId, file, IdempotencyCache.NONE);
+    }
+
+    /**
+     * 排队发送图片群消息，同一幂等键只发送一次
+     *
+     * @param file 图片 URL、本地路径或 Data URI
+     */
+    public CompletableFuture<NapCatResponse> queueImage(long groupId, String file, long idempotencyKey) {
+        imageCount.increment();
+        imagePayloadChars.add(file.length());
+        return sendScheduler.sendGroupMessage(groupId, GroupMessageBody.of(groupId).image(file), idempotencyKey);
+    }
+
+    /**
+     * 从固定图库随机抽取一张图片发送
+     *
+     * @param keyWord 图库名，如 BIGHead、MoCai
+     */
+    public NapCatResponse sendFixedImage(long groupId, String keyWord) {
+        String imageUrl = randomFixedImageUrl(keyWord);
+        log.info("准备发送固定URL群聊图片消息，群组ID: {}，关键字: {}，图片URL: {}", groupId, keyWord, imageUrl);
+        return napCatClient.sendImage(groupId, imageUrl);
+    }
+
+    /**
+     * 排队发送一条组装好的回复
+     * 文本总长度不超过 napcat.forward.threshold.chars 时合成一条多消息段消息，否则合成一条合并转发消息，
+     * 两种情况都只调用一次 NapCat
+     */
+    public CompletableFuture<NapCatResponse> queueReply(long groupId, ReplyComposer reply) {
+        return queueReply(groupId, reply, IdempotencyCache.NONE);
+    }
+
+    /**
+     * 排队发送一条组装好的回复，同一幂等键只发送一次
+     */
+    public CompletableFuture<NapCatResponse> queueReply(long groupId, ReplyComposer reply, long idempotencyKey) {
+        replyPartCount.add(reply.getPartCount());
+        if (reply.getTextLength() <= forwardThresholdChars) {
+            singleReplyCount.increment();
+            CompletableFuture<NapCatResponse> sent = sendScheduler.sendGroupMessage(groupId, reply.toBody(groupId),
+                    idempotencyKey);
+            if (!reply.hasImage()) {
+                return sent;
+            }
+            return sent.thenCompose(response -> {
+                GroupMessageBody textBody = reply.toTextBody(groupId);
+                if (!isRejected(response) || textBody == null) {
+                    return CompletableFuture.completedFuture(response);
+                }
+                log.warn("群 {} 的图文回复被拒绝，只重发文本: {}", groupId, response.getErrorMessage());
+                replyFallbackCount.increment();
+                return sendScheduler.sendGroupMessage(groupId, textBody, IdempotencyCache.derive(idempotencyKey, 0));
+            });
+        }
+        forwardReplyCount.increment();
+        return sendScheduler.sendForward(groupId, reply.toForwardNodes(botQQId, forwardNickname, forwardNodeMaxChars),
+                idempotencyKey).thenCompose(response -> {
+                    if (!isRejected(response)) {
+                        return CompletableFuture.completedFuture(response);
+                    }
+                    log.warn("群 {} 的合并转发被拒绝，改为逐条发送: {}", groupId, response.getErrorMessage());
+                    replyFallbackCount.increment();
+                    return queuePlain(groupId, reply.toPlainBodies(groupId, forwardThresholdChars), idempotencyKey);
+                });
+    }
+
+    /**
+     * 同一群的请求由 SendScheduler 按提交顺序发送，一次全部提交即可保持顺序
+     * 返回第一条失败的结果，全部成功时返回最后一条的结果
+     */
+    private CompletableFuture<NapCatResponse> queuePlain(long groupId, List<GroupMessageBody> bodies, long idempotencyKey) {
+        List<CompletableFuture<NapCatResponse>> sent = new ArrayList<>(bodies.size());
+        for (int i = 0; i < bodies.size(); i++) {
+            // 子键从 1 开始，0 留给图文回复的文本重发
+            sent.add(sendScheduler.sendGroupMessage(groupId, bodies.get(i), IdempotencyCache.derive(idempotencyKey, i + 1)));
+        }
+        return CompletableFuture.allOf(sent.toArray(new CompletableFuture[0])).thenApply(ignored -> {
+            NapCatResponse last = null;
+            for (CompletableFuture<NapCatResponse> future : sent) {
+                last = future.join();
+                if (!last.isOk() && !last.isDuplicate()) {
+                    return last;
+                }
+            }
+            return last;
+        });
+    }
+
+    /**
+     * NapCat 收到并拒绝了这次调用（4xx 或非零 retcode），换一种消息形态可能成功；
+     * 连接失败、熔断、5xx 与限流的结果换形态重发同样会失败
+     */
+    private static boolean isRejected(NapCatResponse response) {
+        return !response.isOk() && !response.isDuplicate() && !response.isCircuitOpen()
+                && !RetryPolicy.isUnavailable(response);
+    }
+
+    /**
+     * 从固定图库随机抽取一张图片排队发送
+     *
+     * @param keyWord 图库名，如 BIGHead、MoCai
+     */
+    public CompletableFuture<NapCatResponse> queueFixedImage(long groupId, String keyWord) {
+        return queueFixedImage(groupId, keyWord, IdempotencyCache.NONE);
+    }
+
+    /**
+     * 从固定图库随机抽取一张图片排队发送，同一幂等键只发送一次
+     *
+     * @param keyWord 图库名，如 BIGHead、MoCai
+     */
+    public CompletableFuture<NapCatResponse> queueFixedImage(long groupId, String keyWord, long idempotencyKey) {
+        return sendScheduler.sendGroupMessage(groupId, GroupMessageBody.of(groupId).image(randomFixedImageUrl(keyWord)),
+                idempotencyKey);
+    }
+
+    /**
+     * 拼接固定图库中随机一张图片的地址
+     */
+    public String randomFixedImageUrl(String keyWord) {
+        int imgCode = 1;
+        if (keyWord.equals("BIGHead")) {
+            imgCode = ThreadLocalRandom.current().nextInt(141) + 1; // Gal图库的大小
+        }
+        if (keyWord.equals("MoCai")) {
+            imgCode = ThreadLocalRandom.current().nextInt(124) + 1; // 魔法少女的魔法裁判图库的大小
+        }
+        return FIXED_IMAGE_BASE_URL + keyWord + "/" + imgCode + ".png";
+    }
+
+    /**
+     * 获取图片发送的内存统计
+     */
+    public Map<String, Object> getStats() {
+        long images = imageCount.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("images_sent", images);
+        stats.put("avg_image_payload_chars", images == 0 ? 0 : imagePayloadChars.sum() / images);
+        stats.put("allocation_tracking", THREAD_MX_BEAN != null);
+        long measured = measuredImageCount.sum();
+        stats.put("images_measured", measured);
+        stats.put("avg_allocated_bytes_per_image", measured == 0 ? 0 : imageAllocatedBytes.sum() / measured);
+        stats.put("single_replies", singleReplyCount.sum());
+        stats.put("forward_replies", forwardReplyCount.sum());
+        stats.put("reply_parts", replyPartCount.sum());
+        stats.put("reply_fallbacks", replyFallbackCount.sum());
+        return stats;
+    }
+
+    private static long parseBotQQId() {
+        try {
+            return Long.parseLong(configManager.getNapcatQQID().trim());
+        } catch (Exception e) {
+            return 0L;
+        }
+    }
+
+    private static long allocatedBytes() {
+        return THREAD_MX_BEAN == null ? -1 : THREAD_MX_BEAN.getCurrentThreadAllocatedBytes();
+    }
+}
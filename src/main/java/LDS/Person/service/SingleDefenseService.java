@@ -1,6 +1,6 @@
 package LDS.Person.service;
 
-import com.alibaba.fastjson2.JSONObject;
+import LDS.Person.websocket.event.OneBotEvent;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
@@ -11,9 +11,8 @@ import java.util.concurrent.ConcurrentHashMap;
  * 用于防止被单防的用户触发其他任务
  * 
  * 作用域：
- * 1. MsgLisVipATTask: 设置单防
- * 2. MsgLisATTask: 检查是否被单防，如果被单防则忽略
- * 3. MsgLisKeyWordTask: 检查是否被单防，如果被单防则忽略
+ * 1. MsgLisVipCmdTask: 设置单防，并在监听链最前端认领被单防用户的消息
+ * 2. MsgLisBilibiliTask / MsgLisKeyWordTask: 检查是否被单防，如果被单防则忽略
  */
 @Service
 @Slf4j
@@ -131,22 +130,11 @@ public class SingleDefenseService {
    * 从 WebSocket 消息中提取显示名称
    * 优先级：群名片 > 昵称
    * 
-   * @param message WebSocket 消息 JSON
+   * @param event 已解析的 OneBot 事件
    * @return 显示名称
    */
-  public static String extractDisplayName(JSONObject message) {
-    JSONObject sender = message.getJSONObject("sender");
-    if (sender == null) {
-      return "未知用户";
-    }
-
-    String card = sender.getString("card");
-    if (card != null && !card.isEmpty()) {
-      return card;
-    }
-
-    String nickname = sender.getString("nickname");
-    return nickname != null ? nickname : "未知用户";
+  public static String extractDisplayName(OneBotEvent event) {
+    return event.getDisplayName();
   }
 
   /**
@@ -1,96 +1,214 @@
 package LDS.Person.tasks;
 
-import com.alibaba.fastjson2.JSONObject;
-
 import LDS.Person.config.NapCatTaskIsOpen;
 import LDS.Person.util.DSchatNcatQQ;
 import LDS.Person.config.ConfigManager;
+import LDS.Person.napcat.GroupMessageBody;
+import LDS.Person.napcat.IdempotencyCache;
+import LDS.Person.napcat.NapCatResponse;
+import LDS.Person.service.GroupMessageService;
+import LDS.Person.tasks.MsgLisLogic.AtMentionBatcher;
+import LDS.Person.tasks.MsgLisLogic.AtMentionBatcher.Mention;
+import LDS.Person.websocket.event.OneBotEvent;
+import LDS.Person.websocket.listener.ListenerPriority;
+import LDS.Person.websocket.listener.MessageListener;
+import LDS.Person.websocket.listener.MessageListenerChain;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Component;
-import org.springframework.web.client.RestTemplate;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.HttpMethod;
-import org.springframework.http.HttpStatus;
-import org.springframework.http.ResponseEntity;
-import org.springframework.web.client.HttpServerErrorException;
 
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * 消息监听和自动回复处理器
  * 监听群聊消息，当消息中包含 @机器人 时自动回复
+ *
+ * deepseek.stream.enabled=true 时以流式方式调用 DeepSeek，回复按句子 / 段落切成片段逐条排队发送，
+ * 监听线程不等待生成完成
+ *
+ * 同一群短时间内的多条 @ 由 AtMentionBatcher 合并：只有一条时按原方式回复；
+ * 多条时合成一次 DeepSeek 请求，要求按编号分别回答，再拆开组成一条带 @ 消息段的回复（此时不走流式）
  */
 @Component
+@Order(MessageListenerChain.ORDER_AT_BOT)
 @Slf4j
-public class MsgLisATTask {
+public class MsgLisATTask implements MessageListener {
+
+    @Autowired
+    private GroupMessageService groupMessageService;
 
     @Autowired
-    private RestTemplate restTemplate;
+    private AtMentionBatcher atMentionBatcher;
 
     // 使用ConfigManager获取配置，避免重复加载配置文件，提高性能
     private static final ConfigManager configManager = ConfigManager.getInstance();
-    private static final String NCAT_API_BASE = configManager.getNapCatApiBase();
-    private static final String NCAT_AUTH_TOKEN = configManager.getNapCatAuthToken();
     private static final String BOT_QQ_ID = configManager.getNapcatQQID();
-    
-    // 重试相关常量
-    private static final long RETRY_BASE_DELAY_MS = 1000L;          // 基础重试延迟（毫秒）
-    private static final long SERVER_ERROR_RETRY_DELAY_MS = 2000L;  // 服务器错误重试延迟（毫秒）
+
+    // @ 机器人的 CQ 码标记
+    private static final String AT_BOT_TAG = "[CQ:at,qq=" + BOT_QQ_ID + "]";
+
+    // 合并回答中每位用户回复的编号标记，如【1】
+    private static final Pattern ANSWER_MARKER = Pattern.compile("【(\\d+)】");
+
+    @Override
+    public String getName() {
+        return "at_bot";
+    }
+
+    @Override
+    public ListenerPriority getPriority() {
+        return ListenerPriority.CRITICAL;
+    }
+
+    @Override
+    public boolean matches(OneBotEvent event) {
+        String rawMessage = event.getRawMessage();
+        return NapCatTaskIsOpen.isMsgLisATTask && event.isGroupMessage()
+                && rawMessage != null && rawMessage.contains(AT_BOT_TAG);
+    }
 
     /**
      * 处理接收到的 WebSocket 消息
      * 当任何群聊中的消息包含 @机器人 时，自动回复
      * 
-     * @param message WebSocket 消息的 JSON 对象
+     * @param event 已解析的 OneBot 事件
+     * @return true 表示消息 @ 了机器人并已回复
      */
-    public void handleMessage(JSONObject message) {
+    @Override
+    public boolean handleMessage(OneBotEvent event) {
         // 检查该任务是否启用
         if (!NapCatTaskIsOpen.isMsgLisATTask) {
           //  System.out.println("isMsgLisATTask未启用");
-            return;
+            return false;
         }
 
         try {
-            String postType = message.getString("post_type");
-
-            // 只处理聊天消息
-            if (!"message".equals(postType)) {
-                return;
-            }
-
-            String messageType = message.getString("message_type");
-
             // 只处理群聊消息（不区分是否为目标群）
-            if (!"group".equals(messageType)) {
-                return;
+            if (!event.isGroupMessage()) {
+                return false;
             }
 
-            Long groupId = message.getLong("group_id");
-            Long userId = message.getLong("user_id");
-            String rawMessage = message.getString("raw_message");
-            String groupName = message.getString("group_name");
-
-            JSONObject sender = message.getJSONObject("sender");
-            String nickname = sender != null ? sender.getString("nickname") : "未知用户";
-            String card = sender != null ? sender.getString("card") : "";
-            String displayName = (card != null && !card.isEmpty()) ? card : nickname;
-
-            // 生成 @ 机器人的标记
-            String atBotTag = "[CQ:at,qq=" + BOT_QQ_ID + "]";
+            long groupId = event.getGroupId();
+            long userId = event.getUserId();
+            String rawMessage = event.getRawMessage();
 
             // 检查消息是否包含 @ 机器人
-            if (rawMessage != null && rawMessage.contains(atBotTag)) {
+            if (rawMessage != null && rawMessage.contains(AT_BOT_TAG)) {
                 log.info("检测到 @机器人消息");
 
-                // 发送自动回复
-                sendAutoReply(groupId, userId, rawMessage, displayName);
+                // 加入所在群的合并批次，窗口结束后统一回复
+                atMentionBatcher.submit(groupId, new Mention(userId, event.getDisplayName(), rawMessage,
+                        IdempotencyCache.key(event.getMessageId(), getName())), this::replyToBatch);
+                return true;
             }
 
         } catch (Exception e) {
             log.error("处理消息异常", e);
         }
+        return false;
+    }
+
+    /**
+     * 回复一批 @：只有一条时按原方式回复，多条时合成一次请求统一回答
+     */
+    private void replyToBatch(Long groupId, List<Mention> mentions) {
+        if (mentions.size() == 1) {
+            Mention mention = mentions.get(0);
+            sendAutoReply(groupId, mention.getUserId(), mention.getMessage(), mention.getNickname(),
+                    mention.getIdempotencyKey());
+            return;
+        }
+        log.info("合并回复 {} 条 @机器人 消息 - 群ID: {}", mentions.size(), groupId);
+
+        StringBuilder prompt = new StringBuilder("以下是群里几位用户几乎同时发给你的消息，请在一次回复中分别回答每一位。"
+                + "每位用户的回答单独成段，并以对应编号开头，如【1】，不要写出昵称：");
+        for (int i = 0; i < mentions.size(); i++) {
+            Mention mention = mentions.get(i);
+            DSchatNcatQQ.setUserNickname(String.valueOf(mention.getUserId()), mention.getNickname());
+            prompt.append('\n').append('【').append(i + 1).append('】')
+                    .append(mention.getNickname()).append(": ").append(mention.getMessage());
+        }
+
+        String replyText;
+        try {
+            DSchatNcatQQ dSchatNcatQQ = new DSchatNcatQQ(System.getenv("DEEPSEEK_API_KEY"));
+            replyText = dSchatNcatQQ.Usedeepseek(prompt.toString(), String.valueOf(mentions.get(0).getUserId()));
+            if (replyText == null || replyText.isEmpty()) {
+                log.warn("DeepSeek 返回空回复，使用默认回复");
+                replyText = "收到消息，但AI没有生成有效回复";
+            }
+        } catch (Exception e) {
+            log.error("调用 DeepSeek API 异常，使用默认回复: {}", e.getMessage());
+            replyText = "收到消息，API调用异常";
+        }
+
+        // 合并批次的幂等键由第一条 @ 派生，批次内各条 @ 已在入队时去重
+        long idempotencyKey = IdempotencyCache.derive(mentions.get(0).getIdempotencyKey(), mentions.size());
+        groupMessageService.queueDurableMessage(groupId, composeBatchReply(groupId, mentions, replyText), idempotencyKey)
+                .thenAccept(response -> {
+                    if (!response.isOk() && !response.isDuplicate()) {
+                        log.error("❌ 合并回复发送失败 - 群ID: {}，错误: {}", groupId, response.getErrorMessage());
+                    }
+                });
+    }
+
+    /**
+     * 按编号把合并回答拆给各位用户：每段回答前加上对应用户的 @；
+     * 没有分到编号段落的用户与编号前的文字一起放在开头
+     */
+    private static GroupMessageBody composeBatchReply(long groupId, List<Mention> mentions, String replyText) {
+        String[] answers = new String[mentions.size()];
+        Matcher matcher = ANSWER_MARKER.matcher(replyText);
+        String leading = replyText;
+        int index = -1;
+        int start = 0;
+        boolean first = true;
+        while (matcher.find()) {
+            if (first) {
+                leading = replyText.substring(0, matcher.start());
+                first = false;
+            } else if (index >= 0) {
+                answers[index] = replyText.substring(start, matcher.start()).trim();
+            }
+            int number = Integer.parseInt(matcher.group(1)) - 1;
+            index = number >= 0 && number < answers.length && answers[number] == null ? number : -1;
+            start = matcher.end();
+        }
+        if (index >= 0) {
+            answers[index] = replyText.substring(start).trim();
+        }
+
+        GroupMessageBody body = GroupMessageBody.of(groupId);
+        boolean unanswered = false;
+        for (int i = 0; i < mentions.size(); i++) {
+            if (answers[i] == null || answers[i].isEmpty()) {
+                body.at(mentions.get(i).getUserId());
+                unanswered = true;
+            }
+        }
+        leading = leading.trim();
+        boolean separate = false;
+        if (!leading.isEmpty()) {
+            body.text((unanswered ? " " : "") + leading);
+            separate = true;
+        } else if (unanswered) {
+            separate = true;
+        }
+        for (int i = 0; i < mentions.size(); i++) {
+            if (answers[i] != null && !answers[i].isEmpty()) {
+                if (separate) {
+                    body.text("\n");
+                }
+                body.at(mentions.get(i).getUserId()).text(" " + answers[i]);
+                separate = true;
+            }
+        }
+        return body;
     }
 
     /**
@@ -100,8 +218,9 @@ public class MsgLisATTask {
      * @param userId          用户 ID
      * @param originalMessage 原始消息
      * @param nickname        用户昵称
+     * @param idempotencyKey  由触发消息生成的幂等键，重放的同一条消息不会重复回复
      */
-    private void sendAutoReply(Long groupId, Long userId, String originalMessage, String nickname) {
+    private void sendAutoReply(Long groupId, Long userId, String originalMessage, String nickname, long idempotencyKey) {
         try {
             // log.info("准备向群ID: {} 发送自动回复", groupId);
 
@@ -114,9 +233,13 @@ public class MsgLisATTask {
                 // 构建带昵称的消息
                 String contextMessage = nickname + ": " + originalMessage;
 
-                System.out.println("\n" + contextMessage + "\n");
+                log.debug("@机器人 上下文消息 - 群ID: {}，{}", groupId, contextMessage);
 
                 DSchatNcatQQ dSchatNcatQQ = new DSchatNcatQQ(System.getenv("DEEPSEEK_API_KEY"));
+                if (DSchatNcatQQ.STREAM_ENABLED) {
+                    sendStreamingReply(dSchatNcatQQ, groupId, userId, contextMessage, idempotencyKey);
+                    return;
+                }
                 // 使用 userId 作为会话ID，保持用户上下文
                 replyText = dSchatNcatQQ.Usedeepseek(contextMessage, String.valueOf(userId));
 
@@ -134,13 +257,12 @@ public class MsgLisATTask {
                 replyText = "收到消息，API调用异常";
             }
 
-            // 使用已有的方法构建消息请求体
-            JSONObject requestBody = buildGroupMessageRequest(groupId, replyText);
-
-            // log.debug("发送回复消息: {}", requestBody.toJSONString());
-
-            // 调用 NapCat API 发送消息（带重试机制）
-            boolean success = sendMessageWithRetry(groupId, requestBody, 2);
+            // 持久化后排队发送（失败自动重试，重启后未送达的回复会重新投递）
+            groupMessageService.queueDurableText(groupId, replyText, idempotencyKey).thenAccept(response -> {
+                if (!response.isOk() && !response.isDuplicate()) {
+                    log.error("❌ 自动回复发送失败 - 群ID: {}，错误: {}", groupId, response.getErrorMessage());
+                }
+            });
 
             // // 如果发送成功，有五分之一的概率发送固定图片
             // if (success) {
@@ -155,110 +277,32 @@ public class MsgLisATTask {
     }
 
     /**
-     * 发送消息并支持重试
-     * 
-     * @param groupId     群组 ID
-     * @param requestBody 请求体
-     * @param retryCount  重试次数
-     * @return 是否发送成功
+     * 流式回复：每个片段到达后立即持久化排队，片段按到达顺序送达（同一群的发送保持提交顺序）
+     * 一个片段都没有发出时补发默认回复
      */
-    private boolean sendMessageWithRetry(Long groupId, JSONObject requestBody, int retryCount) {
-        String url = NCAT_API_BASE + "/send_group_msg";
-
-        for (int i = 1; i <= retryCount; i++) {
-            try {
-                // log.debug("第 {} 次尝试发送消息到群ID: {}", i, groupId);
-
-                HttpHeaders headers = new HttpHeaders();
-                headers.set("Authorization", "Bearer " + NCAT_AUTH_TOKEN);
-                headers.set("Content-Type", "application/json");
-
-                HttpEntity<String> entity = new HttpEntity<>(requestBody.toJSONString(), headers);
-                ResponseEntity<String> apiResponse = restTemplate.exchange(url, HttpMethod.POST, entity, String.class);
-
-                if (apiResponse.getStatusCode() == HttpStatus.OK) {
-                    JSONObject jsonResponse = JSONObject.parseObject(apiResponse.getBody());
-                    if (jsonResponse.containsKey("status") && "ok".equals(jsonResponse.getString("status"))) {
-                        Integer messageId = null;
-                        if (jsonResponse.containsKey("data")) {
-                            JSONObject data = jsonResponse.getJSONObject("data");
-                            messageId = data.getInteger("message_id");
-                        }
-                        // log.info("✅ 自动回复消息发送成功，群ID: {}，消息ID: {}", groupId, messageId);
-                        return true;
-                    } else {
-                        log.error("❌ 第 {} 次发送失败 - 群ID: {}，错误: {}", i, groupId, jsonResponse.getString("message"));
-                    }
-                } else {
-                    log.error("❌ 第 {} 次发送失败 - 群ID: {}，HTTP状态: {}", i, groupId, apiResponse.getStatusCode());
-                }
-
-                // 重试前等待一段时间，使用指数退避策略
-                if (i < retryCount) {
-                    long waitTime = RETRY_BASE_DELAY_MS * i; // 等待时间递增：1秒、2秒
-                    log.info("等待 {} 毫秒后进行第 {} 次重试...", waitTime, i + 1);
-                    try {
-                        Thread.sleep(waitTime);
-                    } catch (InterruptedException ie) {
-                        Thread.currentThread().interrupt();
-                        log.warn("重试等待被中断");
-                        break;
+    private void sendStreamingReply(DSchatNcatQQ dSchatNcatQQ, Long groupId, Long userId, String contextMessage,
+                                    long idempotencyKey) {
+        AtomicInteger segmentIndex = new AtomicInteger();
+        dSchatNcatQQ.UsedeepseekStreaming(contextMessage, String.valueOf(userId),
+                        segment -> queueReplySegment(groupId, segment,
+                                IdempotencyCache.derive(idempotencyKey, segmentIndex.getAndIncrement())))
+                .whenComplete((replyText, error) -> {
+                    if (error != null) {
+                        log.error("流式调用 DeepSeek API 异常 - 已发送 {} 个片段: {}", segmentIndex.get(), error.getMessage());
                     }
-                }
-
-            } catch (HttpServerErrorException e) {
-                log.error("❌ 第 {} 次发送异常 - 群ID: {}，HTTP错误: {} {}", i, groupId, e.getRawStatusCode(), e.getStatusText());
-
-                // 如果是 502/503/504 等服务器错误，进行重试，使用指数退避策略
-                if (i < retryCount && (e.getRawStatusCode() >= 500)) {
-                    try {
-                        long waitTime = SERVER_ERROR_RETRY_DELAY_MS * i; // 等待时间：2秒、4秒
-                        log.info("服务器错误，等待 {} 毫秒后进行第 {} 次重试...", waitTime, i + 1);
-                        Thread.sleep(waitTime);
-                    } catch (InterruptedException ie) {
-                        Thread.currentThread().interrupt();
-                        log.warn("重试等待被中断");
-                        break;
-                    }
-                } else {
-                    break;
-                }
-            } catch (Exception e) {
-                log.error("❌ 第 {} 次发送异常 - 群ID: {}", i, groupId, e);
-                if (i < retryCount) {
-                    try {
-                        Thread.sleep(1000 * i);
-                    } catch (InterruptedException ie) {
-                        Thread.currentThread().interrupt();
-                        break;
+                    if (segmentIndex.get() == 0) {
+                        String fallback = error != null ? "收到消息，API调用异常" : "收到消息，但AI没有生成有效回复";
+                        queueReplySegment(groupId, fallback, idempotencyKey);
                     }
-                }
-            }
-        }
-
-        return false;
+                });
     }
 
-    /**
-     * 构建群聊消息请求体
-     */
-    private JSONObject buildGroupMessageRequest(Long groupId, String messageText) {
-        JSONObject request = new JSONObject();
-        request.put("group_id", groupId);
-
-        // 构建消息数组
-        com.alibaba.fastjson2.JSONArray messageArray = new com.alibaba.fastjson2.JSONArray();
-        JSONObject messageItem = new JSONObject();
-        messageItem.put("type", "text");
-
-        JSONObject dataObj = new JSONObject();
-        dataObj.put("text", messageText);
-        messageItem.put("data", dataObj);
-
-        messageArray.add(messageItem);
-        request.put("message", messageArray);
-
-        return request;
+    private void queueReplySegment(Long groupId, String text, long idempotencyKey) {
+        groupMessageService.queueDurableText(groupId, text, idempotencyKey).thenAccept(response -> {
+            if (!response.isOk() && !response.isDuplicate()) {
+                log.error("❌ 自动回复片段发送失败 - 群ID: {}，错误: {}", groupId, response.getErrorMessage());
+            }
+        });
     }
 
     /**
@@ -270,28 +314,14 @@ public class MsgLisATTask {
     }
 
     /**
-     * 调用 NCatSendMessageController 的 sendGroupFixedImage 接口
+     * 从固定图库随机发送一张图片
      */
     private void sendGroupFixedImage(Long groupId) {
-        try {
-            String keyWord = "BIGHead"; // 默认关键字
-            String url = "http://localhost:8090/api/ncat/send/group-fixed-image?groupId=" + groupId + "&keyWord=" + keyWord;
-            // log.info("调用固定图片接口，群ID: {}，关键字: {}", groupId, keyWord);
-
-            HttpHeaders headers = new HttpHeaders();
-            headers.set("Content-Type", "application/json");
-
-            HttpEntity<String> entity = new HttpEntity<>(headers);
-            ResponseEntity<String> response = restTemplate.exchange(url, HttpMethod.POST, entity, String.class);
-
-            if (response.getStatusCode().is2xxSuccessful()) {
-                log.info(" 抽中随机调用图片方法");
-            } else {
-                log.warn(" 随机图片发送失败，群ID: {}，状态码: {}", groupId, response.getStatusCode());
-            }
-        } catch (Exception e) {
-            log.error("随机调用固定图片接口异常，群ID: {}", groupId, e);
+        NapCatResponse response = groupMessageService.sendFixedImage(groupId, "BIGHead");
+        if (response.isOk()) {
+            log.info(" 抽中随机调用图片方法");
+        } else {
+            log.warn(" 随机图片发送失败，群ID: {}，错误: {}", groupId, response.getErrorMessage());
         }
     }
-
 }
@@ -0,0 +1,90 @@
+package LDS.Person.tasks;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import LDS.Person.config.NapCatTaskIsOpen;
+import LDS.Person.napcat.IdempotencyCache;
+import LDS.Person.service.SingleDefenseService;
+import LDS.Person.tasks.MsgLisLogic.BilibiliShareLogic;
+import LDS.Person.websocket.event.OneBotEvent;
+import LDS.Person.websocket.listener.MessageListener;
+import LDS.Person.websocket.listener.MessageListenerChain;
+
+/**
+ * B站分享消息监听处理器
+ * 监听群聊中的B站小程序分享和 b23.tv 短链接，提取预览图和BV号发送到群聊
+ * 
+ * 与关键词触发共用 isMsgLisKeyWordTask 开关
+ */
+@Component
+@Order(MessageListenerChain.ORDER_BILIBILI)
+@Slf4j
+public class MsgLisBilibiliTask implements MessageListener {
+
+  @Autowired
+  private SingleDefenseService singleDefenseService;
+
+  @Autowired
+  private BilibiliShareLogic bilibiliShareLogic;
+
+  @Override
+  public String getName() {
+    return "bilibili";
+  }
+
+  /**
+   * 是否包含 b23.tv 短链接或小程序卡片
+   */
+  @Override
+  public boolean matches(OneBotEvent event) {
+    if (!NapCatTaskIsOpen.isMsgLisKeyWordTask || !event.isGroupMessage()) {
+      return false;
+    }
+    String rawMessage = event.getRawMessage();
+    return rawMessage != null
+        && (rawMessage.contains("https://b23.tv/") || rawMessage.contains("[CQ:json,data="));
+  }
+
+  /**
+   * 处理接收到的 WebSocket 消息
+   * 
+   * @param event 已解析的 OneBot 事件
+   * @return true 表示已处理B站分享
+   */
+  @Override
+  public boolean handleMessage(OneBotEvent event) {
+    // 检查该任务是否启用
+    if (!NapCatTaskIsOpen.isMsgLisKeyWordTask) {
+      return false;
+    }
+
+    try {
+      // 只处理群聊消息
+      if (!event.isGroupMessage()) {
+        return false;
+      }
+
+      long groupId = event.getGroupId();
+      String rawMessage = event.getRawMessage();
+      if (rawMessage == null) {
+        return false;
+      }
+
+      // 检查用户是否被单防（VIP 任务关闭时单防回复不会认领消息，这里仍需忽略）
+      String displayName = SingleDefenseService.extractDisplayName(event);
+      if (singleDefenseService.isUnderDefense(groupId, displayName)) {
+        return false;
+      }
+
+      return bilibiliShareLogic.handleBilibiliShare(groupId, rawMessage,
+          IdempotencyCache.key(event.getMessageId(), getName()));
+
+    } catch (Exception e) {
+      log.error("处理B站分享消息异常", e);
+    }
+    return false;
+  }
+}
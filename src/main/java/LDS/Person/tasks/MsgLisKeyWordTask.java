@@ -1,25 +1,29 @@
 package LDS.Person.tasks;
 
-import com.alibaba.fastjson2.JSONObject;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Component;
 
 import LDS.Person.config.NapCatTaskIsOpen;
+import LDS.Person.napcat.IdempotencyCache;
 import LDS.Person.service.SingleDefenseService;
 import LDS.Person.tasks.MsgLisLogic.KeywordTriggerLogic;
-import LDS.Person.tasks.MsgLisLogic.BilibiliShareLogic;
-import LDS.Person.tasks.MsgSchLogic.RandomChatLogic;
+import LDS.Person.websocket.event.OneBotEvent;
+import LDS.Person.websocket.listener.MessageListener;
+import LDS.Person.websocket.listener.MessageListenerChain;
 
 /**
  * 关键词消息监听处理器
  * 监听群聊消息，当消息中包含指定关键词时触发
  * 
- * 优先级：VIP指令 > 用户指令 > 关键词触发 > B站分享
+ * 位于监听链末尾：VIP指令 > 用户指令 > @机器人 > B站分享 > 关键词触发
+ * 前面的监听器认领消息后不会执行到这里，因此无需再重复判断各类指令
  */
 @Component
+@Order(MessageListenerChain.ORDER_KEYWORD)
 @Slf4j
-public class MsgLisKeyWordTask {
+public class MsgLisKeyWordTask implements MessageListener {
 
   @Autowired
   private SingleDefenseService singleDefenseService;
@@ -27,85 +31,52 @@ public class MsgLisKeyWordTask {
   @Autowired
   private KeywordTriggerLogic keywordTriggerLogic;
 
-  @Autowired
-  private BilibiliShareLogic bilibiliShareLogic;
-
-  @Autowired
-  private MsgLisVipCmdTask msgLisVipCmdTask;
-
-  @Autowired
-  private MsgLisUserCmdTask msgLisUserCmdTask;
+  @Override
+  public String getName() {
+    return "keyword";
+  }
 
   /**
    * 处理接收到的 WebSocket 消息
    * 当群聊消息中包含关键词时，自动发送图片
    * 
-   * @param message WebSocket 消息的 JSON 对象
+   * @param event 已解析的 OneBot 事件
+   * @return true 表示已发送关键词图片
    */
-  public void handleMessage(JSONObject message) {
+  @Override
+  public boolean handleMessage(OneBotEvent event) {
     // 检查该任务是否启用
     if (!NapCatTaskIsOpen.isMsgLisKeyWordTask) {
      // System.out.println("isMsgLisKeyWordTask未启用");
-     
-     // 记录最近一次的群聊ID（用于定时任务）
-     Long groupId = message.getLong("group_id");
-     RandomChatLogic.recordLastGroupId(groupId.toString());
-      return;
+      return false;
     }
 
     try {
-      String postType = message.getString("post_type");
-
-      // 只处理聊天消息
-      if (!"message".equals(postType)) {
-        return;
-      }
-
-      String messageType = message.getString("message_type");
-
       // 只处理群聊消息
-      if (!"group".equals(messageType)) {
-        return;
+      if (!event.isGroupMessage()) {
+        return false;
       }
 
-      Long groupId = message.getLong("group_id");
-      Long userId = message.getLong("user_id");
-      String rawMessage = message.getString("raw_message");
-
-      // 记录最近一次的群聊ID（用于定时任务）
-      RandomChatLogic.recordLastGroupId(groupId.toString());
+      long groupId = event.getGroupId();
+      String rawMessage = event.getRawMessage();
+      if (rawMessage == null) {
+        return false;
+      }
 
-      // 检查用户是否被单防（如果被单防则忽略此消息）
-      String displayName = SingleDefenseService.extractDisplayName(message);
+      // 检查用户是否被单防（VIP 任务关闭时单防回复不会认领消息，这里仍需忽略）
+      String displayName = SingleDefenseService.extractDisplayName(event);
       if (singleDefenseService.isUnderDefense(groupId, displayName)) {
         log.debug("用户被单防，忽略关键词触发 - 群ID: {}，昵称: {}", groupId, displayName);
-        return;
-      }
-
-      // 优先处理 VIP 指令
-      if (rawMessage != null && msgLisVipCmdTask.isVipCommandTriggered(userId, rawMessage)) {
-      //  log.debug("VIP 指令已触发，跳过关键词处理");
-        return;
-      }
-
-      // 其次处理用户公共指令
-      if (rawMessage != null && msgLisUserCmdTask.isUserCommandTriggered(rawMessage)) {
-      //  log.debug("用户指令已触发，跳过关键词处理");
-        return;
-      }
-
-      // 优先处理哔哩哔哩小程序分享
-      if (rawMessage != null && bilibiliShareLogic.handleBilibiliShare(groupId, rawMessage)) {
-        return; // 已处理B站分享，不再进行关键词触发
+        return false;
       }
 
       // 使用逻辑类处理关键词触发
-      if (rawMessage != null) {
-        keywordTriggerLogic.triggerKeywordResponse(groupId, rawMessage);
-      }
+      return keywordTriggerLogic.triggerKeywordResponse(groupId, rawMessage,
+          IdempotencyCache.key(event.getMessageId(), getName()));
 
     } catch (Exception e) {
       log.error("处理消息异常", e);
     }
+    return false;
   }
 }
@@ -0,0 +1,312 @@
+package LDS.Person.tasks.MsgLisLogic;
+
+import LDS.Person.config.ConfigManager;
+import LDS.Person.napcat.IdempotencyCache;
+import LDS.Person.websocket.dispatch.EventDispatcher;
+import LDS.Person.websocket.listener.ListenerPriority;
+import LDS.Person.websocket.listener.MessageListenerChain;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+/**
+ * @机器人 消息的按群合并器
+ * 同一个群在 window.ms 内收到的多条 @机器人 消息合并成一批，窗口结束（或达到 max.mentions 条）时
+ * 一次性回调处理函数，由处理函数发起一次 DeepSeek 请求统一回答；
+ * 突发的多人 @ 不再各自并发调用 DeepSeek、争用同一份共享上下文
+ *
+ * 窗口从该群第一条 @ 到达时开始计时，不因后续 @ 顺延，单条 @ 的额外延迟不超过 window.ms；
+ * 入队时按触发消息的幂等键去重，NapCat 重放的同一条 @ 不会进入后续批次
+ *
+ * 同一个群的批次严格串行：同一时刻最多一个批次在处理，其余按关闭顺序在该群的有界队列中等待，
+ * 前一批处理完才提交下一批，回复顺序与 @ 到达顺序一致；队列满时丢弃最旧的等待批次
+ * 批次交给 EventDispatcher 的该群通道执行（CRITICAL，不会被淘汰），执行时经
+ * MessageListenerChain.runWithPermit 占用 @机器人 监听器的并发许可，与 listener.at_bot.max.concurrency 共用上限
+ *
+ * 配置项（config.properties）：
+ * - at.coalesce.window.ms      合并窗口（毫秒），默认 1500；0 表示不合并，每条 @ 单独处理
+ * - at.coalesce.max.mentions   每批最多合并的 @ 条数，达到后立即处理，默认 5
+ * - at.coalesce.max.queued     每个群等待处理的批次数上限（不含正在处理的一批），默认 3
+ */
+@Component
+@Slf4j
+public class AtMentionBatcher {
+
+    private static final ConfigManager configManager = ConfigManager.getInstance();
+
+    // 批次占用其并发许可的监听器（MsgLisATTask）
+    private static final String AT_BOT_LISTENER = "at_bot";
+
+    /**
+     * 一条待回复的 @机器人 消息
+     */
+    public static final class Mention {
+        private final long userId;
+        private final String nickname;
+        private final String message;
+        private final long idempotencyKey;
+
+        public Mention(long userId, String nickname, String message, long idempotencyKey) {
+            this.userId = userId;
+            this.nickname = nickname;
+            this.message = message;
+            this.idempotencyKey = idempotencyKey;
+        }
+
+        public long getUserId() {
+            return userId;
+        }
+
+        public String getNickname() {
+            return nickname;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        public long getIdempotencyKey() {
+            return idempotencyKey;
+        }
+    }
+
+    private final IdempotencyCache idempotencyCache;
+    private final EventDispatcher eventDispatcher;
+    // 监听链依赖 MsgLisATTask，MsgLisATTask 依赖本类，延迟获取以避免循环依赖
+    private final ObjectProvider<MessageListenerChain> listenerChain;
+    private final long windowMs;
+    private final int maxMentions;
+    private final int maxQueued;
+
+    private final ScheduledExecutorService timer;
+
+    // 由 this 锁保护：各群正在收集中的批次
+    private final Map<Long, Batch> open = new HashMap<>();
+    // 由 this 锁保护：有批次正在处理的群 -> 该群等待处理的批次（按关闭顺序）
+    private final Map<Long, ArrayDeque<Batch>> busy = new HashMap<>();
+
+    private final LongAdder mentionCount = new LongAdder();
+    private final LongAdder batchCount = new LongAdder();
+    private final LongAdder duplicateCount = new LongAdder();
+    private final LongAdder fullFlushCount = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAccumulator maxBatchSize = new LongAccumulator(Math::max, 0);
+    private final LongAdder queuedCount = new LongAdder();
+    private final LongAdder droppedCount = new LongAdder();
+
+    public AtMentionBatcher(IdempotencyCache idempotencyCache, EventDispatcher eventDispatcher,
+                            ObjectProvider<MessageListenerChain> listenerChain) {
+        this.idempotencyCache = idempotencyCache;
+        this.eventDispatcher = eventDispatcher;
+        this.listenerChain = listenerChain;
+        this.windowMs = Math.max(0, configManager.getInt("at.coalesce.window.ms", 1500));
+        this.maxMentions = Math.max(1, configManager.getInt("at.coalesce.max.mentions", 5));
+        this.maxQueued = Math.max(1, configManager.getInt("at.coalesce.max.queued", 3));
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "at-mention-batcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 把一条 @ 加入所在群的批次
+     *
+     * @param onFlush 批次处理函数（群号, 按到达顺序排列的 @ 列表），在事件分发工作线程上调用；
+     *                同一群的批次使用第一条 @ 提交时传入的处理函数
+     * @return false 表示该 @ 是重放的重复消息，已丢弃
+     */
+    public boolean submit(long groupId, Mention mention, BiConsumer<Long, List<Mention>> onFlush) {
+        // 入队标记由幂等键派生，与发送时使用的幂等键互不冲突
+        if (!idempotencyCache.tryClaim(IdempotencyCache.derive(mention.idempotencyKey, -1))) {
+            duplicateCount.increment();
+            log.info("忽略重复的 @机器人 消息 - 群ID: {}，用户ID: {}", groupId, mention.userId);
+            return false;
+        }
+        mentionCount.increment();
+
+        if (windowMs == 0) {
+            enqueue(groupId, new Batch(onFlush, mention));
+            return true;
+        }
+
+        Batch full = null;
+        synchronized (this) {
+            Batch batch = open.get(groupId);
+            if (batch == null) {
+                batch = new Batch(onFlush, mention);
+                open.put(groupId, batch);
+                Batch scheduled = batch;
+                timer.schedule(() -> flush(groupId, scheduled), windowMs, TimeUnit.MILLISECONDS);
+            } else {
+                batch.mentions.add(mention);
+            }
+            if (batch.mentions.size() >= maxMentions) {
+                open.remove(groupId);
+                full = batch;
+            }
+        }
+        if (full != null) {
+            fullFlushCount.increment();
+            enqueue(groupId, full);
+        }
+        return true;
+    }
+
+    /**
+     * 是否空闲：没有正在收集、等待处理或正在处理的批次
+     */
+    public synchronized boolean isIdle() {
+        return open.isEmpty() && busy.isEmpty();
+    }
+
+    /**
+     * 获取合并统计
+     * coalesced 为合并掉的 @ 条数，即节省的 DeepSeek 调用次数
+     */
+    public Map<String, Object> getStats() {
+        long mentions = mentionCount.sum();
+        long batches = batchCount.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("window_ms", windowMs);
+        stats.put("max_mentions", maxMentions);
+        stats.put("max_queued", maxQueued);
+        stats.put("mentions", mentions);
+        stats.put("batches", batches);
+        stats.put("coalesced", mentions - batches);
+        stats.put("duplicates", duplicateCount.sum());
+        stats.put("full_flushes", fullFlushCount.sum());
+        stats.put("max_batch_size", maxBatchSize.get());
+        stats.put("avg_wait_ms", batches == 0 ? 0.0 : waitNanos.sum() / 1_000_000.0 / batches);
+        stats.put("queued", queuedCount.sum());
+        stats.put("dropped_mentions", droppedCount.sum());
+        synchronized (this) {
+            int waiting = 0;
+            for (ArrayDeque<Batch> queue : busy.values()) {
+                waiting += queue.size();
+            }
+            stats.put("open_batches", open.size());
+            stats.put("busy_groups", busy.size());
+            stats.put("waiting_batches", waiting);
+        }
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timer.shutdownNow();
+    }
+
+    /**
+     * 窗口到期：批次若仍在收集中（没有因满员提前处理）则取出处理
+     */
+    private void flush(long groupId, Batch batch) {
+        synchronized (this) {
+            if (open.get(groupId) != batch) {
+                return;
+            }
+            open.remove(groupId);
+        }
+        enqueue(groupId, batch);
+    }
+
+    /**
+     * 已关闭的批次：该群没有批次在处理时立即提交，否则进入该群的等待队列，超出上限时丢弃最旧的等待批次
+     */
+    private void enqueue(long groupId, Batch batch) {
+        batchCount.increment();
+        maxBatchSize.accumulate(batch.mentions.size());
+        boolean startNow = false;
+        Batch dropped = null;
+        synchronized (this) {
+            ArrayDeque<Batch> waiting = busy.get(groupId);
+            if (waiting == null) {
+                busy.put(groupId, new ArrayDeque<>());
+                startNow = true;
+            } else {
+                waiting.addLast(batch);
+                if (waiting.size() > maxQueued) {
+                    dropped = waiting.pollFirst();
+                }
+            }
+        }
+        if (startNow) {
+            start(groupId, batch);
+            return;
+        }
+        queuedCount.increment();
+        if (dropped != null) {
+            droppedCount.add(dropped.mentions.size());
+            log.warn("群 {} 等待回复的 @机器人 批次过多，丢弃最早的一批（{} 条 @ 未回复）", groupId, dropped.mentions.size());
+        }
+    }
+
+    /**
+     * 提交到该群的事件分发通道，与 @机器人 监听器同为 CRITICAL，不会被过载淘汰，保证处理完后能接上下一批
+     */
+    private void start(long groupId, Batch batch) {
+        waitNanos.add(System.nanoTime() - batch.createdAtNanos);
+        eventDispatcher.dispatch(groupId, ListenerPriority.CRITICAL, () -> process(groupId, batch));
+    }
+
+    private void process(long groupId, Batch batch) {
+        try {
+            Runnable reply = () -> batch.onFlush.accept(groupId, batch.mentions);
+            MessageListenerChain chain = listenerChain.getIfAvailable();
+            if (chain != null) {
+                chain.runWithPermit(AT_BOT_LISTENER, reply);
+            } else {
+                reply.run();
+            }
+        } catch (Exception e) {
+            log.error("处理 @机器人 批次异常 - 群ID: {}", groupId, e);
+        } finally {
+            completed(groupId);
+        }
+    }
+
+    /**
+     * 一批处理完成：提交该群等待中的下一批，没有则该群恢复空闲
+     */
+    private void completed(long groupId) {
+        Batch next;
+        synchronized (this) {
+            ArrayDeque<Batch> waiting = busy.get(groupId);
+            next = waiting == null ? null : waiting.pollFirst();
+            if (next == null) {
+                busy.remove(groupId);
+            }
+        }
+        if (next != null) {
+            start(groupId, next);
+        }
+    }
+
+    /**
+     * 一个群正在收集中的批次，创建后只在 this 锁内追加，取出后不再修改
+     */
+    private static final class Batch {
+        final BiConsumer<Long, List<Mention>> onFlush;
+        final List<Mention> mentions = new ArrayList<>();
+        final long createdAtNanos = System.nanoTime();
+
+        Batch(BiConsumer<Long, List<Mention>> onFlush, Mention first) {
+            this.onFlush = onFlush;
+            this.mentions.add(first);
+        }
+    }
+}
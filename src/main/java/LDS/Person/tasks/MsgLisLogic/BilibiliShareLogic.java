@@ -1,20 +1,13 @@
 package LDS.Person.tasks.MsgLisLogic;
 
+import LDS.Person.service.GroupMessageService;
 import com.alibaba.fastjson2.JSONObject;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
-import org.springframework.web.client.RestTemplate;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.HttpMethod;
-import org.springframework.http.HttpStatus;
-import org.springframework.http.ResponseEntity;
-
-import java.io.InputStream;
+
 import java.net.HttpURLConnection;
 import java.net.URL;
-import java.util.Properties;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -27,37 +20,17 @@ import java.util.regex.Pattern;
 public class BilibiliShareLogic {
 
   @Autowired
-  private RestTemplate restTemplate;
-
-  private static String NCAT_API_BASE = "00";
-  private static String NCAT_AUTH_TOKEN = "0000";
-
-  // 静态初始化块：从 config.properties 读取配置
-  static {
-    Properties props = new Properties();
-
-    try (InputStream input = BilibiliShareLogic.class.getClassLoader()
-        .getResourceAsStream("config.properties")) {
-      if (input != null) {
-        props.load(input);
-        NCAT_API_BASE = props.getProperty("NapCatApiBase", NCAT_API_BASE);
-        NCAT_AUTH_TOKEN = props.getProperty("NapCatAuthToken", NCAT_AUTH_TOKEN);
-      } else {
-        System.out.println("[WARN] config.properties 没有找到, 会使用不可用的默认值");
-      }
-    } catch (Exception e) {
-      System.err.println("[ERROR] 无法读取 config.properties: " + e.getMessage());
-    }
-  }
+  private GroupMessageService groupMessageService;
 
   /**
    * 处理哔哩哔哩小程序分享消息
    * 
    * @param groupId    群组 ID
-   * @param rawMessage 原始消息文本
+   * @param rawMessage     原始消息文本
+   * @param idempotencyKey 由触发消息生成的幂等键，重放的同一条消息不会重复发送 BV 号
    * @return true 表示消息被处理，false 表示不是B站分享消息
    */
-  public boolean handleBilibiliShare(Long groupId, String rawMessage) {
+  public boolean handleBilibiliShare(Long groupId, String rawMessage, long idempotencyKey) {
     try {
       if (rawMessage == null || rawMessage.trim().isEmpty()) {
         return false;
@@ -66,7 +39,7 @@ public class BilibiliShareLogic {
       // 检查是否包含 b23.tv 短链接
       if (rawMessage.contains("https://b23.tv/")) {
         log.info("检测到B站短链接 - 群ID: {}", groupId);
-        return handleB23TvLink(groupId, rawMessage);
+        return handleB23TvLink(groupId, rawMessage, idempotencyKey);
       }
 
       // 检查是否是 CQ:json 消息
@@ -121,7 +94,7 @@ public class BilibiliShareLogic {
       String bvCode = extractBVFromRedirect(qqdocurl);
       if (bvCode != null && !bvCode.isEmpty()) {
         // log.info("提取到 BV 号: {}", bvCode);
-        sendGroupMessage(groupId, bvCode);
+        sendGroupMessage(groupId, bvCode, idempotencyKey);
       } else {
         log.warn("无法提取 BV 号");
       }
@@ -138,10 +111,11 @@ public class BilibiliShareLogic {
    * 处理包含 b23.tv 短链接的消息
    * 
    * @param groupId    群组 ID
-   * @param rawMessage 原始消息文本
+   * @param rawMessage     原始消息文本
+   * @param idempotencyKey 幂等键
    * @return true 表示消息被处理
    */
-  private boolean handleB23TvLink(Long groupId, String rawMessage) {
+  private boolean handleB23TvLink(Long groupId, String rawMessage, long idempotencyKey) {
     try {
       // 使用正则提取 https://b23.tv/... 链接
       Pattern pattern = Pattern.compile("https://b23\\.tv/[^\\s]+");
@@ -159,7 +133,7 @@ public class BilibiliShareLogic {
       String bvCode = extractBVFromRedirect(shortUrl);
       if (bvCode != null && !bvCode.isEmpty()) {
         log.info("提取到 BV 号: {}", bvCode);
-        sendGroupMessage(groupId, bvCode);
+        sendGroupMessage(groupId, bvCode, idempotencyKey);
         return true;
       } else {
         log.warn("无法提取 BV 号");
@@ -296,46 +270,13 @@ public class BilibiliShareLogic {
    * 
    * @param groupId 群组 ID
    * @param text    消息文本
+   * @param idempotencyKey 幂等键
    */
-  private void sendGroupMessage(Long groupId, String text) {
-    try {
-      JSONObject requestBody = new JSONObject();
-      requestBody.put("group_id", groupId);
-
-      // 构建消息数组（包含文本）
-      com.alibaba.fastjson2.JSONArray messageArray = new com.alibaba.fastjson2.JSONArray();
-      JSONObject messageItem = new JSONObject();
-      messageItem.put("type", "text");
-
-      JSONObject dataObj = new JSONObject();
-      dataObj.put("text", text);
-      messageItem.put("data", dataObj);
-
-      messageArray.add(messageItem);
-      requestBody.put("message", messageArray);
-
-      // 调用 NapCat API 发送消息
-      String url = NCAT_API_BASE + "/send_group_msg";
-
-      HttpHeaders headers = new HttpHeaders();
-      headers.set("Authorization", "Bearer " + NCAT_AUTH_TOKEN);
-      headers.set("Content-Type", "application/json");
-
-      HttpEntity<String> entity = new HttpEntity<>(requestBody.toJSONString(), headers);
-      ResponseEntity<String> apiResponse = restTemplate.exchange(url, HttpMethod.POST, entity, String.class);
-
-      if (apiResponse.getStatusCode() == HttpStatus.OK) {
-        JSONObject jsonResponse = JSONObject.parseObject(apiResponse.getBody());
-        if (jsonResponse.containsKey("status") && "ok".equals(jsonResponse.getString("status"))) {
-          // log.info("BV号消息发送成功 - 群ID: {}，BV: {}", groupId, text);
-          return;
-        }
+  private void sendGroupMessage(Long groupId, String text, long idempotencyKey) {
+    groupMessageService.queueText(groupId, text, idempotencyKey).thenAccept(response -> {
+      if (!response.isOk() && !response.isDuplicate()) {
+        log.error("BV号消息发送失败 - 群ID: {}，错误: {}", groupId, response.getErrorMessage());
       }
-
-      log.error("BV号消息发送失败 - 群ID: {}，HTTP状态: {}", groupId, apiResponse.getStatusCode());
-
-    } catch (Exception e) {
-      log.error("发送BV号消息异常 - 群ID: {}", groupId, e);
-    }
+    });
   }
 }
@@ -1,18 +1,12 @@
 package LDS.Person.tasks.MsgLisLogic;
 
-import com.alibaba.fastjson2.JSONObject;
-import com.alibaba.fastjson2.JSONArray;
-import LDS.Person.config.ConfigManager;
+import LDS.Person.napcat.NapCatResponse;
+import LDS.Person.service.GroupMessageService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
-import org.springframework.web.client.RestTemplate;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.ResponseEntity;
 
 import LDS.Person.util.GalgameProcessor;
-import LDS.Person.dto.request.SendGroupImageRequest;
 
 import java.util.concurrent.CompletableFuture;
 
@@ -23,22 +17,14 @@ import java.util.concurrent.CompletableFuture;
  * 流程：
  * 1. 调用 GalgameProcessor 获取游戏数据并生成截图
  * 2. 使用 ImgToUri 将截图转换为 Data URI
- * 3. 调用 /group-image 接口发送图片到群组
+ * 3. 通过 GroupMessageService 发送图片到群组
  */
 @Component
 @Slf4j
 public class GalgameSearchLogic {
 
     @Autowired
-    private RestTemplate restTemplate;
-
-    // 本地 API 端点（推荐使用）
-    private static final String LOCAL_SEND_IMAGE_URL = "http://localhost:8090/api/ncat/send/group-image";
-
-    // 使用ConfigManager获取配置，避免重复加载配置文件，提高性能
-    private static final ConfigManager configManager = ConfigManager.getInstance();
-    private static final String NCAT_API_BASE = configManager.getNapCatApiBase();
-    private static final String NCAT_AUTH_TOKEN = configManager.getNapCatAuthToken();
+    private GroupMessageService groupMessageService;
 
     /**
      * 处理 Galgame 搜索请求
@@ -76,8 +62,8 @@ public class GalgameSearchLogic {
 
                 //log.info("Data URI 转换成功，长度: {} 字符", dataUri.length());
 
-                // 第四步：调用 /group-image 接口发送图片
-                //log.info("准备通过 /group-image 接口发送图片到群组...");
+                // 第四步：发送图片
+                //log.info("准备发送图片到群组...");
                 sendGalgameImageToGroup(groupId, dataUri);
 
                 //log.info("Galgame 搜索请求处理完成");
@@ -90,33 +76,15 @@ public class GalgameSearchLogic {
     }
 
     /**
-     * 调用本地 /group-image 接口发送 Data URI 图片
+     * 发送 Data URI 图片
      *
      * @param groupId 群组 ID
      * @param dataUri Data URI 字符串
      */
     private void sendGalgameImageToGroup(Long groupId, String dataUri) {
-        try {
-            // 使用本地 API 接口（推荐）
-            SendGroupImageRequest request = new SendGroupImageRequest();
-            request.setGroupId(groupId);
-            request.setFile(dataUri);
-
-            log.debug("准备通过本地 /group-image 接口发送图片到群组: {}", groupId);
-            ResponseEntity<?> response = restTemplate.postForEntity(
-                LOCAL_SEND_IMAGE_URL,
-                request,
-                Object.class
-            );
-
-            if (response.getStatusCode().is2xxSuccessful()) {
-                // log.info("✅ Galgame 图片发送成功，群组ID: {}", groupId);
-            } else {
-                log.warn(" Galgame 图片发送失败，群组ID: {}，状态码: {}", groupId, response.getStatusCode());
-            }
-
-        } catch (Exception e) {
-            log.error("发送 Galgame 图片异常，群组ID: {}", groupId, e);
+        NapCatResponse response = groupMessageService.sendImage(groupId, dataUri);
+        if (!response.isOk()) {
+            log.warn(" Galgame 图片发送失败，群组ID: {}，错误: {}", groupId, response.getErrorMessage());
         }
     }
 
@@ -127,33 +95,11 @@ public class GalgameSearchLogic {
      * @param errorMessage 错误消息
      */
     private void sendErrorMessage(Long groupId, String errorMessage) {
-        try {
-            String url = NCAT_API_BASE + "/send_group_msg";
-
-            JSONObject requestBody = new JSONObject();
-            requestBody.put("group_id", groupId);
-
-            JSONArray messageArray = new JSONArray();
-            JSONObject messageItem = new JSONObject();
-            messageItem.put("type", "text");
-            JSONObject dataObj = new JSONObject();
-            dataObj.put("text", errorMessage);
-            messageItem.put("data", dataObj);
-            messageArray.add(messageItem);
-
-            requestBody.put("message", messageArray);
-
-            HttpHeaders headers = new HttpHeaders();
-            headers.set("Authorization", "Bearer " + NCAT_AUTH_TOKEN);
-            headers.set("Content-Type", "application/json");
-
-            HttpEntity<String> entity = new HttpEntity<>(requestBody.toJSONString(), headers);
-            restTemplate.postForEntity(url, entity, String.class);
-
+        NapCatResponse response = groupMessageService.sendText(groupId, errorMessage);
+        if (response.isOk()) {
             log.debug("错误消息已发送到群组: {}", groupId);
-
-        } catch (Exception e) {
-            log.error("发送错误消息异常", e);
+        } else {
+            log.error("发送错误消息失败 - 群ID: {}，错误: {}", groupId, response.getErrorMessage());
         }
     }
 }
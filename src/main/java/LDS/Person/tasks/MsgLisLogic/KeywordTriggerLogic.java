@@ -1,16 +1,10 @@
 package LDS.Person.tasks.MsgLisLogic;
 
-import com.alibaba.fastjson2.JSONObject;
-import LDS.Person.config.ConfigManager;
+import LDS.Person.napcat.IdempotencyCache;
+import LDS.Person.service.GroupMessageService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
-import org.springframework.web.client.RestTemplate;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.HttpMethod;
-import org.springframework.http.HttpStatus;
-import org.springframework.http.ResponseEntity;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -26,7 +20,7 @@ import java.util.Random;
 public class KeywordTriggerLogic {
 
   @Autowired
-  private RestTemplate restTemplate;
+  private GroupMessageService groupMessageService;
 
   /**
    * 关键字列表 - gal 系列
@@ -40,10 +34,6 @@ public class KeywordTriggerLogic {
   private static final List<String> KEYWORDS_MoCai = Arrays.asList(
       "魔裁", "少女", "魔法", "审判");
 
-  // 使用ConfigManager获取配置，避免重复加载配置文件，提高性能
-  private static final ConfigManager configManager = ConfigManager.getInstance();
-  private static final String NCAT_API_BASE = configManager.getNapCatApiBase();
-  private static final String NCAT_AUTH_TOKEN = configManager.getNapCatAuthToken();
 
   private static final Random RANDOM = new Random();
   
@@ -56,38 +46,42 @@ public class KeywordTriggerLogic {
    * 若没有关键词触发，则有1/150的概率随机触发一项
    * 
    * @param groupId    群组 ID
-   * @param rawMessage 原始消息文本
+   * @param rawMessage     原始消息文本
+   * @param idempotencyKey 由触发消息生成的幂等键，重放的同一条消息不会重复发图
+   * @return true 表示已发送图片（关键词命中或随机触发）
    */
-  public void triggerKeywordResponse(Long groupId, String rawMessage) {
+  public boolean triggerKeywordResponse(Long groupId, String rawMessage, long idempotencyKey) {
     try {
       if (rawMessage == null || rawMessage.trim().isEmpty()) {
-        return;
+        return false;
       }
 
       // 检查是否包含 gal 关键字
       if (checkKeyword(rawMessage, KEYWORDS_gal)) {
         log.info("触发->BIGHead<- 关键字 - 群ID: {}", groupId);
-        sendGroupImageMessage(groupId, "BIGHead");
-        return;
+        sendGroupImageMessage(groupId, "BIGHead", idempotencyKey);
+        return true;
       }
 
       // 检查是否包含 魔裁 关键字
       if (checkKeyword(rawMessage, KEYWORDS_MoCai)) {
         log.info("触发 ->MoCai<- 关键字 - 群ID: {}", groupId);
-        sendGroupImageMessage(groupId, "MoCai");
-        return;
+        sendGroupImageMessage(groupId, "MoCai", idempotencyKey);
+        return true;
       }
 
       // 若没有关键词触发，则有1/110的概率随机触发一项
       if (shouldRandomTrigger()) {
         String randomImageType = getRandomImageType();
         log.info("随机触发 ->{}<<- 图片 - 群ID: {}", randomImageType, groupId);
-        sendGroupImageMessage(groupId, randomImageType);
+        sendGroupImageMessage(groupId, randomImageType, idempotencyKey);
+        return true;
       }
 
     } catch (Exception e) {
       log.error("触发关键字响应异常 - 群ID: {}", groupId, e);
     }
+    return false;
   }
 
   /**
@@ -99,7 +93,7 @@ public class KeywordTriggerLogic {
     try {
       String randomImageType = getRandomImageType();
       log.info("触发随机图片 ->{}<<- 群ID: {}", randomImageType, groupId);
-      sendGroupImageMessage(groupId, randomImageType);
+      sendGroupImageMessage(groupId, randomImageType, IdempotencyCache.NONE);
     } catch (Exception e) {
       log.error("触发随机图片异常 - 群ID: {}", groupId, e);
     }
@@ -137,69 +131,21 @@ public class KeywordTriggerLogic {
 
   /**
    * 发送群组固定图片消息
-   * 直接调用 NapCat API 发送图片，而不是仅生成 URL
+   * 交给发送调度器排队发送图片，而不是仅生成 URL
    * 
    * @param groupId   群组 ID
    * @param imageType 图片类型 ("BIGHead" 或 "MoCai")
+   * @param idempotencyKey 幂等键，定时触发时为 IdempotencyCache.NONE
    */
-  private void sendGroupImageMessage(Long groupId, String imageType) {
-    try {
-      // 生成随机图片 URL
-      String imageUrl = selectImageUrl(imageType);
-
-      // 构建请求体
-      JSONObject requestBody = buildGroupImageRequest(groupId, imageUrl);
+  private void sendGroupImageMessage(Long groupId, String imageType, long idempotencyKey) {
+    // 生成随机图片 URL
+    String imageUrl = selectImageUrl(imageType);
 
-      // 调用 NapCat API 发送图片
-      String url = NCAT_API_BASE + "/send_group_msg";
-
-      HttpHeaders headers = new HttpHeaders();
-      headers.set("Authorization", "Bearer " + NCAT_AUTH_TOKEN);
-      headers.set("Content-Type", "application/json");
-
-      HttpEntity<String> entity = new HttpEntity<>(requestBody.toJSONString(), headers);
-      ResponseEntity<String> apiResponse = restTemplate.exchange(url, HttpMethod.POST, entity, String.class);
-
-      if (apiResponse.getStatusCode() == HttpStatus.OK) {
-        JSONObject jsonResponse = JSONObject.parseObject(apiResponse.getBody());
-        if (jsonResponse.containsKey("status") && "ok".equals(jsonResponse.getString("status"))) {
-          // log.info("关键字图片消息发送成功 - 群ID: {}，类型: {}，URL: {}", groupId, imageType,
-          // imageUrl);
-          return;
-        }
+    groupMessageService.queueImage(groupId, imageUrl, idempotencyKey).thenAccept(response -> {
+      if (!response.isOk() && !response.isDuplicate()) {
+        log.error("关键字图片消息发送失败 - 群ID: {}，错误: {}", groupId, response.getErrorMessage());
       }
-
-      log.error("关键字图片消息发送失败 - 群ID: {}，HTTP状态: {}", groupId, apiResponse.getStatusCode());
-
-    } catch (Exception e) {
-      log.error("发送关键字图片消息异常 - 群ID: {}", groupId, e);
-    }
-  }
-
-  /**
-   * 构建发送群组图片的请求体
-   * 
-   * @param groupId  群组 ID
-   * @param imageUrl 图片 URL
-   * @return 请求的 JSON 对象
-   */
-  private JSONObject buildGroupImageRequest(Long groupId, String imageUrl) {
-    JSONObject request = new JSONObject();
-    request.put("group_id", groupId);
-
-    // 构建消息数组（包含图片）
-    com.alibaba.fastjson2.JSONArray messageArray = new com.alibaba.fastjson2.JSONArray();
-    JSONObject messageItem = new JSONObject();
-    messageItem.put("type", "image");
-
-    JSONObject dataObj = new JSONObject();
-    dataObj.put("file", imageUrl);
-    messageItem.put("data", dataObj);
-
-    messageArray.add(messageItem);
-    request.put("message", messageArray);
-
-    return request;
+    });
   }
 
   /**
@@ -1,14 +1,11 @@
 package LDS.Person.tasks.MsgLisLogic;
 
-import com.alibaba.fastjson2.JSONObject;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
-import org.springframework.web.client.RestTemplate;
 
-import LDS.Person.dto.request.SendGroupMessageRequest;
-import LDS.Person.dto.request.GroupTaskCreateRequest;
-import LDS.Person.dto.response.GroupTaskResponse;
+import LDS.Person.service.GroupMessageService;
+import LDS.Person.service.GroupTaskService;
 
 import java.util.Map;
 
@@ -21,7 +18,10 @@ import java.util.Map;
 public class VIPGroupTaskCreateLogic {
 
     @Autowired
-    private RestTemplate restTemplate;
+    private GroupTaskService groupTaskService;
+
+    @Autowired
+    private GroupMessageService groupMessageService;
 
     /**
      * 处理"指令新增群组任务->"指令
@@ -29,8 +29,9 @@ public class VIPGroupTaskCreateLogic {
      *
      * @param groupId 群聊ID
      * @param rawMessage 原始消息文本（未使用，保留用于兼容性）
+     * @param idempotencyKey 幂等键，重放的同一条指令只回复一次
      */
-    public void handleGroupTaskCreate(Long groupId, String rawMessage) {
+    public void handleGroupTaskCreate(Long groupId, String rawMessage, long idempotencyKey) {
         try {
             log.info("[VIPGroupTaskCreateLogic] 处理创建群组任务指令，群组ID: {}", groupId);
 
@@ -38,55 +39,36 @@ public class VIPGroupTaskCreateLogic {
             String targetGroupId = String.valueOf(groupId);
         //    log.info("[VIPGroupTaskCreateLogic] 目标群组ID: {}", targetGroupId);
 
-            // 1. 构建创建请求
-            GroupTaskCreateRequest request = new GroupTaskCreateRequest();
-            request.setGroupId(targetGroupId);
-
-            // 2. 调用创建接口
-            String url = "http://localhost:8090/api/group-task/create";
-            GroupTaskResponse response = restTemplate.postForObject(
-                    url, 
-                    request, 
-                    GroupTaskResponse.class
-            );
-
-            if (response == null) {
-                log.warn("[VIPGroupTaskCreateLogic] 创建接口返回 null");
-                sendMessage(groupId, "创建群组任务配置失败：接口返回异常");
-                return;
-            }
-
-        //    log.info("[VIPGroupTaskCreateLogic] 创建接口响应码: {}，消息: {}", response.getCode(), response.getMessage());
-
-            // 3. 检查创建结果
-            if (response.getCode() != 0) {
-                log.warn("[VIPGroupTaskCreateLogic] 创建失败: {}", response.getMessage());
-                sendMessage(groupId, "创建群组任务配置失败: " + response.getMessage());
+            // 1. 创建群组任务配置
+            Map<String, Object> createdData;
+            try {
+                createdData = groupTaskService.createGroupTask(targetGroupId);
+            } catch (RuntimeException e) {
+                log.warn("[VIPGroupTaskCreateLogic] 创建失败: {}", e.getMessage());
+                sendMessage(groupId, "创建群组任务配置失败: " + e.getMessage(), idempotencyKey);
                 return;
             }
 
-            // 4. 获取 data 字段
-            Map<String, Object> createdData = response.getData();
             if (createdData == null || createdData.isEmpty()) {
                 log.warn("[VIPGroupTaskCreateLogic] 创建后的数据为空");
-                sendMessage(groupId, "创建成功，但返回数据为空");
+                sendMessage(groupId, "创建成功，但返回数据为空", idempotencyKey);
                 return;
             }
 
         //    log.info("[VIPGroupTaskCreateLogic] 成功创建群组任务数据: {}", createdData);
 
-            // 5. 格式化创建后的数据为可读的文本
+            // 2. 格式化创建后的数据为可读的文本
             String formattedMessage = formatTaskData(createdData);
 
-            // 6. 发送到群聊
-            sendMessage(groupId, formattedMessage);
+            // 3. 发送到群聊
+            sendMessage(groupId, formattedMessage, idempotencyKey);
 
         //    log.info("[VIPGroupTaskCreateLogic] 群组任务创建信息发送完成");
 
         } catch (Exception e) {
             log.error("[VIPGroupTaskCreateLogic] 处理创建群组任务指令异常", e);
             try {
-                sendMessage(groupId, "处理创建群组任务指令失败: " + e.getMessage());
+                sendMessage(groupId, "处理创建群组任务指令失败: " + e.getMessage(), idempotencyKey);
             } catch (Exception ex) {
                 log.error("[VIPGroupTaskCreateLogic] 发送错误消息失败", ex);
             }
@@ -148,25 +130,16 @@ public class VIPGroupTaskCreateLogic {
 
     /**
      * 发送文本消息到群聊
-     * 调用 NCatSendMessageController 的 /api/ncat/send/group-message 接口
      *
      * @param groupId 群聊ID
      * @param message 消息内容
+     * @param idempotencyKey 幂等键
      */
-    private void sendMessage(Long groupId, String message) {
-        try {
-            SendGroupMessageRequest request = new SendGroupMessageRequest();
-            request.setGroupId(groupId);
-            request.setText(message);
-
-            // 调用本地接口发送消息
-            String url = "http://localhost:8090/api/ncat/send/group-message";
-            JSONObject response = restTemplate.postForObject(url, request, JSONObject.class);
-
-        //    log.info("[VIPGroupTaskCreateLogic] 消息发送响应: {}", response);
-
-        } catch (Exception e) {
-            log.error("[VIPGroupTaskCreateLogic] 发送消息异常", e);
-        }
+    private void sendMessage(Long groupId, String message, long idempotencyKey) {
+        groupMessageService.queueText(groupId, message, idempotencyKey).thenAccept(response -> {
+            if (!response.isOk() && !response.isDuplicate()) {
+                log.error("[VIPGroupTaskCreateLogic] 发送消息失败: {}", response.getErrorMessage());
+            }
+        });
     }
 }
@@ -1,14 +1,11 @@
 package LDS.Person.tasks.MsgLisLogic;
 
-import com.alibaba.fastjson2.JSONObject;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
-import org.springframework.web.client.RestTemplate;
 
-import LDS.Person.dto.request.SendGroupMessageRequest;
-import LDS.Person.dto.request.GroupTaskRequest;
-import LDS.Person.dto.response.GroupTaskResponse;
+import LDS.Person.service.GroupMessageService;
+import LDS.Person.service.GroupTaskService;
 
 import java.util.Map;
 
@@ -21,67 +18,44 @@ import java.util.Map;
 public class VIPGroupTaskGetLogic {
 
     @Autowired
-    private RestTemplate restTemplate;
+    private GroupTaskService groupTaskService;
+
+    @Autowired
+    private GroupMessageService groupMessageService;
 
     /**
      * 处理"指令查询群组任务->"指令
      * 根据 group_id 查询群组任务配置，并发送到群聊
      *
      * @param groupId 群聊ID
+     * @param idempotencyKey 幂等键，重放的同一条指令只回复一次
      */
-    public void handleGroupTaskQuery(Long groupId) {
+    public void handleGroupTaskQuery(Long groupId, long idempotencyKey) {
         try {
             //log.info("[VIPGroupTaskGetLogic] 处理查询群组任务指令，群组ID: {}", groupId);
 
-            // 1. 构建查询请求
-            GroupTaskRequest request = new GroupTaskRequest();
-            request.setGroupId(String.valueOf(groupId));
-
-            // 2. 调用查询接口
-            String url = "http://localhost:8090/api/group-task/get-by-group";
-            GroupTaskResponse response = restTemplate.postForObject(
-                    url, 
-                    request, 
-                    GroupTaskResponse.class
-            );
-
-            if (response == null) {
-                log.warn("[VIPGroupTaskGetLogic] 查询接口返回 null");
-                sendMessage(groupId, "查询群组任务配置失败：接口返回异常");
-                return;
-            }
-
-            //log.info("[VIPGroupTaskGetLogic] 查询接口响应码: {}，消息: {}", response.getCode(), response.getMessage());
-
-            // 3. 检查查询结果
-            if (response.getCode() != 0) {
-                log.warn("[VIPGroupTaskGetLogic] 查询失败: {}", response.getMessage());
-                sendMessage(groupId, "查询群组任务配置失败: " + response.getMessage());
-                return;
-            }
-
-            // 4. 获取 data 字段
-            Map<String, Object> taskData = response.getData();
+            // 1. 查询群组任务配置
+            Map<String, Object> taskData = groupTaskService.getGroupTaskByGroupId(String.valueOf(groupId));
             if (taskData == null || taskData.isEmpty()) {
                 log.warn("[VIPGroupTaskGetLogic] 任务数据为空");
-                sendMessage(groupId, "暂无群组任务配置数据");
+                sendMessage(groupId, "暂无群组任务配置数据", idempotencyKey);
                 return;
             }
 
            // log.info("[VIPGroupTaskGetLogic] 成功获取群组任务数据: {}", taskData);
 
-            // 5. 格式化数据为可读的文本
+            // 2. 格式化数据为可读的文本
             String formattedMessage = formatTaskData(taskData);
 
-            // 6. 发送到群聊
-            sendMessage(groupId, formattedMessage);
+            // 3. 发送到群聊
+            sendMessage(groupId, formattedMessage, idempotencyKey);
 
             //log.info("[VIPGroupTaskGetLogic] 群组任务信息发送完成");
 
         } catch (Exception e) {
             log.error("[VIPGroupTaskGetLogic] 处理查询群组任务指令异常", e);
             try {
-                sendMessage(groupId, "处理查询群组任务指令失败: " + e.getMessage());
+                sendMessage(groupId, "处理查询群组任务指令失败: " + e.getMessage(), idempotencyKey);
             } catch (Exception ex) {
                 log.error("[VIPGroupTaskGetLogic] 发送错误消息失败", ex);
             }
@@ -143,25 +117,16 @@ public class VIPGroupTaskGetLogic {
 
     /**
      * 发送文本消息到群聊
-     * 调用 NCatSendMessageController 的 /api/ncat/send/group-message 接口
      *
      * @param groupId 群聊ID
      * @param message 消息内容
+     * @param idempotencyKey 幂等键
      */
-    private void sendMessage(Long groupId, String message) {
-        try {
-            SendGroupMessageRequest request = new SendGroupMessageRequest();
-            request.setGroupId(groupId);
-            request.setText(message);
-
-            // 调用本地接口发送消息
-            String url = "http://localhost:8090/api/ncat/send/group-message";
-            JSONObject response = restTemplate.postForObject(url, request, JSONObject.class);
-
-         //   log.info("[VIPGroupTaskGetLogic] 消息发送响应: {}", response);
-
-        } catch (Exception e) {
-            log.error("[VIPGroupTaskGetLogic] 发送消息异常", e);
-        }
+    private void sendMessage(Long groupId, String message, long idempotencyKey) {
+        groupMessageService.queueText(groupId, message, idempotencyKey).thenAccept(response -> {
+            if (!response.isOk() && !response.isDuplicate()) {
+                log.error("[VIPGroupTaskGetLogic] 发送消息失败: {}", response.getErrorMessage());
+            }
+        });
     }
 }
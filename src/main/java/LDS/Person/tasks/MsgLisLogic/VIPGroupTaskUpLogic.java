@@ -1,14 +1,11 @@
 package LDS.Person.tasks.MsgLisLogic;
 
-import com.alibaba.fastjson2.JSONObject;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
-import org.springframework.web.client.RestTemplate;
 
-import LDS.Person.dto.request.SendGroupMessageRequest;
-import LDS.Person.dto.request.GroupTaskUpdateRequest;
-import LDS.Person.dto.response.GroupTaskUpdateResponse;
+import LDS.Person.service.GroupMessageService;
+import LDS.Person.service.GroupTaskService;
 
 import java.util.Map;
 
@@ -21,7 +18,10 @@ import java.util.Map;
 public class VIPGroupTaskUpLogic {
 
     @Autowired
-    private RestTemplate restTemplate;
+    private GroupTaskService groupTaskService;
+
+    @Autowired
+    private GroupMessageService groupMessageService;
 
     /**
      * 处理"指令修改群组任务->字段名=值"指令
@@ -29,8 +29,9 @@ public class VIPGroupTaskUpLogic {
      *
      * @param groupId 群聊ID
      * @param rawMessage 原始消息文本，格式: "指令修改群组任务->字段名=值"
+     * @param idempotencyKey 幂等键，重放的同一条指令只回复一次
      */
-    public void handleGroupTaskUpdate(Long groupId, String rawMessage) {
+    public void handleGroupTaskUpdate(Long groupId, String rawMessage, long idempotencyKey) {
         try {
             log.info("[VIPGroupTaskUpLogic] 处理修改群组任务指令，群组ID: {}，消息: {}", groupId, rawMessage);
 
@@ -38,7 +39,7 @@ public class VIPGroupTaskUpLogic {
             String[] fieldAndValue = extractFieldAndValue(rawMessage);
             if (fieldAndValue == null) {
                 log.warn("[VIPGroupTaskUpLogic] 无法提取字段名和值");
-                sendMessage(groupId, "指令格式错误，正确格式: 指令修改群组任务->字段名=true/false");
+                sendMessage(groupId, "指令格式错误，正确格式: 指令修改群组任务->字段名=true/false", idempotencyKey);
                 return;
             }
 
@@ -55,64 +56,40 @@ public class VIPGroupTaskUpLogic {
                 taskStatus = false;
             } else {
                 log.warn("[VIPGroupTaskUpLogic] 值不是 true 或 false: {}", taskValue);
-                sendMessage(groupId, "值必须为 true 或 false");
+                sendMessage(groupId, "值必须为 true 或 false", idempotencyKey);
                 return;
             }
 
-            // 3. 构建更新请求
-            GroupTaskUpdateRequest updateRequest = new GroupTaskUpdateRequest();
-            updateRequest.setGroupId(String.valueOf(groupId));
-            updateRequest.setTaskName(taskName);
-            updateRequest.setTaskStatus(taskStatus);
-
-            //log.info("[VIPGroupTaskUpLogic] 构建更新请求: groupId={}, taskName={}, taskStatus={}", 
-            //        groupId, taskName, taskStatus);
-
-            // 4. 调用更新接口
-            String url = "http://localhost:8090/api/group-task/update";
-            GroupTaskUpdateResponse updateResponse = restTemplate.postForObject(
-                    url, 
-                    updateRequest, 
-                    GroupTaskUpdateResponse.class
-            );
-
-            if (updateResponse == null) {
-                log.warn("[VIPGroupTaskUpLogic] 更新接口返回 null");
-                sendMessage(groupId, "修改群组任务配置失败：接口返回异常");
-                return;
-            }
-
-            log.info("[VIPGroupTaskUpLogic] 更新接口响应码: {}，消息: {}", updateResponse.getCode(), updateResponse.getMessage());
-
-            // 5. 检查更新结果
-            if (updateResponse.getCode() != 0) {
-                log.warn("[VIPGroupTaskUpLogic] 更新失败: {}", updateResponse.getMessage());
-                sendMessage(groupId, "修改群组任务配置失败: " + updateResponse.getMessage());
+            // 3. 更新群组任务配置
+            Map<String, Object> updatedData;
+            try {
+                updatedData = groupTaskService.updateGroupTask(String.valueOf(groupId), taskName, taskStatus);
+            } catch (RuntimeException e) {
+                log.warn("[VIPGroupTaskUpLogic] 更新失败: {}", e.getMessage());
+                sendMessage(groupId, "修改群组任务配置失败: " + e.getMessage(), idempotencyKey);
                 return;
             }
 
-            // 6. 获取更新后的 data 字段
-            Map<String, Object> updatedData = updateResponse.getData();
             if (updatedData == null || updatedData.isEmpty()) {
-                log.warn("[VIPGroupTaskUpLogic] 更新后的数据为空");
-                sendMessage(groupId, "修改成功，但返回数据为空");
+                log.warn("[VIPGroupTaskUpLogic] 未找到群组任务配置");
+                sendMessage(groupId, "修改群组任务配置失败: 未找到该群组的任务配置", idempotencyKey);
                 return;
             }
 
             log.info("[VIPGroupTaskUpLogic] 成功更新群组任务数据: {}", updatedData);
 
-            // 7. 格式化更新后的数据为可读的文本
+            // 4. 格式化更新后的数据为可读的文本
             String formattedMessage = formatTaskData(updatedData);
 
-            // 8. 发送到群聊
-            sendMessage(groupId, formattedMessage);
+            // 5. 发送到群聊
+            sendMessage(groupId, formattedMessage, idempotencyKey);
 
             //log.info("[VIPGroupTaskUpLogic] 群组任务修改信息发送完成");
 
         } catch (Exception e) {
             log.error("[VIPGroupTaskUpLogic] 处理修改群组任务指令异常", e);
             try {
-                sendMessage(groupId, "处理修改群组任务指令失败: " + e.getMessage());
+                sendMessage(groupId, "处理修改群组任务指令失败: " + e.getMessage(), idempotencyKey);
             } catch (Exception ex) {
                 log.error("[VIPGroupTaskUpLogic] 发送错误消息失败", ex);
             }
@@ -214,25 +191,16 @@ public class VIPGroupTaskUpLogic {
 
     /**
      * 发送文本消息到群聊
-     * 调用 NCatSendMessageController 的 /api/ncat/send/group-message 接口
      *
      * @param groupId 群聊ID
      * @param message 消息内容
+     * @param idempotencyKey 幂等键
      */
-    private void sendMessage(Long groupId, String message) {
-        try {
-            SendGroupMessageRequest request = new SendGroupMessageRequest();
-            request.setGroupId(groupId);
-            request.setText(message);
-
-            // 调用本地接口发送消息
-            String url = "http://localhost:8090/api/ncat/send/group-message";
-            JSONObject response = restTemplate.postForObject(url, request, JSONObject.class);
-
-         //   log.info("[VIPGroupTaskUpLogic] 消息发送响应: {}", response);
-
-        } catch (Exception e) {
-            log.error("[VIPGroupTaskUpLogic] 发送消息异常", e);
-        }
+    private void sendMessage(Long groupId, String message, long idempotencyKey) {
+        groupMessageService.queueText(groupId, message, idempotencyKey).thenAccept(response -> {
+            if (!response.isOk() && !response.isDuplicate()) {
+                log.error("[VIPGroupTaskUpLogic] 发送消息失败: {}", response.getErrorMessage());
+            }
+        });
     }
 }
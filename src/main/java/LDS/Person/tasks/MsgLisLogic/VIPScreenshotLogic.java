@@ -1,12 +1,10 @@
 package LDS.Person.tasks.MsgLisLogic;
 
-import LDS.Person.dto.request.SendGroupImageRequest;
+import LDS.Person.service.GroupMessageService;
 import LDS.Person.util.ImgToUri;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
-import org.springframework.web.client.RestTemplate;
 
 /**
  * VIP 截取窗口并发送图片的逻辑类
@@ -17,9 +15,7 @@ import org.springframework.web.client.RestTemplate;
 public class VIPScreenshotLogic {
 
     @Autowired
-    private RestTemplate restTemplate;
-
-    private static final String SEND_IMAGE_URL = "http://localhost:8090/api/ncat/send/group-image";
+    private GroupMessageService groupMessageService;
 
     /**
      * 从指令中提取窗口标题
@@ -59,8 +55,9 @@ public class VIPScreenshotLogic {
      * 
      * @param groupId 群组ID
      * @param windowTitle 窗口标题
+     * @param idempotencyKey 幂等键，重放的同一条指令只发送一次
      */
-    public void handleScreenshotCommand(Long groupId, String windowTitle) {
+    public void handleScreenshotCommand(Long groupId, String windowTitle, long idempotencyKey) {
         try {
             // log.info("开始处理截取指令 - 窗口标题: {}, 群ID: {}", windowTitle, groupId);
 
@@ -74,8 +71,8 @@ public class VIPScreenshotLogic {
 
             // log.info("窗口截取成功，Data URI 大小: {} KB", String.format("%.2f", dataUri.length() / 1024.0));
 
-            // 2. 调用发送图片接口
-            sendImageToGroup(groupId, dataUri);
+            // 2. 发送图片
+            sendImageToGroup(groupId, dataUri, idempotencyKey);
 
         } catch (Exception e) {
             log.error("处理截取指令异常 - 窗口标题: {}, 群ID: {}", windowTitle, groupId, e);
@@ -83,33 +80,17 @@ public class VIPScreenshotLogic {
     }
 
     /**
-     * 调用 NCatSendMessageController 的 /group-image 接口发送 Data URI 图片
+     * 发送 Data URI 图片
      * 
      * @param groupId 群组ID
      * @param dataUri Data URI 字符串
+     * @param idempotencyKey 幂等键
      */
-    private void sendImageToGroup(Long groupId, String dataUri) {
-        try {
-            SendGroupImageRequest request = new SendGroupImageRequest();
-            request.setGroupId(groupId);
-            request.setFile(dataUri);
-
-            // log.info("准备发送 Data URI 图片到群ID: {}", groupId);
-
-            ResponseEntity<?> response = restTemplate.postForEntity(
-                SEND_IMAGE_URL,
-                request,
-                Object.class
-            );
-
-            if (response.getStatusCode().is2xxSuccessful()) {
-                // log.info("Data URI 图片发送成功 - 群ID: {}", groupId);
-            } else {
-                log.warn(" Data URI 图片发送失败 - 群ID: {}, 状态码: {}", groupId, response.getStatusCode());
+    private void sendImageToGroup(Long groupId, String dataUri, long idempotencyKey) {
+        groupMessageService.queueImage(groupId, dataUri, idempotencyKey).thenAccept(response -> {
+            if (!response.isOk() && !response.isDuplicate()) {
+                log.warn(" Data URI 图片发送失败 - 群ID: {}, 错误: {}", groupId, response.getErrorMessage());
             }
-
-        } catch (Exception e) {
-            log.error("调用发送图片接口异常 - 群ID: {}", groupId, e);
-        }
+        });
     }
 }
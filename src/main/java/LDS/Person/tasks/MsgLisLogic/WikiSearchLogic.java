@@ -1,11 +1,10 @@
 package LDS.Person.tasks.MsgLisLogic;
 
-import com.alibaba.fastjson2.JSONObject;
-import LDS.Person.config.ConfigManager;
+import LDS.Person.napcat.ReplyComposer;
+import LDS.Person.service.GroupMessageService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
-import org.springframework.web.client.RestTemplate;
 
 import LDS.Person.util.WikipediaSearcher;
 
@@ -18,20 +17,16 @@ import LDS.Person.util.WikipediaSearcher;
 public class WikiSearchLogic {
 
     @Autowired
-    private RestTemplate restTemplate;
-
-    // 使用ConfigManager获取配置，避免重复加载配置文件，提高性能
-    private static final ConfigManager configManager = ConfigManager.getInstance();
-    private static final String NCAT_API_BASE = configManager.getNapCatApiBase();
-    private static final String NCAT_AUTH_TOKEN = configManager.getNapCatAuthToken();
+    private GroupMessageService groupMessageService;
 
     /**
      * 处理 Wiki 搜索请求
      * 
      * @param groupId 群组 ID
      * @param wikiContent Wiki 搜索内容
+     * @param idempotencyKey 由触发消息生成的幂等键
      */
-    public void handleWikiSearch(Long groupId, String wikiContent) {
+    public void handleWikiSearch(Long groupId, String wikiContent, long idempotencyKey) {
         try {
             log.info("处理 Wiki 搜索请求 - 群ID: {}，搜索内容: {}", groupId, wikiContent);
             
@@ -40,28 +35,28 @@ public class WikiSearchLogic {
             
             if (searchResult == null || searchResult.isEmpty()) {
                 log.warn("Wiki 搜索返回空结果: {}", wikiContent);
-                sendMessageToGroup(groupId, "Wiki 搜索失败: 没有获取到结果");
+                sendMessageToGroup(groupId, "Wiki 搜索失败: 没有获取到结果", idempotencyKey);
                 return;
             }
 
             // 检查是否是错误信息
             if (searchResult.startsWith("Error:") || searchResult.startsWith("提取失败:") || searchResult.startsWith("无效的响应格式")) {
                 log.warn("Wiki 搜索返回错误: {}", searchResult);
-                sendMessageToGroup(groupId, "Wiki 搜索失败: " + searchResult);
+                sendMessageToGroup(groupId, "Wiki 搜索失败: " + searchResult, idempotencyKey);
                 return;
             }
 
             log.debug("Wiki 搜索结果长度: {}", searchResult.length());
             
-            // 将搜索结果分段发送（考虑消息长度限制）
-            sendLongMessageToGroup(groupId, searchResult);
+            // 将搜索结果作为一条回复发送（过长时自动改为合并转发）
+            sendLongMessageToGroup(groupId, searchResult, idempotencyKey);
             
             log.info(" Wiki 搜索完成 - 群ID: {}", groupId);
             
         } catch (Exception e) {
             log.error("处理 Wiki 搜索异常 - 群ID: {}，异常信息: {}", groupId, e.getMessage());
             log.error("详细堆栈追踪:", e);
-            sendMessageToGroup(groupId, "Wiki 搜索异常: " + e.getMessage());
+            sendMessageToGroup(groupId, "Wiki 搜索异常: " + e.getMessage(), idempotencyKey);
         }
     }
 
@@ -70,77 +65,30 @@ public class WikiSearchLogic {
      * 
      * @param groupId 群组 ID
      * @param message 消息内容
+     * @param idempotencyKey 幂等键
      */
-    private void sendMessageToGroup(Long groupId, String message) {
-        try {
-            // 构建请求头
-            org.springframework.http.HttpHeaders headers = new org.springframework.http.HttpHeaders();
-            headers.set("Authorization", "Bearer " + NCAT_AUTH_TOKEN);
-            headers.set("Content-Type", "application/json");
-
-            // 构建请求体
-            JSONObject requestBody = new JSONObject();
-            requestBody.put("group_id", groupId);
-            
-            com.alibaba.fastjson2.JSONArray messageArray = new com.alibaba.fastjson2.JSONArray();
-            JSONObject messageItem = new JSONObject();
-            messageItem.put("type", "text");
-            JSONObject dataObj = new JSONObject();
-            dataObj.put("text", message);
-            messageItem.put("data", dataObj);
-            messageArray.add(messageItem);
-            requestBody.put("message", messageArray);
-
-            // 发送请求
-            String url = NCAT_API_BASE + "/send_group_msg";
-            org.springframework.http.HttpEntity<String> entity = new org.springframework.http.HttpEntity<>(requestBody.toJSONString(), headers);
-            
-            restTemplate.exchange(url, org.springframework.http.HttpMethod.POST, entity, String.class);
-            
-            // log.debug("消息已发送到群组: {}", groupId);
-        } catch (Exception e) {
-            log.error("发送消息到群组异常 - 群ID: {}", groupId, e);
-        }
+    private void sendMessageToGroup(Long groupId, String message, long idempotencyKey) {
+        groupMessageService.queueText(groupId, message, idempotencyKey).thenAccept(response -> {
+            if (!response.isOk() && !response.isDuplicate()) {
+                log.error("发送消息到群组失败 - 群ID: {}，错误: {}", groupId, response.getErrorMessage());
+            }
+        });
     }
 
     /**
-     * 发送长消息到群组（自动分段）
-     * 考虑 QQ 消息长度限制，超过限制则分多条发送
+     * 发送长消息到群组
+     * 整个结果作为一条回复发送：超过长度阈值时由 GroupMessageService 合成一条合并转发消息，
+     * 不再按行分段逐条调用 NapCat
      * 
      * @param groupId 群组 ID
      * @param message 消息内容
+     * @param idempotencyKey 幂等键
      */
-    private void sendLongMessageToGroup(Long groupId, String message) {
-        try {
-            // QQ 群聊消息长度限制通常为 4096 字符
-            int maxLength = 4000;
-            
-            if (message.length() <= maxLength) {
-                // 消息长度足够短，直接发送
-                sendMessageToGroup(groupId, message);
-            } else {
-                // 消息过长，按照段落或行分割
-                String[] lines = message.split("\n");
-                StringBuilder currentMessage = new StringBuilder();
-                
-                for (String line : lines) {
-                    // 如果加上当前行会超过限制，先发送当前消息
-                    if (currentMessage.length() + line.length() + 1 > maxLength && currentMessage.length() > 0) {
-                        sendMessageToGroup(groupId, currentMessage.toString());
-                        currentMessage = new StringBuilder();
-                    }
-                    
-                    currentMessage.append(line).append("\n");
-                }
-                
-                // 发送剩余的消息
-                if (currentMessage.length() > 0) {
-                    sendMessageToGroup(groupId, currentMessage.toString());
-                }
+    private void sendLongMessageToGroup(Long groupId, String message, long idempotencyKey) {
+        groupMessageService.queueReply(groupId, ReplyComposer.create().text(message), idempotencyKey).thenAccept(response -> {
+            if (!response.isOk() && !response.isDuplicate()) {
+                log.error("发送 Wiki 搜索结果失败 - 群ID: {}，错误: {}", groupId, response.getErrorMessage());
             }
-        } catch (Exception e) {
-            log.error("发送长消息到群组异常 - 群ID: {}", groupId, e);
-            sendMessageToGroup(groupId, "消息发送异常: " + e.getMessage());
-        }
+        });
     }
 }
@@ -1,17 +1,22 @@
 package LDS.Person.tasks;
 
-import com.alibaba.fastjson2.JSONObject;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.RestTemplate;
 
 import LDS.Person.config.NapCatTaskIsOpen;
+import LDS.Person.napcat.IdempotencyCache;
 import LDS.Person.tasks.MsgLisLogic.SteamSearchLogic;
 import LDS.Person.tasks.MsgLisLogic.WikiSearchLogic;
 import LDS.Person.tasks.MsgLisLogic.GalgameSearchLogic;
 import LDS.Person.tasks.MsgLisLogic.OldGameGetLogic;
 import LDS.Person.dto.request.SendGroupMessageRequest;
+import LDS.Person.websocket.event.OneBotEvent;
+import LDS.Person.websocket.listener.ListenerPriority;
+import LDS.Person.websocket.listener.MessageListener;
+import LDS.Person.websocket.listener.MessageListenerChain;
 
 import java.io.InputStream;
 import java.util.Properties;
@@ -27,8 +32,9 @@ import java.util.Properties;
  * - 今日怀旧->     : 发送最近添加的怀旧游戏信息
  */
 @Component
+@Order(MessageListenerChain.ORDER_USER_CMD)
 @Slf4j
-public class MsgLisUserCmdTask {
+public class MsgLisUserCmdTask implements MessageListener {
 
     @Autowired
     private SteamSearchLogic steamSearchLogic;
@@ -66,104 +72,95 @@ public class MsgLisUserCmdTask {
         }
     }
 
+    @Override
+    public String getName() {
+        return "user_cmd";
+    }
+
+    @Override
+    public ListenerPriority getPriority() {
+        return ListenerPriority.NORMAL;
+    }
+
+    /**
+     * 是否为公共指令消息（只看指令前缀，不判断参数是否为空）
+     */
+    @Override
+    public boolean matches(OneBotEvent event) {
+        if (!NapCatTaskIsOpen.isMsgLisUserCmdTask || !event.isGroupMessage()) {
+            return false;
+        }
+        String rawMessage = event.getRawMessage();
+        return rawMessage != null && (rawMessage.startsWith("Steam->") || rawMessage.startsWith("steam->")
+                || rawMessage.startsWith("Wiki->") || rawMessage.startsWith("wiki->")
+                || rawMessage.startsWith("gal->") || rawMessage.startsWith("Gal->")
+                || rawMessage.startsWith("今日怀旧->"));
+    }
+
     /**
      * 处理接收到的 WebSocket 消息
      * 
-     * @param message WebSocket 消息的 JSON 对象
+     * @param event 已解析的 OneBot 事件
+     * @return true 表示已执行用户指令
      */
-    public void handleMessage(JSONObject message) {
+    @Override
+    public boolean handleMessage(OneBotEvent event) {
         // 检查该任务是否启用
         if (!NapCatTaskIsOpen.isMsgLisUserCmdTask) {
             // System.out.println("isMsgLisUserCmdTask未启用");
-            return;
+            return false;
         }
 
         try {
-            String postType = message.getString("post_type");
-
-            // 只处理聊天消息
-            if (!"message".equals(postType)) {
-                return;
-            }
-
-            String messageType = message.getString("message_type");
-
             // 只处理群聊消息
-            if (!"group".equals(messageType)) {
-                return;
+            if (!event.isGroupMessage()) {
+                return false;
             }
 
-            Long groupId = message.getLong("group_id");
-            String rawMessage = message.getString("raw_message");
+            long groupId = event.getGroupId();
+            String rawMessage = event.getRawMessage();
+            // 重放的同一条指令消息只回复一次
+            long idempotencyKey = IdempotencyCache.key(event.getMessageId(), getName());
 
             if (rawMessage == null || rawMessage.isEmpty()) {
-                return;
+                return false;
             }
 
             // 处理 Steam 搜索指令
             if (rawMessage.startsWith("Steam->") || rawMessage.startsWith("steam->")) {
                 String gameName = rawMessage.substring(7).trim();
                 if (!gameName.isEmpty()) {
-                    steamSearchLogic.handleSteamSearch(groupId, gameName);
+                    steamSearchLogic.handleSteamSearch(groupId, gameName, idempotencyKey);
+                    return true;
                 }
+                return false;
             }
 
             // 处理 Wiki 搜索指令
             if (rawMessage.startsWith("Wiki->") || rawMessage.startsWith("wiki->")) {
                 String wikiContent = rawMessage.substring(6).trim();
                 if (!wikiContent.isEmpty()) {
-                    wikiSearchLogic.handleWikiSearch(groupId, wikiContent);
+                    wikiSearchLogic.handleWikiSearch(groupId, wikiContent, idempotencyKey);
+                    return true;
                 }
+                return false;
             }
 
             // 处理 Galgame 搜索指令（仅需要 "gal->" 就可以触发）
             if (rawMessage.startsWith("gal->") || rawMessage.startsWith("Gal->")) {
                 galgameSearchLogic.handleGalgameSearch(groupId);
+                return true;
             }
 
             // 处理 今日怀旧 指令
             if (rawMessage.startsWith("今日怀旧->")) {
-                oldGameGetLogic.handleOldGameGet(groupId);
+                oldGameGetLogic.handleOldGameGet(groupId, idempotencyKey);
+                return true;
             }
 
         } catch (Exception e) {
             log.error("处理用户指令异常", e);
         }
-    }
-
-    /**
-     * 检查是否触发了用户指令
-     * 
-     * @param rawMessage 原始消息文本
-     * @return 如果触发了用户指令返回 true，否则返回 false
-     */
-    public boolean isUserCommandTriggered(String rawMessage) {
-        if (rawMessage == null || rawMessage.isEmpty()) {
-            return false;
-        }
-        
-        // 检查 Steam 指令
-        if (rawMessage.startsWith("Steam->") || rawMessage.startsWith("steam->")) {
-            String gameName = rawMessage.substring(7).trim();
-            return !gameName.isEmpty();
-        }
-
-        // 检查 Wiki 指令
-        if (rawMessage.startsWith("Wiki->") || rawMessage.startsWith("wiki->")) {
-            String wikiContent = rawMessage.substring(6).trim();
-            return !wikiContent.isEmpty();
-        }
-
-        // 检查 Galgame 指令
-        if (rawMessage.startsWith("gal->") || rawMessage.startsWith("Gal->")) {
-            return true;
-        }
-
-        // 检查 今日怀旧 指令
-        if (rawMessage.startsWith("今日怀旧->")) {
-            return true;
-        }
-        
         return false;
     }
 }
@@ -1,20 +1,25 @@
 package LDS.Person.tasks;
 
-import com.alibaba.fastjson2.JSONObject;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Component;
 import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import LDS.Person.config.NapCatTaskIsOpen;
+import LDS.Person.napcat.IdempotencyCache;
 import LDS.Person.service.SingleDefenseService;
 import LDS.Person.tasks.MsgLisLogic.VIPSingleDefenseLogic;
 import LDS.Person.tasks.MsgLisLogic.VIPScreenshotLogic;
 import LDS.Person.tasks.MsgLisLogic.VIPGroupTaskGetLogic;
 import LDS.Person.tasks.MsgLisLogic.VIPGroupTaskUpLogic;
 import LDS.Person.tasks.MsgLisLogic.VIPGroupTaskCreateLogic;
+import LDS.Person.websocket.event.OneBotEvent;
+import LDS.Person.websocket.listener.ListenerPriority;
+import LDS.Person.websocket.listener.MessageListener;
+import LDS.Person.websocket.listener.MessageListenerChain;
 
 import javax.sql.DataSource;
 import java.sql.Connection;
@@ -33,10 +38,13 @@ import java.util.Set;
  * 指令格式：
  * - "指令单防->(昵称)" -> 开启对指定昵称的自动回复"不要狗叫"
  * - "指令撤销" -> 取消所有单防设置
+ *
+ * 监听链中优先级最高：VIP 指令或单防回复都会认领消息
  */
 @Component
+@Order(MessageListenerChain.ORDER_VIP_CMD)
 @Slf4j
-public class MsgLisVipCmdTask {
+public class MsgLisVipCmdTask implements MessageListener {
 
   @Autowired
   private SingleDefenseService singleDefenseService;
@@ -129,39 +137,70 @@ public class MsgLisVipCmdTask {
     return vipIds;
   }
 
+  @Override
+  public String getName() {
+    return "vip_cmd";
+  }
+
+  @Override
+  public ListenerPriority getPriority() {
+    return ListenerPriority.CRITICAL;
+  }
+
+  /**
+   * 是否为白名单用户发出的指令消息，或被单防用户的消息（需要回复"不要狗叫"）
+   * 单防状态只是内存中的一次映射查找，可在读线程上判断
+   */
+  @Override
+  public boolean matches(OneBotEvent event) {
+    if (!NapCatTaskIsOpen.isMsgLisVipCmdTask || !event.isGroupMessage()) {
+      return false;
+    }
+    return isVipCommand(event) || singleDefenseService.isUnderDefense(event.getGroupId(),
+        SingleDefenseService.extractDisplayName(event));
+  }
+
+  /**
+   * VIP 指令为 CRITICAL；单防回复只是自动回复，按 NORMAL 入队，被单防用户刷屏时可被淘汰
+   */
+  @Override
+  public ListenerPriority priorityOf(OneBotEvent event) {
+    return isVipCommand(event) ? ListenerPriority.CRITICAL : ListenerPriority.NORMAL;
+  }
+
+  private boolean isVipCommand(OneBotEvent event) {
+    String rawMessage = event.getRawMessage();
+    return rawMessage != null && rawMessage.contains("指令") && isVipUser(event.getUserId());
+  }
+
   /**
    * 处理接收到的 WebSocket 消息
    * 检查用户是否在白名单中，如果是则处理特殊指令
    * 
-   * @param message WebSocket 消息的 JSON 对象
+   * @param event 已解析的 OneBot 事件
+   * @return true 表示已处理 VIP 指令或单防回复
    */
-  public void handleMessage(JSONObject message) {
+  @Override
+  public boolean handleMessage(OneBotEvent event) {
     // 检查该任务是否启用
     if (!NapCatTaskIsOpen.isMsgLisVipCmdTask) {
       //  System.out.println("isMsgLisVipCmdTask未启用");
-      return;
+      return false;
     }
 
     try {
-      String postType = message.getString("post_type");
-
-      // 只处理聊天消息
-      if (!"message".equals(postType)) {
-        return;
-      }
-
-      String messageType = message.getString("message_type");
-
       // 只处理群聊消息
-      if (!"group".equals(messageType)) {
-        return;
+      if (!event.isGroupMessage()) {
+        return false;
       }
 
-      Long userId = message.getLong("user_id");
-      Long groupId = message.getLong("group_id");
-      String rawMessage = message.getString("raw_message");
+      long userId = event.getUserId();
+      long groupId = event.getGroupId();
+      String rawMessage = event.getRawMessage();
 
-      String displayName = SingleDefenseService.extractDisplayName(message);
+      String displayName = SingleDefenseService.extractDisplayName(event);
+      // 重放的同一条消息只回复一次
+      long idempotencyKey = IdempotencyCache.key(event.getMessageId(), getName());
 
       // 检查白名单用户的指令
       if (isVipUser(userId)) {
@@ -172,14 +211,14 @@ public class MsgLisVipCmdTask {
             singleDefenseService.enableDefense(groupId, nickname);
             log.info("单防已启用 - 群ID: {}，昵称: {}", groupId, nickname);
           }
-          return;
+          return true;
         }
 
         // 处理撤销指令
         if (rawMessage != null && rawMessage.contains("指令撤销")) {
           singleDefenseService.disableDefense(groupId);
           log.info("单防已撤销 - 群ID: {}", groupId);
-          return;
+          return true;
         }
 
         // 处理截取指令
@@ -187,46 +226,47 @@ public class MsgLisVipCmdTask {
           String windowTitle = vipScreenshotLogic.extractWindowTitle(rawMessage);
           if (windowTitle != null && !windowTitle.isEmpty()) {
             log.info("VIP 截取指令触发 - 群ID: {}，窗口标题: {}", groupId, windowTitle);
-            vipScreenshotLogic.handleScreenshotCommand(groupId, windowTitle);
+            vipScreenshotLogic.handleScreenshotCommand(groupId, windowTitle, idempotencyKey);
           }
-          return;
+          return true;
         }
 
         // 处理查询群组任务指令
         if (rawMessage != null && rawMessage.contains("指令查询群组任务->")) {
           log.info("VIP 查询群组任务指令触发 - 群ID: {}", groupId);
-          vipGroupTaskGetLogic.handleGroupTaskQuery(groupId);
-          return;
+          vipGroupTaskGetLogic.handleGroupTaskQuery(groupId, idempotencyKey);
+          return true;
         }
 
         // 处理修改群组任务指令
         if (rawMessage != null && rawMessage.contains("指令修改群组任务->")) {
           log.info("VIP 修改群组任务指令触发 - 群ID: {}", groupId);
-          vipGroupTaskUpLogic.handleGroupTaskUpdate(groupId, rawMessage);
-          return;
+          vipGroupTaskUpLogic.handleGroupTaskUpdate(groupId, rawMessage, idempotencyKey);
+          return true;
         }
 
         // 处理新增群组任务指令
         if (rawMessage != null && rawMessage.contains("指令新增群组任务->")) {
           log.info("VIP 新增群组任务指令触发 - 群ID: {}", groupId);
-          vipGroupTaskCreateLogic.handleGroupTaskCreate(groupId, rawMessage);
-          return;
+          vipGroupTaskCreateLogic.handleGroupTaskCreate(groupId, rawMessage, idempotencyKey);
+          return true;
         }
       }
 
-      // 检查是否有针对此昵称的单防设置
+      // 检查是否有针对此昵称的单防设置，被单防用户的消息在此认领，不再触发后续任务
       if (singleDefenseService.isUnderDefense(groupId, displayName)) {
         log.info("单防触发 - 群ID: {}，昵称: {}", groupId, displayName);
         // 使用逻辑类发送回复
-        Long messageId = message.getLong("message_id");
-        if (messageId != null) {
-          vipSingleDefenseLogic.replyToMessage(groupId, messageId, "不要狗叫");
+        if (event.hasMessageId()) {
+          vipSingleDefenseLogic.replyToMessage(groupId, event.getMessageId(), "不要狗叫", idempotencyKey);
         }
+        return true;
       }
 
     } catch (Exception e) {
       log.error("处理 VIP 消息异常", e);
     }
+    return false;
   }
 
   /**
@@ -241,30 +281,4 @@ public class MsgLisVipCmdTask {
     }
     return VIP_USER_IDS.contains(userId);
   }
-
-  /**
-   * 检查是否触发了 VIP 指令
-   * 
-   * @param userId 用户ID
-   * @param rawMessage 原始消息文本
-   * @return 如果触发了 VIP 指令返回 true，否则返回 false
-   */
-  public boolean isVipCommandTriggered(Long userId, String rawMessage) {
-    if (rawMessage == null || rawMessage.isEmpty()) {
-      return false;
-    }
-
-    // 检查用户是否在 VIP 白名单中
-    if (!isVipUser(userId)) {
-      return false;
-    }
-
-    // 检查是否包含 VIP 指令
-    return rawMessage.contains("指令单防->") || 
-           rawMessage.contains("指令撤销") || 
-           rawMessage.contains("指令截取->") ||
-           rawMessage.contains("指令查询群组任务->") ||
-           rawMessage.contains("指令修改群组任务->") ||
-           rawMessage.contains("指令新增群组任务->");
-  }
 }
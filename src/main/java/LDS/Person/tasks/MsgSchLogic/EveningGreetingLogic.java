@@ -4,19 +4,20 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
-import org.springframework.web.client.RestTemplate;
 
-import LDS.Person.dto.request.SendGroupMessageRequest;
+import LDS.Person.napcat.NapCatResponse;
+import LDS.Person.service.GroupMessageService;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.Random;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * 每日晚安问候逻辑处理器
  * 查询需要发送晚安问候的群组
  * 获取最新晚安问候文本
- * 依次发送到各群聊
+ * 交给 SendScheduler 按限速依次发送到各群聊
  */
 @Component
 @Slf4j
@@ -26,9 +27,7 @@ public class EveningGreetingLogic {
     private JdbcTemplate jdbcTemplate;
 
     @Autowired
-    private RestTemplate restTemplate;
-
-    private static final Random random = new Random();
+    private GroupMessageService groupMessageService;
 
     /**
      * 执行晚安问候发送逻辑
@@ -55,25 +54,18 @@ public class EveningGreetingLogic {
 
             //log.info("[EveningGreetingLogic] 获取晚安问候文本，长度: {}", eveningText.length());
 
-            // 3. 依次向每个群组发送问候，间隔 1~3 秒
-            for (int i = 0; i < groupIds.size(); i++) {
-                String groupId = groupIds.get(i);
+            // 3. 交给发送调度器排队，由调度器控制群间隔，当前定时任务线程不再等待
+            List<CompletableFuture<?>> sends = new ArrayList<>(groupIds.size());
+            for (String groupId : groupIds) {
                 try {
-                    sendMessageToGroup(groupId, eveningText);
-                    //log.info("[EveningGreetingLogic] 晚安问候已发送到群组: {}", groupId);
-
-                    // 如果不是最后一个群组，则随机等待 1~3 秒
-                    if (i < groupIds.size() - 1) {
-                        long delayMillis = 1000 + random.nextInt(2001); // 1000~3000 毫秒
-                        log.debug("[EveningGreetingLogic] 等待 {} 毫秒后发送下一个群组的晚安问候", delayMillis);
-                        Thread.sleep(delayMillis);
-                    }
+                    sends.add(sendMessageToGroup(groupId, eveningText));
                 } catch (Exception e) {
                     log.error("[EveningGreetingLogic] 发送晚安问候到群组 {} 失败", groupId, e);
                 }
             }
 
-            log.info("[EveningGreetingLogic] 所有晚安问候发送完成");
+            CompletableFuture.allOf(sends.toArray(new CompletableFuture[0]))
+                    .whenComplete((v, e) -> log.info("[EveningGreetingLogic] 所有晚安问候发送完成"));
 
         } catch (Exception e) {
             log.error("[EveningGreetingLogic] 发送每日晚安问候异常", e);
@@ -123,26 +115,17 @@ public class EveningGreetingLogic {
     }
 
     /**
-     * 发送消息到指定群组
-     * 调用本地 API 接口 POST /api/ncat/send/group-message
+     * 排队发送消息到指定群组
      * 
      * @param groupId 群组ID
      * @param text 消息文本
      */
-    private void sendMessageToGroup(String groupId, String text) {
-        try {
-            SendGroupMessageRequest request = new SendGroupMessageRequest();
-            request.setGroupId(Long.parseLong(groupId));
-            request.setText(text);
-
-            // 调用本地接口发送消息
-            String url = "http://localhost:8090/api/ncat/send/group-message";
-            Object response = restTemplate.postForObject(url, request, Object.class);
-
-           // log.debug("[EveningGreetingLogic] 发送消息到群组 {} 的响应: {}", groupId, response);
-
-        } catch (Exception e) {
-            log.error("[EveningGreetingLogic] 发送消息到群组 {} 失败", groupId, e);
-        }
+    private CompletableFuture<NapCatResponse> sendMessageToGroup(String groupId, String text) {
+        return groupMessageService.queueDurableText(Long.parseLong(groupId), text)
+                .whenComplete((response, e) -> {
+                    if (!response.isOk()) {
+                        log.error("[EveningGreetingLogic] 发送消息到群组 {} 失败: {}", groupId, response.getErrorMessage());
+                    }
+                });
     }
 }
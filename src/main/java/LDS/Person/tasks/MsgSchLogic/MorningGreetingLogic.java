@@ -4,22 +4,22 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
-import org.springframework.web.client.RestTemplate;
 
-import LDS.Person.dto.request.SendGroupMessageRequest;
-import LDS.Person.dto.request.SendGroupImageRequest;
+import LDS.Person.napcat.NapCatResponse;
+import LDS.Person.service.GroupMessageService;
 import LDS.Person.util.AlcyWebpGet;
 import LDS.Person.util.ImgToUri;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.Random;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * 每日早安问候逻辑处理器
  * 查询需要发送早安问候的群组
  * 获取最新早安问候文本
- * 依次发送到各群聊
+ * 交给 SendScheduler 按限速依次发送到各群聊
  */
 @Component
 @Slf4j
@@ -29,9 +29,7 @@ public class MorningGreetingLogic {
     private JdbcTemplate jdbcTemplate;
 
     @Autowired
-    private RestTemplate restTemplate;
-
-    private static final Random random = new Random();
+    private GroupMessageService groupMessageService;
 
     /**
      * 执行早安问候发送逻辑
@@ -58,34 +56,27 @@ public class MorningGreetingLogic {
 
             //log.info("[MorningGreetingLogic] 获取早安问候文本，长度: {}", morningText.length());
 
-            // 3. 依次向每个群组发送问候，间隔 1~3 秒
-            for (int i = 0; i < groupIds.size(); i++) {
-                String groupId = groupIds.get(i);
+            // 3. 交给发送调度器排队，由调度器控制群间隔，当前定时任务线程不再等待
+            //    同一群内先文本后图片，调度器按提交顺序发送
+            List<CompletableFuture<?>> sends = new ArrayList<>(groupIds.size() * 2);
+            for (String groupId : groupIds) {
                 try {
                     // 先发送文本消息
-                    sendMessageToGroup(groupId, morningText);
-                    //log.info("[MorningGreetingLogic] 早安问候文本已发送到群组: {}", groupId);
+                    sends.add(sendMessageToGroup(groupId, morningText));
 
                     // 再获取图片、转码、发送图片消息
                     try {
-                        sendImageToGroup(groupId);
-                        //log.info("[MorningGreetingLogic] 早安问候图片已发送到群组: {}", groupId);
+                        sends.add(sendImageToGroup(groupId));
                     } catch (Exception e) {
                         log.warn("[MorningGreetingLogic] 图片发送到群组 {} 失败，但继续执行", groupId, e);
                     }
-
-                    // 如果不是最后一个群组，则随机等待 1~3 秒
-                    if (i < groupIds.size() - 1) {
-                        long delayMillis = 1000 + random.nextInt(2001); // 1000~3000 毫秒
-                        log.debug("[MorningGreetingLogic] 等待 {} 毫秒后发送下一个群组的问候", delayMillis);
-                        Thread.sleep(delayMillis);
-                    }
                 } catch (Exception e) {
                     log.error("[MorningGreetingLogic] 发送早安问候到群组 {} 失败", groupId, e);
                 }
             }
 
-            log.info("[MorningGreetingLogic] 所有早安问候发送完成");
+            CompletableFuture.allOf(sends.toArray(new CompletableFuture[0]))
+                    .whenComplete((v, e) -> log.info("[MorningGreetingLogic] 所有早安问候发送完成"));
 
         } catch (Exception e) {
             log.error("[MorningGreetingLogic] 发送每日早安问候异常", e);
@@ -135,38 +126,29 @@ public class MorningGreetingLogic {
     }
 
     /**
-     * 发送消息到指定群组
-     * 调用本地 API 接口 POST /api/ncat/send/group-message
+     * 排队发送消息到指定群组
      * 
      * @param groupId 群组ID
      * @param text 消息文本
      */
-    private void sendMessageToGroup(String groupId, String text) {
-        try {
-            SendGroupMessageRequest request = new SendGroupMessageRequest();
-            request.setGroupId(Long.parseLong(groupId));
-            request.setText(text);
-
-            // 调用本地接口发送消息
-            String url = "http://localhost:8090/api/ncat/send/group-message";
-            Object response = restTemplate.postForObject(url, request, Object.class);
-
-            //log.debug("[MorningGreetingLogic] 发送消息到群组 {} 的响应: {}", groupId, response);
-
-        } catch (Exception e) {
-            log.error("[MorningGreetingLogic] 发送消息到群组 {} 失败", groupId, e);
-        }
+    private CompletableFuture<NapCatResponse> sendMessageToGroup(String groupId, String text) {
+        return groupMessageService.queueDurableText(Long.parseLong(groupId), text)
+                .whenComplete((response, e) -> {
+                    if (!response.isOk()) {
+                        log.error("[MorningGreetingLogic] 发送消息到群组 {} 失败: {}", groupId, response.getErrorMessage());
+                    }
+                });
     }
 
     /**
      * 获取随机图片、转码并发送到指定群组
      * 1. 使用 AlcyWebpGet 获取图片并保存为每个群组独立的文件
      * 2. 使用 ImgToUri 转码为 Data URI
-     * 3. 通过 /api/ncat/send/group-image 接口发送到群组
+     * 3. 通过 GroupMessageService 排队发送到群组
      * 
      * @param groupId 群组ID
      */
-    private void sendImageToGroup(String groupId) throws Exception {
+    private CompletableFuture<NapCatResponse> sendImageToGroup(String groupId) throws Exception {
         try {
             //log.info("[MorningGreetingLogic] 开始获取并发送图片到群组: {}", groupId);
 
@@ -184,15 +166,13 @@ public class MorningGreetingLogic {
 
             //log.debug("[MorningGreetingLogic] 图片转码成功，Data URI 长度: {}", dataUri.length());
 
-            // 3. 通过接口发送图片到群组
-            SendGroupImageRequest request = new SendGroupImageRequest();
-            request.setGroupId(Long.parseLong(groupId));
-            request.setFile(dataUri);
-
-            String url = "http://localhost:8090/api/ncat/send/group-image";
-            Object response = restTemplate.postForObject(url, request, Object.class);
-
-            //log.debug("[MorningGreetingLogic] 发送图片到群组 {} 的响应: {}", groupId, response);
+            // 3. 排队发送图片到群组
+            return groupMessageService.queueDurableImage(Long.parseLong(groupId), dataUri)
+                    .whenComplete((response, e) -> {
+                        if (!response.isOk()) {
+                            log.warn("[MorningGreetingLogic] 图片发送到群组 {} 失败: {}", groupId, response.getErrorMessage());
+                        }
+                    });
 
         } catch (Exception e) {
             log.error("[MorningGreetingLogic] 发送图片到群组 {} 失败", groupId, e);
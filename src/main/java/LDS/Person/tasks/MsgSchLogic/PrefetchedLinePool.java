@@ -0,0 +1,225 @@
+package LDS.Person.tasks.MsgSchLogic;
+
+import LDS.Person.config.ConfigManager;
+import LDS.Person.tasks.MsgLisLogic.AtMentionBatcher;
+import LDS.Person.websocket.dispatch.EventDispatcher;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 预生成文本池 - 按类型在后台预先调用 DeepSeek 生成若干条文本，定时任务触发时直接取用
+ * 随机群聊等固定提示词的生成不再在调度线程上同步等待网络，池为空时才由调用方现场生成
+ *
+ * 后台线程每隔 refill.interval.ms 检查一次：先丢弃超过 ttl.minutes 的旧文本，
+ * 再在系统空闲时（事件分发队列深度不超过 idle.queue.depth，且没有正在收集或处理的 @机器人 批次）
+ * 把各类型补足到 pool.size 条；补充请求在独立的线程池中执行，同时进行的生成不超过 max.concurrency 个
+ *
+ * 配置项（config.properties）：
+ * - prefetch.enabled              是否启用，默认 true；关闭时 take 始终返回 null
+ * - prefetch.pool.size            每个类型保留的文本条数，默认 3
+ * - prefetch.ttl.minutes          文本的最长保留时间（分钟），默认 180
+ * - prefetch.refill.interval.ms   检查补充的间隔（毫秒），默认 60000
+ * - prefetch.max.concurrency      同时进行的生成请求数上限，默认 1
+ * - prefetch.idle.queue.depth     视为空闲的事件分发队列深度上限，默认 0
+ */
+@Component
+@Slf4j
+public class PrefetchedLinePool {
+
+    private static final ConfigManager configManager = ConfigManager.getInstance();
+
+    private final EventDispatcher eventDispatcher;
+    private final AtMentionBatcher atMentionBatcher;
+
+    private final boolean enabled;
+    private final int poolSize;
+    private final long ttlMillis;
+    private final int idleQueueDepth;
+    private final Semaphore permits;
+
+    private final Map<String, Pool> pools = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService refiller;
+    private final ExecutorService generators;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder generatedCount = new LongAdder();
+    private final LongAdder failedCount = new LongAdder();
+    private final LongAdder expiredCount = new LongAdder();
+    private final LongAdder busySkipCount = new LongAdder();
+
+    public PrefetchedLinePool(EventDispatcher eventDispatcher, AtMentionBatcher atMentionBatcher) {
+        this.eventDispatcher = eventDispatcher;
+        this.atMentionBatcher = atMentionBatcher;
+        this.enabled = configManager.getBoolean("prefetch.enabled", true);
+        this.poolSize = Math.max(1, configManager.getInt("prefetch.pool.size", 3));
+        this.ttlMillis = TimeUnit.MINUTES.toMillis(Math.max(1, configManager.getInt("prefetch.ttl.minutes", 180)));
+        this.idleQueueDepth = Math.max(0, configManager.getInt("prefetch.idle.queue.depth", 0));
+        int concurrency = Math.max(1, configManager.getInt("prefetch.max.concurrency", 1));
+        this.permits = new Semaphore(concurrency);
+        long intervalMs = Math.max(1000, configManager.getInt("prefetch.refill.interval.ms", 60000));
+        this.refiller = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "prefetch-refill");
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger generatorIndex = new AtomicInteger();
+        this.generators = Executors.newFixedThreadPool(concurrency, r -> {
+            Thread thread = new Thread(r, "prefetch-gen-" + generatorIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (enabled) {
+            refiller.scheduleWithFixedDelay(this::refill, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 注册一个文本类型
+     *
+     * @param type      类型名，如 random_chat
+     * @param generator 生成一条文本，返回 null 或空串视为失败；在后台线程上调用
+     */
+    public void register(String type, Callable<String> generator) {
+        pools.putIfAbsent(type, new Pool(generator));
+    }
+
+    /**
+     * 取出一条未过期的预生成文本（最早生成的优先）
+     *
+     * @return 文本；池为空或未启用时返回 null，调用方应现场生成
+     */
+    public String take(String type) {
+        Pool pool = pools.get(type);
+        if (!enabled || pool == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        Line line;
+        while ((line = pool.lines.poll()) != null) {
+            pool.size.decrementAndGet();
+            if (now - line.createdAtMillis <= ttlMillis) {
+                hitCount.increment();
+                return line.text;
+            }
+            expiredCount.increment();
+        }
+        missCount.increment();
+        return null;
+    }
+
+    /**
+     * 获取预生成统计
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("pool_size", poolSize);
+        stats.put("ttl_minutes", TimeUnit.MILLISECONDS.toMinutes(ttlMillis));
+        stats.put("hits", hitCount.sum());
+        stats.put("misses", missCount.sum());
+        stats.put("generated", generatedCount.sum());
+        stats.put("failed", failedCount.sum());
+        stats.put("expired", expiredCount.sum());
+        stats.put("skipped_busy", busySkipCount.sum());
+        Map<String, Object> sizes = new LinkedHashMap<>();
+        pools.forEach((type, pool) -> sizes.put(type, pool.size.get()));
+        stats.put("available", sizes);
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refiller.shutdownNow();
+        generators.shutdownNow();
+    }
+
+    /**
+     * 丢弃过期文本，空闲时为不足的类型提交生成任务
+     */
+    private void refill() {
+        try {
+            long now = System.currentTimeMillis();
+            for (Pool pool : pools.values()) {
+                Line oldest;
+                while ((oldest = pool.lines.peek()) != null && now - oldest.createdAtMillis > ttlMillis) {
+                    if (pool.lines.remove(oldest)) {
+                        pool.size.decrementAndGet();
+                        expiredCount.increment();
+                    }
+                }
+            }
+            if (eventDispatcher.getQueueDepth() > idleQueueDepth || !atMentionBatcher.isIdle()) {
+                busySkipCount.increment();
+                return;
+            }
+            for (Map.Entry<String, Pool> entry : pools.entrySet()) {
+                Pool pool = entry.getValue();
+                while (pool.size.get() + pool.inFlight.get() < poolSize && permits.tryAcquire()) {
+                    pool.inFlight.incrementAndGet();
+                    generators.execute(() -> generate(entry.getKey(), pool));
+                }
+            }
+        } catch (Exception e) {
+            log.error("[PrefetchedLinePool] 补充预生成文本异常: {}", e.getMessage(), e);
+        }
+    }
+
+    private void generate(String type, Pool pool) {
+        try {
+            String text = pool.generator.call();
+            if (text == null || text.isEmpty()) {
+                failedCount.increment();
+                return;
+            }
+            pool.lines.add(new Line(text, System.currentTimeMillis()));
+            pool.size.incrementAndGet();
+            generatedCount.increment();
+            log.debug("[PrefetchedLinePool] 预生成 {} 一条，当前 {} 条", type, pool.size.get());
+        } catch (Exception e) {
+            failedCount.increment();
+            log.warn("[PrefetchedLinePool] 预生成 {} 失败: {}", type, e.getMessage());
+        } finally {
+            pool.inFlight.decrementAndGet();
+            permits.release();
+        }
+    }
+
+    /**
+     * 一个类型的文本池；size 与队列长度保持一致，避免 ConcurrentLinkedQueue.size() 的线性遍历
+     */
+    private static final class Pool {
+        final Callable<String> generator;
+        final ConcurrentLinkedQueue<Line> lines = new ConcurrentLinkedQueue<>();
+        final AtomicInteger size = new AtomicInteger();
+        final AtomicInteger inFlight = new AtomicInteger();
+
+        Pool(Callable<String> generator) {
+            this.generator = generator;
+        }
+    }
+
+    private static final class Line {
+        final String text;
+        final long createdAtMillis;
+
+        Line(String text, long createdAtMillis) {
+            this.text = text;
+            this.createdAtMillis = createdAtMillis;
+        }
+    }
+}
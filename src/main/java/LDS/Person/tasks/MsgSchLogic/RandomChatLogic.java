@@ -1,56 +1,38 @@
 package LDS.Person.tasks.MsgSchLogic;
 
+import LDS.Person.service.GroupMessageService;
 import LDS.Person.util.DSchatNcatQQ;
-import com.alibaba.fastjson2.JSONObject;
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.HttpMethod;
-import org.springframework.http.HttpStatus;
-import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
-import org.springframework.web.client.RestTemplate;
-
-import java.io.InputStream;
-import java.util.Properties;
 
 /**
  * 随机群聊逻辑处理器
  * 定时生成无关紧要的对话并发送到最近一次的群聊
+ * 对话文本优先从 PrefetchedLinePool 中取预先生成的，池为空时才现场调用 DeepSeek
  */
 @Component
 @Slf4j
 public class RandomChatLogic {
     
+    // 预生成文本池中的类型名
+    private static final String POOL_TYPE = "random_chat";
+
+    private static final String PROMPT = "生成一句无关紧要随意聊天的二次元对话，不要带引号";
+
     // 存储最近一次的群聊ID
     private static volatile String lastGroupId = null;
     
     @Autowired
-    private RestTemplate restTemplate;
-    
-    private static String NCAT_API_BASE;
-    private static String NCAT_AUTH_TOKEN;
-    
-    // 静态初始化块：从 config.properties 读取配置
-    static {
-        Properties props = new Properties();
-        try (InputStream input = RandomChatLogic.class.getClassLoader()
-                .getResourceAsStream("config.properties")) {
-            if (input != null) {
-                props.load(input);
-                NCAT_API_BASE = props.getProperty("NapCatApiBase", "http://0.0.0.0:3000");
-                NCAT_AUTH_TOKEN = props.getProperty("NapCatAuthToken", "");
-            } else {
-                log.warn("[RandomChatLogic] config.properties not found, using default values");
-                NCAT_API_BASE = "http://0.0.0.0:3000";
-                NCAT_AUTH_TOKEN = "";
-            }
-        } catch (Exception e) {
-            log.error("[RandomChatLogic] Failed to load config.properties: {}", e.getMessage());
-            NCAT_API_BASE = "http://0.0.0.0:3000";
-            NCAT_AUTH_TOKEN = "";
-        }
+    private GroupMessageService groupMessageService;
+
+    @Autowired
+    private PrefetchedLinePool prefetchedLinePool;
+
+    @PostConstruct
+    public void registerPrefetch() {
+        prefetchedLinePool.register(POOL_TYPE, () -> callDeepSeekAPI(PROMPT));
     }
     
     /**
@@ -106,9 +88,11 @@ public class RandomChatLogic {
                 return;
             }
             log.info("触发随机对话群ID: {}", groupId);
-            // 调用 DeepSeek 生成对话
-            String prompt = "生成一句无关紧要随意聊天的二次元对话，不要带引号";
-            String randomMessage = callDeepSeekAPI(prompt);
+            // 优先使用预生成的对话，池为空时现场调用 DeepSeek 生成
+            String randomMessage = prefetchedLinePool.take(POOL_TYPE);
+            if (randomMessage == null) {
+                randomMessage = callDeepSeekAPI(PROMPT);
+            }
             
             if (randomMessage == null || randomMessage.isEmpty()) {
                 log.warn("[RandomChatLogic] 生成的随机对话为空，跳过发送");
@@ -128,27 +112,11 @@ public class RandomChatLogic {
      */
     private void sendGroupMessage(String groupId, String message) {
         try {
-            String url = NCAT_API_BASE + "/send_group_msg";
-            
-            // 构建请求体
-            JSONObject requestBody = new JSONObject();
-            requestBody.put("group_id", Long.parseLong(groupId));
-            requestBody.put("message", message);
-            
-            
-            HttpHeaders headers = new HttpHeaders();
-            headers.set("Authorization", NCAT_AUTH_TOKEN);
-            headers.set("Content-Type", "application/json");
-            
-            HttpEntity<String> entity = new HttpEntity<>(requestBody.toJSONString(), headers);
-            ResponseEntity<String> response = restTemplate.exchange(url, HttpMethod.POST, entity, String.class);
-            
-            if (response.getStatusCode() == HttpStatus.OK) {
-                // log.info("[RandomChatLogic] 成功发送随机对话到群 {}", groupId);
-            } else {
-                log.error("[RandomChatLogic] 群聊消息发送失败 - 状态码: {}", response.getStatusCode());
-            }
-            
+            groupMessageService.queueMessage(Long.parseLong(groupId), message).thenAccept(response -> {
+                if (!response.isOk()) {
+                    log.error("[RandomChatLogic] 群聊消息发送失败 - {}", response.getErrorMessage());
+                }
+            });
         } catch (Exception e) {
             log.error("[RandomChatLogic] 发送群聊消息异常: {}", e.getMessage(), e);
         }
@@ -0,0 +1,357 @@
+package LDS.Person.util;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 对话上下文存储 - 每个上下文一个固定容量的环形缓冲区
+ *
+ * 每条消息在写入时就序列化为 {"role":...,"content":...} 的 UTF-8 JSON 字节并缓存，
+ * 构建请求时只需把各条消息的字节依次拼接成 messages 数组，不再复制整个 ArrayNode 再重新序列化；
+ * 超出容量时覆盖最旧的一条，不再逐条 remove(0) 搬移数组
+ *
+ * 所有上下文共用一把锁（实际只有 DSchatNcatQQ 的共享上下文一个键，按键分段锁不会减少竞争），
+ * 写入、读取快照和清空都在锁内完成，多个 @机器人 请求并发读写共享上下文时不会丢消息或读到半写状态；
+ * 拼接字节在锁外进行，锁内只复制引用
+ *
+ * 按 token 预算取窗口（window）：每个上下文记录一个窗口起点，起点只在估算 token 超出预算时才前移，
+ * 且一次前移到只保留预算的 retainPercent%，之后的多轮对话只在末尾追加，
+ * 请求前缀（system 提示 + 窗口内的历史）在两次裁剪之间保持不变，DeepSeek 服务端的上下文缓存可以持续命中
+ *
+ * 环形缓冲区覆盖掉窗口起点时同样按裁剪处理（一次性前移并报告 trimmed），而不是每轮随最旧的消息滑动；
+ * 容量应不小于 capacityFor(tokenBudget, ...)，这样预算内的窗口总能完整留在缓冲区中，起点只由预算触发前移
+ */
+public final class ConversationStore {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final int capacity;
+
+    // 由 lock 保护
+    private final Object lock = new Object();
+    private final Map<String, Ring> rings = new HashMap<>();
+
+    public ConversationStore(int capacity) {
+        this.capacity = Math.max(1, capacity);
+    }
+
+    /**
+     * 按 token 预算推算的最小容量：每条消息至少占 MESSAGE_OVERHEAD_TOKENS，
+     * 预算内的窗口最多 tokenBudget / MESSAGE_OVERHEAD_TOKENS 条，另留出两次取窗口之间一问一答的两条
+     *
+     * @param minCapacity 配置的容量下限
+     */
+    public static int capacityFor(int tokenBudget, int minCapacity) {
+        return Math.max(minCapacity, tokenBudget / TokenEstimator.MESSAGE_OVERHEAD_TOKENS + 2);
+    }
+
+    /**
+     * 一条已序列化的消息
+     */
+    public static final class Message {
+        private final String role;
+        private final String content;
+        private final byte[] json;
+        private final int tokens;
+
+        private Message(String role, String content, byte[] json) {
+            this.role = role;
+            this.content = content;
+            this.json = json;
+            this.tokens = TokenEstimator.estimateMessage(content);
+        }
+
+        /**
+         * 构建消息并预先序列化
+         */
+        public static Message of(String role, String content) {
+            ObjectNode node = mapper.createObjectNode();
+            node.put("role", role);
+            node.put("content", content);
+            try {
+                return new Message(role, content, mapper.writeValueAsBytes(node));
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException("消息序列化失败", e);
+            }
+        }
+
+        public String getRole() {
+            return role;
+        }
+
+        public String getContent() {
+            return content;
+        }
+
+        /**
+         * 估算的 token 数（含消息固定开销）
+         */
+        public int getTokens() {
+            return tokens;
+        }
+
+        /**
+         * 预序列化的 UTF-8 JSON 字节，调用方不得修改
+         */
+        public byte[] getJson() {
+            return json;
+        }
+
+        public ObjectNode toNode() {
+            ObjectNode node = mapper.createObjectNode();
+            node.put("role", role);
+            node.put("content", content);
+            return node;
+        }
+    }
+
+    /**
+     * 一次请求使用的上下文窗口
+     */
+    public static final class Window {
+        private final byte[] json;
+        private final int messageCount;
+        private final int estimatedTokens;
+        private final boolean trimmed;
+
+        private Window(byte[] json, int messageCount, int estimatedTokens, boolean trimmed) {
+            this.json = json;
+            this.messageCount = messageCount;
+            this.estimatedTokens = estimatedTokens;
+            this.trimmed = trimmed;
+        }
+
+        /**
+         * messages 数组的 JSON 字节
+         */
+        public byte[] getJson() {
+            return json;
+        }
+
+        /**
+         * 数组中的消息条数（含前置消息）
+         */
+        public int getMessageCount() {
+            return messageCount;
+        }
+
+        public int getEstimatedTokens() {
+            return estimatedTokens;
+        }
+
+        /**
+         * 本次是否前移了窗口起点（前缀改变，缓存会失效一次）
+         */
+        public boolean isTrimmed() {
+            return trimmed;
+        }
+    }
+
+    /**
+     * 追加一条消息，超过容量时覆盖最旧的一条
+     */
+    public void append(String key, String role, String content) {
+        Message message = Message.of(role, content);
+        synchronized (lock) {
+            rings.computeIfAbsent(key, k -> new Ring(capacity)).add(message);
+        }
+    }
+
+    /**
+     * 按时间顺序返回上下文中的消息快照
+     */
+    public List<Message> snapshot(String key) {
+        synchronized (lock) {
+            Ring ring = rings.get(key);
+            return ring == null ? new ArrayList<>() : ring.toList();
+        }
+    }
+
+    /**
+     * 拼接 messages 数组的 JSON 字节：[前置消息..., 上下文中的全部消息]
+     *
+     * @param leading 放在历史之前的消息（如 system 提示），可为空
+     */
+    public byte[] toMessagesJson(String key, Message... leading) {
+        return toJson(leading, snapshot(key));
+    }
+
+    /**
+     * 按 token 预算取上下文窗口
+     * 窗口起点保持不动，直到前置消息与窗口内历史的估算 token 超出 tokenBudget，或起点已被环形缓冲区覆盖；
+     * 此时把起点前移到只保留约 retainPercent% 预算（且不超过容量的 retainPercent%）的最近消息，
+     * 并对齐到一条 user 消息，最新的一条消息总会被保留
+     *
+     * @param tokenBudget   整个 messages 数组的估算 token 上限
+     * @param retainPercent 超出预算时保留的比例（1~100）
+     * @param leading       放在历史之前的消息（如 system 提示），可为空
+     */
+    public Window window(String key, int tokenBudget, int retainPercent, Message... leading) {
+        int leadingTokens = 0;
+        for (Message message : leading) {
+            leadingTokens += message.tokens;
+        }
+        List<Message> history;
+        boolean trimmed = false;
+        int historyTokens = 0;
+        synchronized (lock) {
+            Ring ring = rings.get(key);
+            if (ring == null) {
+                history = new ArrayList<>();
+            } else {
+                // 起点已被覆盖时从最旧的一条算起，并强制重新定起点
+                boolean overwritten = ring.anchorSeq < ring.firstSeq();
+                int start = overwritten ? 0 : (int) (ring.anchorSeq - ring.firstSeq());
+                for (int i = start; i < ring.size; i++) {
+                    historyTokens += ring.get(i).tokens;
+                }
+                if (overwritten || (leadingTokens + historyTokens > tokenBudget && start < ring.size - 1)) {
+                    int retain = Math.min(100, Math.max(1, retainPercent));
+                    long retainBudget = (long) tokenBudget * retain / 100 - leadingTokens;
+                    // 条数也只保留容量的 retain%，为之后的追加留出空间，避免下一轮又覆盖起点
+                    int maxKept = Math.max(1, ring.slots.length * retain / 100);
+                    int newStart = ring.size - 1;
+                    int kept = ring.get(newStart).tokens;
+                    while (newStart > start && ring.size - newStart < maxKept
+                            && kept + ring.get(newStart - 1).tokens <= retainBudget) {
+                        newStart--;
+                        kept += ring.get(newStart).tokens;
+                    }
+                    // 窗口从 user 消息开始，避免以孤立的 assistant 回复开头
+                    while (newStart < ring.size - 1 && !"user".equals(ring.get(newStart).role)) {
+                        kept -= ring.get(newStart).tokens;
+                        newStart++;
+                    }
+                    ring.anchorSeq = ring.firstSeq() + newStart;
+                    start = newStart;
+                    historyTokens = kept;
+                    trimmed = true;
+                }
+                history = new ArrayList<>(ring.size - start);
+                for (int i = start; i < ring.size; i++) {
+                    history.add(ring.get(i));
+                }
+            }
+        }
+        return new Window(toJson(leading, history), leading.length + history.size(),
+                leadingTokens + historyTokens, trimmed);
+    }
+
+    private static byte[] toJson(Message[] leading, List<Message> history) {
+        int count = leading.length + history.size();
+        int length = 2 + Math.max(0, count - 1);
+        for (Message message : leading) {
+            length += message.json.length;
+        }
+        for (Message message : history) {
+            length += message.json.length;
+        }
+        // 长度已知，直接写入定长数组，不经过 ByteArrayOutputStream 再复制一次
+        byte[] out = new byte[length];
+        int pos = 0;
+        out[pos++] = '[';
+        for (Message message : leading) {
+            pos = writeElement(out, pos, message);
+        }
+        for (Message message : history) {
+            pos = writeElement(out, pos, message);
+        }
+        out[pos] = ']';
+        return out;
+    }
+
+    public int size(String key) {
+        synchronized (lock) {
+            Ring ring = rings.get(key);
+            return ring == null ? 0 : ring.size;
+        }
+    }
+
+    public void clear(String key) {
+        synchronized (lock) {
+            rings.remove(key);
+        }
+    }
+
+    public void clearAll() {
+        synchronized (lock) {
+            rings.clear();
+        }
+    }
+
+    /**
+     * 当前所有上下文键的快照
+     */
+    public Set<String> keys() {
+        synchronized (lock) {
+            return new HashSet<>(rings.keySet());
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    private static int writeElement(byte[] out, int pos, Message message) {
+        if (pos > 1) {
+            out[pos++] = ',';
+        }
+        System.arraycopy(message.json, 0, out, pos, message.json.length);
+        return pos + message.json.length;
+    }
+
+    /**
+     * 固定容量环形缓冲区，由 ConversationStore 的锁保护
+     */
+    private static final class Ring {
+        final Message[] slots;
+        int head;
+        int size;
+        // 已写入的消息总数，slots 中最旧一条的序号为 appended - size
+        long appended;
+        // 窗口起点的消息序号
+        long anchorSeq;
+
+        Ring(int capacity) {
+            this.slots = new Message[capacity];
+        }
+
+        void add(Message message) {
+            int tail = (head + size) % slots.length;
+            slots[tail] = message;
+            if (size < slots.length) {
+                size++;
+            } else {
+                head = (head + 1) % slots.length;
+            }
+            appended++;
+        }
+
+        long firstSeq() {
+            return appended - size;
+        }
+
+        /**
+         * 第 i 条（从最旧开始计数）
+         */
+        Message get(int i) {
+            return slots[(head + i) % slots.length];
+        }
+
+        List<Message> toList() {
+            List<Message> list = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                list.add(slots[(head + i) % slots.length]);
+            }
+            return list;
+        }
+    }
+}
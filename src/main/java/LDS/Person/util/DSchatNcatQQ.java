@@ -1,5 +1,6 @@
 package LDS.Person.util;
 
+import LDS.Person.config.ConfigManager;
 import LDS.Person.config.HttpClientFactory;
 import java.net.URI;
 import java.net.http.HttpClient;
@@ -7,30 +8,98 @@ import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.HashMap;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.extern.slf4j.Slf4j;
 
 /**
- * DeepSeek API Java 客户端模板（非流式 chat/completions）
+ * DeepSeek API Java 客户端模板（chat/completions，支持非流式与 SSE 流式）
  * 使用 Java 11+ HttpClient 和 Jackson
- * 支持本地上下文管理：每个用户最多保存15条消息
+ * 支持本地上下文管理：每个上下文最多保存 MAX_HISTORY 条消息（不少于 token 预算可容纳的条数），存放在 ConversationStore 的环形缓冲区中，
+ * 消息写入时即序列化，构建请求时直接拼接缓存的 JSON 字节
+ *
+ * 发送的历史按估算 token 预算取窗口（ConversationStore.window）：窗口起点只在超出预算时一次性前移，
+ * 两次裁剪之间请求前缀只追加不改动，DeepSeek 服务端的上下文硬盘缓存可以持续命中；
+ * 响应中的 usage（prompt_tokens、prompt_cache_hit_tokens 等）计入 getUsageStats()，
+ * 流式请求通过 stream_options.include_usage 在最后一个分块中取得 usage
  * 
  * 性能优化：使用共享的HttpClient实例以提高性能和减少资源消耗
  * 环境变量：DEEPSEEK_API_KEY
+ *
+ * 流式模式通过 HttpClient.sendAsync 逐行接收 SSE，不占用调用线程；
+ * 文本在句子或段落边界处切成片段立即回调，长回答无需等完整生成即可开始发送。
+ * 首字延迟（TTFT）与总耗时计入 getStreamStats()
+ *
+ * 配置项（config.properties）：
+ * - deepseek.base.url                  API 地址，默认 https://api.deepseek.com；压测时可指向 /stub/deepseek
+ * - deepseek.stream.enabled            @机器人回复是否使用流式模式，默认 false
+ * - deepseek.stream.min.segment.chars  片段最少字数，未达到时句子边界不切分（段落边界与首个片段除外），默认 40
+ * - deepseek.stream.timeout.ms         单次流式请求的总超时（毫秒），默认 120000
+ * - deepseek.history.max.messages      每个上下文最多保存的消息条数，默认 200；小于 token.budget / 4 + 2 时按后者
+ * - deepseek.context.token.budget      单次请求 messages 的估算 token 上限，默认 4000
+ * - deepseek.context.retain.percent    超出预算时裁剪到预算的百分比，默认 60
  */
-
+@Slf4j
 public class DSchatNcatQQ {
-    private static final String BASE_URL = "https://api.deepseek.com";//  https://api.deepseek.com/v3.2_speciale_expires_on_20251215
+    private static final ConfigManager configManager = ConfigManager.getInstance();
+    private static final String BASE_URL = configManager.getString("deepseek.base.url", "https://api.deepseek.com");//  https://api.deepseek.com/v3.2_speciale_expires_on_20251215
+    public static final boolean STREAM_ENABLED = configManager.getBoolean("deepseek.stream.enabled", false);
+    private static final int MIN_SEGMENT_CHARS = Math.max(1, configManager.getInt("deepseek.stream.min.segment.chars", 40));
+    private static final long STREAM_TIMEOUT_MS = Math.max(1000, configManager.getInt("deepseek.stream.timeout.ms", 120000));
     private static final ObjectMapper mapper = new ObjectMapper();
-    private static final int MAX_HISTORY = 15; // 最多保存15条消息（节省token）
-    private static final Map<String, ArrayNode> conversationHistory = new ConcurrentHashMap<>();
+    // 消息条数只作为存储上限，实际发送多少由 token 预算决定
+    private static final int MAX_HISTORY = Math.max(2, configManager.getInt("deepseek.history.max.messages", 200));
+    private static final int CONTEXT_TOKEN_BUDGET = Math.max(256, configManager.getInt("deepseek.context.token.budget", 4000));
+    private static final int CONTEXT_RETAIN_PERCENT = Math.min(100, Math.max(10, configManager.getInt("deepseek.context.retain.percent", 60)));
+    // 容量不小于 token 预算可容纳的最多条数，预算内的窗口不会被环形缓冲区覆盖，起点只在超出预算时前移
+    private static final ConversationStore conversationStore =
+            new ConversationStore(ConversationStore.capacityFor(CONTEXT_TOKEN_BUDGET, MAX_HISTORY));
+    // 共享上下文的 system 提示，预先序列化
+    private static final ConversationStore.Message SHARED_SYSTEM_MESSAGE = ConversationStore.Message.of("system", " ");//你的设定是胆小但又贴心的学妹兼助手。名字是\"科罗娜\"。接收消息格式是\"用户昵称：内容\"。回复时只输出对话内容，不要添加\"用户\"、昵称或任何前缀。
+    private static final String SHARED_CONTEXT_KEY = "shared_context";
     // 用于存储用户昵称的映射：userId -> nickname
     private static final Map<String, String> userNicknameMap = new ConcurrentHashMap<>();
 
+    // 流式请求统计
+    private static final LongAdder streamCount = new LongAdder();
+    private static final LongAdder streamFailedCount = new LongAdder();
+    private static final LongAdder streamSegmentCount = new LongAdder();
+    private static final LongAdder firstTokenCount = new LongAdder();
+    private static final LongAdder firstTokenNanos = new LongAdder();
+    private static final LongAccumulator maxFirstTokenNanos = new LongAccumulator(Math::max, 0);
+    private static final LongAdder completedCount = new LongAdder();
+    private static final LongAdder totalNanos = new LongAdder();
+    private static final LongAccumulator maxTotalNanos = new LongAccumulator(Math::max, 0);
+
+    // 接口返回的 token 用量统计；耗时对流式请求为首字延迟，对非流式请求为完整响应耗时
+    private static final LongAdder usageCount = new LongAdder();
+    private static final LongAdder promptTokens = new LongAdder();
+    private static final LongAdder cacheHitTokens = new LongAdder();
+    private static final LongAdder cacheMissTokens = new LongAdder();
+    private static final LongAdder completionTokens = new LongAdder();
+    private static final LongAdder estimatedPromptTokens = new LongAdder();
+    private static final LongAdder estimatedPromptActualTokens = new LongAdder();
+    private static final LongAdder cacheHitRequests = new LongAdder();
+    private static final LongAdder cacheHitLatencyNanos = new LongAdder();
+    private static final LongAdder cacheMissRequests = new LongAdder();
+    private static final LongAdder cacheMissLatencyNanos = new LongAdder();
+    // 上下文窗口统计
+    private static final LongAdder windowCount = new LongAdder();
+    private static final LongAdder windowTrimCount = new LongAdder();
+    private static volatile int lastWindowMessages;
+    private static volatile int lastWindowTokens;
+
     private final HttpClient client;
     private final String apiKey;
 
@@ -41,26 +110,21 @@ public class DSchatNcatQQ {
     }
 
     /**
-     * 获取或创建用户的对话历史
+     * 添加消息到用户历史，超过容量时覆盖最旧的一条
      */
-    private static ArrayNode getOrCreateHistory(String userId) {
-        return conversationHistory.computeIfAbsent(userId, k -> mapper.createArrayNode());
+    private static void addMessageToHistory(String userId, String role, String content) {
+        conversationStore.append(userId, role, content);
     }
 
     /**
-     * 添加消息到用户历史，保持最多 MAX_HISTORY 条消息
+     * 把历史快照转换为 ArrayNode，仅用于展示
      */
-    private static void addMessageToHistory(String userId, String role, String content) {
-        ArrayNode history = getOrCreateHistory(userId);
-        ObjectNode message = mapper.createObjectNode();
-        message.put("role", role);
-        message.put("content", content);
-        history.add(message);
-
-        // 保持历史记录不超过 MAX_HISTORY 条
-        while (history.size() > MAX_HISTORY) {
-            history.remove(0);
+    private static ArrayNode toArrayNode(String userId) {
+        ArrayNode messages = mapper.createArrayNode();
+        for (ConversationStore.Message message : conversationStore.snapshot(userId)) {
+            messages.add(message.toNode());
         }
+        return messages;
     }
 
     /**
@@ -81,17 +145,17 @@ public class DSchatNcatQQ {
     }
 
     /**
-     * 获取用户的消息历史
+     * 获取用户的消息历史（快照副本，修改不会影响存储）
      */
     public static ArrayNode getHistory(String userId) {
-        return getOrCreateHistory(userId);
+        return toArrayNode(userId);
     }
 
     /**
      * 清除用户的对话历史
      */
     public static void clearHistory(String userId) {
-        conversationHistory.remove(userId);
+        conversationStore.clear(userId);
     }
 
     /**
@@ -102,9 +166,8 @@ public class DSchatNcatQQ {
     public static Map<String, Object> getAllHistory() {
         Map<String, Object> allHistory = new HashMap<>();
 
-        for (Map.Entry<String, ArrayNode> entry : conversationHistory.entrySet()) {
-            String userId = entry.getKey();
-            ArrayNode messages = entry.getValue();
+        for (String userId : conversationStore.keys()) {
+            ArrayNode messages = toArrayNode(userId);
 
             // 构建用户的消息信息
             Map<String, Object> userInfo = new HashMap<>();
@@ -125,13 +188,12 @@ public class DSchatNcatQQ {
      */
     public static ObjectNode getAllHistoryAsJson() {
         ObjectNode result = mapper.createObjectNode();
-        result.put("totalUsers", conversationHistory.size());
+        result.put("totalUsers", conversationStore.keys().size());
 
         ObjectNode users = mapper.createObjectNode();
 
-        for (Map.Entry<String, ArrayNode> entry : conversationHistory.entrySet()) {
-            String userId = entry.getKey();
-            ArrayNode messages = entry.getValue();
+        for (String userId : conversationStore.keys()) {
+            ArrayNode messages = toArrayNode(userId);
 
             // 获取用户昵称，如果没有记录则使用 userId
             String nickname = getUserNickname(userId);
@@ -154,45 +216,54 @@ public class DSchatNcatQQ {
      * 获取特定用户的对话消息数量
      */
     public static int getHistoryCount(String userId) {
-        return getOrCreateHistory(userId).size();
+        return conversationStore.size(userId);
     }
 
     /**
      * 清除所有用户的对话历史
      */
     public static void clearAllHistory() {
-        conversationHistory.clear();
+        conversationStore.clearAll();
     }
 
     /**
      * 发送一个非流式的对话请求（chat/completions）并返回原始响应字符串
      */
     public String createChatCompletion(String model, ArrayNode messages) throws Exception {
-        String url = BASE_URL + "/chat/completions";
+        return createChatCompletion(model, mapper.writeValueAsBytes(messages));
+    }
 
-        ObjectNode payload = mapper.createObjectNode();
-        payload.put("model", model);
-        payload.set("messages", messages);
-        payload.put("stream", false);
-        payload.put("temperature", 1.4);
+    /**
+     * 发送一个非流式的对话请求，messages 为已序列化的 JSON 数组字节
+     */
+    public String createChatCompletion(String model, byte[] messagesJson) throws Exception {
+        return createChatCompletion(model, messagesJson, 0);
+    }
 
-        String body = mapper.writeValueAsString(payload);
+    /**
+     * @param estimatedTokens 发送前估算的 prompt token 数，0 表示未估算（不计入估算偏差统计）
+     */
+    private String createChatCompletion(String model, byte[] messagesJson, int estimatedTokens) throws Exception {
+        String url = BASE_URL + "/chat/completions";
 
         HttpRequest request = HttpRequest.newBuilder()
                 .uri(URI.create(url))
                 .timeout(Duration.ofSeconds(30))
                 .header("Content-Type", "application/json")
                 .header("Authorization", "Bearer " + apiKey)
-                .POST(HttpRequest.BodyPublishers.ofString(body, StandardCharsets.UTF_8))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(requestBody(model, messagesJson, false)))
                 .build();
 
+        long start = System.nanoTime();
         HttpResponse<String> response = client.send(request,
                 HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+        long elapsed = System.nanoTime() - start;
 
         int code = response.statusCode();
         if (code >= 200 && code < 300) {
             // 解析 JSON 并提取 content 字段
             ObjectNode root = (ObjectNode) mapper.readTree(response.body());
+            recordUsage(root.get("usage"), estimatedTokens, elapsed);
             ArrayNode choices = (ArrayNode) root.get("choices");
             if (choices != null && choices.size() > 0) {
                 ObjectNode message = (ObjectNode) choices.get(0).get("message");
@@ -205,6 +276,228 @@ public class DSchatNcatQQ {
         }
     }
 
+    /**
+     * 发送一个流式对话请求（chat/completions，stream=true）
+     * SSE 数据行在 HttpClient 的线程上逐行解析，每凑满一个句子或段落就回调一次 onSegment，
+     * 回调按文本顺序依次发生；返回的 future 在流结束后以完整回复完成
+     *
+     * @param onSegment 片段回调，应尽快返回（例如只把片段交给发送调度器排队）
+     */
+    public CompletableFuture<String> streamChatCompletion(String model, ArrayNode messages, Consumer<String> onSegment) {
+        try {
+            return streamChatCompletion(model, mapper.writeValueAsBytes(messages), onSegment);
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * 发送一个流式对话请求，messages 为已序列化的 JSON 数组字节
+     */
+    public CompletableFuture<String> streamChatCompletion(String model, byte[] messagesJson, Consumer<String> onSegment) {
+        return streamChatCompletion(model, messagesJson, 0, onSegment);
+    }
+
+    private CompletableFuture<String> streamChatCompletion(String model, byte[] messagesJson, int estimatedTokens,
+            Consumer<String> onSegment) {
+        String url = BASE_URL + "/chat/completions";
+        byte[] body = requestBody(model, messagesJson, true);
+
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(url))
+                .timeout(Duration.ofSeconds(30))
+                .header("Content-Type", "application/json")
+                .header("Accept", "text/event-stream")
+                .header("Authorization", "Bearer " + apiKey)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+
+        streamCount.increment();
+        SseSegmentSubscriber subscriber = new SseSegmentSubscriber(onSegment, estimatedTokens);
+        CompletableFuture<String> result = new CompletableFuture<>();
+        client.sendAsync(request, HttpResponse.BodyHandlers.fromLineSubscriber(subscriber))
+                .whenComplete((response, error) -> {
+                    if (error == null && (response.statusCode() < 200 || response.statusCode() >= 300)) {
+                        error = new RuntimeException("DeepSeek API 返回错误: HTTP " + response.statusCode()
+                                + " - " + subscriber.errorBody());
+                    }
+                    if (error == null && subscriber.error != null) {
+                        error = subscriber.error;
+                    }
+                    if (error != null) {
+                        result.completeExceptionally(error);
+                    } else {
+                        result.complete(subscriber.finish());
+                    }
+                });
+        return result.orTimeout(STREAM_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+                .whenComplete((text, error) -> {
+                    if (error != null) {
+                        subscriber.cancel();
+                        streamFailedCount.increment();
+                    }
+                });
+    }
+
+    /**
+     * 流式多轮对话，使用与 Usedeepseek(输入文本, userId) 相同的共享上下文
+     * 流结束后把完整回复写入历史
+     *
+     * @param onSegment 片段回调，按顺序收到回复的各个句子 / 段落
+     * @return 以完整回复完成的 future
+     */
+    public CompletableFuture<String> UsedeepseekStreaming(String 输入文本, String userId, Consumer<String> onSegment) {
+        String key = System.getenv("DEEPSEEK_API_KEY");
+        if (key == null || key.isEmpty()) {
+            log.error("请先在环境变量中设置 DEEPSEEK_API_KEY");
+            return CompletableFuture.failedFuture(new IllegalStateException("请先在环境变量中设置 DEEPSEEK_API_KEY"));
+        }
+
+        addMessageToHistory(SHARED_CONTEXT_KEY, "user", 输入文本);
+        ConversationStore.Window window = sharedWindow();
+        byte[] messages = window.getJson();
+
+        log.debug("[DeepSeek 流式对话] 用户ID: {}，发送的消息 JSON: {}", userId,
+                LazyString.of(() -> new String(messages, StandardCharsets.UTF_8)));
+
+        return new DSchatNcatQQ(key).streamChatCompletion("deepseek-chat", messages, window.getEstimatedTokens(), onSegment)
+                .thenApply(resp -> {
+                    addMessageToHistory(SHARED_CONTEXT_KEY, "assistant", resp);
+                    log.info("[DeepSeek 流式对话] 用户ID: {}，AI 回复: {}，当前消息历史条数: {}", userId, resp,
+                            conversationStore.size(SHARED_CONTEXT_KEY));
+                    return resp;
+                });
+    }
+
+    /**
+     * 按 token 预算取共享上下文的窗口（system 提示 + 最近的对话）
+     */
+    private static ConversationStore.Window sharedWindow() {
+        ConversationStore.Window window = conversationStore.window(SHARED_CONTEXT_KEY, CONTEXT_TOKEN_BUDGET,
+                CONTEXT_RETAIN_PERCENT, SHARED_SYSTEM_MESSAGE);
+        windowCount.increment();
+        if (window.isTrimmed()) {
+            windowTrimCount.increment();
+            log.info("[DeepSeek 多轮对话] 上下文超出 token 预算 {}，窗口裁剪为 {} 条消息（估算 {} tokens）",
+                    CONTEXT_TOKEN_BUDGET, window.getMessageCount(), window.getEstimatedTokens());
+        }
+        lastWindowMessages = window.getMessageCount();
+        lastWindowTokens = window.getEstimatedTokens();
+        return window;
+    }
+
+    /**
+     * 记录一次响应的 usage
+     * 缓存命中数取 prompt_cache_hit_tokens（DeepSeek），没有时取 prompt_tokens_details.cached_tokens（OpenAI 兼容格式）；
+     * 命中超过一半 prompt 的请求计入命中组，分组统计耗时
+     *
+     * @param estimatedTokens 发送前估算的 prompt token 数，0 表示未估算
+     * @param latencyNanos    流式请求为首字延迟，非流式请求为完整响应耗时，0 表示未知
+     */
+    private static void recordUsage(com.fasterxml.jackson.databind.JsonNode usage, int estimatedTokens, long latencyNanos) {
+        if (usage == null || !usage.isObject()) {
+            return;
+        }
+        long prompt = usage.path("prompt_tokens").asLong(0);
+        long hit = usage.has("prompt_cache_hit_tokens")
+                ? usage.path("prompt_cache_hit_tokens").asLong(0)
+                : usage.path("prompt_tokens_details").path("cached_tokens").asLong(0);
+        long miss = usage.has("prompt_cache_miss_tokens")
+                ? usage.path("prompt_cache_miss_tokens").asLong(0)
+                : Math.max(0, prompt - hit);
+        usageCount.increment();
+        promptTokens.add(prompt);
+        cacheHitTokens.add(hit);
+        cacheMissTokens.add(miss);
+        completionTokens.add(usage.path("completion_tokens").asLong(0));
+        if (estimatedTokens > 0) {
+            estimatedPromptTokens.add(estimatedTokens);
+            estimatedPromptActualTokens.add(prompt);
+        }
+        if (latencyNanos > 0) {
+            if (prompt > 0 && hit * 2 >= prompt) {
+                cacheHitRequests.increment();
+                cacheHitLatencyNanos.add(latencyNanos);
+            } else {
+                cacheMissRequests.increment();
+                cacheMissLatencyNanos.add(latencyNanos);
+            }
+        }
+        log.debug("[DeepSeek] usage: prompt={} hit={} miss={} estimated={}", prompt, hit, miss, estimatedTokens);
+    }
+
+    /**
+     * 拼接请求体：{"model":...,"messages":[...],"stream":...,"temperature":1.4}
+     * messages 部分直接使用已序列化的字节；流式请求附带 stream_options.include_usage 以取得 usage
+     */
+    static byte[] requestBody(String model, byte[] messagesJson, boolean stream) {
+        byte[] head;
+        try {
+            head = ("{\"model\":" + mapper.writeValueAsString(model) + ",\"messages\":").getBytes(StandardCharsets.UTF_8);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("模型名序列化失败", e);
+        }
+        byte[] tail = (",\"stream\":" + stream
+                + (stream ? ",\"stream_options\":{\"include_usage\":true}" : "")
+                + ",\"temperature\":1.4}").getBytes(StandardCharsets.UTF_8);
+        byte[] body = new byte[head.length + messagesJson.length + tail.length];
+        System.arraycopy(head, 0, body, 0, head.length);
+        System.arraycopy(messagesJson, 0, body, head.length, messagesJson.length);
+        System.arraycopy(tail, 0, body, head.length + messagesJson.length, tail.length);
+        return body;
+    }
+
+    /**
+     * 获取流式请求统计：首字延迟（TTFT）、总耗时与片段数
+     */
+    public static Map<String, Object> getStreamStats() {
+        long firstTokens = firstTokenCount.sum();
+        long completed = completedCount.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("stream_enabled", STREAM_ENABLED);
+        stats.put("streams", streamCount.sum());
+        stats.put("failed", streamFailedCount.sum());
+        stats.put("completed", completed);
+        stats.put("segments", streamSegmentCount.sum());
+        stats.put("avg_ttft_ms", firstTokens == 0 ? 0.0 : firstTokenNanos.sum() / 1_000_000.0 / firstTokens);
+        stats.put("max_ttft_ms", maxFirstTokenNanos.get() / 1_000_000.0);
+        stats.put("avg_total_ms", completed == 0 ? 0.0 : totalNanos.sum() / 1_000_000.0 / completed);
+        stats.put("max_total_ms", maxTotalNanos.get() / 1_000_000.0);
+        return stats;
+    }
+
+    /**
+     * 获取 token 用量与上下文窗口统计
+     * cache_hit_ratio 为缓存命中 token 占 prompt token 的比例；estimate_ratio 为估算值与实际 prompt_tokens 之比
+     */
+    public static Map<String, Object> getUsageStats() {
+        long prompt = promptTokens.sum();
+        long hit = cacheHitTokens.sum();
+        long estimatedActual = estimatedPromptActualTokens.sum();
+        long hitRequests = cacheHitRequests.sum();
+        long missRequests = cacheMissRequests.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("token_budget", CONTEXT_TOKEN_BUDGET);
+        stats.put("retain_percent", CONTEXT_RETAIN_PERCENT);
+        stats.put("max_history", conversationStore.getCapacity());
+        stats.put("windows", windowCount.sum());
+        stats.put("window_trims", windowTrimCount.sum());
+        stats.put("last_window_messages", lastWindowMessages);
+        stats.put("last_window_estimated_tokens", lastWindowTokens);
+        stats.put("responses_with_usage", usageCount.sum());
+        stats.put("prompt_tokens", prompt);
+        stats.put("cache_hit_tokens", hit);
+        stats.put("cache_miss_tokens", cacheMissTokens.sum());
+        stats.put("completion_tokens", completionTokens.sum());
+        stats.put("cache_hit_ratio", prompt == 0 ? 0.0 : (double) hit / prompt);
+        stats.put("estimate_ratio", estimatedActual == 0 ? 0.0 : (double) estimatedPromptTokens.sum() / estimatedActual);
+        stats.put("cache_hit_requests", hitRequests);
+        stats.put("cache_hit_avg_latency_ms", hitRequests == 0 ? 0.0 : cacheHitLatencyNanos.sum() / 1_000_000.0 / hitRequests);
+        stats.put("cache_miss_requests", missRequests);
+        stats.put("cache_miss_avg_latency_ms", missRequests == 0 ? 0.0 : cacheMissLatencyNanos.sum() / 1_000_000.0 / missRequests);
+        return stats;
+    }
+
     /**
      * 使用 DeepSeek API 进行多轮对话，使用共享上下文
      * 
@@ -215,46 +508,30 @@ public class DSchatNcatQQ {
     public String Usedeepseek(String 输入文本, String userId) throws Exception {
         String key = System.getenv("DEEPSEEK_API_KEY");
         if (key == null || key.isEmpty()) {
-            System.err.println("请先在环境变量中设置 DEEPSEEK_API_KEY");
+            log.error("请先在环境变量中设置 DEEPSEEK_API_KEY");
             return "请先在环境变量中设置 DEEPSEEK_API_KEY";
         }
 
-        // 使用固定的 key 作为共享上下文标识
-        String sharedContextKey = "shared_context";
+        // 使用固定的 key 作为共享上下文标识，添加用户消息到共享历史
+        addMessageToHistory(SHARED_CONTEXT_KEY, "user", 输入文本);
 
-        // 添加用户消息到共享历史
-        addMessageToHistory(sharedContextKey, "user", 输入文本);
+        // 构建消息数组（多轮对话格式）：System 角色 + token 预算内的共享对话历史，直接拼接各条消息缓存的 JSON 字节
+        ConversationStore.Window window = sharedWindow();
+        byte[] messages = window.getJson();
 
-        // 构建消息数组（多轮对话格式）
-        ArrayNode messages = mapper.createArrayNode();
-        
-        // 添加 System 角色（可选）
-        ObjectNode sys = mapper.createObjectNode();
-        sys.put("role", "system");
-        sys.put("content", " ");//你的设定是胆小但又贴心的学妹兼助手。名字是\"科罗娜\"。接收消息格式是\"用户昵称：内容\"。回复时只输出对话内容，不要添加\"用户\"、昵称或任何前缀。
-        messages.add(sys);
-
-        // 添加共享的完整对话历史（包括之前的所有对话）
-        ArrayNode history = getHistory(sharedContextKey);
-        for (int i = 0; i < history.size(); i++) {
-            messages.add(history.get(i));
-        }
-
-        // 在控制台输出传入的消息 JSON
-        System.out.println("[DeepSeek 多轮对话] 用户ID: " + userId);
-        System.out.println("[DeepSeek 多轮对话] 发送的消息 JSON:");
-        System.out.println(mapper.writerWithDefaultPrettyPrinter().writeValueAsString(messages));
+        // 完整消息 JSON 仅在 DEBUG 级别输出，且只在级别开启时才转换
+        log.debug("[DeepSeek 多轮对话] 用户ID: {}，发送的消息 JSON: {}", userId,
+                LazyString.of(() -> new String(messages, StandardCharsets.UTF_8)));
 
         // 调用 DeepSeek API
         DSchatNcatQQ client = new DSchatNcatQQ(key);
-        String resp = client.createChatCompletion("deepseek-chat", messages);
+        String resp = client.createChatCompletion("deepseek-chat", messages, window.getEstimatedTokens());
 
         // 添加 AI 回复到共享历史
-        addMessageToHistory(sharedContextKey, "assistant", resp);
+        addMessageToHistory(SHARED_CONTEXT_KEY, "assistant", resp);
 
-        System.out.println("[DeepSeek 多轮对话] AI 回复: " + resp);
-        System.out.println("[DeepSeek 多轮对话] 当前消息历史条数: " + history.size());
-        System.out.println("---");
+        log.info("[DeepSeek 多轮对话] 用户ID: {}，AI 回复: {}，当前消息历史条数: {}", userId, resp,
+                conversationStore.size(SHARED_CONTEXT_KEY));
 
         return resp;
     }
@@ -265,7 +542,7 @@ public class DSchatNcatQQ {
     public String Usedeepseek(String 输入文本) throws Exception {
         String key = System.getenv("DEEPSEEK_API_KEY");
         if (key == null || key.isEmpty()) {
-            System.err.println("请先在环境变量中设置 DEEPSEEK_API_KEY");
+            log.error("请先在环境变量中设置 DEEPSEEK_API_KEY");
             return "请先在环境变量中设置 DEEPSEEK_API_KEY";
         }
 
@@ -292,7 +569,7 @@ public class DSchatNcatQQ {
     public String UsedeepseekMorning(String 输入文本) throws Exception {
         String key = System.getenv("DEEPSEEK_API_KEY");
         if (key == null || key.isEmpty()) {
-            System.err.println("请先在环境变量中设置 DEEPSEEK_API_KEY");
+            log.error("请先在环境变量中设置 DEEPSEEK_API_KEY");
             return "请先在环境变量中设置 DEEPSEEK_API_KEY";
         }
 
@@ -313,6 +590,144 @@ public class DSchatNcatQQ {
         return resp;
     }
 
+    /**
+     * SSE 行订阅者：解析 data 行中的 choices[0].delta.content，按句子 / 段落边界切分片段
+     * 所有回调都来自 HttpClient 的同一个订阅链，按顺序发生
+     */
+    private static final class SseSegmentSubscriber implements Flow.Subscriber<String> {
+
+        private final Consumer<String> onSegment;
+        private final int estimatedTokens;
+        private final long startNanos = System.nanoTime();
+        private long firstTokenLatency;
+        private final StringBuilder full = new StringBuilder();
+        private final StringBuilder pending = new StringBuilder();
+        // 非 SSE 响应（如错误 JSON）原样保留，便于报错
+        private final StringBuilder raw = new StringBuilder();
+        private volatile Flow.Subscription subscription;
+        private volatile Throwable error;
+        private boolean firstToken = true;
+        private boolean firstSegment = true;
+
+        SseSegmentSubscriber(Consumer<String> onSegment, int estimatedTokens) {
+            this.onSegment = onSegment;
+            this.estimatedTokens = estimatedTokens;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(String line) {
+            if (!line.startsWith("data:")) {
+                // 空行分隔事件，冒号开头为注释（keep-alive）
+                if (!line.isEmpty() && !line.startsWith(":") && raw.length() < 2000) {
+                    raw.append(line);
+                }
+                return;
+            }
+            String data = line.substring(5).trim();
+            if (data.isEmpty() || "[DONE]".equals(data)) {
+                return;
+            }
+            try {
+                ObjectNode chunk = (ObjectNode) mapper.readTree(data);
+                // include_usage 时最后一个分块的 choices 为空，只带 usage
+                com.fasterxml.jackson.databind.JsonNode usage = chunk.get("usage");
+                if (usage != null && usage.isObject()) {
+                    recordUsage(usage, estimatedTokens, firstTokenLatency);
+                }
+                ArrayNode choices = (ArrayNode) chunk.get("choices");
+                if (choices == null || choices.size() == 0) {
+                    return;
+                }
+                com.fasterxml.jackson.databind.JsonNode content = choices.get(0).path("delta").get("content");
+                if (content != null && !content.isNull()) {
+                    append(content.asText());
+                }
+            } catch (Exception e) {
+                log.warn("[DeepSeek 流式对话] 无法解析的 SSE 数据: {}", data);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+        }
 
+        void cancel() {
+            Flow.Subscription s = subscription;
+            if (s != null) {
+                s.cancel();
+            }
+        }
+
+        String errorBody() {
+            return raw.toString();
+        }
 
+        /**
+         * 流正常结束：发出剩余文本并记录总耗时
+         */
+        String finish() {
+            flush();
+            long elapsed = System.nanoTime() - startNanos;
+            completedCount.increment();
+            totalNanos.add(elapsed);
+            maxTotalNanos.accumulate(elapsed);
+            String text = full.toString();
+            return text.isEmpty() ? "未找到有效的响应内容" : text;
+        }
+
+        private void append(String text) {
+            if (text.isEmpty()) {
+                return;
+            }
+            if (firstToken) {
+                firstToken = false;
+                long ttft = System.nanoTime() - startNanos;
+                firstTokenLatency = ttft;
+                firstTokenCount.increment();
+                firstTokenNanos.add(ttft);
+                maxFirstTokenNanos.accumulate(ttft);
+            }
+            full.append(text);
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                pending.append(c);
+                if (c == '\n' && pending.length() > 1 && pending.charAt(pending.length() - 2) == '\n') {
+                    // 段落边界总是切分
+                    flush();
+                } else if (isSentenceEnd(c) && (firstSegment || pending.length() >= MIN_SEGMENT_CHARS)) {
+                    flush();
+                }
+            }
+        }
+
+        private void flush() {
+            String segment = pending.toString().trim();
+            pending.setLength(0);
+            if (segment.isEmpty()) {
+                return;
+            }
+            firstSegment = false;
+            streamSegmentCount.increment();
+            try {
+                onSegment.accept(segment);
+            } catch (Exception e) {
+                log.error("[DeepSeek 流式对话] 片段回调异常: {}", e.getMessage());
+            }
+        }
+
+        private static boolean isSentenceEnd(char c) {
+            return c == '。' || c == '！' || c == '？' || c == '!' || c == '?' || c == '…' || c == '\n';
+        }
+    }
 }
@@ -0,0 +1,26 @@
+package LDS.Person.util;
+
+import java.util.function.Supplier;
+
+/**
+ * 延迟求值的日志参数 - 只有日志真正输出（级别开启且未被采样丢弃）时才调用 toString 生成文本
+ *
+ * 用法：log.info("收到消息 {}", LazyString.of(() -> OneBotMessageFormatter.formatMessage(event)));
+ */
+public final class LazyString {
+
+    private final Supplier<String> supplier;
+
+    private LazyString(Supplier<String> supplier) {
+        this.supplier = supplier;
+    }
+
+    public static LazyString of(Supplier<String> supplier) {
+        return new LazyString(supplier);
+    }
+
+    @Override
+    public String toString() {
+        return supplier.get();
+    }
+}
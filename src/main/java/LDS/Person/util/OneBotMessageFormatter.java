@@ -1,6 +1,7 @@
 package LDS.Person.util;
 
 import com.alibaba.fastjson2.JSONObject;
+import LDS.Person.websocket.event.OneBotEvent;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 
@@ -37,20 +38,30 @@ public class OneBotMessageFormatter {
      * @return 简化后的消息字符串
      */
     public static String formatMessage(JSONObject json) {
+        return formatMessage(OneBotEvent.from(json));
+    }
+
+    /**
+     * 将已解析的 OneBot 事件转换为简化的字符串格式
+     * 
+     * @param event 已解析的 OneBot 事件
+     * @return 简化后的消息字符串
+     */
+    public static String formatMessage(OneBotEvent event) {
         try {
-            String postType = json.getString("post_type");
+            String postType = event.getPostType();
             
             // 根据消息类型进行不同的格式化
-            if ("message".equals(postType)) {
-                return formatChatMessage(json);
-            } else if ("message_sent".equals(postType)) {
-                return formatMessageSent(json);
-            } else if ("notice".equals(postType)) {
-                return formatNoticeMessage(json);
-            } else if ("request".equals(postType)) {
-                return formatRequestMessage(json);
+            if (OneBotEvent.POST_TYPE_MESSAGE.equals(postType)) {
+                return formatChatMessage(event);
+            } else if (OneBotEvent.POST_TYPE_MESSAGE_SENT.equals(postType)) {
+                return formatMessageSent(event);
+            } else if (OneBotEvent.POST_TYPE_NOTICE.equals(postType)) {
+                return formatNoticeMessage(event);
+            } else if (OneBotEvent.POST_TYPE_REQUEST.equals(postType)) {
+                return formatRequestMessage(event);
             } else {
-                return formatUnknownMessage(json);
+                return formatUnknownMessage(event.getFrame());
             }
         } catch (Exception e) {
             return "消息格式化失败: " + e.getMessage();
@@ -60,54 +71,33 @@ public class OneBotMessageFormatter {
     /**
      * 格式化聊天消息
      */
-    private static String formatChatMessage(JSONObject json) {
+    private static String formatChatMessage(OneBotEvent event) {
         StringBuilder sb = new StringBuilder();
         
         String timestamp = LocalDateTime.now().format(FORMATTER);
-        String messageType = json.getString("message_type");
-        Long messageId = json.getLong("message_id");
-        Long userId = json.getLong("user_id");
-        String rawMessage = json.getString("raw_message");
+        String messageType = event.getMessageType();
         
         sb.append("[").append(timestamp).append("] ");
         
-        if ("group".equals(messageType)) {
+        if (OneBotEvent.MESSAGE_TYPE_GROUP.equals(messageType)) {
             // 群聊消息
-            Long groupId = json.getLong("group_id");
-            String groupName = json.getString("group_name");
-            
-            JSONObject sender = json.getJSONObject("sender");
-            String nickname = sender != null ? sender.getString("nickname") : "未知用户";
-            String card = sender != null ? sender.getString("card") : "";
-            String role = sender != null ? sender.getString("role") : "";
+            OneBotEvent.Sender sender = event.getSender();
             
             sb.append("[群聊] ");
-            sb.append("群ID:").append(groupId).append(" ");
-            sb.append("群名:").append(groupName).append(" | ");
-            
-            if (card != null && !card.isEmpty()) {
-                sb.append("昵称:").append(card).append(" ");
-            } else {
-                sb.append("昵称:").append(nickname).append(" ");
-            }
+            sb.append("群ID:").append(event.getGroupId()).append(" ");
+            sb.append("群名:").append(event.getGroupName()).append(" | ");
+            appendSenderName(sb, sender);
             
-            if (role != null && !role.isEmpty()) {
-                sb.append("[").append(role).append("] ");
-            }
-            
-            sb.append("| 消息ID:").append(messageId).append(" ");
-            sb.append("用户ID:").append(userId).append(" ");
-            sb.append("| 内容:").append(rawMessage);
+            sb.append("| 消息ID:").append(event.getMessageId()).append(" ");
+            sb.append("用户ID:").append(event.getUserId()).append(" ");
+            sb.append("| 内容:").append(event.getRawMessage());
             
-        } else if ("private".equals(messageType)) {
+        } else if (OneBotEvent.MESSAGE_TYPE_PRIVATE.equals(messageType)) {
             // 私聊消息
-            JSONObject sender = json.getJSONObject("sender");
-            String nickname = sender != null ? sender.getString("nickname") : "未知用户";
-            
             sb.append("[私聊] ");
-            sb.append("用户:").append(nickname).append("(").append(userId).append(") ");
-            sb.append("| 消息ID:").append(messageId).append(" ");
-            sb.append("| 内容:").append(rawMessage);
+            sb.append("用户:").append(event.getSender().getNickname()).append("(").append(event.getUserId()).append(") ");
+            sb.append("| 消息ID:").append(event.getMessageId()).append(" ");
+            sb.append("| 内容:").append(event.getRawMessage());
         }
         
         return sb.toString()+"\n";
@@ -116,80 +106,70 @@ public class OneBotMessageFormatter {
     /**
      * 格式化机器人自身发出的消息（message_sent 事件）
      */
-    private static String formatMessageSent(JSONObject json) {
+    private static String formatMessageSent(OneBotEvent event) {
         StringBuilder sb = new StringBuilder();
         
         String timestamp = LocalDateTime.now().format(FORMATTER);
-        String messageType = json.getString("message_type");
-        Long messageId = json.getLong("message_id");
-        Long userId = json.getLong("user_id");
-        String rawMessage = json.getString("raw_message");
+        String messageType = event.getMessageType();
         
         sb.append("[").append(timestamp).append("] ");
         sb.append("[自己发送] ");
         
-        if ("group".equals(messageType)) {
+        if (OneBotEvent.MESSAGE_TYPE_GROUP.equals(messageType)) {
             // 群聊消息
-            Long groupId = json.getLong("group_id");
-            String groupName = json.getString("group_name");
-            
-            JSONObject sender = json.getJSONObject("sender");
-            String nickname = sender != null ? sender.getString("nickname") : "未知用户";
-            String card = sender != null ? sender.getString("card") : "";
-            String role = sender != null ? sender.getString("role") : "";
+            sb.append("群ID:").append(event.getGroupId()).append(" ");
+            sb.append("群名:").append(event.getGroupName()).append(" | ");
+            appendSenderName(sb, event.getSender());
             
-            sb.append("群ID:").append(groupId).append(" ");
-            sb.append("群名:").append(groupName).append(" | ");
+            sb.append("| 消息ID:").append(event.getMessageId()).append(" ");
+            sb.append("| 内容:").append(event.getRawMessage());
             
-            if (card != null && !card.isEmpty()) {
-                sb.append("昵称:").append(card).append(" ");
-            } else {
-                sb.append("昵称:").append(nickname).append(" ");
-            }
-            
-            if (role != null && !role.isEmpty()) {
-                sb.append("[").append(role).append("] ");
-            }
-            
-            sb.append("| 消息ID:").append(messageId).append(" ");
-            sb.append("| 内容:").append(rawMessage);
-            
-        } else if ("private".equals(messageType)) {
+        } else if (OneBotEvent.MESSAGE_TYPE_PRIVATE.equals(messageType)) {
             // 私聊消息
-            JSONObject sender = json.getJSONObject("sender");
-            String nickname = sender != null ? sender.getString("nickname") : "未知用户";
-            
-            sb.append("用户:").append(nickname).append("(").append(userId).append(") ");
-            sb.append("| 消息ID:").append(messageId).append(" ");
-            sb.append("| 内容:").append(rawMessage);
+            sb.append("用户:").append(event.getSender().getNickname()).append("(").append(event.getUserId()).append(") ");
+            sb.append("| 消息ID:").append(event.getMessageId()).append(" ");
+            sb.append("| 内容:").append(event.getRawMessage());
         }
         
         return sb.toString()+"\n";
     }
 
+    /**
+     * 追加发送者昵称（群名片优先）与角色
+     */
+    private static void appendSenderName(StringBuilder sb, OneBotEvent.Sender sender) {
+        String card = sender.getCard();
+        if (card != null && !card.isEmpty()) {
+            sb.append("昵称:").append(card).append(" ");
+        } else {
+            sb.append("昵称:").append(sender.getNickname()).append(" ");
+        }
+
+        String role = sender.getRole();
+        if (role != null && !role.isEmpty()) {
+            sb.append("[").append(role).append("] ");
+        }
+    }
+
     /**
      * 格式化通知消息
      */
-    private static String formatNoticeMessage(JSONObject json) {
+    private static String formatNoticeMessage(OneBotEvent event) {
         StringBuilder sb = new StringBuilder();
         String timestamp = LocalDateTime.now().format(FORMATTER);
-        String noticeType = json.getString("notice_type");
+        String noticeType = event.getNoticeType();
         
         sb.append("[").append(timestamp).append("] ");
         sb.append("[通知] ").append(noticeType).append(" | ");
         
         if ("group_upload".equals(noticeType)) {
-            Long groupId = json.getLong("group_id");
-            Long userId = json.getLong("user_id");
-            sb.append("群ID:").append(groupId).append(" 用户:").append(userId).append(" 上传了文件");
+            sb.append("群ID:").append(event.getGroupId()).append(" 用户:").append(event.getUserId()).append(" 上传了文件");
         } else if ("group_admin".equals(noticeType)) {
-            Long groupId = json.getLong("group_id");
-            Long userId = json.getLong("user_id");
-            String subType = json.getString("sub_type");
-            sb.append("群ID:").append(groupId).append(" 用户:").append(userId)
+            String subType = event.getSubType();
+            sb.append("群ID:").append(event.getGroupId()).append(" 用户:").append(event.getUserId())
                     .append(" ").append("set".equals(subType) ? "被设为" : "被取消").append("管理员");
         } else {
-            sb.append(json.toJSONString());
+            sb.append(event.getFrame());
         }
         
         return sb.toString();
@@ -198,28 +178,25 @@ public class OneBotMessageFormatter {
     /**
      * 格式化请求消息
      */
-    private static String formatRequestMessage(JSONObject json) {
+    private static String formatRequestMessage(OneBotEvent event) {
         StringBuilder sb = new StringBuilder();
         String timestamp = LocalDateTime.now().format(FORMATTER);
-        String requestType = json.getString("request_type");
+        String requestType = event.getRequestType();
         
         sb.append("[").append(timestamp).append("] ");
         sb.append("[请求] ").append(requestType);
         
         if ("friend".equals(requestType)) {
-            Long userId = json.getLong("user_id");
-            String comment = json.getString("comment");
-            sb.append(" | 用户:").append(userId).append(" 请求添加好友");
+            String comment = event.getComment();
+            sb.append(" | 用户:").append(event.getUserId()).append(" 请求添加好友");
             if (comment != null && !comment.isEmpty()) {
                 sb.append(" 备注:").append(comment);
             }
         } else if ("group".equals(requestType)) {
-            Long groupId = json.getLong("group_id");
-            Long userId = json.getLong("user_id");
-            String subType = json.getString("sub_type");
-            String comment = json.getString("comment");
+            String subType = event.getSubType();
+            String comment = event.getComment();
             
-            sb.append(" | 群ID:").append(groupId).append(" 用户:").append(userId);
+            sb.append(" | 群ID:").append(event.getGroupId()).append(" 用户:").append(event.getUserId());
             if ("add".equals(subType)) {
                 sb.append(" 申请加入群聊");
             } else if ("invite".equals(subType)) {
@@ -236,8 +213,8 @@ public class OneBotMessageFormatter {
     /**
      * 格式化未知消息
      */
-    private static String formatUnknownMessage(JSONObject json) {
-        return "[未知消息] " + json.toJSONString();
+    private static String formatUnknownMessage(String frame) {
+        return "[未知消息] " + frame;
     }
 
     /**
@@ -9,6 +9,9 @@ import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.json.JSONObject;
 import org.json.JSONArray;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
 
 /**
  * Steam 游戏搜索工具
@@ -21,6 +24,8 @@ public class SteamGameSearcher {
     private static final String STEAM_SEARCH_URL = "https://store.steampowered.com/search/?term=";
     private static final String STEAM_API_URL = "https://store.steampowered.com/api/appdetails?appids=";
     private static final String USER_AGENT = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36";
+    private static final String LOGIN_COOKIE = "76561198912395789%7C%7CeyAidHlwIjogIkpXVCIsICJhbGciOiAiRWREU0EiIH0.eyAiaXNzIjogInI6MDAxOV8yNzE5QjEwQl82RTlFQSIsICJzdWIiOiAiNzY1NjExOTg5MTIzOTU3ODkiLCAiYXVkIjogWyAid2ViOnN0b3JlIiBdLCAiZXhwIjogMTc2NDIwNzMwOCwgIm5iZiI6IDE3NTU0ODAzNTEsICJpYXQiOiAxNzY0MTIwMzUxLCAianRpIjogIjAwMENfMjc0RkREOEVfNzcxRTEiLCAib2F0IjogMTc2MDY2MzYwNSwgInJ0X2V4cCI6IDE3NzkwOTU1NTksICJwZXIiOiAwLCAiaXBfc3ViamVjdCI6ICIxNTYuMjI5LjE2My4xNjYiLCAiaXBfY29uZmlybWVyIjogIjIyMS4yMzcuMTEzLjE1MiIgfQ.Njp0GY5ePANkI5ctvYdCGxa6mZcUXWQp_U-0CC4w00Qw_QGvlm-HkuqUZkgHDBHq8t9tZfRbAg2RmUZ6tfwjCQ";
+    private static final java.time.Duration REACTIVE_TIMEOUT = java.time.Duration.ofSeconds(10);
 
     // 使用ConfigManager获取配置，避免重复加载配置文件，提高性能
     private static final ConfigManager configManager = ConfigManager.getInstance();
@@ -202,7 +207,7 @@ public class SteamGameSearcher {
 
             var jsoupConnection = Jsoup.connect(searchUrl)
                     .userAgent(USER_AGENT)
-                    .cookie("steamLoginSecure", "76561198912395789%7C%7CeyAidHlwIjogIkpXVCIsICJhbGciOiAiRWREU0EiIH0.eyAiaXNzIjogInI6MDAxOV8yNzE5QjEwQl82RTlFQSIsICJzdWIiOiAiNzY1NjExOTg5MTIzOTU3ODkiLCAiYXVkIjogWyAid2ViOnN0b3JlIiBdLCAiZXhwIjogMTc2NDIwNzMwOCwgIm5iZiI6IDE3NTU0ODAzNTEsICJpYXQiOiAxNzY0MTIwMzUxLCAianRpIjogIjAwMENfMjc0RkREOEVfNzcxRTEiLCAib2F0IjogMTc2MDY2MzYwNSwgInJ0X2V4cCI6IDE3NzkwOTU1NTksICJwZXIiOiAwLCAiaXBfc3ViamVjdCI6ICIxNTYuMjI5LjE2My4xNjYiLCAiaXBfY29uZmlybWVyIjogIjIyMS4yMzcuMTEzLjE1MiIgfQ.Njp0GY5ePANkI5ctvYdCGxa6mZcUXWQp_U-0CC4w00Qw_QGvlm-HkuqUZkgHDBHq8t9tZfRbAg2RmUZ6tfwjCQ")
+                    .cookie("steamLoginSecure", LOGIN_COOKIE)
                     .timeout(10000);
 
             // 应用代理配置
@@ -233,6 +238,45 @@ public class SteamGameSearcher {
         }
     }
 
+    /**
+     * searchAndGetGameInfoWithImage 的非阻塞版本
+     * 搜索页与详情 API 都经共享的 WebClient 获取，等待响应期间不占用线程，
+     * 返回格式同上: [gameInfo, jsonResponse, appId]
+     *
+     * @param webClient 访问外部站点的 WebClient（已按配置设置代理）
+     */
+    public static Mono<String[]> searchAndGetGameInfoWithImageAsync(WebClient webClient, String gameName) {
+        String encodedGameName = URLEncoder.encode(gameName, StandardCharsets.UTF_8);
+        String searchUrl = STEAM_SEARCH_URL + encodedGameName + "&ignore_preferences=1&supportedlang=schinese%2Ctchinese&ndl=1";
+
+        return fetch(webClient, searchUrl, true)
+                .flatMap(html -> {
+                    Element firstResult = Jsoup.parse(html, searchUrl).selectFirst("a.search_result_row");
+                    String appId = firstResult != null ? extractAppId(firstResult.attr("href")) : null;
+                    if (appId == null) {
+                        return Mono.just(new String[]{"未找到相关游戏", "", ""});
+                    }
+                    return fetch(webClient, STEAM_API_URL + appId, false)
+                            .map(apiResponse -> new String[]{getSimplifiedGameInfo(apiResponse, appId), apiResponse, appId});
+                })
+                .defaultIfEmpty(new String[]{"未找到相关游戏", "", ""})
+                .onErrorResume(e -> Mono.just(new String[]{"搜索失败: " + e.getMessage(), "", ""}));
+    }
+
+    private static Mono<String> fetch(WebClient webClient, String url, boolean withCookie) {
+        return webClient.get()
+                .uri(java.net.URI.create(url))
+                .header(HttpHeaders.USER_AGENT, USER_AGENT)
+                .headers(h -> {
+                    if (withCookie) {
+                        h.add(HttpHeaders.COOKIE, "steamLoginSecure=" + LOGIN_COOKIE);
+                    }
+                })
+                .retrieve()
+                .bodyToMono(String.class)
+                .timeout(REACTIVE_TIMEOUT);
+    }
+
     /**
      * 搜索第一个游戏结果并获取详细信息
      */
@@ -0,0 +1,48 @@
+package LDS.Person.util;
+
+/**
+ * 粗略的 token 数估算，用于在发送前按 token 预算裁剪对话上下文
+ *
+ * 按 DeepSeek 文档给出的经验值：1 个中文字符约 0.6 token，1 个英文字符约 0.3 token；
+ * 每条消息另加固定开销（角色标记与分隔符）。估算只需与实际用量同一量级，
+ * 实际用量以接口返回的 usage 为准，可在 dispatch-stats 中对比两者
+ */
+public final class TokenEstimator {
+
+    // 每条消息的固定开销（role、分隔符等）
+    public static final int MESSAGE_OVERHEAD_TOKENS = 4;
+
+    private TokenEstimator() {
+    }
+
+    /**
+     * 估算一段文本的 token 数（向上取整）
+     */
+    public static int estimate(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        // 以十分之一 token 为单位累加，避免浮点运算
+        long tenths = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isHighSurrogate(c)) {
+                // 表情等补充平面字符按一个 token 计
+                tenths += 10;
+                i++;
+            } else if (c >= 0x2E80) {
+                tenths += 6;
+            } else {
+                tenths += 3;
+            }
+        }
+        return (int) ((tenths + 9) / 10);
+    }
+
+    /**
+     * 估算一条对话消息的 token 数（含固定开销）
+     */
+    public static int estimateMessage(String content) {
+        return estimate(content) + MESSAGE_OVERHEAD_TOKENS;
+    }
+}
@@ -2,6 +2,9 @@ package LDS.Person.websocket;
 
 import com.alibaba.fastjson2.JSONObject;
 import com.alibaba.fastjson2.JSONException;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.TextMessage;
@@ -9,20 +12,50 @@ import org.springframework.web.socket.WebSocketMessage;
 import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
 
-import java.io.IOException;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.util.concurrent.CopyOnWriteArraySet;
+import LDS.Person.config.ConfigManager;
+import LDS.Person.websocket.SessionOutbox.OverflowPolicy;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * OneBot WebSocket 消息处理器 - 处理来自 OneBot 客户端的连接和消息
  * 参考: https://napneko.github.io/onebot/network
+ *
+ * 每个客户端会话有独立的有界出站缓冲区（SessionOutbox），广播只入队不阻塞调用方；
+ * 配置项（config.properties）：
+ * - onebot.outbound.queue.capacity   单个客户端出站缓冲帧数，默认 256
+ * - onebot.outbound.send.timeout.ms  单次发送耗时上限，超过后断开该客户端，默认 10000
+ * - onebot.outbound.overflow.policy  缓冲区满时的策略：DROP_OLDEST / DISCONNECT，默认 DROP_OLDEST
  */
 @Component
+@Slf4j
 public class OneBotWebSocketHandler extends TextWebSocketHandler {
 
-    // 存储所有连接的 WebSocket 会话
-    private static final CopyOnWriteArraySet<WebSocketSession> sessions = new CopyOnWriteArraySet<>();
+    // 逐条客户端操作日志，高频时按 logback-spring.xml 中的配置采样
+    private static final Logger trafficLog = LoggerFactory.getLogger("LDS.Person.traffic.action");
+
+    private static final ConfigManager configManager = ConfigManager.getInstance();
+    private static final int OUTBOUND_CAPACITY = Math.max(1, configManager.getInt("onebot.outbound.queue.capacity", 256));
+    private static final long SEND_TIME_LIMIT_MS = Math.max(1, configManager.getInt("onebot.outbound.send.timeout.ms", 10000));
+    private static final OverflowPolicy OVERFLOW_POLICY =
+            OverflowPolicy.parse(configManager.getString("onebot.outbound.overflow.policy", "DROP_OLDEST"));
+
+    // 共享发送线程池，每个会话同一时刻最多占用一个线程
+    private static final AtomicInteger senderIndex = new AtomicInteger();
+    private static final ExecutorService outboundSender = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r);
+        t.setName("OneBotOutbound-" + senderIndex.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    });
+
+    // 存储所有连接的 WebSocket 会话及其出站缓冲区：会话 ID -> 缓冲区
+    private static final Map<String, SessionOutbox> sessions = new ConcurrentHashMap<>();
 
     @Autowired(required = false)
     private OneBotMessageService oneBotMessageService;
@@ -32,9 +65,9 @@ public class OneBotWebSocketHandler extends TextWebSocketHandler {
      */
     @Override
     public void afterConnectionEstablished(WebSocketSession session) throws Exception {
-        sessions.add(session);
-        System.out.println("[WEBSOCKET] 客户端已连接: " + session.getId());
-        System.out.println("[WEBSOCKET] 当前连接数: " + sessions.size());
+        sessions.put(session.getId(), new SessionOutbox(
+                session, outboundSender, OUTBOUND_CAPACITY, SEND_TIME_LIMIT_MS, OVERFLOW_POLICY));
+        log.info("[WEBSOCKET] 客户端已连接: {}，当前连接数: {}", session.getId(), sessions.size());
     }
 
     /**
@@ -56,14 +89,8 @@ public class OneBotWebSocketHandler extends TextWebSocketHandler {
             // 只输出非心跳消息（get_status 是心跳）
             boolean isHeartbeat = "get_status".equals(action);
             if (!isHeartbeat) {
-                DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
-                String timestamp = LocalDateTime.now().format(formatter);
-                System.out.println("\n========== WebSocket 消息接收 ==========");
-                System.out.println("[时间] " + timestamp);
-                System.out.println("[操作] " + action);
-                System.out.println("[Echo] " + echo);
-                System.out.println("[完整消息] " + payload);
-                System.out.println("=======================================\n");
+                trafficLog.info("[WEBSOCKET] 收到操作: {}，Echo: {}", action, echo);
+                trafficLog.debug("[WEBSOCKET] 完整消息: {}", payload);
             }
 
             // 构建响应消息
@@ -99,8 +126,7 @@ public class OneBotWebSocketHandler extends TextWebSocketHandler {
             }
 
         } catch (JSONException e) {
-            System.err.println("[WEBSOCKET] JSON 解析错误: " + e.getMessage());
-            System.out.println("[WEBSOCKET] 原始消息: " + payload);
+            log.warn("[WEBSOCKET] JSON 解析错误: {}，原始消息: {}", e.getMessage(), payload);
             JSONObject errorResponse = new JSONObject();
             errorResponse.put("status", "failed");
             errorResponse.put("retcode", 400);
@@ -146,9 +172,11 @@ public class OneBotWebSocketHandler extends TextWebSocketHandler {
      */
     @Override
     public void afterConnectionClosed(WebSocketSession session, org.springframework.web.socket.CloseStatus status) {
-        sessions.remove(session);
-        System.out.println("[WEBSOCKET] 客户端已断开连接: " + session.getId());
-        System.out.println("[WEBSOCKET] 当前连接数: " + sessions.size());
+        SessionOutbox outbox = sessions.remove(session.getId());
+        if (outbox != null) {
+            outbox.close();
+        }
+        log.info("[WEBSOCKET] 客户端已断开连接: {}，当前连接数: {}", session.getId(), sessions.size());
     }
 
     /**
@@ -156,46 +184,62 @@ public class OneBotWebSocketHandler extends TextWebSocketHandler {
      */
     @Override
     public void handleTransportError(WebSocketSession session, Throwable exception) {
-        System.err.println("[WEBSOCKET] 传输错误: " + exception.getMessage());
-        exception.printStackTrace();
+        log.error("[WEBSOCKET] 传输错误: {}", exception.getMessage(), exception);
     }
 
     /**
-     * 发送消息给特定客户端
+     * 发送消息给特定客户端（入队后立即返回）
      */
-    public void sendMessage(WebSocketSession session, String message) throws IOException {
-        if (session != null && session.isOpen()) {
-            synchronized (session) {
-                session.sendMessage(new TextMessage(message));
-            }
+    public void sendMessage(WebSocketSession session, String message) {
+        if (session == null) {
+            return;
+        }
+        SessionOutbox outbox = sessions.get(session.getId());
+        if (outbox != null) {
+            outbox.enqueue(new TextMessage(message));
         }
     }
 
     /**
      * 广播消息给所有连接的客户端
      */
-    public void broadcastMessage(String message) throws IOException {
-        for (WebSocketSession session : sessions) {
-            if (session.isOpen()) {
-                synchronized (session) {
-                    session.sendMessage(new TextMessage(message));
-                }
-            }
-        }
+    public void broadcastMessage(String message) {
+        broadcastToClients(message);
     }
 
     /**
      * 静态方法：广播消息给所有连接的客户端（用于远程客户端转发）
+     * 同一帧只包装一次 TextMessage，在所有会话间共享；只入队，不阻塞 NapCat 读线程
      */
-    public static void broadcastToClients(String message) throws IOException {
-        // 获取所有会话，将消息转发给所有连接的客户端
-        for (WebSocketSession session : sessions) {
-            if (session.isOpen()) {
-                synchronized (session) {
-                    session.sendMessage(new TextMessage(message));
-                }
-            }
+    public static void broadcastToClients(String message) {
+        if (sessions.isEmpty()) {
+            return;
+        }
+        TextMessage textMessage = new TextMessage(message);
+        for (SessionOutbox outbox : sessions.values()) {
+            outbox.enqueue(textMessage);
+        }
+    }
+
+    /**
+     * 获取各客户端出站缓冲区统计
+     */
+    public static Map<String, Object> getOutboundStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("queue_capacity", OUTBOUND_CAPACITY);
+        stats.put("send_timeout_ms", SEND_TIME_LIMIT_MS);
+        stats.put("overflow_policy", OVERFLOW_POLICY.name());
+        Map<String, Object> clients = new LinkedHashMap<>();
+        for (Map.Entry<String, SessionOutbox> entry : sessions.entrySet()) {
+            SessionOutbox outbox = entry.getValue();
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("queue_size", outbox.getQueueSize());
+            item.put("sent", outbox.getSentCount());
+            item.put("dropped", outbox.getDroppedCount());
+            clients.put(entry.getKey(), item);
         }
+        stats.put("clients", clients);
+        return stats;
     }
 
     /**
@@ -1,18 +1,27 @@
 package LDS.Person.websocket;
 
 import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongConsumer;
 
-import LDS.Person.tasks.MsgLisATTask;
-import LDS.Person.tasks.MsgLisKeyWordTask;
-import LDS.Person.tasks.MsgLisVipCmdTask;
-import LDS.Person.tasks.MsgLisUserCmdTask;
 import org.java_websocket.handshake.ServerHandshake;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import com.alibaba.fastjson2.JSONObject;
-
+import LDS.Person.napcat.WsActionChannel;
+import LDS.Person.util.LazyString;
 import LDS.Person.util.OneBotMessageFormatter;
 import LDS.Person.websocket.base.BaseWebSocketClientHandler;
 import LDS.Person.websocket.config.WebSocketConstants;
+import LDS.Person.websocket.dispatch.EventDispatcher;
+import LDS.Person.websocket.event.FrameClassifier;
+import LDS.Person.websocket.event.FrameClassifier.FrameType;
+import LDS.Person.websocket.event.OneBotEvent;
+import LDS.Person.websocket.listener.ListenerPriority;
+import LDS.Person.websocket.listener.MessageListenerChain;
+import LDS.Person.websocket.replay.FrameRecorder;
 
 /**
  * 远程 WebSocket 客户端处理器 - 连接到远程 NapCat 服务器
@@ -21,90 +30,166 @@ import LDS.Person.websocket.config.WebSocketConstants;
  */
 public class RemoteWebSocketClientHandler extends BaseWebSocketClientHandler {
 
-    private static MsgLisATTask msgLisATTask;
-    private static MsgLisKeyWordTask msgLisKeyWordTask;
-    private static MsgLisVipCmdTask msgLisVipCmdTask;
-    private static MsgLisUserCmdTask msgLisUserCmdTask;
+    // 逐条消息日志，高频时按 logback-spring.xml 中的配置采样
+    private static final Logger trafficLog = LoggerFactory.getLogger("LDS.Person.traffic.inbound");
+
+    private static MessageListenerChain listenerChain;
+    private static EventDispatcher eventDispatcher;
+    private static FrameRecorder frameRecorder;
+    private static WsActionChannel actionChannel;
+
+    // 帧计数（按分类统计）
+    private static final LongAdder eventFrameCount = new LongAdder();
+    private static final LongAdder heartbeatFrameCount = new LongAdder();
+    private static final LongAdder actionResponseFrameCount = new LongAdder();
 
     public RemoteWebSocketClientHandler(URI uri) {
         super(uri);
     }
 
     /**
-     * 设置消息监听任务（由 Spring 容器注入）
+     * 设置消息监听链（由 Spring 容器注入）
      */
-    public static void setMessageListenerTask(MsgLisATTask task) {
-        msgLisATTask = task;
+    public static void setListenerChain(MessageListenerChain chain) {
+        listenerChain = chain;
     }
 
     /**
-     * 设置关键词监听任务（由 Spring 容器注入）
+     * 设置事件分发器（由 Spring 容器注入），未设置时监听任务在读线程同步执行
      */
-    public static void setMessageListenerKeyWordTask(MsgLisKeyWordTask task) {
-        msgLisKeyWordTask = task;
+    public static void setEventDispatcher(EventDispatcher dispatcher) {
+        eventDispatcher = dispatcher;
     }
 
     /**
-     * 设置 VIP 白名单消息监听任务（由 Spring 容器注入）
+     * 设置原始帧录制器（由 Spring 容器注入），仅在 capture.enabled=true 时实际写入
      */
-    public static void setMsgLisVipATTask(MsgLisVipCmdTask task) {
-        msgLisVipCmdTask = task;
+    public static void setFrameRecorder(FrameRecorder recorder) {
+        frameRecorder = recorder;
     }
 
     /**
-     * 设置用户公共指令监听任务（由 Spring 容器注入）
+     * 设置 WebSocket 动作通道（由 Spring 容器注入），API 响应帧交给它按 echo 完成在途请求
      */
-    public static void setMsgLisUserCmdTask(MsgLisUserCmdTask task) {
-        msgLisUserCmdTask = task;
+    public static void setActionChannel(WsActionChannel channel) {
+        actionChannel = channel;
     }
 
     @Override
     public void onMessage(String message) {
+        if (frameRecorder != null) {
+            frameRecorder.record(message, System.currentTimeMillis());
+        }
         try {
-            // 解析消息
-            JSONObject json = JSONObject.parseObject(message);
-            String postType = json.getString("post_type");
-            String metaEventType = json.getString("meta_event_type");
-
-            // 屏蔽 heartbeat 消息（心跳事件）
-            boolean isHeartbeat = WebSocketConstants.POST_TYPE_META_EVENT.equals(postType)
-                    && WebSocketConstants.META_EVENT_TYPE_HEARTBEAT.equals(metaEventType);
-
-            // 屏蔽 get_status 响应消息（echo 字段存在且 status/retcode 字段存在表示是 API 响应）
-            boolean isStatusResponse = json.containsKey("status") && json.containsKey("retcode")
-                    && json.containsKey("echo");
-
-            if (!isHeartbeat && !isStatusResponse) {
-                // 使用消息格式化工具来简化消息显示
-                String formattedMessage = OneBotMessageFormatter.formatMessage(json);
-                System.out.println(WebSocketConstants.LOG_PREFIX_REMOTE + " " + formattedMessage);
-
-                // 触发消息监听任务（自动回复处理）
-                if (msgLisATTask != null) {
-                    msgLisATTask.handleMessage(json);
-                }
-
-                // 触发关键词监听任务
-                if (msgLisKeyWordTask != null) {
-                    msgLisKeyWordTask.handleMessage(json);
-                }
-
-                // 触发 VIP 白名单消息监听任务
-                if (msgLisVipCmdTask != null) {
-                    msgLisVipCmdTask.handleMessage(json);
-                }
-
-                // 触发用户公共指令监听任务
-                if (msgLisUserCmdTask != null) {
-                    msgLisUserCmdTask.handleMessage(json);
-                }
+            processFrame(message);
+        } catch (Exception e) {
+            logError("处理消息出错: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 处理一帧：分类、解析、分发给监听链并转发给本地客户端
+     * 线上由 onMessage 调用
+     *
+     * @param message NapCat 原始帧文本
+     */
+    public static void processFrame(String message) {
+        processFrame(message, null);
+    }
+
+    /**
+     * 处理一帧，事件帧的监听链执行完毕后回调从入队到完成的耗时；由 FrameReplayer 回放时调用
+     *
+     * @param message    NapCat 原始帧文本
+     * @param onComplete 事件帧处理完成回调（参数为纳秒），心跳与 API 响应帧不回调；可为 null
+     */
+    public static void processFrame(String message, LongConsumer onComplete) {
+        // 先流式扫描顶层字段，心跳与 API 响应走轻量路径，不做完整解析
+        FrameType frameType = FrameClassifier.classify(message);
+        if (frameType != FrameType.EVENT) {
+            handleControlFrame(frameType, message);
+            return;
+        }
+        eventFrameCount.increment();
+
+        // 解析消息，只解码一次，格式化与所有监听任务共享同一个事件对象
+        OneBotEvent event = OneBotEvent.parse(message);
+
+        // 使用消息格式化工具来简化消息显示，只在日志实际输出时才格式化
+        trafficLog.info("{} {}", WebSocketConstants.LOG_PREFIX_REMOTE,
+                LazyString.of(() -> OneBotMessageFormatter.formatMessage(event)));
+
+        // 读线程只负责入队，监听任务交由分发器的工作线程执行，同一群内按到达顺序串行；
+        // 入队时按监听链分类，过载时先淘汰低优先级事件
+        long enqueueNanos = System.nanoTime();
+        Runnable task = onComplete == null ? () -> notifyListeners(event) : () -> {
+            notifyListeners(event);
+            onComplete.accept(System.nanoTime() - enqueueNanos);
+        };
+        if (eventDispatcher != null) {
+            ListenerPriority priority = listenerChain != null
+                    ? listenerChain.classify(event) : ListenerPriority.BEST_EFFORT;
+            eventDispatcher.dispatch(laneKeyOf(event), priority, task);
+        } else {
+            task.run();
+        }
+
+        // 将消息转发到 Spring 服务器的客户端
+        OneBotWebSocketHandler.broadcastToClients(message);
+    }
+
+    /**
+     * 轻量路径：处理心跳与 API 响应帧，不做完整解析也不进入监听链
+     * API 响应先交给动作通道按 echo 认领：属于动作通道的响应（含超时后迟到的）只在本进程内消费，
+     * 不转发给本地客户端；其余响应是本地客户端经 NapCat 发起的请求，与心跳一样原样转发
+     */
+    private static void handleControlFrame(FrameType frameType, String message) {
+        if (frameType == FrameType.HEARTBEAT) {
+            heartbeatFrameCount.increment();
+        } else {
+            actionResponseFrameCount.increment();
+            if (actionChannel != null && actionChannel.onResponse(message)) {
+                return;
             }
+        }
+        OneBotWebSocketHandler.broadcastToClients(message);
+    }
 
-            // 将消息转发到 Spring 服务器的客户端
-            OneBotWebSocketHandler.broadcastToClients(message);
+    /**
+     * 获取各类帧的接收计数
+     */
+    public static Map<String, Object> getFrameStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("event_frames", eventFrameCount.sum());
+        stats.put("heartbeat_frames", heartbeatFrameCount.sum());
+        stats.put("action_response_frames", actionResponseFrameCount.sum());
+        return stats;
+    }
 
-        } catch (Exception e) {
-            logError("处理消息出错: " + e.getMessage());
+    /**
+     * 计算事件的串行通道 key：群事件按群号，私聊等无群号事件按用户号（取负值与群号区分）
+     */
+    private static long laneKeyOf(OneBotEvent event) {
+        if (event.getGroupId() != 0) {
+            return event.getGroupId();
+        }
+        return -event.getUserId();
+    }
+
+    /**
+     * 执行消息监听链，第一个认领消息的监听任务终止链路
+     */
+    private static void notifyListeners(OneBotEvent event) {
+        if (listenerChain != null) {
+            listenerChain.handle(event);
+        }
+    }
+
+    @Override
+    public void onClose(int code, String reason, boolean remote) {
+        super.onClose(code, reason, remote);
+        if (actionChannel != null) {
+            actionChannel.failAll("WebSocket 连接已断开");
         }
     }
 
@@ -0,0 +1,168 @@
+package LDS.Person.websocket;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个本地客户端会话的出站缓冲区
+ * 调用方只负责入队，实际发送由共享发送线程池中的一个线程顺序完成，同一会话同一时刻最多一个线程在发送；
+ * 慢速或卡死的客户端只会占满自己的缓冲区，不会阻塞 NapCat 读线程和其他客户端
+ *
+ * 溢出处理：
+ * - DROP_OLDEST  缓冲区满时丢弃最旧的帧
+ * - DISCONNECT   缓冲区满时断开该客户端
+ * 单次发送耗时超过 sendTimeLimitMs 时，下一次入队会直接断开该客户端
+ */
+@Slf4j
+final class SessionOutbox {
+
+    /**
+     * 缓冲区溢出策略
+     */
+    enum OverflowPolicy {
+        DROP_OLDEST,
+        DISCONNECT;
+
+        static OverflowPolicy parse(String value) {
+            try {
+                return OverflowPolicy.valueOf(value.trim().toUpperCase());
+            } catch (Exception e) {
+                log.warn("无效的出站溢出策略配置: {}，使用默认值 DROP_OLDEST", value);
+                return DROP_OLDEST;
+            }
+        }
+    }
+
+    private final WebSocketSession session;
+    private final Executor sender;
+    private final int capacity;
+    private final long sendTimeLimitMs;
+    private final OverflowPolicy overflowPolicy;
+
+    // 以下字段均由 this 锁保护
+    private final ArrayDeque<TextMessage> queue = new ArrayDeque<>();
+    private boolean draining;
+    private boolean closed;
+    private long sendStartMillis;
+
+    private final LongAdder sentCount = new LongAdder();
+    private final LongAdder droppedCount = new LongAdder();
+
+    SessionOutbox(WebSocketSession session, Executor sender, int capacity,
+                  long sendTimeLimitMs, OverflowPolicy overflowPolicy) {
+        this.session = session;
+        this.sender = sender;
+        this.capacity = capacity;
+        this.sendTimeLimitMs = sendTimeLimitMs;
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * 入队一帧，不阻塞调用方
+     */
+    void enqueue(TextMessage message) {
+        boolean startDrain;
+        String closeReason = null;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            if (sendStartMillis != 0 && System.currentTimeMillis() - sendStartMillis > sendTimeLimitMs) {
+                closeReason = "发送超时（超过 " + sendTimeLimitMs + " ms）";
+            } else if (queue.size() >= capacity) {
+                if (overflowPolicy == OverflowPolicy.DISCONNECT) {
+                    closeReason = "出站缓冲区已满（" + capacity + " 帧）";
+                } else {
+                    queue.pollFirst();
+                    droppedCount.increment();
+                }
+            }
+
+            if (closeReason != null) {
+                closed = true;
+                droppedCount.add(queue.size() + 1);
+                queue.clear();
+                startDrain = false;
+            } else {
+                queue.offerLast(message);
+                startDrain = !draining;
+                draining = true;
+            }
+        }
+
+        if (closeReason != null) {
+            // 关闭握手可能同样阻塞在卡死的连接上，交给发送线程执行
+            String reason = closeReason;
+            sender.execute(() -> closeSession(reason));
+        } else if (startDrain) {
+            sender.execute(this::drain);
+        }
+    }
+
+    /**
+     * 在发送线程上顺序发送缓冲区中的帧
+     */
+    private void drain() {
+        while (true) {
+            TextMessage message;
+            synchronized (this) {
+                message = closed ? null : queue.pollFirst();
+                if (message == null) {
+                    draining = false;
+                    sendStartMillis = 0;
+                    return;
+                }
+                sendStartMillis = System.currentTimeMillis();
+            }
+
+            try {
+                if (session.isOpen()) {
+                    session.sendMessage(message);
+                    sentCount.increment();
+                } else {
+                    droppedCount.increment();
+                }
+            } catch (Exception e) {
+                droppedCount.increment();
+                log.warn("[WEBSOCKET] 发送到客户端 {} 失败: {}", session.getId(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 标记关闭并丢弃未发送的帧（连接已断开时调用）
+     */
+    void close() {
+        synchronized (this) {
+            closed = true;
+            queue.clear();
+        }
+    }
+
+    synchronized int getQueueSize() {
+        return queue.size();
+    }
+
+    long getSentCount() {
+        return sentCount.sum();
+    }
+
+    long getDroppedCount() {
+        return droppedCount.sum();
+    }
+
+    private void closeSession(String reason) {
+        log.warn("[WEBSOCKET] 断开慢速客户端 {}: {}", session.getId(), reason);
+        try {
+            session.close(CloseStatus.SESSION_NOT_RELIABLE.withReason("slow consumer"));
+        } catch (Exception e) {
+            log.debug("[WEBSOCKET] 关闭客户端 {} 失败: {}", session.getId(), e.getMessage());
+        }
+    }
+}
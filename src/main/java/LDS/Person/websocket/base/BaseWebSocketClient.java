@@ -98,6 +98,17 @@ public abstract class BaseWebSocketClient {
         }
     }
 
+    /**
+     * 通过当前连接发送一帧文本
+     */
+    public void sendMessage(String message) throws Exception {
+        BaseWebSocketClientHandler handler = wsHandler;
+        if (handler == null) {
+            throw new Exception("WebSocket 未连接");
+        }
+        handler.sendMessage(message);
+    }
+
     /**
      * 检查是否已连接
      */
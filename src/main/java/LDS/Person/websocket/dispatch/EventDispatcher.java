@@ -0,0 +1,558 @@
+package LDS.Person.websocket.dispatch;
+
+import LDS.Person.config.ConfigManager;
+import LDS.Person.websocket.listener.ListenerPriority;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 事件分发器 - 位于 WebSocket 读线程与监听任务之间的有界队列 + 工作线程池
+ * 读线程只负责入队，监听任务（AI 回复、关键词、指令等）在工作线程中执行，
+ * 避免一次慢速的 DeepSeek / NapCat HTTP 调用阻塞后续所有帧的接收
+ *
+ * 按 key（通常是群号）划分串行通道：同一通道内的事件严格按到达顺序逐个执行，
+ * 不同通道复用同一组工作线程并行执行。通道每次最多连续执行 dispatch.lane.batch 个事件后
+ * 让出工作线程重新排队，避免单个高频群长期占用线程。通道排空后即从通道表中移除，
+ * 私聊按发送者划分的通道不会随不同发送者数量无限增长
+ *
+ * 事件在入队时即按监听链分类得到优先级（见 MessageListenerChain.classify），排队总数达到上限时
+ * 淘汰的是所有通道中最旧的最低优先级事件；CRITICAL（VIP 指令、@机器人）事件从不被淘汰或拒绝，
+ * 无可淘汰事件时允许暂时超出上限入队。可淘汰的事件按入队序号另外登记在各优先级的有序索引中，
+ * 淘汰时直接取索引中最旧的一个，不随通道数量扫描
+ *
+ * 配置项（config.properties）：
+ * - dispatch.queue.capacity  所有通道排队事件总数上限，默认 1000
+ * - dispatch.worker.count    工作线程数，默认 4
+ * - dispatch.reject.policy   队列满时的拒绝策略：DISCARD_OLDEST / DISCARD_NEW / BLOCK，默认 DISCARD_OLDEST
+ * - dispatch.lane.batch      单个通道每次占用工作线程时最多连续执行的事件数，默认 16
+ * - dispatch.executor.mode   执行模式：PLATFORM（固定平台线程池）/ VIRTUAL（每个通道调度使用一个虚拟线程），默认 PLATFORM
+ *                            VIRTUAL 需要 JDK 21+，不支持时自动回退到 PLATFORM
+ */
+@Component
+@Slf4j
+public class EventDispatcher {
+
+    private static final ConfigManager configManager = ConfigManager.getInstance();
+
+    // 统计接口中列出的积压最多的通道数
+    private static final int TOP_LANE_LIMIT = 10;
+
+    /**
+     * 执行模式
+     */
+    public enum ExecutorMode {
+        /** 固定数量的平台线程，适合 JDK 17 */
+        PLATFORM,
+        /** 虚拟线程，阻塞式 HTTP 调用不再占用平台线程，需要 JDK 21+ */
+        VIRTUAL;
+
+        static ExecutorMode parse(String value) {
+            try {
+                return ExecutorMode.valueOf(value.trim().toUpperCase());
+            } catch (Exception e) {
+                log.warn("无效的执行模式配置: {}，使用默认值 PLATFORM", value);
+                return PLATFORM;
+            }
+        }
+    }
+
+    /**
+     * 队列满时的拒绝策略
+     */
+    public enum RejectPolicy {
+        /** 淘汰最旧的最低优先级事件为新事件腾出位置；排队事件优先级都高于新事件时丢弃新事件 */
+        DISCARD_OLDEST,
+        /** 直接丢弃新到达的事件（CRITICAL 事件仍按 DISCARD_OLDEST 处理） */
+        DISCARD_NEW,
+        /**
+         * 调用线程（WebSocket 读线程）阻塞到队列腾出位置后再入队，对 NapCat 形成反压；
+         * 事件仍进入所属群的串行通道执行，不会越过同群排在前面的事件（CRITICAL 事件仍按 DISCARD_OLDEST 处理）
+         */
+        BLOCK;
+
+        static RejectPolicy parse(String value) {
+            try {
+                String name = value.trim().toUpperCase();
+                if ("CALLER_RUNS".equals(name)) {
+                    // 旧配置：在读线程上直接执行会绕过群内串行顺序，改为阻塞入队
+                    log.warn("拒绝策略 CALLER_RUNS 已改为 BLOCK");
+                    return BLOCK;
+                }
+                return RejectPolicy.valueOf(name);
+            } catch (Exception e) {
+                log.warn("无效的拒绝策略配置: {}，使用默认值 DISCARD_OLDEST", value);
+                return DISCARD_OLDEST;
+            }
+        }
+    }
+
+    private final int queueCapacity;
+    private final int workerCount;
+    private final int laneBatch;
+    private final RejectPolicy rejectPolicy;
+    private final ExecutorMode executorMode;
+    private final ExecutorService executor;
+    private final Map<Long, SerialLane> lanes = new ConcurrentHashMap<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final AtomicIntegerArray pendingByPriority = new AtomicIntegerArray(ListenerPriority.values().length);
+    private final AtomicInteger activeLaneCount = new AtomicInteger();
+    // 入队序号，决定淘汰时的新旧顺序
+    private final AtomicLong enqueueSequence = new AtomicLong();
+    // 各优先级排队中的可淘汰事件，按入队序号排序；CRITICAL 不登记
+    private final List<ConcurrentSkipListMap<Long, TimedTask>> evictable = new ArrayList<>();
+    // BLOCK 策略下等待队列腾出位置的调用线程数，为 0 时出队不做唤醒
+    private final AtomicInteger blockedCallers = new AtomicInteger();
+    private final Object capacityMonitor = new Object();
+
+    // 统计计数器
+    private final LongAdder submittedCount = new LongAdder();
+    private final LongAdder completedCount = new LongAdder();
+    private final LongAdder failedCount = new LongAdder();
+    private final LongAdder rejectedCount = new LongAdder();
+    private final Map<ListenerPriority, LongAdder> rejectedByPriority = new EnumMap<>(ListenerPriority.class);
+    private final LongAdder overCapacityCount = new LongAdder();
+    private final LongAdder blockedCount = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    public EventDispatcher() {
+        this(configManager.getInt("dispatch.queue.capacity", 1000),
+                configManager.getInt("dispatch.worker.count", 4),
+                configManager.getInt("dispatch.lane.batch", 16),
+                RejectPolicy.parse(configManager.getString("dispatch.reject.policy", "DISCARD_OLDEST")),
+                ExecutorMode.parse(configManager.getString("dispatch.executor.mode", "PLATFORM")));
+    }
+
+    /**
+     * 指定参数构建，供基准测试在同一进程内对比不同执行模式
+     */
+    EventDispatcher(int queueCapacity, int workerCount, int laneBatch, RejectPolicy rejectPolicy, ExecutorMode mode) {
+        this.queueCapacity = Math.max(1, queueCapacity);
+        this.workerCount = Math.max(1, workerCount);
+        this.laneBatch = Math.max(1, laneBatch);
+        this.rejectPolicy = rejectPolicy;
+        for (ListenerPriority priority : ListenerPriority.values()) {
+            rejectedByPriority.put(priority, new LongAdder());
+            evictable.add(new ConcurrentSkipListMap<>());
+        }
+
+        ExecutorService virtualExecutor = null;
+        if (mode == ExecutorMode.VIRTUAL) {
+            virtualExecutor = createVirtualThreadExecutor();
+        }
+        if (virtualExecutor != null) {
+            this.executorMode = ExecutorMode.VIRTUAL;
+            this.executor = virtualExecutor;
+        } else {
+            this.executorMode = ExecutorMode.PLATFORM;
+            this.executor = createPlatformExecutor(workerCount);
+        }
+
+        log.info("[EventDispatcher] 初始化完成 - 队列深度: {}，工作线程: {}，通道批量: {}，拒绝策略: {}，执行模式: {}",
+                queueCapacity, workerCount, laneBatch, rejectPolicy, executorMode);
+    }
+
+    /**
+     * 提交一个事件处理任务到指定通道（仅入队，不在调用线程执行）
+     * 同一 laneKey 的任务按提交顺序串行执行
+     *
+     * @param laneKey  通道 key，通常为群号
+     * @param priority 事件优先级，决定过载时的淘汰顺序
+     * @param task     事件处理任务
+     */
+    public void dispatch(long laneKey, ListenerPriority priority, Runnable task) {
+        submittedCount.increment();
+        TimedTask timedTask = new TimedTask(priority, task);
+
+        if (pendingCount.get() >= queueCapacity && !handleOverflow(timedTask)) {
+            return;
+        }
+
+        // 先登记到淘汰索引再入队，工作线程取走任务后再从索引中移除，索引中不会残留已执行的任务
+        if (priority != ListenerPriority.CRITICAL) {
+            evictable.get(priority.ordinal()).put(timedTask.sequence, timedTask);
+        }
+        // 在映射的桶锁内入队，与排空后的移除互斥，不会把任务放进已移除的通道
+        SerialLane lane = lanes.compute(laneKey, (key, existing) -> {
+            SerialLane target = existing != null ? existing : new SerialLane(key);
+            timedTask.lane = target;
+            target.offer(timedTask);
+            return target;
+        });
+        pendingCount.incrementAndGet();
+        pendingByPriority.incrementAndGet(priority.ordinal());
+        schedule(lane);
+    }
+
+    /**
+     * 获取当前排队中的事件数（所有通道合计）
+     */
+    public int getQueueDepth() {
+        return pendingCount.get();
+    }
+
+    /**
+     * 是否空闲：没有排队的事件，也没有工作线程正在执行通道中的事件
+     * 工作线程先计入活跃再从通道取出事件，两个计数同时为 0 时不存在处于两者之间的事件
+     */
+    public boolean isIdle() {
+        return pendingCount.get() == 0 && activeLaneCount.get() == 0;
+    }
+
+    /**
+     * 获取分发器运行统计
+     */
+    public Map<String, Object> getStats() {
+        long completed = completedCount.sum() + failedCount.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("queue_capacity", queueCapacity);
+        stats.put("queue_depth", getQueueDepth());
+        stats.put("executor_mode", executorMode.name());
+        stats.put("worker_count", workerCount);
+        stats.put("active_workers", activeLaneCount.get());
+        stats.put("reject_policy", rejectPolicy.name());
+        stats.put("lane_batch", laneBatch);
+        stats.put("lane_count", lanes.size());
+        stats.put("submitted", submittedCount.sum());
+        stats.put("completed", completedCount.sum());
+        stats.put("failed", failedCount.sum());
+        stats.put("rejected", rejectedCount.sum());
+        stats.put("rejected_by_priority", toMap(rejectedByPriority));
+        stats.put("over_capacity", overCapacityCount.sum());
+        stats.put("blocked", blockedCount.sum());
+        Map<String, Object> queued = new LinkedHashMap<>();
+        for (ListenerPriority priority : ListenerPriority.values()) {
+            queued.put(priority.name(), pendingByPriority.get(priority.ordinal()));
+        }
+        stats.put("queued_by_priority", queued);
+        stats.put("avg_wait_ms", completed == 0 ? 0.0 : totalWaitNanos.sum() / 1_000_000.0 / completed);
+        stats.put("max_wait_ms", maxWaitNanos.get() / 1_000_000.0);
+        stats.put("busiest_lanes", getBusiestLanes());
+        return stats;
+    }
+
+    /**
+     * 应用关闭时停止工作线程
+     */
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 固定数量的平台线程池
+     * 线程池队列中只存放"通道调度任务"，每个通道同一时刻最多一个，容量由通道排队总数控制
+     */
+    private static ExecutorService createPlatformExecutor(int workerCount) {
+        AtomicInteger threadIndex = new AtomicInteger();
+        return new ThreadPoolExecutor(
+                workerCount, workerCount,
+                0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                r -> {
+                    Thread t = new Thread(r);
+                    t.setName("EventDispatcher-" + threadIndex.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
+
+    /**
+     * 通过反射创建虚拟线程执行器，项目按 JDK 17 编译，运行在 JDK 21+ 时才可用
+     *
+     * @return 虚拟线程执行器，当前 JVM 不支持时返回 null
+     */
+    private static ExecutorService createVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            log.warn("[EventDispatcher] 当前 JVM（{}）不支持虚拟线程，回退到平台线程池",
+                    System.getProperty("java.version"));
+            return null;
+        }
+    }
+
+    /**
+     * 排队总数达到上限时按拒绝策略处理
+     *
+     * @return true 表示新任务仍需入队，false 表示已丢弃
+     */
+    private boolean handleOverflow(TimedTask task) {
+        ListenerPriority priority = task.getPriority();
+        switch (rejectPolicy) {
+            case BLOCK:
+                if (priority == ListenerPriority.CRITICAL) {
+                    return evictFor(priority) || admitOverCapacity();
+                }
+                if (awaitCapacity()) {
+                    return true;
+                }
+                reject(priority);
+                return false;
+            case DISCARD_NEW:
+                if (priority != ListenerPriority.CRITICAL) {
+                    reject(priority);
+                    return false;
+                }
+                return evictFor(priority) || admitOverCapacity();
+            case DISCARD_OLDEST:
+            default:
+                if (evictFor(priority)) {
+                    return true;
+                }
+                if (priority == ListenerPriority.CRITICAL) {
+                    return admitOverCapacity();
+                }
+                // 排队中只剩优先级更高的事件，丢弃新事件
+                reject(priority);
+                return false;
+        }
+    }
+
+    /**
+     * 从最低优先级开始，淘汰一个优先级不高于新事件的最旧事件；CRITICAL 事件从不淘汰
+     *
+     * @return true 表示已腾出一个位置
+     */
+    private boolean evictFor(ListenerPriority incoming) {
+        ListenerPriority[] priorities = ListenerPriority.values();
+        for (int i = priorities.length - 1; i > ListenerPriority.CRITICAL.ordinal() && i >= incoming.ordinal(); i--) {
+            if (pendingByPriority.get(i) > 0 && evictOldest(priorities[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 淘汰所有通道中最早入队的指定优先级事件：取该优先级索引中序号最小的任务并从所属通道移除
+     * 被淘汰的事件通常位于所属通道的队首附近，移除代价与通道长度基本无关
+     */
+    private boolean evictOldest(ListenerPriority priority) {
+        Map.Entry<Long, TimedTask> oldest = evictable.get(priority.ordinal()).pollFirstEntry();
+        if (oldest == null) {
+            return false;
+        }
+        TimedTask victim = oldest.getValue();
+        SerialLane lane = victim.lane;
+        if (lane == null) {
+            // 已登记但尚未放入通道（与 dispatch 并发），放回索引，本次不淘汰
+            evictable.get(priority.ordinal()).put(oldest.getKey(), victim);
+            return false;
+        }
+        // 与工作线程竞争时可能已被取走执行，此时排队总数已经减少，无需再淘汰
+        if (!lane.remove(victim)) {
+            return true;
+        }
+        onDequeued(victim);
+        reject(priority);
+        return true;
+    }
+
+    /**
+     * BLOCK 策略：阻塞调用线程直到排队总数低于上限
+     *
+     * @return true 表示已有空位，false 表示分发器已关闭或等待被中断
+     */
+    private boolean awaitCapacity() {
+        blockedCount.increment();
+        blockedCallers.incrementAndGet();
+        try {
+            synchronized (capacityMonitor) {
+                while (pendingCount.get() >= queueCapacity) {
+                    if (executor.isShutdown()) {
+                        return false;
+                    }
+                    // 定时醒来检查关闭状态，正常情况下由出队唤醒
+                    capacityMonitor.wait(100);
+                }
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            blockedCallers.decrementAndGet();
+        }
+    }
+
+    /**
+     * CRITICAL 事件在无可淘汰事件时超出上限入队
+     */
+    private boolean admitOverCapacity() {
+        overCapacityCount.increment();
+        return true;
+    }
+
+    private void reject(ListenerPriority priority) {
+        rejectedCount.increment();
+        rejectedByPriority.get(priority).increment();
+    }
+
+    /**
+     * 任务离开队列（被执行、淘汰或关闭时丢弃）后更新排队计数
+     */
+    private void onDequeued(TimedTask task) {
+        pendingCount.decrementAndGet();
+        pendingByPriority.decrementAndGet(task.getPriority().ordinal());
+        if (task.getPriority() != ListenerPriority.CRITICAL) {
+            evictable.get(task.getPriority().ordinal()).remove(task.sequence);
+        }
+        if (blockedCallers.get() > 0) {
+            synchronized (capacityMonitor) {
+                capacityMonitor.notifyAll();
+            }
+        }
+    }
+
+    private static Map<String, Object> toMap(Map<ListenerPriority, LongAdder> counts) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        for (Map.Entry<ListenerPriority, LongAdder> entry : counts.entrySet()) {
+            result.put(entry.getKey().name(), entry.getValue().sum());
+        }
+        return result;
+    }
+
+    /**
+     * 若通道当前未被调度，则提交到线程池
+     */
+    private void schedule(SerialLane lane) {
+        if (!lane.trySchedule()) {
+            return;
+        }
+        try {
+            executor.execute(() -> drain(lane));
+        } catch (RejectedExecutionException e) {
+            // 应用关闭中，丢弃通道内剩余事件
+            TimedTask task;
+            while ((task = lane.poll()) != null) {
+                onDequeued(task);
+                reject(task.getPriority());
+            }
+            lane.release();
+            removeIfIdle(lane);
+        }
+    }
+
+    /**
+     * 在工作线程上顺序执行通道中的事件，最多执行 laneBatch 个后让出线程
+     */
+    private void drain(SerialLane lane) {
+        activeLaneCount.incrementAndGet();
+        try {
+            int executed = 0;
+            TimedTask task;
+            while (executed < laneBatch && (task = lane.poll()) != null) {
+                onDequeued(task);
+                task.run();
+                lane.markProcessed();
+                executed++;
+            }
+        } finally {
+            activeLaneCount.decrementAndGet();
+        }
+
+        lane.release();
+        // 仍有积压（或释放调度权期间有新事件入队）时重新排到线程池队尾，让其他通道先执行
+        if (!lane.isEmpty()) {
+            schedule(lane);
+        } else {
+            removeIfIdle(lane);
+        }
+    }
+
+    /**
+     * 通道已排空且未被调度时从通道表中移除；与 dispatch 中的入队同在桶锁内判断
+     */
+    private void removeIfIdle(SerialLane lane) {
+        lanes.computeIfPresent(lane.getKey(),
+                (key, current) -> current == lane && lane.isEmpty() && !lane.isScheduled() ? null : current);
+    }
+
+    /**
+     * 积压最多的若干通道，用于发现单个高频群占用工作线程
+     */
+    private List<Map<String, Object>> getBusiestLanes() {
+        List<SerialLane> snapshot = new ArrayList<>(lanes.values());
+        snapshot.sort(Comparator.comparingInt(SerialLane::getPending).reversed()
+                .thenComparing(Comparator.comparingLong(SerialLane::getProcessed).reversed()));
+
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (SerialLane lane : snapshot) {
+            if (result.size() >= TOP_LANE_LIMIT) {
+                break;
+            }
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("lane", lane.getKey());
+            item.put("pending", lane.getPending());
+            item.put("processed", lane.getProcessed());
+            result.add(item);
+        }
+        return result;
+    }
+
+    /**
+     * 记录优先级与入队时间的任务包装，用于过载淘汰和统计排队等待时长
+     */
+    final class TimedTask implements Runnable {
+        private final ListenerPriority priority;
+        private final Runnable delegate;
+        private final long enqueueNanos = System.nanoTime();
+        private final long sequence = enqueueSequence.incrementAndGet();
+        // 所属通道，入队时在通道映射的桶锁内设置，淘汰时据此移除
+        private volatile SerialLane lane;
+
+        TimedTask(ListenerPriority priority, Runnable delegate) {
+            this.priority = priority;
+            this.delegate = delegate;
+        }
+
+        ListenerPriority getPriority() {
+            return priority;
+        }
+
+        @Override
+        public void run() {
+            long waitNanos = System.nanoTime() - enqueueNanos;
+            totalWaitNanos.add(waitNanos);
+            maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+            try {
+                delegate.run();
+                completedCount.increment();
+            } catch (Throwable t) {
+                failedCount.increment();
+                log.error("[EventDispatcher] 事件处理异常", t);
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package LDS.Person.websocket.dispatch;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 串行通道 - 同一个 key（群号）的事件在此排队，任意时刻最多只有一个工作线程在执行
+ * 通道本身不持有线程，由 EventDispatcher 在共享工作线程池上调度
+ */
+final class SerialLane {
+
+    private final long key;
+    private final ConcurrentLinkedQueue<EventDispatcher.TimedTask> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final LongAdder processed = new LongAdder();
+
+    SerialLane(long key) {
+        this.key = key;
+    }
+
+    long getKey() {
+        return key;
+    }
+
+    /**
+     * 入队
+     */
+    void offer(EventDispatcher.TimedTask task) {
+        pending.incrementAndGet();
+        queue.offer(task);
+    }
+
+    /**
+     * 取出队首任务，队列为空时返回 null
+     */
+    EventDispatcher.TimedTask poll() {
+        EventDispatcher.TimedTask task = queue.poll();
+        if (task != null) {
+            onRemoved();
+        }
+        return task;
+    }
+
+    /**
+     * 移除指定任务（淘汰），任务已被工作线程取走时返回 false
+     */
+    boolean remove(EventDispatcher.TimedTask task) {
+        if (queue.remove(task)) {
+            onRemoved();
+            return true;
+        }
+        return false;
+    }
+
+    private void onRemoved() {
+        pending.decrementAndGet();
+    }
+
+    boolean isEmpty() {
+        return queue.isEmpty();
+    }
+
+    /**
+     * 尝试占用通道的调度权，成功的调用方负责把通道提交到线程池
+     */
+    boolean trySchedule() {
+        return scheduled.compareAndSet(false, true);
+    }
+
+    boolean isScheduled() {
+        return scheduled.get();
+    }
+
+    /**
+     * 释放调度权
+     */
+    void release() {
+        scheduled.set(false);
+    }
+
+    void markProcessed() {
+        processed.increment();
+    }
+
+    int getPending() {
+        return pending.get();
+    }
+
+    long getProcessed() {
+        return processed.sum();
+    }
+}
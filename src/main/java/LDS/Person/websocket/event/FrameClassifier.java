@@ -0,0 +1,115 @@
+package LDS.Person.websocket.event;
+
+import com.alibaba.fastjson2.JSONReader;
+
+import LDS.Person.websocket.config.WebSocketConstants;
+
+/**
+ * 原始帧分类器 - 不构建 JSONObject，直接流式扫描帧的顶层字段
+ * 用于在完整解析之前识别心跳事件和 API 响应，这两类帧数量多但不需要交给监听任务
+ *
+ * 扫描规则：
+ * - 顶层 post_type 不是 meta_event 时立即判定为普通事件并停止扫描
+ * - post_type=meta_event 且 meta_event_type=heartbeat 判定为心跳
+ * - 同时存在 status、retcode、echo 字段判定为 API 响应
+ * - 其余字段的值（包括较大的 data、message 等）只跳过不解码
+ */
+public final class FrameClassifier {
+
+    /**
+     * 帧类型
+     */
+    public enum FrameType {
+        /** 心跳事件（meta_event/heartbeat） */
+        HEARTBEAT,
+        /** API 调用响应（status/retcode/echo） */
+        ACTION_RESPONSE,
+        /** 需要完整解析的普通事件 */
+        EVENT
+    }
+
+    private FrameClassifier() {
+    }
+
+    /**
+     * 对原始帧进行分类
+     * 无法识别或格式异常的帧一律返回 EVENT，交由完整解析流程处理和报错
+     *
+     * @param frame WebSocket 原始帧文本
+     * @return 帧类型
+     */
+    public static FrameType classify(String frame) {
+        if (frame == null || frame.isEmpty()) {
+            return FrameType.EVENT;
+        }
+
+        try (JSONReader reader = JSONReader.of(frame)) {
+            if (!reader.nextIfObjectStart()) {
+                return FrameType.EVENT;
+            }
+
+            String postType = null;
+            String metaEventType = null;
+            boolean hasStatus = false;
+            boolean hasRetcode = false;
+            boolean hasEcho = false;
+
+            while (!reader.nextIfObjectEnd()) {
+                String fieldName = reader.readFieldName();
+                if (fieldName == null) {
+                    return FrameType.EVENT;
+                }
+
+                switch (fieldName) {
+                    case "post_type":
+                        postType = readStringOrSkip(reader);
+                        if (!WebSocketConstants.POST_TYPE_META_EVENT.equals(postType)) {
+                            return FrameType.EVENT;
+                        }
+                        break;
+                    case "meta_event_type":
+                        metaEventType = readStringOrSkip(reader);
+                        break;
+                    case "status":
+                        hasStatus = true;
+                        reader.skipValue();
+                        break;
+                    case "retcode":
+                        hasRetcode = true;
+                        reader.skipValue();
+                        break;
+                    case "echo":
+                        hasEcho = true;
+                        reader.skipValue();
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+
+                if (postType != null && WebSocketConstants.META_EVENT_TYPE_HEARTBEAT.equals(metaEventType)) {
+                    return FrameType.HEARTBEAT;
+                }
+            }
+
+            if (hasStatus && hasRetcode && hasEcho) {
+                return FrameType.ACTION_RESPONSE;
+            }
+            return FrameType.EVENT;
+
+        } catch (Exception e) {
+            return FrameType.EVENT;
+        }
+    }
+
+    /**
+     * 读取字符串值，非字符串类型时跳过并返回 null
+     */
+    private static String readStringOrSkip(JSONReader reader) {
+        if (reader.isString()) {
+            return reader.readString();
+        }
+        reader.skipValue();
+        return null;
+    }
+}
@@ -0,0 +1,391 @@
+package LDS.Person.websocket.event;
+
+import com.alibaba.fastjson2.JSONObject;
+import com.alibaba.fastjson2.JSONReader;
+
+/**
+ * OneBot 事件模型 - 在 RemoteWebSocketClientHandler 中解析一次，所有监听任务共享
+ * 用 JSONReader 对原始帧做一次流式扫描，只取出监听任务和日志格式化用到的顶层字段，
+ * 不构建 JSONObject：message 段数组等其余字段只跳过不解码；sender 子对象扫描时只记录起始位置，
+ * 首次调用 getSender() / getDisplayName() 时才从原始帧中解码 nickname / card / role
+ * ID 使用基本类型 long（缺失时为 0），避免每个监听任务重复的哈希查找和装箱
+ *
+ * 顶层字段均为 final；sender 的解码结果本身不可变，多个线程并发首次访问时最多重复解码一次，
+ * 因此实例可安全地在多个工作线程间传递；需要完整内容时使用 getFrame() 返回的原始帧文本
+ */
+public final class OneBotEvent {
+
+    public static final String POST_TYPE_MESSAGE = "message";
+    public static final String POST_TYPE_MESSAGE_SENT = "message_sent";
+    public static final String POST_TYPE_NOTICE = "notice";
+    public static final String POST_TYPE_REQUEST = "request";
+    public static final String MESSAGE_TYPE_GROUP = "group";
+    public static final String MESSAGE_TYPE_PRIVATE = "private";
+
+    private static final String UNKNOWN_USER = "未知用户";
+
+    private final String frame;
+    private final String postType;
+    private final String messageType;
+    private final long groupId;
+    private final long userId;
+    private final long messageId;
+    private final String rawMessage;
+    private final String groupName;
+    private final String noticeType;
+    private final String subType;
+    private final String requestType;
+    private final String comment;
+    // sender 对象在原始帧中的起始位置（'{' 的下标），没有 sender 对象时为 -1
+    private final int senderOffset;
+    // 按需解码的 sender，首次访问前为 null
+    private Sender sender;
+    // 接收时刻（System.nanoTime），用于计算事件从接收到开始处理的延迟
+    private final long receivedNanos;
+
+    private OneBotEvent(String frame, String postType, String messageType, long groupId, long userId,
+                        long messageId, String rawMessage, String groupName, String noticeType, String subType,
+                        String requestType, String comment, int senderOffset) {
+        this.frame = frame;
+        this.postType = postType;
+        this.messageType = messageType;
+        this.groupId = groupId;
+        this.userId = userId;
+        this.messageId = messageId;
+        this.rawMessage = rawMessage;
+        this.groupName = groupName;
+        this.noticeType = noticeType;
+        this.subType = subType;
+        this.requestType = requestType;
+        this.comment = comment;
+        this.senderOffset = senderOffset;
+        this.receivedNanos = System.nanoTime();
+    }
+
+    /**
+     * 从已解析的 JSONObject 构建事件（兼容旧调用方，会重新序列化一次）
+     *
+     * @param json WebSocket 消息的 JSON 对象
+     * @return 事件对象
+     */
+    public static OneBotEvent from(JSONObject json) {
+        return parse(json.toJSONString());
+    }
+
+    /**
+     * 从原始帧文本解析并构建事件
+     *
+     * @param frame WebSocket 原始帧文本
+     * @return 事件对象
+     * @throws com.alibaba.fastjson2.JSONException 帧不是合法的 JSON 对象时
+     */
+    public static OneBotEvent parse(String frame) {
+        String postType = null;
+        String messageType = null;
+        long groupId = 0;
+        long userId = 0;
+        long messageId = 0;
+        String rawMessage = null;
+        String groupName = null;
+        String noticeType = null;
+        String subType = null;
+        String requestType = null;
+        String comment = null;
+        int senderOffset = -1;
+        try (JSONReader reader = JSONReader.of(frame)) {
+            if (!reader.nextIfObjectStart()) {
+                throw new com.alibaba.fastjson2.JSONException("OneBot 帧不是 JSON 对象");
+            }
+            while (!reader.nextIfObjectEnd()) {
+                String field = reader.readFieldName();
+                if (field == null) {
+                    throw new com.alibaba.fastjson2.JSONException("OneBot 帧字段名无效");
+                }
+                switch (field) {
+                    case "post_type":
+                        postType = readString(reader);
+                        break;
+                    case "message_type":
+                        messageType = readString(reader);
+                        break;
+                    case "group_id":
+                        groupId = readLong(reader);
+                        break;
+                    case "user_id":
+                        userId = readLong(reader);
+                        break;
+                    case "message_id":
+                        messageId = readLong(reader);
+                        break;
+                    case "raw_message":
+                        rawMessage = readString(reader);
+                        break;
+                    case "group_name":
+                        groupName = readString(reader);
+                        break;
+                    case "notice_type":
+                        noticeType = readString(reader);
+                        break;
+                    case "sub_type":
+                        subType = readString(reader);
+                        break;
+                    case "request_type":
+                        requestType = readString(reader);
+                        break;
+                    case "comment":
+                        comment = readString(reader);
+                        break;
+                    case "sender":
+                        // 当前字符是值的第一个字符，getOffset() 指向它的下一个位置
+                        senderOffset = reader.isObject() ? reader.getOffset() - 1 : -1;
+                        reader.skipValue();
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+        }
+        return new OneBotEvent(frame, postType, messageType, groupId, userId, messageId, rawMessage,
+                groupName, noticeType, subType, requestType, comment, senderOffset);
+    }
+
+    /**
+     * 读取字符串值；数字按文本返回，其他类型跳过并返回 null
+     */
+    private static String readString(JSONReader reader) {
+        if (reader.isString() || reader.isNumber()) {
+            return reader.readString();
+        }
+        reader.skipValue();
+        return null;
+    }
+
+    /**
+     * 读取 long 值；兼容以字符串表示的数字，缺失或无法解析时返回 0
+     */
+    private static long readLong(JSONReader reader) {
+        if (reader.isNumber()) {
+            return reader.readInt64Value();
+        }
+        if (reader.isString()) {
+            try {
+                return Long.parseLong(reader.readString().trim());
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+        reader.skipValue();
+        return 0;
+    }
+
+    /**
+     * 是否为群聊消息（post_type=message 且 message_type=group）
+     */
+    public boolean isGroupMessage() {
+        return POST_TYPE_MESSAGE.equals(postType) && MESSAGE_TYPE_GROUP.equals(messageType);
+    }
+
+    /**
+     * 是否为私聊消息（post_type=message 且 message_type=private）
+     */
+    public boolean isPrivateMessage() {
+        return POST_TYPE_MESSAGE.equals(postType) && MESSAGE_TYPE_PRIVATE.equals(messageType);
+    }
+
+    public String getPostType() {
+        return postType;
+    }
+
+    public String getMessageType() {
+        return messageType;
+    }
+
+    public long getGroupId() {
+        return groupId;
+    }
+
+    public long getUserId() {
+        return userId;
+    }
+
+    public long getMessageId() {
+        return messageId;
+    }
+
+    public boolean hasMessageId() {
+        return messageId != 0;
+    }
+
+    public String getRawMessage() {
+        return rawMessage;
+    }
+
+    /**
+     * 自接收以来经过的毫秒数
+     */
+    public long getAgeMillis() {
+        return (System.nanoTime() - receivedNanos) / 1_000_000L;
+    }
+
+    /**
+     * 群名称（仅格式化日志时使用）
+     */
+    public String getGroupName() {
+        return groupName;
+    }
+
+    /**
+     * 通知类型（notice 事件）
+     */
+    public String getNoticeType() {
+        return noticeType;
+    }
+
+    /**
+     * 子类型（通知与请求事件）
+     */
+    public String getSubType() {
+        return subType;
+    }
+
+    /**
+     * 请求类型（request 事件）
+     */
+    public String getRequestType() {
+        return requestType;
+    }
+
+    /**
+     * 请求附言（request 事件）
+     */
+    public String getComment() {
+        return comment;
+    }
+
+    /**
+     * 获取发送者信息，事件中没有 sender 字段时返回未知用户
+     */
+    public Sender getSender() {
+        Sender decoded = sender;
+        if (decoded == null) {
+            decoded = senderOffset < 0 ? Sender.UNKNOWN : decodeSender();
+            sender = decoded;
+        }
+        return decoded;
+    }
+
+    /**
+     * 从原始帧的 sender 起始位置解码，读完 sender 对象即停止；扫描时 skipValue 已校验过语法
+     */
+    private Sender decodeSender() {
+        try (JSONReader reader = JSONReader.of(frame, senderOffset, frame.length() - senderOffset)) {
+            return Sender.read(reader);
+        }
+    }
+
+    /**
+     * 获取显示名称，优先级：群名片 > 昵称
+     */
+    public String getDisplayName() {
+        return getSender().getDisplayName();
+    }
+
+    /**
+     * 获取原始帧文本
+     */
+    public String getFrame() {
+        return frame;
+    }
+
+    @Override
+    public String toString() {
+        return frame;
+    }
+
+    /**
+     * 消息发送者信息
+     */
+    public static final class Sender {
+
+        private static final Sender UNKNOWN = new Sender(null, null, null, false);
+
+        private final String nickname;
+        private final String card;
+        private final String role;
+        private final boolean present;
+
+        private Sender(String nickname, String card, String role, boolean present) {
+            this.nickname = nickname;
+            this.card = card;
+            this.role = role;
+            this.present = present;
+        }
+
+        /**
+         * 从 sender 对象读取，只取 nickname / card / role，其余字段跳过
+         */
+        static Sender read(JSONReader reader) {
+            if (!reader.nextIfObjectStart()) {
+                reader.skipValue();
+                return UNKNOWN;
+            }
+            String nickname = null;
+            String card = null;
+            String role = null;
+            while (!reader.nextIfObjectEnd()) {
+                String field = reader.readFieldName();
+                if (field == null) {
+                    throw new com.alibaba.fastjson2.JSONException("sender 字段名无效");
+                }
+                switch (field) {
+                    case "nickname":
+                        nickname = readString(reader);
+                        break;
+                    case "card":
+                        card = readString(reader);
+                        break;
+                    case "role":
+                        role = readString(reader);
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+            return new Sender(nickname, card, role, true);
+        }
+
+        /**
+         * 事件中是否携带 sender 字段
+         */
+        public boolean isPresent() {
+            return present;
+        }
+
+        /**
+         * 昵称，缺失时返回 "未知用户"
+         */
+        public String getNickname() {
+            return present ? nickname : UNKNOWN_USER;
+        }
+
+        public String getCard() {
+            return card;
+        }
+
+        public String getRole() {
+            return role;
+        }
+
+        /**
+         * 显示名称：群名片 > 昵称 > "未知用户"
+         */
+        public String getDisplayName() {
+            if (card != null && !card.isEmpty()) {
+                return card;
+            }
+            return nickname != null ? nickname : UNKNOWN_USER;
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package LDS.Person.websocket.listener;
+
+/**
+ * 监听器优先级 - 过载时按优先级从低到高依次降级
+ */
+public enum ListenerPriority {
+    /** 始终执行：VIP 指令、@机器人 */
+    CRITICAL,
+    /** 重度过载时降级：用户公共指令 */
+    NORMAL,
+    /** 轻度过载时最先降级：关键词、随机图片、B站分享解析 */
+    BEST_EFFORT
+}
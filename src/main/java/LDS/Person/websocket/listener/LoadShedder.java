@@ -0,0 +1,111 @@
+package LDS.Person.websocket.listener;
+
+import LDS.Person.config.ConfigManager;
+import LDS.Person.websocket.dispatch.EventDispatcher;
+import LDS.Person.websocket.event.OneBotEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 过载降级控制 - 根据分发队列深度和事件处理延迟决定本次事件还允许执行哪些优先级的监听器
+ * 刷屏、复读等突发流量下先跳过关键词/随机图片/B站解析，再跳过用户指令，
+ * VIP 指令与 @机器人 始终执行；被跳过的监听器开销极小，积压能够快速消化
+ *
+ * 配置项（config.properties），队列深度或延迟任一超过阈值即触发对应级别：
+ * - shed.enabled                    是否启用降级，默认 true
+ * - shed.best_effort.queue_depth    降级 BEST_EFFORT 的队列深度阈值，默认 200
+ * - shed.best_effort.lag_ms         降级 BEST_EFFORT 的处理延迟阈值，默认 3000
+ * - shed.normal.queue_depth         降级 NORMAL 的队列深度阈值，默认 600
+ * - shed.normal.lag_ms              降级 NORMAL 的处理延迟阈值，默认 10000
+ */
+@Component
+@Slf4j
+public class LoadShedder {
+
+    private static final ConfigManager configManager = ConfigManager.getInstance();
+
+    private final EventDispatcher eventDispatcher;
+    private final boolean enabled;
+    private final int bestEffortQueueDepth;
+    private final long bestEffortLagMs;
+    private final int normalQueueDepth;
+    private final long normalLagMs;
+
+    // 各优先级被跳过的次数
+    private final Map<ListenerPriority, LongAdder> shedCounts = new EnumMap<>(ListenerPriority.class);
+
+    public LoadShedder(EventDispatcher eventDispatcher) {
+        this.eventDispatcher = eventDispatcher;
+        this.enabled = configManager.getBoolean("shed.enabled", true);
+        this.bestEffortQueueDepth = configManager.getInt("shed.best_effort.queue_depth", 200);
+        this.bestEffortLagMs = configManager.getInt("shed.best_effort.lag_ms", 3000);
+        this.normalQueueDepth = configManager.getInt("shed.normal.queue_depth", 600);
+        this.normalLagMs = configManager.getInt("shed.normal.lag_ms", 10000);
+        for (ListenerPriority priority : ListenerPriority.values()) {
+            shedCounts.put(priority, new LongAdder());
+        }
+        log.info("[LoadShedder] 初始化完成 - 启用: {}，BEST_EFFORT 阈值: {} 条/{} ms，NORMAL 阈值: {} 条/{} ms",
+                enabled, bestEffortQueueDepth, bestEffortLagMs, normalQueueDepth, normalLagMs);
+    }
+
+    /**
+     * 计算当前事件允许执行的最低优先级
+     *
+     * @param event 即将进入监听链的事件
+     * @return BEST_EFFORT 表示不降级；NORMAL 表示跳过 BEST_EFFORT；CRITICAL 表示只执行 CRITICAL
+     */
+    public ListenerPriority admittedPriority(OneBotEvent event) {
+        if (!enabled) {
+            return ListenerPriority.BEST_EFFORT;
+        }
+
+        int queueDepth = eventDispatcher.getQueueDepth();
+        long lagMs = event.getAgeMillis();
+
+        if (queueDepth >= normalQueueDepth || lagMs >= normalLagMs) {
+            return ListenerPriority.CRITICAL;
+        }
+        if (queueDepth >= bestEffortQueueDepth || lagMs >= bestEffortLagMs) {
+            return ListenerPriority.NORMAL;
+        }
+        return ListenerPriority.BEST_EFFORT;
+    }
+
+    /**
+     * 判断监听器在当前允许级别下是否应被跳过
+     */
+    public boolean shouldShed(ListenerPriority listenerPriority, ListenerPriority admitted) {
+        return listenerPriority.ordinal() > admitted.ordinal();
+    }
+
+    /**
+     * 记录一次降级跳过
+     */
+    public void recordShed(ListenerPriority priority) {
+        shedCounts.get(priority).increment();
+    }
+
+    /**
+     * 获取降级配置与按优先级统计的跳过次数
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> shed = new LinkedHashMap<>();
+        for (Map.Entry<ListenerPriority, LongAdder> entry : shedCounts.entrySet()) {
+            shed.put(entry.getKey().name(), entry.getValue().sum());
+        }
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("best_effort_queue_depth", bestEffortQueueDepth);
+        stats.put("best_effort_lag_ms", bestEffortLagMs);
+        stats.put("normal_queue_depth", normalQueueDepth);
+        stats.put("normal_lag_ms", normalLagMs);
+        stats.put("shed", shed);
+        return stats;
+    }
+}
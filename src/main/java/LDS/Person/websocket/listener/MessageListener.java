@@ -0,0 +1,48 @@
+package LDS.Person.websocket.listener;
+
+import LDS.Person.websocket.event.OneBotEvent;
+
+/**
+ * 消息监听器 - MessageListenerChain 中的一个处理环节
+ * 实现类通过 Spring 的 @Order 注解声明优先级（数值越小越先执行）
+ */
+public interface MessageListener {
+
+    /**
+     * 监听器名称，用于统计展示
+     */
+    String getName();
+
+    /**
+     * 监听器优先级，过载时低优先级监听器会被跳过
+     */
+    default ListenerPriority getPriority() {
+        return ListenerPriority.BEST_EFFORT;
+    }
+
+    /**
+     * 本监听器认领该事件时的优先级，用于入队分类；默认与 getPriority() 相同
+     * 同一监听器处理的事件重要程度不同时可按事件区分，只在 matches 返回 true 后调用
+     */
+    default ListenerPriority priorityOf(OneBotEvent event) {
+        return getPriority();
+    }
+
+    /**
+     * 快速触发判断：只检查开关与事件字段，不访问数据库或下游服务
+     * 在读线程上用于入队时的优先级分类（见 MessageListenerChain.classify），
+     * 监听链也在占用并发许可之前调用它，返回 false 的事件不会进入 handleMessage；
+     * 返回 true 表示该事件可能由本监听器认领，无法廉价判断的监听器保持默认值
+     */
+    default boolean matches(OneBotEvent event) {
+        return true;
+    }
+
+    /**
+     * 处理事件，仅在 matches 返回 true 后于并发许可内调用
+     *
+     * @param event 已解析的 OneBot 事件
+     * @return true 表示已认领该消息，链路停止，后续监听器不再执行
+     */
+    boolean handleMessage(OneBotEvent event);
+}
@@ -0,0 +1,251 @@
+package LDS.Person.websocket.listener;
+
+import LDS.Person.config.ConfigManager;
+import LDS.Person.tasks.MsgSchLogic.RandomChatLogic;
+import LDS.Person.websocket.event.OneBotEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 消息监听链 - 按优先级依次执行各监听器，第一个认领消息的监听器终止链路
+ *
+ * 优先级：VIP指令 > 用户指令 > @机器人 > B站分享 > 关键词触发
+ * 每条消息只走一遍链路，后面的监听器不再重复判断前面监听器的指令
+ * 过载时由 LoadShedder 决定跳过哪些低优先级监听器
+ *
+ * 每个监听器有独立的并发上限，虚拟线程模式下事件处理并发不再受工作线程数限制，
+ * 由该上限保护 DeepSeek / NapCat / Steam 等下游服务。上限只作用于 handleMessage：
+ * 先在许可之外执行廉价的 matches 触发判断，未命中的事件不排队等待许可，
+ * 也不会因为其他事件占满慢速监听器的许可而被阻塞：
+ * 监听器延后执行的处理（如 AtMentionBatcher 合并后的 @机器人 批次）经 runWithPermit 占用同一份许可，
+ * 不会绕过该上限：
+ * - listener.max.concurrency         所有监听器的默认并发上限，默认 8
+ * - listener.{名称}.max.concurrency  单个监听器的并发上限（名称如 at_bot、user_cmd），覆盖默认值
+ */
+@Component
+@Slf4j
+public class MessageListenerChain {
+
+    private static final ConfigManager configManager = ConfigManager.getInstance();
+
+    // 各监听器的 @Order 值
+    public static final int ORDER_VIP_CMD = 100;
+    public static final int ORDER_USER_CMD = 200;
+    public static final int ORDER_AT_BOT = 300;
+    public static final int ORDER_BILIBILI = 400;
+    public static final int ORDER_KEYWORD = 500;
+
+    private final List<ListenerEntry> entries = new ArrayList<>();
+    private final LoadShedder loadShedder;
+
+    /**
+     * Spring 按 @Order 排序后注入所有监听器
+     */
+    public MessageListenerChain(List<MessageListener> listeners, LoadShedder loadShedder) {
+        this.loadShedder = loadShedder;
+        int defaultConcurrency = Math.max(1, configManager.getInt("listener.max.concurrency", 8));
+        for (MessageListener listener : listeners) {
+            int maxConcurrency = Math.max(1, configManager.getInt(
+                    "listener." + listener.getName() + ".max.concurrency", defaultConcurrency));
+            entries.add(new ListenerEntry(listener, maxConcurrency));
+        }
+        log.info("[MessageListenerChain] 监听链初始化完成: {}", getListenerNames());
+    }
+
+    /**
+     * 执行监听链
+     *
+     * @param event 已解析的 OneBot 事件
+     * @return 认领消息的监听器名称，无人认领时返回 null
+     */
+    public String handle(OneBotEvent event) {
+        // 记录最近一次的群聊ID（用于定时任务），不受链路短路影响
+        if (event.isGroupMessage()) {
+            RandomChatLogic.recordLastGroupId(String.valueOf(event.getGroupId()));
+        }
+
+        ListenerPriority admitted = loadShedder.admittedPriority(event);
+        for (ListenerEntry entry : entries) {
+            ListenerPriority priority = entry.listener.getPriority();
+            if (loadShedder.shouldShed(priority, admitted)) {
+                entry.shedCount.increment();
+                loadShedder.recordShed(priority);
+                continue;
+            }
+            if (entry.invoke(event)) {
+                return entry.listener.getName();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 入队前对事件分类：按链路顺序找到第一个可能认领该事件的监听器，取其对该事件的优先级
+     * 只调用各监听器的 matches / priorityOf，开销很小，可在 WebSocket 读线程上执行
+     *
+     * @return 事件优先级，没有监听器匹配时为 BEST_EFFORT
+     */
+    public ListenerPriority classify(OneBotEvent event) {
+        for (ListenerEntry entry : entries) {
+            if (entry.listener.matches(event)) {
+                return entry.listener.priorityOf(event);
+            }
+        }
+        return ListenerPriority.BEST_EFFORT;
+    }
+
+    /**
+     * 在指定监听器的并发许可内执行一段延后的处理，与该监听器的 handleMessage 共用并发上限
+     * 在调用线程上执行，许可不足时阻塞等待；异常只记录日志并计入该监听器的失败次数
+     *
+     * @param listenerName 监听器名称，如 at_bot；没有该监听器时直接执行，不受并发限制
+     */
+    public void runWithPermit(String listenerName, Runnable task) {
+        for (ListenerEntry entry : entries) {
+            if (entry.listener.getName().equals(listenerName)) {
+                entry.runDeferred(task);
+                return;
+            }
+        }
+        log.warn("[MessageListenerChain] 未找到监听器 {}，延后任务不受并发限制直接执行", listenerName);
+        task.run();
+    }
+
+    /**
+     * 按执行顺序列出各监听器的调用次数、认领次数、降级跳过次数和耗时
+     */
+    public List<Map<String, Object>> getStats() {
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (ListenerEntry entry : entries) {
+            result.add(entry.toStats());
+        }
+        return result;
+    }
+
+    private List<String> getListenerNames() {
+        List<String> names = new ArrayList<>();
+        for (ListenerEntry entry : entries) {
+            names.add(entry.listener.getName());
+        }
+        return names;
+    }
+
+    /**
+     * 监听器及其统计计数
+     */
+    private static final class ListenerEntry {
+        private final MessageListener listener;
+        private final int maxConcurrency;
+        private final Semaphore permits;
+        private final LongAdder matchedCount = new LongAdder();
+        private final LongAdder invokedCount = new LongAdder();
+        private final LongAdder claimedCount = new LongAdder();
+        private final LongAdder failedCount = new LongAdder();
+        private final LongAdder shedCount = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final LongAdder deferredCount = new LongAdder();
+        private final LongAdder deferredNanos = new LongAdder();
+
+        ListenerEntry(MessageListener listener, int maxConcurrency) {
+            this.listener = listener;
+            this.maxConcurrency = maxConcurrency;
+            this.permits = new Semaphore(maxConcurrency, true);
+        }
+
+        /**
+         * 触发判断在许可之外执行，只有命中时才占用许可调用 handleMessage
+         */
+        boolean invoke(OneBotEvent event) {
+            try {
+                if (!listener.matches(event)) {
+                    return false;
+                }
+            } catch (Exception e) {
+                failedCount.increment();
+                log.error("[MessageListenerChain] 监听器 {} 触发判断异常", listener.getName(), e);
+                return false;
+            }
+            matchedCount.increment();
+
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+
+            long start = System.nanoTime();
+            boolean claimed = false;
+            try {
+                claimed = listener.handleMessage(event);
+            } catch (Exception e) {
+                failedCount.increment();
+                log.error("[MessageListenerChain] 监听器 {} 处理异常", listener.getName(), e);
+            } finally {
+                permits.release();
+                long elapsed = System.nanoTime() - start;
+                invokedCount.increment();
+                totalNanos.add(elapsed);
+                maxNanos.accumulateAndGet(elapsed, Math::max);
+            }
+            if (claimed) {
+                claimedCount.increment();
+            }
+            return claimed;
+        }
+
+        /**
+         * 占用一个许可执行延后任务，耗时单独统计
+         */
+        void runDeferred(Runnable task) {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.warn("[MessageListenerChain] 等待监听器 {} 的许可时被中断，延后任务未执行", listener.getName());
+                return;
+            }
+            long start = System.nanoTime();
+            try {
+                task.run();
+            } catch (Exception e) {
+                failedCount.increment();
+                log.error("[MessageListenerChain] 监听器 {} 延后任务异常", listener.getName(), e);
+            } finally {
+                permits.release();
+                deferredCount.increment();
+                deferredNanos.add(System.nanoTime() - start);
+            }
+        }
+
+        Map<String, Object> toStats() {
+            long invoked = invokedCount.sum();
+            long deferred = deferredCount.sum();
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("name", listener.getName());
+            stats.put("priority", listener.getPriority().name());
+            stats.put("max_concurrency", maxConcurrency);
+            stats.put("in_flight", maxConcurrency - permits.availablePermits());
+            stats.put("waiting", permits.getQueueLength());
+            stats.put("matched", matchedCount.sum());
+            stats.put("invoked", invoked);
+            stats.put("claimed", claimedCount.sum());
+            stats.put("failed", failedCount.sum());
+            stats.put("shed", shedCount.sum());
+            stats.put("avg_ms", invoked == 0 ? 0.0 : totalNanos.sum() / 1_000_000.0 / invoked);
+            stats.put("max_ms", maxNanos.get() / 1_000_000.0);
+            stats.put("deferred", deferred);
+            stats.put("deferred_avg_ms", deferred == 0 ? 0.0 : deferredNanos.sum() / 1_000_000.0 / deferred);
+            return stats;
+        }
+    }
+}
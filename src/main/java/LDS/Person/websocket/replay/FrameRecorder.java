@@ -0,0 +1,144 @@
+package LDS.Person.websocket.replay;
+
+import LDS.Person.config.ConfigManager;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * NapCat 原始帧录制器 - 把收到的每一帧连同到达时间追加写入文件，供 FrameReplayer 离线回放
+ *
+ * 文件格式（大端序，逐条追加）：
+ * [int 帧字节长度][long 到达时间戳 epoch 毫秒][UTF-8 帧内容]
+ *
+ * 写入在 WebSocket 读线程上进入缓冲区，由后台线程每秒刷盘一次
+ *
+ * 配置项（config.properties）：
+ * - capture.enabled  是否启用录制，默认 false
+ * - capture.file     录制文件路径，默认 capture/napcat-frames.bin
+ */
+@Component
+@Slf4j
+public class FrameRecorder {
+
+    private static final ConfigManager configManager = ConfigManager.getInstance();
+
+    private final Path file;
+    private DataOutputStream out;
+    private ScheduledExecutorService flusher;
+
+    private final LongAdder recordedCount = new LongAdder();
+    private final LongAdder failedCount = new LongAdder();
+
+    public FrameRecorder() {
+        this.file = Paths.get(configManager.getString("capture.file", "capture/napcat-frames.bin"));
+        if (configManager.getBoolean("capture.enabled", false)) {
+            start();
+        }
+    }
+
+    /**
+     * 是否正在录制
+     */
+    public synchronized boolean isEnabled() {
+        return out != null;
+    }
+
+    /**
+     * 追加一帧
+     *
+     * @param frame         原始帧文本
+     * @param arrivalMillis 到达时间（epoch 毫秒）
+     */
+    public void record(String frame, long arrivalMillis) {
+        byte[] bytes = frame.getBytes(StandardCharsets.UTF_8);
+        synchronized (this) {
+            if (out == null) {
+                return;
+            }
+            try {
+                out.writeInt(bytes.length);
+                out.writeLong(arrivalMillis);
+                out.write(bytes);
+                recordedCount.increment();
+            } catch (IOException e) {
+                failedCount.increment();
+                log.warn("[FrameRecorder] 写入录制文件失败: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 获取录制统计
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", isEnabled());
+        stats.put("file", file.toAbsolutePath().toString());
+        stats.put("recorded", recordedCount.sum());
+        stats.put("failed", failedCount.sum());
+        return stats;
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (flusher != null) {
+            flusher.shutdownNow();
+            flusher = null;
+        }
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                log.warn("[FrameRecorder] 关闭录制文件失败: {}", e.getMessage());
+            }
+            out = null;
+        }
+    }
+
+    private synchronized void start() {
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file.toFile(), true), 64 * 1024));
+            flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "FrameRecorder-flush");
+                t.setDaemon(true);
+                return t;
+            });
+            flusher.scheduleWithFixedDelay(this::flush, 1, 1, TimeUnit.SECONDS);
+            log.info("[FrameRecorder] 开始录制 NapCat 原始帧: {}", file.toAbsolutePath());
+        } catch (IOException e) {
+            out = null;
+            log.error("[FrameRecorder] 打开录制文件失败: {}", file.toAbsolutePath(), e);
+        }
+    }
+
+    private synchronized void flush() {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.flush();
+        } catch (IOException e) {
+            log.warn("[FrameRecorder] 刷新录制文件失败: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package LDS.Person.websocket.replay;
+
+import LDS.Person.config.ConfigManager;
+import LDS.Person.napcat.NapCatClient;
+import LDS.Person.tasks.MsgLisLogic.AtMentionBatcher;
+import LDS.Person.websocket.RemoteWebSocketClientHandler;
+import LDS.Person.websocket.dispatch.EventDispatcher;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * NapCat 原始帧回放器 - 读取 FrameRecorder 录制的文件，按原始时间间隔（可加速）送入完整的事件处理流程
+ * 帧分类、解析、分发、监听链与本地客户端转发均与线上一致，回放的帧不会被再次录制
+ *
+ * 监听任务会真实调用 NapCat 动作，因此只有同时满足以下条件才允许开始回放，避免向真实群聊发送消息：
+ * - replay.enabled=true
+ * - NapCatApiBase 指向本机桩服务（NapCatStubController，http://localhost:8090/stub/napcat），
+ *   且 napcat.action.transport 不是 WEBSOCKET（该传输下动作走 NapCat 长连接）
+ * - 回放文件位于录制目录（capture.file 所在目录）之内
+ *
+ * 回放速度：1 表示按原始节奏，N 表示 N 倍速，0 或负数表示不等待、以最快速度回放
+ * 送入全部帧后等待分发队列排空、工作线程上的事件执行完毕且 @机器人 合并批次处理完，
+ * 并统计每个事件从入队到监听链执行完毕的耗时分布（p50 / p99 / 最大值）
+ *
+ * 配置项（config.properties）：
+ * - replay.enabled  是否允许回放，默认 false（未启用时回放接口返回 404）
+ */
+@Component
+@Slf4j
+public class FrameReplayer {
+
+    private static final ConfigManager configManager = ConfigManager.getInstance();
+
+    private static final int MAX_FRAME_BYTES = 16 * 1024 * 1024;
+
+    private final boolean enabled = configManager.getBoolean("replay.enabled", false);
+    private final Path captureDir;
+    private final EventDispatcher eventDispatcher;
+    private final AtMentionBatcher atMentionBatcher;
+    private final NapCatClient napCatClient;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    // 最近一次回放的统计（由回放线程写入）
+    private volatile String currentFile;
+    private volatile double currentSpeed;
+    private volatile long replayedCount;
+    private volatile long failedCount;
+    private volatile long sourceSpanMillis;
+    private volatile long startNanos;
+    private volatile long feedNanos;
+    private volatile long drainNanos;
+    private volatile String lastError;
+    private volatile LatencyRecorder latencies = new LatencyRecorder();
+
+    public FrameReplayer(EventDispatcher eventDispatcher, AtMentionBatcher atMentionBatcher, NapCatClient napCatClient) {
+        this.eventDispatcher = eventDispatcher;
+        this.atMentionBatcher = atMentionBatcher;
+        this.napCatClient = napCatClient;
+        Path captureFile = Paths.get(configManager.getString("capture.file", "capture/napcat-frames.bin"));
+        Path parent = captureFile.toAbsolutePath().normalize().getParent();
+        this.captureDir = parent != null ? parent : Paths.get("").toAbsolutePath();
+    }
+
+    /**
+     * 是否允许回放（replay.enabled）
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 在后台线程开始回放
+     *
+     * @param file  录制文件，相对路径按录制目录解析，解析结果必须位于录制目录之内
+     * @param speed 回放倍速，0 或负数表示最快速度
+     * @return false 表示已有回放在进行中
+     * @throws IllegalStateException    未启用回放，或 NapCat 动作不是发往本机桩服务
+     * @throws IllegalArgumentException 文件不在录制目录内或不存在
+     */
+    public boolean start(String file, double speed) {
+        if (!enabled) {
+            throw new IllegalStateException("回放未启用（replay.enabled=false）");
+        }
+        if (!napCatClient.targetsStub()) {
+            throw new IllegalStateException("NapCat 动作未指向本机桩服务 /stub/napcat（或传输为 WEBSOCKET），拒绝回放");
+        }
+        Path path = resolveCaptureFile(file);
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        currentFile = path.toString();
+        currentSpeed = speed;
+        replayedCount = 0;
+        failedCount = 0;
+        sourceSpanMillis = 0;
+        feedNanos = 0;
+        drainNanos = 0;
+        lastError = null;
+        latencies = new LatencyRecorder();
+        startNanos = System.nanoTime();
+
+        Thread thread = new Thread(() -> {
+            try {
+                replay(path, speed);
+            } catch (Exception e) {
+                lastError = e.getMessage();
+                log.error("[FrameReplayer] 回放失败: {}", path, e);
+            } finally {
+                running.set(false);
+            }
+        }, "FrameReplayer");
+        thread.setDaemon(true);
+        thread.start();
+        return true;
+    }
+
+    /**
+     * 获取回放进度与吞吐统计
+     */
+    public Map<String, Object> getStats() {
+        long replayed = replayedCount;
+        long elapsedNanos = feedNanos > 0 ? feedNanos : (running.get() ? System.nanoTime() - startNanos : 0);
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("running", running.get());
+        stats.put("file", currentFile);
+        stats.put("speed", currentSpeed);
+        stats.put("replayed", replayed);
+        stats.put("failed", failedCount);
+        stats.put("source_span_ms", sourceSpanMillis);
+        stats.put("feed_ms", elapsedNanos / 1_000_000.0);
+        stats.put("drain_ms", drainNanos / 1_000_000.0);
+        stats.put("frames_per_second", elapsedNanos == 0 ? 0.0 : replayed * 1_000_000_000.0 / elapsedNanos);
+        latencies.putStats(stats);
+        stats.put("error", lastError);
+        return stats;
+    }
+
+    /**
+     * 解析回放文件路径并限制在录制目录之内，避免通过接口读取任意文件
+     */
+    private Path resolveCaptureFile(String file) {
+        if (file == null || file.isBlank()) {
+            throw new IllegalArgumentException("未指定回放文件");
+        }
+        Path path;
+        try {
+            path = captureDir.resolve(file).toAbsolutePath().normalize();
+        } catch (InvalidPathException e) {
+            throw new IllegalArgumentException("回放文件路径无效: " + file);
+        }
+        if (!path.startsWith(captureDir)) {
+            throw new IllegalArgumentException("回放文件必须位于录制目录 " + captureDir + " 内");
+        }
+        if (!Files.isRegularFile(path)) {
+            throw new IllegalArgumentException("回放文件不存在: " + path);
+        }
+        // 符号链接解析后同样必须位于录制目录内
+        try {
+            Path real = path.toRealPath();
+            if (!real.startsWith(captureDir.toRealPath())) {
+                throw new IllegalArgumentException("回放文件必须位于录制目录 " + captureDir + " 内");
+            }
+            return real;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("无法读取回放文件: " + path);
+        }
+    }
+
+    private void replay(Path path, double speed) throws IOException, InterruptedException {
+        log.info("[FrameReplayer] 开始回放: {}，倍速: {}", path, speed > 0 ? speed : "最快");
+        LatencyRecorder recorder = latencies;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 64 * 1024))) {
+            long firstArrival = -1;
+            while (true) {
+                int length;
+                long arrivalMillis;
+                try {
+                    length = in.readInt();
+                    arrivalMillis = in.readLong();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (length < 0 || length > MAX_FRAME_BYTES) {
+                    throw new IOException("录制文件损坏，帧长度异常: " + length);
+                }
+                byte[] bytes = new byte[length];
+                in.readFully(bytes);
+
+                if (firstArrival < 0) {
+                    firstArrival = arrivalMillis;
+                }
+                long offsetMillis = arrivalMillis - firstArrival;
+                sourceSpanMillis = offsetMillis;
+                if (speed > 0) {
+                    waitUntil(startNanos + (long) (TimeUnit.MILLISECONDS.toNanos(offsetMillis) / speed));
+                }
+
+                try {
+                    RemoteWebSocketClientHandler.processFrame(new String(bytes, StandardCharsets.UTF_8), recorder::add);
+                    replayedCount++;
+                } catch (Exception e) {
+                    failedCount++;
+                    log.debug("[FrameReplayer] 帧处理失败: {}", e.getMessage());
+                }
+            }
+        }
+        feedNanos = System.nanoTime() - startNanos;
+
+        // 等待排队与执行中的事件、合并中的 @机器人 批次全部处理完，得到端到端处理耗时
+        while (!eventDispatcher.isIdle() || !atMentionBatcher.isIdle()) {
+            Thread.sleep(10);
+        }
+        drainNanos = System.nanoTime() - startNanos;
+        log.info("[FrameReplayer] 回放完成: {} 帧，送入耗时 {} ms，排空耗时 {} ms，事件耗时 {}",
+                replayedCount, feedNanos / 1_000_000, drainNanos / 1_000_000, recorder.summary());
+    }
+
+    private static void waitUntil(long deadlineNanos) throws InterruptedException {
+        long remaining = deadlineNanos - System.nanoTime();
+        if (remaining > 0) {
+            TimeUnit.NANOSECONDS.sleep(remaining);
+        }
+    }
+
+    /**
+     * 记录每个事件从入队到监听链执行完毕的耗时，由工作线程并发写入
+     */
+    static final class LatencyRecorder {
+        private long[] samples = new long[1024];
+        private int size;
+
+        synchronized void add(long nanos) {
+            if (size == samples.length) {
+                samples = Arrays.copyOf(samples, size * 2);
+            }
+            samples[size++] = nanos;
+        }
+
+        synchronized void putStats(Map<String, Object> stats) {
+            long[] sorted = Arrays.copyOf(samples, size);
+            Arrays.sort(sorted);
+            stats.put("events_completed", size);
+            stats.put("event_p50_ms", percentileMillis(sorted, 0.50));
+            stats.put("event_p99_ms", percentileMillis(sorted, 0.99));
+            stats.put("event_max_ms", size == 0 ? 0.0 : sorted[size - 1] / 1_000_000.0);
+        }
+
+        String summary() {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            putStats(stats);
+            return stats.toString();
+        }
+
+        private static double percentileMillis(long[] sorted, double percentile) {
+            if (sorted.length == 0) {
+                return 0.0;
+            }
+            int index = (int) Math.ceil(sorted.length * percentile) - 1;
+            return sorted[Math.max(0, index)] / 1_000_000.0;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package LDS.Person.napcat;
+
+import com.alibaba.fastjson2.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * DurableOutbox 的重启恢复：未确认的发送在重新打开后恰好重投一次，损坏的尾部记录被丢弃，
+ * 已确认的发送不会因为 checkpoint 与压缩而重投，超过保留时长的发送被放弃
+ */
+class DurableOutboxTest {
+
+    private static final String ACTION = "send_group_msg";
+    // [int 长度][int CRC] + [byte 类型][long seq][long 时间][long 群号][short 动作名长度][动作名][int 请求体长度][请求体]
+    private static final int SEND_FRAME_BYTES = 8 + 1 + 8 + 8 + 8 + 2 + ACTION.length() + 4 + body(0).length;
+
+    private static final NapCatResponse OK = response(200, "{\"status\":\"ok\",\"retcode\":0,\"data\":{}}");
+
+    @TempDir
+    Path dir;
+
+    private final SendScheduler sendScheduler = mock(SendScheduler.class);
+    private final List<String> sent = new CopyOnWriteArrayList<>();
+    private final List<DurableOutbox> opened = new ArrayList<>();
+    // null 表示发送一直停在途中，既不成功也不失败
+    private volatile NapCatResponse reply;
+
+    @BeforeEach
+    void setUp() {
+        when(sendScheduler.submit(anyLong(), anyString(), any(byte[].class), anyLong(), anyLong())).thenAnswer(invocation -> {
+            sent.add(new String((byte[]) invocation.getArgument(2), StandardCharsets.UTF_8));
+            NapCatResponse response = reply;
+            return response == null ? new CompletableFuture<>() : CompletableFuture.completedFuture(response);
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        opened.forEach(DurableOutbox::shutdown);
+    }
+
+    @Test
+    void unackedAppendsAreRedeliveredExactlyOnceAfterReopen() {
+        DurableOutbox first = open(64 * 1024, TimeUnit.HOURS.toMillis(1));
+        for (int i = 0; i < 3; i++) {
+            first.submit(1L, ACTION, body(i));
+        }
+        first.shutdown();
+        sent.clear();
+
+        reply = OK;
+        DurableOutbox second = open(64 * 1024, TimeUnit.HOURS.toMillis(1));
+        assertEquals(3L, second.getStats().get("recovered_on_startup"));
+        second.redeliver();
+        second.redeliver();
+        assertEquals(List.of(text(0), text(1), text(2)), sent);
+        assertEquals(0, second.getStats().get("pending"));
+        second.shutdown();
+
+        DurableOutbox third = open(64 * 1024, TimeUnit.HOURS.toMillis(1));
+        assertEquals(0L, third.getStats().get("recovered_on_startup"));
+    }
+
+    @Test
+    void crcCorruptTailRecordIsDroppedAndEarlierRecordsKept() throws IOException {
+        writeThreeUnacked();
+        try (RandomAccessFile file = new RandomAccessFile(dir.resolve("outbox-000001.log").toFile(), "rw")) {
+            // 翻转第三条记录负载中的一个字节
+            long offset = 2L * SEND_FRAME_BYTES + 8 + 20;
+            file.seek(offset);
+            int b = file.read();
+            file.seek(offset);
+            file.write(b ^ 0xFF);
+        }
+        assertRecoversFirstTwo();
+    }
+
+    @Test
+    void tornTailRecordIsDroppedAndEarlierRecordsKept() throws IOException {
+        writeThreeUnacked();
+        try (RandomAccessFile file = new RandomAccessFile(dir.resolve("outbox-000001.log").toFile(), "rw")) {
+            // 第三条记录只写了一半就崩溃
+            file.setLength(2L * SEND_FRAME_BYTES + SEND_FRAME_BYTES / 2);
+        }
+        assertRecoversFirstTwo();
+    }
+
+    @Test
+    void checkpointAndCompactionDoNotRedeliverAckedEntries() throws IOException {
+        // 每个分段只容得下一条发送及其确认，5 条已确认的发送分布在多个分段里
+        int segmentBytes = 2 * SEND_FRAME_BYTES + 8;
+        DurableOutbox first = open(segmentBytes, TimeUnit.HOURS.toMillis(1));
+        reply = OK;
+        for (int i = 0; i < 5; i++) {
+            assertTrue(first.submit(1L, ACTION, body(i)).join().isOk());
+        }
+        reply = null;
+        first.submit(1L, ACTION, body(5));
+        int segmentsBefore = segmentFiles();
+        first.redeliver();
+        Map<String, Object> stats = first.getStats();
+        assertTrue((Long) stats.get("compacted_segments") > 0, "已全部确认的旧分段应被删除");
+        assertTrue(segmentFiles() < segmentsBefore);
+        assertEquals(6L, stats.get("checkpoint"));
+        first.shutdown();
+        sent.clear();
+
+        reply = OK;
+        DurableOutbox second = open(segmentBytes, TimeUnit.HOURS.toMillis(1));
+        assertEquals(1L, second.getStats().get("recovered_on_startup"));
+        second.redeliver();
+        assertEquals(List.of(text(5)), sent);
+    }
+
+    @Test
+    void entriesPastRetentionAreDroppedInsteadOfRedelivered() throws Exception {
+        reply = response(502, "bad gateway");
+        DurableOutbox outbox = open(64 * 1024, 50);
+        outbox.submit(1L, ACTION, body(0)).join();
+        assertEquals(1, outbox.getStats().get("pending"), "可重试的失败应保留在发件箱");
+
+        Thread.sleep(100);
+        sent.clear();
+        outbox.redeliver();
+        assertEquals(List.of(), sent);
+        Map<String, Object> stats = outbox.getStats();
+        assertEquals(1L, stats.get("expired"));
+        assertEquals(0, stats.get("pending"));
+        outbox.shutdown();
+
+        assertEquals(0L, open(64 * 1024, 50).getStats().get("recovered_on_startup"));
+    }
+
+    private void writeThreeUnacked() {
+        DurableOutbox first = open(64 * 1024, TimeUnit.HOURS.toMillis(1));
+        for (int i = 0; i < 3; i++) {
+            first.submit(1L, ACTION, body(i));
+        }
+        first.shutdown();
+        sent.clear();
+    }
+
+    private void assertRecoversFirstTwo() {
+        reply = OK;
+        DurableOutbox reopened = open(64 * 1024, TimeUnit.HOURS.toMillis(1));
+        assertEquals(2L, reopened.getStats().get("recovered_on_startup"));
+        reopened.redeliver();
+        assertEquals(List.of(text(0), text(1)), sent);
+
+        // 新的追加写入新分段，不受旧分段损坏尾部的影响
+        reopened.submit(1L, ACTION, body(3));
+        reopened.shutdown();
+        sent.clear();
+        assertEquals(0L, open(64 * 1024, TimeUnit.HOURS.toMillis(1)).getStats().get("recovered_on_startup"));
+    }
+
+    private DurableOutbox open(int segmentBytes, long retentionMillis) {
+        DurableOutbox outbox = new DurableOutbox(sendScheduler, new RetryPolicy(), true, dir, segmentBytes,
+                DurableOutbox.FsyncPolicy.ALWAYS, 60_000, retentionMillis);
+        assertEquals(true, outbox.getStats().get("enabled"));
+        opened.add(outbox);
+        return outbox;
+    }
+
+    private int segmentFiles() throws IOException {
+        int count = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "outbox-*.log")) {
+            for (Path ignored : stream) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static byte[] body(int i) {
+        return text(i).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String text(int i) {
+        return "{\"n\":" + i + "}";
+    }
+
+    private static NapCatResponse response(int status, String body) {
+        return new NapCatResponse(ACTION, status, status == 200 ? JSONObject.parseObject(body) : null,
+                status == 200 ? null : body, 0);
+    }
+}
@@ -0,0 +1,120 @@
+package LDS.Person.napcat;
+
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * send_group_msg 请求体编码成本对比：
+ * - jsonObjectTree      原方式，MessageSegments 构建 JSONObject / JSONArray 树，toJSONString 后再编码为 UTF-8
+ * - groupMessageBody    GroupMessageBody 直接写入 UTF-8 JSONWriter
+ * - replyComposer       ReplyComposer 收集各部分后经 toBody 编码（queueReply 的单条消息路径，不含 @ 消息段）
+ *
+ * shape 参数：text 为一条约 60 字的中文回复；reply 为 @ + 三段文本 + 两张图片 URL 的组合回复；
+ * long 为约 1200 字的长文本（接近合并转发阈值）
+ * 运行：mvn test-compile 后以测试 classpath 执行本类的 main 方法，加 -prof gc 可得到每次分配字节数
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GroupMessageBodyBenchmark {
+
+    private static final long GROUP_ID = 712345678L;
+    private static final long USER_ID = 2034567891L;
+
+    @Param({"text", "reply", "long"})
+    public String shape;
+
+    private String[] texts;
+    private String[] images;
+    private boolean withAt;
+
+    @Setup
+    public void setUp() {
+        String sentence = "今天的活动晚上八点开始，记得提前十分钟进语音频道，迟到的话就只能旁听了哦。";
+        switch (shape) {
+            case "reply":
+                texts = new String[]{" 收到！", sentence, "需要报名表的话看群公告 \"活动\" 一栏。"};
+                images = new String[]{"https://gitee.com/LDS7871/LDS_Memes_Hub/raw/master/BIGHead/17.png",
+                        "https://gitee.com/LDS7871/LDS_Memes_Hub/raw/master/MoCai/42.png"};
+                withAt = true;
+                break;
+            case "long":
+                texts = new String[]{(sentence + "\n").repeat(32)};
+                images = new String[0];
+                break;
+            default:
+                texts = new String[]{sentence + sentence};
+                images = new String[0];
+                break;
+        }
+    }
+
+    @Benchmark
+    public byte[] jsonObjectTree() {
+        JSONArray message = new JSONArray();
+        if (withAt) {
+            message.add(MessageSegments.at(USER_ID));
+        }
+        for (String text : texts) {
+            message.add(MessageSegments.text(text));
+        }
+        for (String image : images) {
+            message.add(MessageSegments.image(image));
+        }
+        JSONObject params = new JSONObject();
+        params.put("group_id", GROUP_ID);
+        params.put("message", message);
+        return params.toJSONString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] groupMessageBody() {
+        GroupMessageBody body = GroupMessageBody.of(GROUP_ID);
+        if (withAt) {
+            body.at(USER_ID);
+        }
+        for (String text : texts) {
+            body.text(text);
+        }
+        for (String image : images) {
+            body.image(image);
+        }
+        return body.toBytes();
+    }
+
+    @Benchmark
+    public byte[] replyComposer() {
+        ReplyComposer reply = ReplyComposer.create();
+        for (String text : texts) {
+            reply.text(text);
+        }
+        for (String image : images) {
+            reply.image(image);
+        }
+        return reply.toBody(GROUP_ID).toBytes();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(GroupMessageBodyBenchmark.class.getSimpleName()).build()).run();
+    }
+}
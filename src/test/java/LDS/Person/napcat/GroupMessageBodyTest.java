@@ -0,0 +1,122 @@
+package LDS.Person.napcat;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * GroupMessageBody / ReplyComposer 的输出与 fastjson 按 JSONObject 树序列化的结果一致
+ */
+class GroupMessageBodyTest {
+
+    private static final long GROUP_ID = 712345678L;
+
+    // 需要转义或多字节编码的文本
+    private static final List<String> TRICKY_TEXTS = List.of(
+            "普通中文消息",
+            "带 \"引号\" 和 \\反斜杠\\ 的文本",
+            "换行\n制表\t回车\r结束",
+            "控制字符\u0001\u001f",
+            "表情 😀👍 与 CJK 扩展 𠀀",
+            "</script> & <b>html</b>",
+            "");
+
+    @Test
+    void singleSegmentsMatchJsonObjectTree() {
+        for (String text : TRICKY_TEXTS) {
+            assertRoundTrip(GroupMessageBody.of(GROUP_ID).text(text), MessageSegments.of(MessageSegments.text(text)));
+        }
+        assertRoundTrip(GroupMessageBody.of(GROUP_ID).image("base64://iVBORw0KGgo="),
+                MessageSegments.of(MessageSegments.image("base64://iVBORw0KGgo=")));
+        assertRoundTrip(GroupMessageBody.of(GROUP_ID).record("https://example.com/a.amr?x=1&y=2"),
+                MessageSegments.of(MessageSegments.record("https://example.com/a.amr?x=1&y=2")));
+    }
+
+    @Test
+    void mixedSegmentsMatchJsonObjectTree() {
+        GroupMessageBody body = GroupMessageBody.of(GROUP_ID)
+                .reply("1894523311")
+                .at(2034567891L)
+                .text(" 你好\n")
+                .image("https://example.com/1.png")
+                .text(TRICKY_TEXTS.get(1))
+                .at(1023456789L)
+                .text(TRICKY_TEXTS.get(4));
+        JSONArray expected = MessageSegments.of(
+                MessageSegments.reply("1894523311"),
+                MessageSegments.at(2034567891L),
+                MessageSegments.text(" 你好\n"),
+                MessageSegments.image("https://example.com/1.png"),
+                MessageSegments.text(TRICKY_TEXTS.get(1)),
+                MessageSegments.at(1023456789L),
+                MessageSegments.text(TRICKY_TEXTS.get(4)));
+        assertRoundTrip(body, expected);
+    }
+
+    @Test
+    void emptyBodyHasEmptyMessageArray() {
+        assertRoundTrip(GroupMessageBody.of(GROUP_ID), new JSONArray());
+    }
+
+    @Test
+    void replyComposerBodyMatchesJsonObjectTree() {
+        ReplyComposer reply = ReplyComposer.create()
+                .text("第一段")
+                .image("https://example.com/2.png")
+                .text(null)
+                .image("")
+                .text(TRICKY_TEXTS.get(2));
+        assertEquals(3, reply.getPartCount());
+        assertRoundTrip(reply.toBody(GROUP_ID), MessageSegments.of(
+                MessageSegments.text("第一段"),
+                MessageSegments.image("https://example.com/2.png"),
+                MessageSegments.text(TRICKY_TEXTS.get(2))));
+    }
+
+    @Test
+    void forwardNodesKeepAllTextWithinNodeLimit() {
+        StringBuilder longText = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            longText.append("第 ").append(i).append(" 行内容，用于测试合并转发的拆分\n");
+        }
+        longText.append("x".repeat(250));
+        JSONArray nodes = ReplyComposer.create().text(longText.toString()).image("https://example.com/3.png")
+                .toForwardNodes(3812345678L, "GlazedTile", 100);
+
+        StringBuilder rebuilt = new StringBuilder();
+        for (int i = 0; i < nodes.size() - 1; i++) {
+            JSONObject data = nodes.getJSONObject(i).getJSONObject("data");
+            assertEquals("3812345678", data.getString("user_id"));
+            String chunk = data.getJSONArray("content").getJSONObject(0).getJSONObject("data").getString("text");
+            assertTrue(chunk.length() <= 101, "节点文本超出上限: " + chunk.length());
+            rebuilt.append(chunk);
+        }
+        // 按行拆分时每块末尾补回换行
+        assertEquals(longText.toString().replace("\n", ""), rebuilt.toString().replace("\n", ""));
+        JSONObject image = nodes.getJSONObject(nodes.size() - 1).getJSONObject("data")
+                .getJSONArray("content").getJSONObject(0);
+        assertEquals("image", image.getString("type"));
+    }
+
+    private static void assertRoundTrip(GroupMessageBody body, JSONArray expectedMessage) {
+        JSONObject expected = new JSONObject();
+        expected.put("group_id", GROUP_ID);
+        expected.put("message", expectedMessage);
+
+        byte[] expectedBytes = NapCatClient.toBytes(expected);
+        byte[] actual = body.toBytes();
+        // 解析后结构相同
+        assertEquals(JSON.parseObject(new String(expectedBytes, StandardCharsets.UTF_8)),
+                JSON.parseObject(new String(actual, StandardCharsets.UTF_8)));
+        // 字段顺序与转义方式也与 fastjson 序列化 JSONObject 树的结果逐字节一致
+        assertArrayEquals(expectedBytes, actual);
+    }
+}
@@ -0,0 +1,99 @@
+package LDS.Person.napcat;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * IdempotencyCache 的去重窗口、墓碑复用与达到上限时的批量淘汰
+ */
+class IdempotencyCacheTest {
+
+    @Test
+    void sameKeyIsClaimedOnceWithinTheWindow() {
+        IdempotencyCache cache = new IdempotencyCache();
+        long key = IdempotencyCache.key(555L, "vip_cmd");
+
+        assertTrue(cache.tryClaim(key));
+        assertFalse(cache.tryClaim(key));
+        assertTrue(cache.tryClaim(IdempotencyCache.key(555L, "keyword")), "不同处理器互不影响");
+        assertTrue(cache.tryClaim(IdempotencyCache.key(556L, "vip_cmd")));
+        assertTrue(cache.tryClaim(IdempotencyCache.NONE));
+        assertTrue(cache.tryClaim(IdempotencyCache.NONE), "NONE 不参与去重");
+
+        Map<String, Object> stats = cache.getStats();
+        assertEquals(3L, stats.get("claimed"));
+        assertEquals(1L, stats.get("suppressed"));
+        assertEquals(IdempotencyCache.NONE, IdempotencyCache.key(0L, "vip_cmd"), "没有触发消息时不去重");
+        assertNotEquals(IdempotencyCache.derive(key, 0), IdempotencyCache.derive(key, 1));
+    }
+
+    @Test
+    void keyCanBeClaimedAgainAfterTheWindow() throws InterruptedException {
+        IdempotencyCache cache = new IdempotencyCache();
+        ReflectionTestUtils.setField(cache, "windowNanos", TimeUnit.MILLISECONDS.toNanos(20));
+        long key = IdempotencyCache.key(555L, "vip_cmd");
+
+        assertTrue(cache.tryClaim(key));
+        assertFalse(cache.tryClaim(key));
+        Thread.sleep(40);
+        assertTrue(cache.tryClaim(key));
+        assertEquals(1, cache.getStats().get("live_keys"));
+    }
+
+    @Test
+    void releasedAndExpiredSlotsAreReused() throws InterruptedException {
+        IdempotencyCache cache = new IdempotencyCache();
+        long key = IdempotencyCache.key(555L, "vip_cmd");
+        assertTrue(cache.tryClaim(key));
+        cache.release(key);
+        assertTrue(cache.tryClaim(key), "释放后同一触发消息可以再次发送");
+        assertEquals(1, ReflectionTestUtils.getField(cache, "used"), "释放的槽位作为墓碑复用，不占用新槽位");
+
+        // 过期的键同样留下墓碑，之后插入的其他键复用这些槽位
+        ReflectionTestUtils.setField(cache, "windowNanos", TimeUnit.MILLISECONDS.toNanos(20));
+        for (long id = 1000; id < 1100; id++) {
+            assertTrue(cache.tryClaim(IdempotencyCache.key(id, "keyword")));
+        }
+        int used = (Integer) ReflectionTestUtils.getField(cache, "used");
+        Thread.sleep(40);
+        for (long id = 1000; id < 1100; id++) {
+            assertTrue(cache.tryClaim(IdempotencyCache.key(id, "keyword")));
+        }
+        assertEquals(used, ReflectionTestUtils.getField(cache, "used"));
+        assertEquals(1024, cache.getStats().get("capacity"));
+    }
+
+    @Test
+    void fullCacheEvictsTheOlderHalfInOneBatch() throws InterruptedException {
+        IdempotencyCache cache = new IdempotencyCache();
+        // 上限 512 个键：容量固定为初始的 1024 槽，第 513 个键触发淘汰
+        ReflectionTestUtils.setField(cache, "maxEntries", 512);
+        long first = IdempotencyCache.key(1L, "keyword");
+        assertTrue(cache.tryClaim(first));
+        // 只有一个键明显更早过期：按最早与最晚过期时刻的中点淘汰只能腾出这一个槽位
+        Thread.sleep(20);
+        for (long id = 2; id <= 512; id++) {
+            assertTrue(cache.tryClaim(IdempotencyCache.key(id, "keyword")));
+        }
+        assertEquals(512, cache.getStats().get("live_keys"));
+
+        long newest = IdempotencyCache.key(513L, "keyword");
+        assertTrue(cache.tryClaim(newest));
+
+        Map<String, Object> stats = cache.getStats();
+        assertEquals(1024, stats.get("capacity"));
+        assertEquals(256L, stats.get("evicted"));
+        assertEquals(257, stats.get("live_keys"));
+        assertEquals(257, ReflectionTestUtils.getField(cache, "used"));
+        assertFalse(cache.tryClaim(newest));
+        assertTrue(cache.tryClaim(first), "最早过期的键应被淘汰");
+    }
+}
@@ -0,0 +1,271 @@
+package LDS.Person.napcat;
+
+import LDS.Person.config.WebClientConfig;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * 以本地 NapCat 桩服务（com.sun.net.httpserver）验证 NapCatClient：
+ * - 熔断器只把连接失败、超时和 5xx 计入连续失败，4xx 不会触发熔断
+ * - 200 个并发指令下 HTTP（每条指令一个阻塞线程）与 WEBCLIENT（异步链）两种传输的线程数与 p99 延迟
+ */
+class NapCatClientStubServerTest {
+
+    private static final int CONCURRENT_COMMANDS = 200;
+    // 桩服务的模拟处理耗时
+    private static final long STUB_DELAY_MS = 50;
+    private static final byte[] OK_BODY = "{\"status\":\"ok\",\"retcode\":0,\"data\":{\"message_id\":1}}"
+            .getBytes(StandardCharsets.UTF_8);
+    private static final byte[] BAD_REQUEST_BODY = "{\"status\":\"failed\",\"retcode\":1400}"
+            .getBytes(StandardCharsets.UTF_8);
+
+    private final List<HttpServer> servers = new ArrayList<>();
+    private ScheduledExecutorService stubDelay;
+    private ConnectionProvider connectionProvider;
+    private volatile int stubStatus = 200;
+
+    @BeforeEach
+    void setUp() {
+        // 延迟响应由定时线程写回，桩服务的线程数不随并发数增加
+        stubDelay = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "stub-delay");
+            thread.setDaemon(true);
+            return thread;
+        });
+        connectionProvider = new WebClientConfig().outboundConnectionProvider();
+    }
+
+    @AfterEach
+    void tearDown() {
+        servers.forEach(server -> server.stop(0));
+        stubDelay.shutdownNow();
+        connectionProvider.dispose();
+    }
+
+    @Test
+    void clientErrorsDoNotOpenTheBreaker() {
+        stubStatus = 400;
+        CircuitBreaker breaker = new CircuitBreaker();
+        NapCatClient client = newClient(NapCatClient.Transport.HTTP, breaker);
+
+        // 默认阈值 5：4xx 是请求本身的问题，再多也不熔断，每次都访问 NapCat
+        for (int i = 0; i < 10; i++) {
+            NapCatResponse response = client.callAction("send_group_msg", new byte[] {'{', '}'});
+            assertEquals(400, response.getHttpStatus());
+        }
+        assertEquals(CircuitBreaker.State.CLOSED.name(), breaker.getStats().get("state"));
+    }
+
+    @Test
+    void serverErrorsOpenTheBreaker() {
+        stubStatus = 503;
+        CircuitBreaker breaker = new CircuitBreaker();
+        NapCatClient client = newClient(NapCatClient.Transport.HTTP, breaker);
+
+        // 连续 5 次 5xx 后熔断，第 6 次不再访问 NapCat
+        for (int i = 0; i < 5; i++) {
+            assertEquals(503, client.callAction("send_group_msg", new byte[] {'{', '}'}).getHttpStatus());
+        }
+        assertTrue(client.callAction("send_group_msg", new byte[] {'{', '}'}).isCircuitOpen());
+        assertEquals(CircuitBreaker.State.OPEN.name(), breaker.getStats().get("state"));
+    }
+
+    @Test
+    void transportErrorsOpenTheBreaker() {
+        CircuitBreaker breaker = new CircuitBreaker();
+        NapCatClient client = newClient(NapCatClient.Transport.HTTP, breaker);
+        // 桩服务停止后连接被拒绝
+        servers.forEach(server -> server.stop(0));
+
+        for (int i = 0; i < 5; i++) {
+            assertTrue(client.callAction("send_group_msg", new byte[] {'{', '}'}).isTransportError());
+        }
+        assertTrue(client.callAction("send_group_msg", new byte[] {'{', '}'}).isCircuitOpen());
+        assertEquals(CircuitBreaker.State.OPEN.name(), breaker.getStats().get("state"));
+    }
+
+    @Test
+    void okResponsesResetTheFailureCount() {
+        CircuitBreaker breaker = new CircuitBreaker();
+        NapCatClient client = newClient(NapCatClient.Transport.HTTP, breaker);
+
+        stubStatus = 503;
+        for (int i = 0; i < 4; i++) {
+            client.callAction("send_group_msg", new byte[] {'{', '}'});
+        }
+        stubStatus = 200;
+        assertTrue(client.callAction("send_group_msg", new byte[] {'{', '}'}).isOk());
+        stubStatus = 503;
+        for (int i = 0; i < 4; i++) {
+            assertEquals(503, client.callAction("send_group_msg", new byte[] {'{', '}'}).getHttpStatus());
+        }
+        assertEquals(CircuitBreaker.State.CLOSED.name(), breaker.getStats().get("state"));
+    }
+
+    @Test
+    void concurrentCommandsOverBlockingHttpAndWebClient() throws Exception {
+        byte[] body = GroupMessageBody.of(123456L).text("load").toBytes();
+
+        // 预热两种传输（建立连接、加载类），避免首次调用计入结果
+        // 两种传输各用一个桩服务，避免一方留下的空闲长连接影响另一方
+        NapCatClient http = newClient(NapCatClient.Transport.HTTP, new CircuitBreaker());
+        NapCatClient webClient = newClient(NapCatClient.Transport.WEBCLIENT, new CircuitBreaker());
+        runBlocking(http, body);
+        runAsync(webClient, body);
+
+        LoadResult blocking = runBlocking(http, body);
+        LoadResult reactive = runAsync(webClient, body);
+        System.out.printf("[napcat-load] %d commands, stub %d ms%n", CONCURRENT_COMMANDS, STUB_DELAY_MS);
+        System.out.printf("[napcat-load] HTTP      extra threads=%d, p99=%d ms, max=%d ms%n",
+                blocking.extraThreads, blocking.p99Ms, blocking.maxMs);
+        System.out.printf("[napcat-load] WEBCLIENT extra threads=%d, p99=%d ms, max=%d ms%n",
+                reactive.extraThreads, reactive.p99Ms, reactive.maxMs);
+
+        assertEquals(CONCURRENT_COMMANDS, blocking.ok);
+        assertEquals(CONCURRENT_COMMANDS, reactive.ok);
+        // 阻塞传输每条进行中的指令占用一个线程，异步链不随并发数增加线程
+        assertTrue(blocking.extraThreads >= CONCURRENT_COMMANDS, "HTTP 线程数 " + blocking.extraThreads);
+        assertTrue(reactive.extraThreads < CONCURRENT_COMMANDS / 4, "WEBCLIENT 线程数 " + reactive.extraThreads);
+    }
+
+    /**
+     * 每条指令在自己的线程上同步调用 callAction，与监听器线程上的阻塞发送相同
+     */
+    private LoadResult runBlocking(NapCatClient client, byte[] body) throws Exception {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        int baseline = threads.getThreadCount();
+        threads.resetPeakThreadCount();
+        ExecutorService commands = Executors.newFixedThreadPool(CONCURRENT_COMMANDS);
+        try {
+            List<CompletableFuture<Long>> futures = new ArrayList<>();
+            for (int i = 0; i < CONCURRENT_COMMANDS; i++) {
+                futures.add(CompletableFuture.supplyAsync(() -> {
+                    long start = System.nanoTime();
+                    NapCatResponse response = client.callAction("send_group_msg", body);
+                    return response.isOk() ? System.nanoTime() - start : -1L;
+                }, commands));
+            }
+            return LoadResult.of(futures, threads, baseline);
+        } finally {
+            commands.shutdownNow();
+        }
+    }
+
+    /**
+     * 从一个线程发出全部指令，每条指令是 callActionAsync 的异步链
+     */
+    private LoadResult runAsync(NapCatClient client, byte[] body) throws Exception {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        int baseline = threads.getThreadCount();
+        threads.resetPeakThreadCount();
+        List<CompletableFuture<Long>> futures = new ArrayList<>();
+        for (int i = 0; i < CONCURRENT_COMMANDS; i++) {
+            long start = System.nanoTime();
+            futures.add(client.callActionAsync("send_group_msg", body)
+                    .thenApply(response -> response.isOk() ? System.nanoTime() - start : -1L));
+        }
+        return LoadResult.of(futures, threads, baseline);
+    }
+
+    private NapCatClient newClient(NapCatClient.Transport transport, CircuitBreaker breaker) {
+        WebClient webClient = new WebClientConfig().napCatWebClient(WebClient.builder(), connectionProvider);
+        NapCatClient client = new NapCatClient(mock(WsActionChannel.class), breaker, webClient);
+        ReflectionTestUtils.setField(client, "apiBase", "http://127.0.0.1:" + startStub().getAddress().getPort());
+        ReflectionTestUtils.setField(client, "transport", transport);
+        return client;
+    }
+
+    /**
+     * 启动一个桩服务：读完请求体后由定时线程在 STUB_DELAY_MS 后写回响应，处理线程数固定为 2
+     */
+    private HttpServer startStub() {
+        try {
+            HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), CONCURRENT_COMMANDS);
+            server.setExecutor(Executors.newFixedThreadPool(2, r -> {
+                Thread thread = new Thread(r, "stub-http");
+                thread.setDaemon(true);
+                return thread;
+            }));
+            server.createContext("/", exchange -> {
+                exchange.getRequestBody().readAllBytes();
+                int status = stubStatus;
+                stubDelay.schedule(() -> respond(exchange, status), STUB_DELAY_MS, TimeUnit.MILLISECONDS);
+            });
+            server.start();
+            servers.add(server);
+            return server;
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status) {
+        byte[] body = status == 200 ? OK_BODY : BAD_REQUEST_BODY;
+        try (OutputStream out = exchange.getResponseBody()) {
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, body.length);
+            out.write(body);
+        } catch (IOException e) {
+            exchange.close();
+        }
+    }
+
+    private static final class LoadResult {
+        final int ok;
+        final int extraThreads;
+        final long p99Ms;
+        final long maxMs;
+
+        private LoadResult(int ok, int extraThreads, long p99Ms, long maxMs) {
+            this.ok = ok;
+            this.extraThreads = extraThreads;
+            this.p99Ms = p99Ms;
+            this.maxMs = maxMs;
+        }
+
+        static LoadResult of(List<CompletableFuture<Long>> futures, ThreadMXBean threads, int baseline) throws Exception {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(60, TimeUnit.SECONDS);
+            int extraThreads = threads.getPeakThreadCount() - baseline;
+            List<Long> latencies = new ArrayList<>();
+            for (CompletableFuture<Long> future : futures) {
+                long nanos = future.get();
+                if (nanos >= 0) {
+                    latencies.add(nanos);
+                }
+            }
+            Collections.sort(latencies);
+            if (latencies.isEmpty()) {
+                return new LoadResult(0, extraThreads, -1, -1);
+            }
+            long p99 = latencies.get((int) Math.ceil(latencies.size() * 0.99) - 1);
+            long max = latencies.get(latencies.size() - 1);
+            return new LoadResult(latencies.size(), extraThreads,
+                    TimeUnit.NANOSECONDS.toMillis(p99), TimeUnit.NANOSECONDS.toMillis(max));
+        }
+    }
+}
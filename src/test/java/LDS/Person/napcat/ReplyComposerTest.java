@@ -0,0 +1,59 @@
+package LDS.Person.napcat;
+
+import com.alibaba.fastjson2.JSONArray;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * ReplyComposer 的文本切块不超过上限（换行符计入长度），切块拼回后与原文一致
+ */
+class ReplyComposerTest {
+
+    @Test
+    void chunksNeverExceedTheLimit() {
+        int maxChars = 10;
+        List<String> texts = List.of(
+                "0123456789\n0123456789\nab",
+                "0123456789012345\nabc\n0123456789",
+                "abcd\nefgh\nijkl\nmnop",
+                "a\n\nb\n0123456789abcdefghij0123");
+        for (String text : texts) {
+            List<String> chunks = ReplyComposer.splitText(text, maxChars);
+            for (String chunk : chunks) {
+                assertTrue(chunk.length() <= maxChars, "块过长: \"" + chunk + "\" 来自 \"" + text + "\"");
+            }
+            assertEquals(text.replace("\n", ""), String.join("", chunks).replace("\n", ""), "切块丢失了内容");
+        }
+    }
+
+    @Test
+    void linesAreKeptTogetherWhenTheyFit() {
+        assertEquals(List.of("abcd\nefgh", "ijkl\nmnop"), ReplyComposer.splitText("abcd\nefgh\nijkl\nmnop", 9));
+        // 恰好等于上限的行独占一块，后续行另起一块
+        assertEquals(List.of("0123456789", "ab"), ReplyComposer.splitText("0123456789\nab", 10));
+        // 硬切剩下的部分和后续行合并
+        assertEquals(List.of("0123456789", "012\nabc"), ReplyComposer.splitText("0123456789012\nabc", 10));
+        assertEquals(List.of("short"), ReplyComposer.splitText("short", 10));
+    }
+
+    @Test
+    void forwardNodesAndPlainBodiesKeepPartOrder() {
+        ReplyComposer reply = ReplyComposer.create()
+                .image("https://example.com/a.png")
+                .text("abcd\nefgh\nijkl")
+                .image("https://example.com/b.png");
+
+        JSONArray nodes = reply.toForwardNodes(1L, "bot", 9);
+        assertEquals(4, nodes.size());
+        assertEquals(4, reply.toPlainBodies(1L, 9).size());
+        assertTrue(reply.hasImage());
+        assertEquals(new String(GroupMessageBody.of(1L).text("abcd\nefgh\nijkl").toBytes()),
+                new String(reply.toTextBody(1L).toBytes()));
+        assertNull(ReplyComposer.create().image("https://example.com/a.png").toTextBody(1L));
+    }
+}
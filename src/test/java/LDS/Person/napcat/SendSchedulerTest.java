@@ -0,0 +1,196 @@
+package LDS.Person.napcat;
+
+import com.alibaba.fastjson2.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * SendScheduler 的调度规则：NapCat 由桩替代，每次发送都停在测试手里，由测试决定何时、以何种结果完成
+ * - 同一群按提交顺序发送，上一条完成前车道保持占用
+ * - 可重试的失败重新排到该群队首
+ * - 全局令牌桶限制所有群合计的发送速率
+ */
+class SendSchedulerTest {
+
+    private static final NapCatResponse OK = response(200, "{\"status\":\"ok\",\"retcode\":0,\"data\":{\"message_id\":1}}");
+
+    private final BlockingQueue<Call> calls = new LinkedBlockingQueue<>();
+    private SendScheduler scheduler;
+
+    @BeforeEach
+    void setUp() {
+        NapCatClient napCatClient = mock(NapCatClient.class);
+        when(napCatClient.callActionAsync(anyString(), any(byte[].class))).thenAnswer(invocation -> {
+            Call call = new Call(invocation.getArgument(0), invocation.getArgument(1));
+            calls.add(call);
+            return call.result;
+        });
+        RetryPolicy retryPolicy = new RetryPolicy();
+        // 缩短退避，重试在几十毫秒内发生
+        ReflectionTestUtils.setField(retryPolicy, "baseDelayMs", 20L);
+        ReflectionTestUtils.setField(retryPolicy, "maxDelayMs", 40L);
+        scheduler = new SendScheduler(napCatClient, retryPolicy, new CircuitBreaker(), new IdempotencyCache());
+        // 去掉单群间隔与抖动，只检验顺序与车道占用；全局速率放宽到不影响这些用例
+        ReflectionTestUtils.setField(scheduler, "groupIntervalNanos", 0L);
+        ReflectionTestUtils.setField(scheduler, "groupJitterNanos", 0L);
+        setGlobalRate(1000, 1000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    void sameGroupIsSentInOrderOneAtATime() throws Exception {
+        List<CompletableFuture<NapCatResponse>> results = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            results.add(scheduler.submit(1L, "send_group_msg", body("g1-" + i), 0));
+        }
+        results.add(scheduler.submit(2L, "send_group_msg", body("g2-0"), 0));
+
+        // 两个群各有一条在途，群 1 的后续消息等待上一条完成
+        Call inFlight = null;
+        for (int i = 0; i < 2; i++) {
+            Call call = next();
+            if (call.text().equals("g1-0")) {
+                inFlight = call;
+            } else {
+                assertEquals("g2-0", call.text());
+            }
+        }
+        assertNotNull(inFlight);
+        assertNull(calls.poll(200, TimeUnit.MILLISECONDS), "群 1 上一条未完成时不应发出下一条");
+
+        for (int i = 1; i < 3; i++) {
+            inFlight.result.complete(OK);
+            Call call = next();
+            assertEquals("g1-" + i, call.text());
+            assertNull(calls.poll(100, TimeUnit.MILLISECONDS));
+            inFlight = call;
+        }
+        inFlight.result.complete(OK);
+        for (CompletableFuture<NapCatResponse> result : results.subList(0, 3)) {
+            assertTrue(result.get(1, TimeUnit.SECONDS).isOk());
+        }
+        assertFalse(results.get(3).isDone(), "群 2 的发送尚未完成");
+    }
+
+    @Test
+    void retryableFailureRetriesAtTheHeadOfTheLane() throws Exception {
+        CompletableFuture<NapCatResponse> a = scheduler.submit(1L, "send_group_msg", body("a"), 0);
+        CompletableFuture<NapCatResponse> b = scheduler.submit(1L, "send_group_msg", body("b"), 0);
+
+        Call firstAttempt = next();
+        assertEquals("a", firstAttempt.text());
+        firstAttempt.result.complete(response(502, "bad gateway"));
+
+        // 重试的 a 排在 b 之前，b 在 a 成功前不会发出
+        Call retry = next();
+        assertEquals("a", retry.text());
+        assertNull(calls.poll(100, TimeUnit.MILLISECONDS));
+        assertFalse(a.isDone());
+        retry.result.complete(OK);
+
+        Call second = next();
+        assertEquals("b", second.text());
+        second.result.complete(OK);
+        assertTrue(a.get(1, TimeUnit.SECONDS).isOk());
+        assertTrue(b.get(1, TimeUnit.SECONDS).isOk());
+        assertEquals(1L, scheduler.getStats().get("retried"));
+    }
+
+    @Test
+    void fatalFailureIsNotRetriedAndReleasesTheLane() throws Exception {
+        CompletableFuture<NapCatResponse> a = scheduler.submit(1L, "send_group_msg", body("a"), 0);
+        scheduler.submit(1L, "send_group_msg", body("b"), 0);
+
+        next().result.complete(response(400, "bad request"));
+        assertEquals(400, a.get(1, TimeUnit.SECONDS).getHttpStatus());
+        assertEquals("b", next().text());
+        assertEquals(0L, scheduler.getStats().get("retried"));
+    }
+
+    @Test
+    void globalTokenBucketLimitsTheRateAcrossGroups() throws Exception {
+        // 每秒 20 条、突发 1 条：10 个不同群的消息至少需要 9 个令牌间隔（450 ms）
+        setGlobalRate(20, 1);
+        int messages = 10;
+        for (int group = 0; group < messages; group++) {
+            scheduler.submit(group, "send_group_msg", body("g" + group), 0);
+        }
+        long[] sentAt = new long[messages];
+        for (int i = 0; i < messages; i++) {
+            Call call = next();
+            sentAt[i] = System.nanoTime();
+            call.result.complete(OK);
+        }
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(sentAt[messages - 1] - sentAt[0]);
+        System.out.printf("[send-scheduler] %d sends at 20/s, burst 1: %d ms%n", messages, elapsedMs);
+        assertTrue(elapsedMs >= 400, "发送过快: " + elapsedMs + " ms");
+        for (int i = 1; i < messages; i++) {
+            long gapMs = TimeUnit.NANOSECONDS.toMillis(sentAt[i] - sentAt[i - 1]);
+            assertTrue(gapMs >= 35, "第 " + i + " 条与上一条间隔 " + gapMs + " ms");
+        }
+    }
+
+    private Call next() throws InterruptedException {
+        Call call = calls.poll(5, TimeUnit.SECONDS);
+        assertNotNull(call, "5 秒内没有发出发送");
+        return call;
+    }
+
+    private void setGlobalRate(double perSecond, double burst) {
+        ReflectionTestUtils.setField(scheduler, "globalRatePerNano", perSecond / TimeUnit.SECONDS.toNanos(1));
+        ReflectionTestUtils.setField(scheduler, "globalBurst", burst);
+        ReflectionTestUtils.setField(scheduler, "globalTokens", burst);
+    }
+
+    private static byte[] body(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static NapCatResponse response(int status, String body) {
+        return new NapCatResponse("send_group_msg", status,
+                status == 200 ? JSONObject.parseObject(body) : null,
+                status == 200 ? null : body, 0);
+    }
+
+    /**
+     * 一次发往 NapCat 桩的调用，由测试完成其结果
+     */
+    private static final class Call {
+        final String action;
+        final byte[] body;
+        final CompletableFuture<NapCatResponse> result = new CompletableFuture<>();
+
+        Call(String action, byte[] body) {
+            this.action = action;
+            this.body = body;
+        }
+
+        String text() {
+            return new String(body, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package LDS.Person.napcat;
+
+import LDS.Person.websocket.RemoteOneBotClient;
+import com.alibaba.fastjson2.JSONObject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 以假的 NapCat 连接验证 WsActionChannel：按 echo 匹配响应、超时移除、迟到响应丢弃、断线时全部失败
+ */
+class WsActionChannelTest {
+
+    private static final byte[] PARAMS = "{\"group_id\":1,\"message\":\"hi\"}".getBytes(StandardCharsets.UTF_8);
+
+    private final List<String> sentFrames = new CopyOnWriteArrayList<>();
+    private WsActionChannel channel;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() throws Exception {
+        RemoteOneBotClient socket = mock(RemoteOneBotClient.class);
+        when(socket.isConnected()).thenReturn(true);
+        doAnswer(invocation -> sentFrames.add(invocation.getArgument(0))).when(socket).sendMessage(anyString());
+        ObjectProvider<RemoteOneBotClient> provider = mock(ObjectProvider.class);
+        when(provider.getIfAvailable()).thenReturn(socket);
+        channel = new WsActionChannel(provider);
+    }
+
+    @Test
+    void responseIsMatchedByEcho() throws Exception {
+        CompletableFuture<NapCatResponse> first = channel.callAction("send_group_msg", PARAMS);
+        CompletableFuture<NapCatResponse> second = channel.callAction("send_group_msg", PARAMS);
+        assertEquals(2, sentFrames.size());
+        JSONObject sent = JSONObject.parseObject(sentFrames.get(1));
+        assertEquals("send_group_msg", sent.getString("action"));
+        assertEquals("hi", sent.getJSONObject("params").getString("message"));
+
+        // 先到达的是第二个请求的响应，不应完成第一个请求
+        assertTrue(channel.onResponse(okResponse(sent.getString("echo"), 42)));
+        NapCatResponse response = second.get(1, TimeUnit.SECONDS);
+        assertTrue(response.isOk());
+        assertEquals(42, response.getData().getIntValue("message_id"));
+        assertFalse(first.isDone());
+        assertEquals(1, channel.getStats().get("in_flight"));
+    }
+
+    @Test
+    void timeoutRemovesThePendingEntry() throws Exception {
+        ReflectionTestUtils.setField(channel, "timeoutMs", 100L);
+        NapCatResponse response = channel.callAction("send_group_msg", PARAMS).get(5, TimeUnit.SECONDS);
+
+        assertTrue(response.isTimedOut());
+        assertTrue(response.isTransportError());
+        Map<String, Object> stats = channel.getStats();
+        assertEquals(0, stats.get("in_flight"));
+        assertEquals(1L, stats.get("timed_out"));
+    }
+
+    @Test
+    void lateResponseAfterTimeoutIsClaimedButIgnored() throws Exception {
+        ReflectionTestUtils.setField(channel, "timeoutMs", 100L);
+        CompletableFuture<NapCatResponse> future = channel.callAction("send_group_msg", PARAMS);
+        assertTrue(future.get(5, TimeUnit.SECONDS).isTimedOut());
+        String echo = JSONObject.parseObject(sentFrames.get(0)).getString("echo");
+
+        // 迟到的响应仍属于本通道（不转发给本地客户端），但不会改变已超时的结果
+        assertTrue(channel.onResponse(okResponse(echo, 7)));
+        assertTrue(future.get().isTimedOut());
+        Map<String, Object> stats = channel.getStats();
+        assertEquals(1L, stats.get("unmatched_responses"));
+        assertEquals(0L, stats.get("completed"));
+    }
+
+    @Test
+    void responsesOfOtherRequestsAreNotClaimed() {
+        assertFalse(channel.onResponse("{\"status\":\"ok\",\"retcode\":0,\"data\":{},\"echo\":\"heartbeat-1\"}"));
+        assertFalse(channel.onResponse("{\"status\":\"ok\",\"retcode\":0,\"data\":{}}"));
+        assertFalse(channel.onResponse("not json"));
+    }
+
+    @Test
+    void failAllCompletesEveryPendingAction() throws Exception {
+        CompletableFuture<NapCatResponse> first = channel.callAction("send_group_msg", PARAMS);
+        CompletableFuture<NapCatResponse> second = channel.callAction("get_status", new byte[] {'{', '}'});
+
+        channel.failAll("WebSocket 连接已断开");
+
+        for (CompletableFuture<NapCatResponse> future : List.of(first, second)) {
+            NapCatResponse response = future.get(1, TimeUnit.SECONDS);
+            assertTrue(response.isTransportError());
+            assertFalse(response.isTimedOut());
+            assertEquals("WebSocket 连接已断开", response.getErrorMessage());
+        }
+        Map<String, Object> stats = channel.getStats();
+        assertEquals(0, stats.get("in_flight"));
+        assertEquals(2L, stats.get("aborted"));
+        // 断线后才到达的响应同样被丢弃
+        String echo = JSONObject.parseObject(sentFrames.get(0)).getString("echo");
+        assertTrue(channel.onResponse(okResponse(echo, 1)));
+        assertEquals(1L, channel.getStats().get("unmatched_responses"));
+    }
+
+    private static String okResponse(String echo, int messageId) {
+        return "{\"status\":\"ok\",\"retcode\":0,\"data\":{\"message_id\":" + messageId + "},\"echo\":\"" + echo + "\"}";
+    }
+}
@@ -0,0 +1,140 @@
+package LDS.Person.service;
+
+import LDS.Person.napcat.GroupMessageBody;
+import LDS.Person.napcat.IdempotencyCache;
+import LDS.Person.napcat.NapCatResponse;
+import LDS.Person.napcat.ReplyComposer;
+import LDS.Person.napcat.SendScheduler;
+import com.alibaba.fastjson2.JSONArray;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * queueReply 按文本长度选择单条消息或合并转发，被 NapCat 拒绝时退回更简单的形态重发
+ */
+class GroupMessageServiceReplyTest {
+
+    private static final long GROUP_ID = 712345678L;
+    private static final long KEY = IdempotencyCache.key(555L, "steam");
+
+    private final SendScheduler sendScheduler = mock(SendScheduler.class);
+    private GroupMessageService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new GroupMessageService();
+        ReflectionTestUtils.setField(service, "sendScheduler", sendScheduler);
+        ReflectionTestUtils.setField(service, "forwardThresholdChars", 20);
+        ReflectionTestUtils.setField(service, "forwardNodeMaxChars", 100);
+    }
+
+    @Test
+    void thresholdSelectsSingleMessageOrForward() {
+        when(sendScheduler.sendGroupMessage(anyLong(), any(GroupMessageBody.class), anyLong())).thenReturn(done(OK));
+        when(sendScheduler.sendForward(anyLong(), any(JSONArray.class), anyLong())).thenReturn(done(OK));
+
+        assertTrue(service.queueReply(GROUP_ID, ReplyComposer.create().text("12345678901234567890"), KEY).join().isOk());
+        verify(sendScheduler).sendGroupMessage(eq(GROUP_ID), any(GroupMessageBody.class), eq(KEY));
+        verify(sendScheduler, never()).sendForward(anyLong(), any(JSONArray.class), anyLong());
+
+        assertTrue(service.queueReply(GROUP_ID, ReplyComposer.create().text("123456789012345678901"), KEY).join().isOk());
+        verify(sendScheduler).sendForward(eq(GROUP_ID), any(JSONArray.class), eq(KEY));
+        assertEquals(1L, service.getStats().get("single_replies"));
+        assertEquals(1L, service.getStats().get("forward_replies"));
+        assertEquals(0L, service.getStats().get("reply_fallbacks"));
+    }
+
+    @Test
+    void rejectedImageReplyResendsTheTextAlone() {
+        NapCatResponse rejected = rejected();
+        when(sendScheduler.sendGroupMessage(anyLong(), any(GroupMessageBody.class), anyLong()))
+                .thenReturn(done(rejected), done(OK));
+        ReplyComposer reply = ReplyComposer.create().image("https://example.com/cover.png").text("游戏简介");
+
+        assertTrue(service.queueReply(GROUP_ID, reply, KEY).join().isOk());
+
+        ArgumentCaptor<GroupMessageBody> bodies = ArgumentCaptor.forClass(GroupMessageBody.class);
+        ArgumentCaptor<Long> keys = ArgumentCaptor.forClass(Long.class);
+        verify(sendScheduler, times(2)).sendGroupMessage(eq(GROUP_ID), bodies.capture(), keys.capture());
+        assertEquals(text(GroupMessageBody.of(GROUP_ID).text("游戏简介")), text(bodies.getAllValues().get(1)));
+        assertEquals(List.of(KEY, IdempotencyCache.derive(KEY, 0)), keys.getAllValues());
+        assertEquals(1L, service.getStats().get("reply_fallbacks"));
+    }
+
+    @Test
+    void transportFailureIsNotResentInAnotherForm() {
+        NapCatResponse down = response(false, 0);
+        when(down.isTransportError()).thenReturn(true);
+        when(sendScheduler.sendGroupMessage(anyLong(), any(GroupMessageBody.class), anyLong())).thenReturn(done(down));
+
+        NapCatResponse response = service.queueReply(GROUP_ID,
+                ReplyComposer.create().image("https://example.com/cover.png").text("游戏简介"), KEY).join();
+
+        assertTrue(response.isTransportError());
+        verify(sendScheduler, times(1)).sendGroupMessage(anyLong(), any(GroupMessageBody.class), anyLong());
+    }
+
+    @Test
+    void rejectedForwardFallsBackToChunkedMessagesInOrder() {
+        NapCatResponse rejected = rejected();
+        when(sendScheduler.sendForward(anyLong(), any(JSONArray.class), anyLong())).thenReturn(done(rejected));
+        when(sendScheduler.sendGroupMessage(anyLong(), any(GroupMessageBody.class), anyLong())).thenReturn(done(OK));
+        ReplyComposer reply = ReplyComposer.create()
+                .image("https://example.com/cover.png")
+                .text("第一行第一行第一行第一行\n第二行第二行第二行第二行");
+
+        assertTrue(service.queueReply(GROUP_ID, reply, KEY).join().isOk());
+
+        ArgumentCaptor<GroupMessageBody> bodies = ArgumentCaptor.forClass(GroupMessageBody.class);
+        ArgumentCaptor<Long> keys = ArgumentCaptor.forClass(Long.class);
+        verify(sendScheduler, times(3)).sendGroupMessage(eq(GROUP_ID), bodies.capture(), keys.capture());
+        assertEquals(text(GroupMessageBody.of(GROUP_ID).image("https://example.com/cover.png")),
+                text(bodies.getAllValues().get(0)));
+        assertEquals(text(GroupMessageBody.of(GROUP_ID).text("第一行第一行第一行第一行")), text(bodies.getAllValues().get(1)));
+        assertEquals(text(GroupMessageBody.of(GROUP_ID).text("第二行第二行第二行第二行")), text(bodies.getAllValues().get(2)));
+        assertEquals(List.of(IdempotencyCache.derive(KEY, 1), IdempotencyCache.derive(KEY, 2),
+                IdempotencyCache.derive(KEY, 3)), keys.getAllValues());
+        assertEquals(1L, service.getStats().get("reply_fallbacks"));
+    }
+
+    private static final NapCatResponse OK = response(true, 200);
+
+    /**
+     * NapCat 收到请求但以非零 retcode 拒绝，例如图片下载失败
+     */
+    private static NapCatResponse rejected() {
+        return response(false, 200);
+    }
+
+    private static NapCatResponse response(boolean ok, int httpStatus) {
+        NapCatResponse response = mock(NapCatResponse.class);
+        when(response.isOk()).thenReturn(ok);
+        when(response.getHttpStatus()).thenReturn(httpStatus);
+        return response;
+    }
+
+    private static CompletableFuture<NapCatResponse> done(NapCatResponse response) {
+        return CompletableFuture.completedFuture(response);
+    }
+
+    private static String text(GroupMessageBody body) {
+        return new String(body.toBytes(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,66 @@
+package LDS.Person.service;
+
+import LDS.Person.napcat.DurableOutbox;
+import LDS.Person.napcat.NapCatClient;
+import LDS.Person.napcat.SendScheduler;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class GroupMessageServiceStatsTest {
+
+    private static volatile byte[] lastPayload;
+
+    private GroupMessageService service;
+
+    @BeforeEach
+    void setUp() {
+        NapCatClient napCatClient = mock(NapCatClient.class);
+        SendScheduler sendScheduler = mock(SendScheduler.class);
+        DurableOutbox durableOutbox = mock(DurableOutbox.class);
+        // 模拟一次发送分配 1 MB
+        when(napCatClient.sendImage(anyLong(), anyString())).thenAnswer(invocation -> {
+            lastPayload = new byte[1 << 20];
+            return null;
+        });
+        when(sendScheduler.sendGroupMessage(anyLong(), any(), anyLong()))
+                .thenReturn(CompletableFuture.completedFuture(null));
+        when(durableOutbox.submit(anyLong(), anyString(), any(byte[].class)))
+                .thenReturn(CompletableFuture.completedFuture(null));
+
+        service = new GroupMessageService();
+        ReflectionTestUtils.setField(service, "napCatClient", napCatClient);
+        ReflectionTestUtils.setField(service, "sendScheduler", sendScheduler);
+        ReflectionTestUtils.setField(service, "durableOutbox", durableOutbox);
+    }
+
+    @Test
+    void queuedImagesDoNotDiluteMeasuredAllocation() {
+        service.sendImage(1L, "https://example.com/a.png");
+        Map<String, Object> afterSync = service.getStats();
+
+        for (int i = 0; i < 9; i++) {
+            service.queueImage(1L, "https://example.com/b.png");
+            service.queueDurableImage(1L, "https://example.com/c.png");
+        }
+        Map<String, Object> stats = service.getStats();
+
+        assertEquals(19L, stats.get("images_sent"));
+        if (Boolean.TRUE.equals(stats.get("allocation_tracking"))) {
+            assertEquals(1L, stats.get("images_measured"));
+            long perImage = (Long) stats.get("avg_allocated_bytes_per_image");
+            assertEquals(afterSync.get("avg_allocated_bytes_per_image"), perImage);
+            assertEquals(true, perImage >= 1 << 20, "应包含模拟发送分配的 1 MB");
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package LDS.Person.service;
+
+import LDS.Person.dto.request.SendGroupImageRequest;
+import LDS.Person.napcat.GroupMessageBody;
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 每发送一张问候图片（Base64 Data URI）的堆分配，发送前后对比：
+ * - loopback   原路径：问候任务用 RestTemplate 把 SendGroupImageRequest 以 JSON POST 到本机 8090，
+ *              Tomcat 读入请求体并反序列化，NCatSendMessageController 再组装 JSONObject 序列化后发给 NapCat
+ * - inProcess  现路径：GroupMessageService 直接用 GroupMessageBody 编码出发给 NapCat 的请求体
+ * 两者都不含实际的网络发送，只比较进程内的序列化与拷贝
+ *
+ * 运行：mvn test-compile 后以测试 classpath 执行本类的 main 方法，每张图片的分配字节数见 gc.alloc.rate.norm
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g")
+public class ImageSendAllocationBenchmark {
+
+    private static final long GROUP_ID = 712345678L;
+
+    // 原始图片字节数，Base64 后约为 4/3 倍
+    @Param({"262144", "2097152"})
+    public int imageBytes;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private String dataUri;
+
+    @Setup
+    public void setUp() {
+        byte[] image = new byte[imageBytes];
+        new Random(7).nextBytes(image);
+        dataUri = "data:image/png;base64," + Base64.getEncoder().encodeToString(image);
+    }
+
+    @Benchmark
+    public byte[] loopback() throws Exception {
+        // 调用方：RestTemplate 序列化请求 DTO
+        SendGroupImageRequest request = new SendGroupImageRequest();
+        request.setGroupId(GROUP_ID);
+        request.setFile(dataUri);
+        byte[] httpBody = objectMapper.writeValueAsBytes(request);
+
+        // 服务端：Tomcat 缓冲请求体，Jackson 反序列化
+        byte[] received = Arrays.copyOf(httpBody, httpBody.length);
+        SendGroupImageRequest parsed = objectMapper.readValue(received, SendGroupImageRequest.class);
+
+        // 控制器：组装 NapCat 请求体并序列化为字符串，RestTemplate 再编码为字节
+        JSONObject dataObj = new JSONObject();
+        dataObj.put("file", parsed.getFile());
+        JSONObject imageItem = new JSONObject();
+        imageItem.put("type", "image");
+        imageItem.put("data", dataObj);
+        JSONArray messageArray = new JSONArray();
+        messageArray.add(imageItem);
+        JSONObject napCatBody = new JSONObject();
+        napCatBody.put("group_id", parsed.getGroupId());
+        napCatBody.put("message", messageArray);
+        return napCatBody.toJSONString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] inProcess() {
+        return GroupMessageBody.of(GROUP_ID).image(dataUri).toBytes();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ImageSendAllocationBenchmark.class.getSimpleName()).build()).run();
+    }
+}
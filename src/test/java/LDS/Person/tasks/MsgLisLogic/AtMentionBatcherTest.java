@@ -0,0 +1,199 @@
+package LDS.Person.tasks.MsgLisLogic;
+
+import LDS.Person.napcat.IdempotencyCache;
+import LDS.Person.tasks.MsgLisLogic.AtMentionBatcher.Mention;
+import LDS.Person.websocket.dispatch.EventDispatcher;
+import LDS.Person.websocket.event.OneBotEvent;
+import LDS.Person.websocket.listener.ListenerPriority;
+import LDS.Person.websocket.listener.LoadShedder;
+import LDS.Person.websocket.listener.MessageListener;
+import LDS.Person.websocket.listener.MessageListenerChain;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 同一群的 @机器人 批次串行且按顺序处理，等待队列有界，处理时占用 at_bot 监听器的并发许可
+ */
+class AtMentionBatcherTest {
+
+    private final AtomicLong messageId = new AtomicLong();
+
+    private EventDispatcher dispatcher;
+    private MessageListenerChain chain;
+    private AtMentionBatcher batcher;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        dispatcher = new EventDispatcher();
+        chain = new MessageListenerChain(List.of(new AtBotListener()), mock(LoadShedder.class));
+        ObjectProvider<MessageListenerChain> provider = mock(ObjectProvider.class);
+        when(provider.getIfAvailable()).thenReturn(chain);
+        batcher = new AtMentionBatcher(new IdempotencyCache(), dispatcher, provider);
+        // 不合并：每条 @ 单独成批，直接检验批次的串行与排队
+        ReflectionTestUtils.setField(batcher, "windowMs", 0L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        batcher.shutdown();
+        dispatcher.shutdown();
+    }
+
+    @Test
+    void sameGroupBatchesRunOneAtATimeInArrivalOrder() throws Exception {
+        Map<Long, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+        Map<Long, Queue<Integer>> order = new ConcurrentHashMap<>();
+        AtomicInteger maxPerGroup = new AtomicInteger();
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxOverall = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(6);
+        BiConsumer<Long, List<Mention>> onFlush = (groupId, mentions) -> {
+            int group = inFlight.computeIfAbsent(groupId, k -> new AtomicInteger()).incrementAndGet();
+            maxPerGroup.accumulateAndGet(group, Math::max);
+            maxOverall.accumulateAndGet(running.incrementAndGet(), Math::max);
+            sleep(30);
+            order.computeIfAbsent(groupId, k -> new ConcurrentLinkedQueue<>())
+                    .add(Integer.parseInt(mentions.get(0).getMessage()));
+            running.decrementAndGet();
+            inFlight.get(groupId).decrementAndGet();
+            done.countDown();
+        };
+
+        // 两个群各 3 条，每群 1 条处理中 + 2 条等待，不超过等待上限
+        for (int i = 0; i < 3; i++) {
+            submit(1L, i, onFlush);
+            submit(2L, i, onFlush);
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+
+        assertEquals(1, maxPerGroup.get(), "同一群的批次不应并发处理");
+        assertEquals(2, maxOverall.get(), "不同群的批次应并行处理");
+        assertEquals(List.of(0, 1, 2), new ArrayList<>(order.get(1L)));
+        assertEquals(List.of(0, 1, 2), new ArrayList<>(order.get(2L)));
+        awaitIdle();
+    }
+
+    @Test
+    void waitingQueueIsBoundedAndDropsTheOldest() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch first = new CountDownLatch(1);
+        Queue<Integer> processed = new ConcurrentLinkedQueue<>();
+        BiConsumer<Long, List<Mention>> onFlush = (groupId, mentions) -> {
+            int id = Integer.parseInt(mentions.get(0).getMessage());
+            if (id == 0) {
+                first.countDown();
+                awaitQuietly(release);
+            }
+            processed.add(id);
+        };
+
+        submit(1L, 0, onFlush);
+        assertTrue(first.await(5, TimeUnit.SECONDS));
+        // 第一批处理中，后续 5 批中只有最新的 3 批留在等待队列
+        for (int i = 1; i <= 5; i++) {
+            submit(1L, i, onFlush);
+        }
+        assertFalse(batcher.isIdle());
+        assertEquals(3, batcher.getStats().get("waiting_batches"));
+        release.countDown();
+        awaitIdle();
+
+        assertEquals(List.of(0, 3, 4, 5), new ArrayList<>(processed));
+        assertEquals(2L, batcher.getStats().get("dropped_mentions"));
+    }
+
+    @Test
+    void batchesHoldTheAtBotListenerPermit() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(3);
+        BiConsumer<Long, List<Mention>> onFlush = (groupId, mentions) -> {
+            started.countDown();
+            awaitQuietly(release);
+        };
+        for (long group = 1; group <= 3; group++) {
+            submit(group, 0, onFlush);
+        }
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        Map<String, Object> atBot = chain.getStats().get(0);
+        assertEquals(3, atBot.get("in_flight"), "处理中的批次应占用 at_bot 的许可");
+        release.countDown();
+        awaitIdle();
+        atBot = chain.getStats().get(0);
+        assertEquals(0, atBot.get("in_flight"));
+        assertEquals(3L, atBot.get("deferred"));
+    }
+
+    private void submit(long groupId, int id, BiConsumer<Long, List<Mention>> onFlush) {
+        long key = IdempotencyCache.key(messageId.incrementAndGet(), "at_bot");
+        assertTrue(batcher.submit(groupId, new Mention(10_000L + id, "群友" + id, String.valueOf(id), key), onFlush));
+    }
+
+    private void awaitIdle() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!batcher.isIdle()) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError("合并器未在 10 秒内空闲");
+            }
+            Thread.sleep(5);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 只用于提供 at_bot 名称和并发上限的监听器
+     */
+    private static final class AtBotListener implements MessageListener {
+        @Override
+        public String getName() {
+            return "at_bot";
+        }
+
+        @Override
+        public ListenerPriority getPriority() {
+            return ListenerPriority.CRITICAL;
+        }
+
+        @Override
+        public boolean handleMessage(OneBotEvent event) {
+            return false;
+        }
+    }
+}
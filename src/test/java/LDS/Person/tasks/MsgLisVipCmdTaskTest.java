@@ -0,0 +1,109 @@
+package LDS.Person.tasks;
+
+import LDS.Person.napcat.IdempotencyCache;
+import LDS.Person.service.SingleDefenseService;
+import LDS.Person.tasks.MsgLisLogic.VIPSingleDefenseLogic;
+import LDS.Person.websocket.event.OneBotEvent;
+import LDS.Person.websocket.listener.ListenerPriority;
+import LDS.Person.websocket.listener.LoadShedder;
+import LDS.Person.websocket.listener.MessageListener;
+import LDS.Person.websocket.listener.MessageListenerChain;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * 单防回复经监听链触发：被单防用户的消息由 vip_cmd 认领并回复，不再落到后续监听器
+ */
+class MsgLisVipCmdTaskTest {
+
+    private static final long GROUP_ID = 712345678L;
+    private static final long VIP_ID = 10001L;
+
+    private final SingleDefenseService defenseService = new SingleDefenseService();
+    private final VIPSingleDefenseLogic defenseLogic = mock(VIPSingleDefenseLogic.class);
+    private final AtomicInteger fallThrough = new AtomicInteger();
+    private MessageListenerChain chain;
+
+    @BeforeEach
+    void setUp() {
+        MsgLisVipCmdTask task = new MsgLisVipCmdTask();
+        ReflectionTestUtils.setField(task, "singleDefenseService", defenseService);
+        ReflectionTestUtils.setField(task, "vipSingleDefenseLogic", defenseLogic);
+        ReflectionTestUtils.setField(MsgLisVipCmdTask.class, "VIP_USER_IDS", Set.of(VIP_ID));
+        chain = new MessageListenerChain(List.of(task, new KeywordListener()), mock(LoadShedder.class));
+    }
+
+    @AfterEach
+    void tearDown() {
+        defenseService.disableDefense(GROUP_ID);
+        ReflectionTestUtils.setField(MsgLisVipCmdTask.class, "VIP_USER_IDS", Set.of());
+    }
+
+    @Test
+    void defendedUserStillGetsTheAutoReply() {
+        defenseService.enableDefense(GROUP_ID, "刷屏的人");
+        OneBotEvent event = groupMessage(20002L, 555L, "刷屏的人", "哈哈哈哈");
+
+        assertEquals(ListenerPriority.NORMAL, chain.classify(event));
+        assertEquals("vip_cmd", chain.handle(event));
+        verify(defenseLogic).replyToMessage(GROUP_ID, 555L, "不要狗叫", IdempotencyCache.key(555L, "vip_cmd"));
+        assertEquals(0, fallThrough.get(), "被单防用户的消息不应再触发后续监听器");
+    }
+
+    @Test
+    void otherUsersFallThroughWithoutReply() {
+        defenseService.enableDefense(GROUP_ID, "刷屏的人");
+        OneBotEvent event = groupMessage(20003L, 556L, "路过的人", "哈哈哈哈");
+
+        assertEquals(ListenerPriority.BEST_EFFORT, chain.classify(event));
+        assertNull(chain.handle(event));
+        verify(defenseLogic, never()).replyToMessage(anyLong(), anyLong(), anyString(), anyLong());
+        assertEquals(1, fallThrough.get());
+    }
+
+    @Test
+    void vipCommandsStayCritical() {
+        OneBotEvent event = groupMessage(VIP_ID, 557L, "管理员", "指令单防->刷屏的人");
+
+        assertEquals(ListenerPriority.CRITICAL, chain.classify(event));
+        assertEquals("vip_cmd", chain.handle(event));
+        verify(defenseLogic).extractDefenseNickname("指令单防->刷屏的人");
+        verify(defenseLogic, never()).replyToMessage(anyLong(), anyLong(), anyString(), anyLong());
+    }
+
+    private static OneBotEvent groupMessage(long userId, long messageId, String card, String text) {
+        return OneBotEvent.parse("{\"post_type\":\"message\",\"message_type\":\"group\",\"group_id\":" + GROUP_ID
+                + ",\"user_id\":" + userId + ",\"message_id\":" + messageId + ",\"raw_message\":\"" + text
+                + "\",\"sender\":{\"nickname\":\"n\",\"card\":\"" + card + "\"}}");
+    }
+
+    /**
+     * 记录落到链路后段的消息
+     */
+    private final class KeywordListener implements MessageListener {
+        @Override
+        public String getName() {
+            return "keyword";
+        }
+
+        @Override
+        public boolean handleMessage(OneBotEvent event) {
+            fallThrough.incrementAndGet();
+            return false;
+        }
+    }
+}
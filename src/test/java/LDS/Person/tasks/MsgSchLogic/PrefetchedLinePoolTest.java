@@ -0,0 +1,178 @@
+package LDS.Person.tasks.MsgSchLogic;
+
+import LDS.Person.tasks.MsgLisLogic.AtMentionBatcher;
+import LDS.Person.websocket.dispatch.EventDispatcher;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * PrefetchedLinePool 的补充与取用：生成器由桩替代，补充由测试直接触发，不等待后台定时
+ * - 池为空时 take 返回 null
+ * - 过期文本在 take 和补充时都被丢弃
+ * - 同时进行的生成不超过 max.concurrency（默认 1）
+ * - 事件分发有积压或 @机器人 批次未处理完时跳过补充
+ */
+class PrefetchedLinePoolTest {
+
+    private final EventDispatcher eventDispatcher = mock(EventDispatcher.class);
+    private final AtMentionBatcher atMentionBatcher = mock(AtMentionBatcher.class);
+    private final AtomicInteger generated = new AtomicInteger();
+    private PrefetchedLinePool pool;
+
+    @BeforeEach
+    void setUp() {
+        when(eventDispatcher.getQueueDepth()).thenReturn(0);
+        when(atMentionBatcher.isIdle()).thenReturn(true);
+        pool = new PrefetchedLinePool(eventDispatcher, atMentionBatcher);
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.shutdown();
+    }
+
+    @Test
+    void emptyPoolReturnsNull() {
+        pool.register("random_chat", () -> "line-" + generated.incrementAndGet());
+
+        assertNull(pool.take("random_chat"));
+        assertNull(pool.take("unknown"));
+        assertEquals(1L, pool.getStats().get("misses"));
+        assertEquals(0, generated.get(), "take 不会现场生成");
+    }
+
+    @Test
+    void refillFillsThePoolAndTakeReturnsTheOldestFirst() throws Exception {
+        pool.register("random_chat", () -> "line-" + generated.incrementAndGet());
+
+        fill("random_chat", 3);
+        refill();
+        assertEquals(3, available("random_chat"), "池已满时不再生成");
+        assertEquals(3, generated.get());
+
+        assertEquals("line-1", pool.take("random_chat"));
+        assertEquals("line-2", pool.take("random_chat"));
+        assertEquals(1, available("random_chat"));
+        assertEquals(2L, pool.getStats().get("hits"));
+    }
+
+    @Test
+    void expiredLinesAreDroppedByTakeAndRefill() throws Exception {
+        ReflectionTestUtils.setField(pool, "ttlMillis", 50L);
+        pool.register("random_chat", () -> "line-" + generated.incrementAndGet());
+
+        // 补充时丢弃过期文本：系统繁忙不补充，只剩清理
+        fill("random_chat", 3);
+        Thread.sleep(80);
+        when(eventDispatcher.getQueueDepth()).thenReturn(5);
+        refill();
+        assertEquals(0, available("random_chat"));
+        assertEquals(3L, pool.getStats().get("expired"));
+
+        // take 时跳过过期文本，不把它交给调用方
+        when(eventDispatcher.getQueueDepth()).thenReturn(0);
+        fill("random_chat", 3);
+        Thread.sleep(80);
+        assertNull(pool.take("random_chat"));
+        assertEquals(6L, pool.getStats().get("expired"));
+        assertEquals(0L, pool.getStats().get("hits"));
+    }
+
+    @Test
+    void concurrentGenerationsAreCapped() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        AtomicInteger calls = new AtomicInteger();
+        for (String type : new String[] {"random_chat", "greeting"}) {
+            pool.register(type, () -> {
+                calls.incrementAndGet();
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    release.await();
+                } finally {
+                    running.decrementAndGet();
+                }
+                return "line";
+            });
+        }
+
+        for (int i = 0; i < 5; i++) {
+            refill();
+        }
+        await(() -> calls.get() == 1);
+        Thread.sleep(100);
+        assertEquals(1, calls.get(), "生成请求中时不应再提交新的生成");
+
+        release.countDown();
+        for (int round = 0; round < 20 && available("random_chat") + available("greeting") < 6; round++) {
+            refill();
+            Thread.sleep(20);
+        }
+        assertEquals(3, available("random_chat"));
+        assertEquals(3, available("greeting"));
+        assertEquals(1, maxRunning.get(), "同时进行的生成不应超过 max.concurrency");
+    }
+
+    @Test
+    void refillIsSkippedWhileTheBotIsBusy() throws Exception {
+        pool.register("random_chat", () -> "line-" + generated.incrementAndGet());
+
+        when(eventDispatcher.getQueueDepth()).thenReturn(1);
+        refill();
+        when(eventDispatcher.getQueueDepth()).thenReturn(0);
+        when(atMentionBatcher.isIdle()).thenReturn(false);
+        refill();
+        Thread.sleep(50);
+        assertEquals(0, generated.get());
+        assertEquals(2L, pool.getStats().get("skipped_busy"));
+
+        when(atMentionBatcher.isIdle()).thenReturn(true);
+        fill("random_chat", 3);
+        assertEquals(2L, pool.getStats().get("skipped_busy"));
+    }
+
+    private void refill() {
+        ReflectionTestUtils.invokeMethod(pool, "refill");
+    }
+
+    /**
+     * 反复触发补充，直到该类型达到 expected 条
+     */
+    private void fill(String type, int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (available(type) < expected) {
+            assertTrue(System.nanoTime() < deadline, "5 秒内未补充到 " + expected + " 条");
+            refill();
+            Thread.sleep(5);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private int available(String type) {
+        Map<String, Object> sizes = (Map<String, Object>) pool.getStats().get("available");
+        return (Integer) sizes.get(type);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "5 秒内条件未满足");
+            Thread.sleep(5);
+        }
+    }
+}
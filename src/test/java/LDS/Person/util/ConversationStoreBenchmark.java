@@ -0,0 +1,95 @@
+package LDS.Person.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DeepSeek 多轮对话请求体的构建成本对比（历史已满，不含网络）：
+ * - arrayNodeHistory   原方式，新建 ArrayNode 逐条复制 system 提示与历史节点，放入 payload 后整体 writeValueAsBytes
+ * - ringBuffer         ConversationStore 拼接每条消息预序列化的字节，再由 DSchatNcatQQ.requestBody 拼出请求体
+ *
+ * size 参数为上下文中的历史条数；每条消息约 40 字，user / assistant 交替
+ * 运行：mvn test-compile 后以测试 classpath 执行本类的 main 方法，加 -prof gc 可得到每次分配字节数
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConversationStoreBenchmark {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final String KEY = "shared_context";
+    private static final String MODEL = "deepseek-chat";
+
+    @Param({"15", "100", "1000"})
+    public int size;
+
+    private ArrayNode history;
+    private ObjectNode systemNode;
+    private ConversationStore store;
+    private ConversationStore.Message systemMessage;
+
+    @Setup
+    public void setUp() {
+        history = mapper.createArrayNode();
+        store = new ConversationStore(size);
+        for (int i = 0; i < size; i++) {
+            String role = i % 2 == 0 ? "user" : "assistant";
+            String content = i % 2 == 0
+                    ? "群友" + i + "：晚上八点的活动还需要提前报名吗？我刚看到群公告"
+                    : "需要的哦，报名表在群公告的\"活动\"一栏，截止到今晚七点半～";
+            ObjectNode node = mapper.createObjectNode();
+            node.put("role", role);
+            node.put("content", content);
+            history.add(node);
+            store.append(KEY, role, content);
+        }
+        systemNode = mapper.createObjectNode();
+        systemNode.put("role", "system");
+        systemNode.put("content", "你的设定是胆小但又贴心的学妹兼助手。");
+        systemMessage = ConversationStore.Message.of("system", "你的设定是胆小但又贴心的学妹兼助手。");
+    }
+
+    @Benchmark
+    public byte[] arrayNodeHistory() throws Exception {
+        ArrayNode messages = mapper.createArrayNode();
+        messages.add(systemNode);
+        for (int i = 0; i < history.size(); i++) {
+            messages.add(history.get(i));
+        }
+        ObjectNode payload = mapper.createObjectNode();
+        payload.put("model", MODEL);
+        payload.set("messages", messages);
+        payload.put("stream", false);
+        payload.put("temperature", 1.4);
+        return mapper.writeValueAsBytes(payload);
+    }
+
+    @Benchmark
+    public byte[] ringBuffer() {
+        return DSchatNcatQQ.requestBody(MODEL, store.toMessagesJson(KEY, systemMessage), false);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ConversationStoreBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,143 @@
+package LDS.Person.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 多个 @机器人 请求并发读写同一个共享上下文：写入不丢失，读到的快照与 messages JSON 始终完整有序
+ */
+class ConversationStoreConcurrencyTest {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private static final String KEY = "shared_context";
+    private static final int WRITERS = 8;
+    private static final int APPENDS_PER_WRITER = 20_000;
+
+    @Test
+    void concurrentAppendsAreNeverLost() throws Exception {
+        // 容量足够容纳全部写入，最终条数必须与写入次数一致
+        ConversationStore store = new ConversationStore(WRITERS * APPENDS_PER_WRITER);
+        runWriters(store, null);
+
+        assertEquals(WRITERS * APPENDS_PER_WRITER, store.size(KEY));
+        int[] next = new int[WRITERS];
+        for (ConversationStore.Message message : store.snapshot(KEY)) {
+            int[] id = parse(message.getContent());
+            assertEquals(next[id[0]]++, id[1], "同一写入线程的消息应按写入顺序排列");
+        }
+        for (int count : next) {
+            assertEquals(APPENDS_PER_WRITER, count);
+        }
+    }
+
+    @Test
+    void readersSeeConsistentSnapshotsWhileTheRingWraps() throws Exception {
+        ConversationStore store = new ConversationStore(15);
+        Queue<String> failures = new ConcurrentLinkedQueue<>();
+        AtomicBoolean writing = new AtomicBoolean(true);
+        Thread reader = new Thread(() -> {
+            while (writing.get()) {
+                checkSnapshot(store.snapshot(KEY), failures);
+                checkMessagesJson(store.toMessagesJson(KEY, ConversationStore.Message.of("system", "设定")), failures);
+                checkMessagesJson(store.window(KEY, 400, 60).getJson(), failures);
+            }
+        }, "store-reader");
+        reader.start();
+        runWriters(store, failures);
+        writing.set(false);
+        reader.join(TimeUnit.SECONDS.toMillis(30));
+
+        assertTrue(failures.isEmpty(), () -> "读到不一致的上下文: " + failures.peek());
+        assertEquals(15, store.size(KEY));
+    }
+
+    private static void runWriters(ConversationStore store, Queue<String> failures) throws Exception {
+        ExecutorService writers = Executors.newFixedThreadPool(WRITERS);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int w = 0; w < WRITERS; w++) {
+                int writer = w;
+                futures.add(writers.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < APPENDS_PER_WRITER; i++) {
+                        store.append(KEY, i % 2 == 0 ? "user" : "assistant", writer + ":" + i);
+                        if (failures != null && i % 500 == 0) {
+                            checkSnapshot(store.snapshot(KEY), failures);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            writers.shutdownNow();
+        }
+    }
+
+    /**
+     * 快照中同一写入线程的消息必须严格递增，且条数不超过容量
+     */
+    private static void checkSnapshot(List<ConversationStore.Message> snapshot, Queue<String> failures) {
+        if (snapshot.size() > 15) {
+            failures.add("快照超过容量: " + snapshot.size());
+        }
+        int[] last = new int[WRITERS];
+        Arrays.fill(last, -1);
+        for (ConversationStore.Message message : snapshot) {
+            if (message == null) {
+                failures.add("快照中存在空槽位");
+                return;
+            }
+            int[] id = parse(message.getContent());
+            if (id[1] <= last[id[0]]) {
+                failures.add("快照顺序错乱: " + message.getContent());
+                return;
+            }
+            last[id[0]] = id[1];
+        }
+    }
+
+    private static void checkMessagesJson(byte[] json, Queue<String> failures) {
+        try {
+            JsonNode messages = mapper.readTree(json);
+            if (!messages.isArray()) {
+                failures.add("messages 不是数组");
+                return;
+            }
+            for (JsonNode message : messages) {
+                if (!message.hasNonNull("role") || !message.hasNonNull("content")) {
+                    failures.add("消息缺少 role 或 content: " + message);
+                    return;
+                }
+            }
+        } catch (Exception e) {
+            failures.add("messages JSON 无法解析: " + e.getMessage());
+        }
+    }
+
+    private static int[] parse(String content) {
+        int colon = content.indexOf(':');
+        return new int[] {Integer.parseInt(content.substring(0, colon)), Integer.parseInt(content.substring(colon + 1))};
+    }
+}
@@ -0,0 +1,89 @@
+package LDS.Person.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 按 token 预算取窗口：两次裁剪之间请求前缀只追加不改动，环形缓冲区回绕也不会让前缀逐轮滑动
+ */
+class ConversationStoreWindowTest {
+
+    private static final String KEY = "shared_context";
+    private static final ConversationStore.Message SYSTEM = ConversationStore.Message.of("system", "你是群聊助手。");
+
+    @Test
+    void prefixStaysStableWhileTheRingWraps() {
+        // 预算足够大、容量很小：只有环形缓冲区覆盖起点会导致裁剪
+        ConversationStore store = new ConversationStore(15);
+        Result result = converse(store, 200, 100_000);
+
+        assertEquals(0, result.unstable, "未报告裁剪的窗口前缀发生了变化");
+        // 每次裁剪最多保留 9 条，之后至少能再追加 3 轮才会覆盖起点
+        assertTrue(result.trims <= 200 / 3 + 1, "裁剪过于频繁: " + result.trims);
+    }
+
+    @Test
+    void budgetSizedRingOnlyTrimsOnBudget() {
+        int budget = 400;
+        ConversationStore store = new ConversationStore(ConversationStore.capacityFor(budget, 15));
+        Result result = converse(store, 200, budget);
+
+        assertEquals(0, result.unstable, "未报告裁剪的窗口前缀发生了变化");
+        assertTrue(result.trims > 0, "应触发预算裁剪");
+        assertTrue(result.maxTokens <= budget, "窗口超出预算: " + result.maxTokens);
+        // 每轮约 30 token，裁剪到 60% 后要再追加约 160 token 才会再次超出预算
+        assertTrue(result.trims <= 200 / 4, "裁剪过于频繁: " + result.trims);
+    }
+
+    @Test
+    void capacityForCoversTheWidestWindow() {
+        assertEquals(1002, ConversationStore.capacityFor(4000, 200));
+        assertEquals(200, ConversationStore.capacityFor(100, 200));
+    }
+
+    /**
+     * 模拟多轮对话：每轮追加 user、取窗口、追加 assistant，统计前缀变化与裁剪次数
+     */
+    private static Result converse(ConversationStore store, int turns, int budget) {
+        Result result = new Result();
+        byte[] previous = null;
+        for (int turn = 0; turn < turns; turn++) {
+            store.append(KEY, "user", "群友" + turn + "：今晚的活动几点开始？");
+            ConversationStore.Window window = store.window(KEY, budget, 60, SYSTEM);
+            if (window.isTrimmed()) {
+                result.trims++;
+            } else if (previous != null && !appendsTo(previous, window.getJson())) {
+                result.unstable++;
+                System.out.printf("[window] 第 %d 轮前缀变化: %s%n", turn,
+                        new String(window.getJson(), StandardCharsets.UTF_8));
+            }
+            result.maxTokens = Math.max(result.maxTokens, window.getEstimatedTokens());
+            previous = window.getJson();
+            store.append(KEY, "assistant", "晚上八点开始，记得提前进语音频道～");
+        }
+        System.out.printf("[window] capacity=%d, budget=%d, turns=%d, trims=%d, max tokens=%d%n",
+                store.getCapacity(), budget, turns, result.trims, result.maxTokens);
+        return result;
+    }
+
+    /**
+     * current 是否由 previous 在末尾追加消息得到（去掉 previous 的结尾 ']' 后为 current 的前缀）
+     */
+    private static boolean appendsTo(byte[] previous, byte[] current) {
+        int prefix = previous.length - 1;
+        return current.length > prefix
+                && Arrays.equals(previous, 0, prefix, current, 0, prefix)
+                && current[prefix] == ',';
+    }
+
+    private static final class Result {
+        int trims;
+        int unstable;
+        int maxTokens;
+    }
+}
@@ -0,0 +1,234 @@
+package LDS.Person.websocket.dispatch;
+
+import LDS.Person.websocket.listener.ListenerPriority;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 刷屏场景下的过载淘汰：使用默认配置（队列上限 1000，4 个工作线程）
+ */
+class EventDispatcherFloodTest {
+
+    // VIP / @机器人 事件从入队到开始执行的延迟上限
+    private static final long VIP_LATENCY_BUDGET_MS = 500;
+
+    private EventDispatcher dispatcher;
+
+    @BeforeEach
+    void setUp() {
+        dispatcher = new EventDispatcher();
+    }
+
+    @AfterEach
+    void tearDown() {
+        dispatcher.shutdown();
+    }
+
+    @Test
+    void floodInSameGroupNeverDropsVipAndKeepsLatencyBudget() throws Exception {
+        long floodedGroup = 712345678L;
+        int floodEvents = 30_000;
+        int vipEvery = 300;
+        Queue<Long> vipLatencies = new ConcurrentLinkedQueue<>();
+        Random random = new Random(42);
+
+        for (int i = 1; i <= floodEvents; i++) {
+            // 七成刷屏集中在同一个群，其余分散在其他群
+            long lane = random.nextInt(10) < 7 ? floodedGroup : 1000 + random.nextInt(20);
+            dispatcher.dispatch(lane, ListenerPriority.BEST_EFFORT, () -> LockSupport.parkNanos(200_000));
+            if (i % vipEvery == 0) {
+                long enqueuedAt = System.nanoTime();
+                dispatcher.dispatch(floodedGroup, ListenerPriority.CRITICAL,
+                        () -> vipLatencies.add(System.nanoTime() - enqueuedAt));
+            }
+            if (i % 50 == 0) {
+                // 约每秒 25000 条的刷屏速率，高于 4 个工作线程的处理能力
+                LockSupport.parkNanos(2_000_000);
+            }
+        }
+        awaitDrained();
+
+        int vipCount = floodEvents / vipEvery;
+        assertEquals(vipCount, vipLatencies.size(), "VIP 事件不应被淘汰");
+
+        List<Long> sorted = new ArrayList<>(vipLatencies);
+        Collections.sort(sorted);
+        long maxMs = TimeUnit.NANOSECONDS.toMillis(sorted.get(sorted.size() - 1));
+        long p99Ms = TimeUnit.NANOSECONDS.toMillis(sorted.get((int) Math.ceil(sorted.size() * 0.99) - 1));
+        Map<String, Object> stats = dispatcher.getStats();
+        System.out.printf("[flood] vip p99=%d ms, max=%d ms, rejected=%s%n", p99Ms, maxMs, stats.get("rejected_by_priority"));
+
+        assertTrue(maxMs <= VIP_LATENCY_BUDGET_MS, "VIP 最大延迟 " + maxMs + " ms 超出预算");
+        @SuppressWarnings("unchecked")
+        Map<String, Object> rejected = (Map<String, Object>) stats.get("rejected_by_priority");
+        assertEquals(0L, rejected.get("CRITICAL"));
+        assertTrue((Long) rejected.get("BEST_EFFORT") > 0, "刷屏应触发淘汰");
+    }
+
+    @Test
+    void overflowEvictsOldestLowestPriorityFirst() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(4);
+        // 占满 4 个工作线程
+        for (int i = 0; i < 4; i++) {
+            dispatcher.dispatch(-1 - i, ListenerPriority.CRITICAL, () -> {
+                started.countDown();
+                awaitQuietly(release);
+            });
+        }
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        Queue<String> ran = new ConcurrentLinkedQueue<>();
+        long group = 1L;
+        dispatcher.dispatch(group, ListenerPriority.NORMAL, () -> ran.add("normal"));
+        dispatcher.dispatch(group, ListenerPriority.BEST_EFFORT, () -> ran.add("best-1"));
+        dispatcher.dispatch(group, ListenerPriority.BEST_EFFORT, () -> ran.add("best-2"));
+        while (dispatcher.getQueueDepth() < 1000) {
+            dispatcher.dispatch(group, ListenerPriority.BEST_EFFORT, () -> { });
+        }
+
+        // 满载时：CRITICAL 淘汰最旧的 BEST_EFFORT，BEST_EFFORT 也只淘汰 BEST_EFFORT
+        dispatcher.dispatch(group, ListenerPriority.CRITICAL, () -> ran.add("vip"));
+        dispatcher.dispatch(group, ListenerPriority.BEST_EFFORT, () -> ran.add("best-late"));
+        assertEquals(1000, dispatcher.getQueueDepth());
+
+        release.countDown();
+        awaitDrained();
+
+        assertFalse(ran.contains("best-1"));
+        assertFalse(ran.contains("best-2"));
+        assertEquals(List.of("normal", "vip", "best-late"), new ArrayList<>(ran));
+    }
+
+    @Test
+    void criticalIsAdmittedOverCapacityWhenNothingIsEvictable() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(4);
+        for (int i = 0; i < 4; i++) {
+            dispatcher.dispatch(-1 - i, ListenerPriority.CRITICAL, () -> {
+                started.countDown();
+                awaitQuietly(release);
+            });
+        }
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        Queue<Integer> ran = new ConcurrentLinkedQueue<>();
+        for (int i = 0; i < 1005; i++) {
+            int id = i;
+            dispatcher.dispatch(1L, ListenerPriority.CRITICAL, () -> ran.add(id));
+        }
+        dispatcher.dispatch(1L, ListenerPriority.NORMAL, () -> ran.add(-1));
+
+        release.countDown();
+        awaitDrained();
+
+        assertEquals(1005, ran.size());
+        assertFalse(ran.contains(-1), "排队中只有 CRITICAL 时应丢弃新的低优先级事件");
+        assertEquals(5L, dispatcher.getStats().get("over_capacity"));
+    }
+
+    @Test
+    void overflowEvictsTheGlobalOldestAcrossManyLanes() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(4);
+        for (int i = 0; i < 4; i++) {
+            dispatcher.dispatch(-1 - i, ListenerPriority.CRITICAL, () -> {
+                started.countDown();
+                awaitQuietly(release);
+            });
+        }
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        // 1000 个事件轮流分布在 500 个群，再到达 10 个事件时应淘汰全局最早的 10 个
+        Set<Integer> ran = ConcurrentHashMap.newKeySet();
+        for (int i = 0; i < 1010; i++) {
+            int id = i;
+            dispatcher.dispatch(i % 500, ListenerPriority.BEST_EFFORT, () -> ran.add(id));
+        }
+        assertEquals(1000, dispatcher.getQueueDepth());
+
+        release.countDown();
+        awaitDrained();
+
+        assertEquals(1000, ran.size());
+        for (int id = 0; id < 10; id++) {
+            assertFalse(ran.contains(id), "事件 " + id + " 应被淘汰");
+        }
+    }
+
+    @Test
+    void blockPolicyKeepsGroupOrderAndDropsNothing() throws Exception {
+        EventDispatcher blocking = new EventDispatcher(8, 2, 16, EventDispatcher.RejectPolicy.BLOCK,
+                EventDispatcher.ExecutorMode.PLATFORM);
+        Map<Long, Queue<Integer>> order = new ConcurrentHashMap<>();
+        int perGroup = 500;
+        try {
+            for (int i = 0; i < perGroup; i++) {
+                for (long group = 1; group <= 3; group++) {
+                    int id = i;
+                    long key = group;
+                    blocking.dispatch(group, ListenerPriority.BEST_EFFORT, () -> {
+                        LockSupport.parkNanos(20_000);
+                        order.computeIfAbsent(key, k -> new ConcurrentLinkedQueue<>()).add(id);
+                    });
+                }
+            }
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+            while (blocking.getQueueDepth() > 0 || (Integer) blocking.getStats().get("active_workers") > 0) {
+                assertTrue(System.nanoTime() < deadline, "分发器未在 30 秒内排空");
+                Thread.sleep(10);
+            }
+            Map<String, Object> stats = blocking.getStats();
+            assertEquals(0L, stats.get("rejected"));
+            assertTrue((Long) stats.get("blocked") > 0, "队列上限 8 时读线程应被阻塞");
+        } finally {
+            blocking.shutdown();
+        }
+
+        for (long group = 1; group <= 3; group++) {
+            List<Integer> ids = new ArrayList<>(order.get(group));
+            assertEquals(perGroup, ids.size());
+            for (int i = 0; i < perGroup; i++) {
+                assertEquals(i, ids.get(i), "群 " + group + " 的事件顺序被打乱");
+            }
+        }
+    }
+
+    private void awaitDrained() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (System.nanoTime() < deadline) {
+            Map<String, Object> stats = dispatcher.getStats();
+            if (dispatcher.getQueueDepth() == 0 && (Integer) stats.get("active_workers") == 0) {
+                return;
+            }
+            Thread.sleep(10);
+        }
+        throw new AssertionError("分发器未在 30 秒内排空");
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
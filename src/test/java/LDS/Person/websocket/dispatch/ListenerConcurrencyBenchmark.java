@@ -0,0 +1,161 @@
+package LDS.Person.websocket.dispatch;
+
+import LDS.Person.websocket.event.OneBotEvent;
+import LDS.Person.websocket.listener.ListenerPriority;
+import LDS.Person.websocket.listener.LoadShedder;
+import LDS.Person.websocket.listener.MessageListener;
+import LDS.Person.websocket.listener.MessageListenerChain;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 监听链在两种执行模式下的吞吐与资源占用：
+ * 每次操作向 100 个群通道突发投递 400 条事件，其中四分之一命中一个模拟 DeepSeek 的慢速监听器
+ * （阻塞 latencyMs，受 listener.max.concurrency 上限保护），其余只经过廉价的监听器，等待全部处理完成
+ *
+ * 指标：每批耗时（ms/op），加 -prof gc 得到每批分配字节数；每个试验结束时打印峰值线程数
+ * VIRTUAL 需要 JDK 21+，在 JDK 17 上运行时会回退到 PLATFORM，两组结果相同
+ * 运行：mvn test-compile 后以测试 classpath 执行本类的 main 方法
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class ListenerConcurrencyBenchmark {
+
+    private static final int EVENTS = 400;
+    private static final int LANES = 100;
+    private static final String SLOW_MARK = "[slow]";
+
+    @Param({"PLATFORM", "VIRTUAL"})
+    public String mode;
+
+    @Param({"20"})
+    public int latencyMs;
+
+    private EventDispatcher dispatcher;
+    private MessageListenerChain chain;
+    private String[] frames;
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dispatcher = new EventDispatcher(10_000, 4, 16, EventDispatcher.RejectPolicy.DISCARD_NEW,
+                EventDispatcher.ExecutorMode.valueOf(mode));
+        chain = new MessageListenerChain(List.of(new SlowListener(latencyMs), new CheapListener()),
+                new LoadShedder(dispatcher));
+        frames = new String[EVENTS];
+        for (int i = 0; i < EVENTS; i++) {
+            String text = i % 4 == 0 ? SLOW_MARK + " 帮我查一下" : "普通聊天消息 " + i;
+            frames[i] = "{\"post_type\":\"message\",\"message_type\":\"group\",\"group_id\":" + (1000 + i % LANES)
+                    + ",\"user_id\":" + (20000 + i) + ",\"message_id\":" + i
+                    + ",\"raw_message\":\"" + text + "\",\"sender\":{\"nickname\":\"u" + i + "\"}}";
+        }
+        threads.resetPeakThreadCount();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.out.printf("%n[%s -> %s] 峰值线程数: %d%n", mode, dispatcher.getStats().get("executor_mode"),
+                threads.getPeakThreadCount());
+        dispatcher.shutdown();
+    }
+
+    @Benchmark
+    public void burst() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(EVENTS);
+        for (String frame : frames) {
+            OneBotEvent event = OneBotEvent.parse(frame);
+            dispatcher.dispatch(event.getGroupId(), chain.classify(event), () -> {
+                try {
+                    chain.handle(event);
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+    }
+
+    /**
+     * 模拟阻塞式下游调用（DeepSeek / NapCat HTTP）的监听器
+     */
+    private static final class SlowListener implements MessageListener {
+        private final long latencyMs;
+
+        SlowListener(long latencyMs) {
+            this.latencyMs = latencyMs;
+        }
+
+        @Override
+        public String getName() {
+            return "slow_downstream";
+        }
+
+        @Override
+        public ListenerPriority getPriority() {
+            return ListenerPriority.CRITICAL;
+        }
+
+        @Override
+        public boolean matches(OneBotEvent event) {
+            return event.getRawMessage().startsWith(SLOW_MARK);
+        }
+
+        @Override
+        public boolean handleMessage(OneBotEvent event) {
+            try {
+                Thread.sleep(latencyMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return true;
+        }
+    }
+
+    /**
+     * 只读取事件字段、不认领消息的监听器
+     */
+    private static final class CheapListener implements MessageListener {
+        @Override
+        public String getName() {
+            return "cheap";
+        }
+
+        @Override
+        public ListenerPriority getPriority() {
+            return ListenerPriority.NORMAL;
+        }
+
+        @Override
+        public boolean handleMessage(OneBotEvent event) {
+            return event.getRawMessage().contains("关键词");
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ListenerConcurrencyBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,90 @@
+package LDS.Person.websocket.event;
+
+import com.alibaba.fastjson2.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 帧分类成本对比：
+ * - fullParse  旧路径，每帧 JSONObject.parseObject 后按 post_type / meta_event_type / echo 判断
+ * - classify   FrameClassifier 流式扫描顶层字段
+ *
+ * frames 参数：heartbeat 为心跳帧，response 为 API 响应帧，event 为群消息帧（分类器在 post_type 处提前返回）
+ * 运行：mvn test-compile 后以测试 classpath 执行本类的 main 方法
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameClassifierBenchmark {
+
+    @Param({"heartbeat", "response", "event"})
+    public String frames;
+
+    private String[] samples;
+    private int cursor;
+
+    @Setup
+    public void setUp() {
+        List<String> control = RecordedFrames.controlFrames();
+        switch (frames) {
+            case "heartbeat":
+                samples = new String[]{control.get(0)};
+                break;
+            case "response":
+                samples = control.subList(1, control.size()).toArray(new String[0]);
+                break;
+            default:
+                samples = RecordedFrames.groupMessages().toArray(new String[0]);
+                break;
+        }
+    }
+
+    private String nextFrame() {
+        String frame = samples[cursor];
+        cursor = cursor + 1 == samples.length ? 0 : cursor + 1;
+        return frame;
+    }
+
+    @Benchmark
+    public FrameClassifier.FrameType fullParse() {
+        JSONObject json = JSONObject.parseObject(nextFrame());
+        if ("meta_event".equals(json.getString("post_type"))) {
+            if ("heartbeat".equals(json.getString("meta_event_type"))) {
+                return FrameClassifier.FrameType.HEARTBEAT;
+            }
+            return FrameClassifier.FrameType.EVENT;
+        }
+        if (json.getString("post_type") == null && json.containsKey("status")
+                && json.containsKey("retcode") && json.containsKey("echo")) {
+            return FrameClassifier.FrameType.ACTION_RESPONSE;
+        }
+        return FrameClassifier.FrameType.EVENT;
+    }
+
+    @Benchmark
+    public FrameClassifier.FrameType classify() {
+        return FrameClassifier.classify(nextFrame());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(FrameClassifierBenchmark.class.getSimpleName()).build()).run();
+    }
+}
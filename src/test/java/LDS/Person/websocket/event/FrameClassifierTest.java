@@ -0,0 +1,35 @@
+package LDS.Person.websocket.event;
+
+import LDS.Person.websocket.event.FrameClassifier.FrameType;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FrameClassifierTest {
+
+    @Test
+    void recordedControlFramesAreClassified() {
+        List<String> frames = RecordedFrames.controlFrames();
+        assertEquals(FrameType.HEARTBEAT, FrameClassifier.classify(frames.get(0)));
+        for (String frame : frames.subList(1, frames.size())) {
+            assertEquals(FrameType.ACTION_RESPONSE, FrameClassifier.classify(frame));
+        }
+    }
+
+    @Test
+    void recordedGroupMessagesAreEvents() {
+        for (String frame : RecordedFrames.groupMessages()) {
+            assertEquals(FrameType.EVENT, FrameClassifier.classify(frame));
+        }
+    }
+
+    @Test
+    void malformedFramesFallBackToEvent() {
+        assertEquals(FrameType.EVENT, FrameClassifier.classify(null));
+        assertEquals(FrameType.EVENT, FrameClassifier.classify(""));
+        assertEquals(FrameType.EVENT, FrameClassifier.classify("[]"));
+        assertEquals(FrameType.EVENT, FrameClassifier.classify("{\"status\":\"ok\",\"retcode\":"));
+    }
+}
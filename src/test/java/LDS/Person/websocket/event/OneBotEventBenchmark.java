@@ -0,0 +1,90 @@
+package LDS.Person.websocket.event;
+
+import com.alibaba.fastjson2.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 每帧解析成本对比：
+ * - jsonObjectLookups  旧路径，JSONObject.parseObject 构建完整 DOM，每个监听任务各自按 key 查找字段
+ * - oneBotEvent        OneBotEvent.parse 单次流式扫描，监听任务读取字段
+ *
+ * 运行：mvn test-compile 后以测试 classpath 执行本类的 main 方法，
+ * 加 -prof gc 可同时得到每帧分配字节数（gc.alloc.rate.norm）
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OneBotEventBenchmark {
+
+    // 每帧经过的监听任务数（与 MessageListenerChain 中注册的监听任务数量同一量级）
+    @Param({"1", "8"})
+    public int listeners;
+
+    private String[] frames;
+    private int cursor;
+
+    @Setup
+    public void setUp() {
+        List<String> recorded = RecordedFrames.groupMessages();
+        frames = recorded.toArray(new String[0]);
+    }
+
+    private String nextFrame() {
+        String frame = frames[cursor];
+        cursor = cursor + 1 == frames.length ? 0 : cursor + 1;
+        return frame;
+    }
+
+    @Benchmark
+    public void jsonObjectLookups(Blackhole bh) {
+        JSONObject json = JSONObject.parseObject(nextFrame());
+        for (int i = 0; i < listeners; i++) {
+            bh.consume(json.getString("post_type"));
+            bh.consume(json.getString("message_type"));
+            bh.consume(json.getLong("group_id"));
+            bh.consume(json.getLong("user_id"));
+            bh.consume(json.getString("raw_message"));
+            JSONObject sender = json.getJSONObject("sender");
+            bh.consume(sender != null ? sender.getString("card") : null);
+            bh.consume(sender != null ? sender.getString("nickname") : null);
+        }
+    }
+
+    @Benchmark
+    public void oneBotEvent(Blackhole bh) {
+        OneBotEvent event = OneBotEvent.parse(nextFrame());
+        for (int i = 0; i < listeners; i++) {
+            bh.consume(event.getPostType());
+            bh.consume(event.getMessageType());
+            bh.consume(event.getGroupId());
+            bh.consume(event.getUserId());
+            bh.consume(event.getRawMessage());
+            bh.consume(event.getSender().getCard());
+            bh.consume(event.getSender().getNickname());
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(OneBotEventBenchmark.class.getSimpleName()).build()).run();
+    }
+}
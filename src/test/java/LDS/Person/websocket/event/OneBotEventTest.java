@@ -0,0 +1,105 @@
+package LDS.Person.websocket.event;
+
+import com.alibaba.fastjson2.JSONException;
+import com.alibaba.fastjson2.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OneBotEventTest {
+
+    @Test
+    void parseMatchesFullDomForRecordedFrames() {
+        List<String> frames = RecordedFrames.groupMessages();
+        for (String frame : frames) {
+            JSONObject json = JSONObject.parseObject(frame);
+            JSONObject sender = json.getJSONObject("sender");
+            OneBotEvent event = OneBotEvent.parse(frame);
+
+            assertEquals(json.getString("post_type"), event.getPostType());
+            assertEquals(json.getString("message_type"), event.getMessageType());
+            assertEquals(json.getLongValue("group_id"), event.getGroupId());
+            assertEquals(json.getLongValue("user_id"), event.getUserId());
+            assertEquals(json.getLongValue("message_id"), event.getMessageId());
+            assertEquals(json.getString("raw_message"), event.getRawMessage());
+            assertEquals(json.getString("group_name"), event.getGroupName());
+            assertEquals(json.getString("sub_type"), event.getSubType());
+            assertEquals(sender.getString("nickname"), event.getSender().getNickname());
+            assertEquals(sender.getString("card"), event.getSender().getCard());
+            assertEquals(sender.getString("role"), event.getSender().getRole());
+            assertTrue(event.isGroupMessage());
+            assertSame(frame, event.getFrame());
+        }
+    }
+
+    @Test
+    void numericStringIdsAreParsed() {
+        OneBotEvent event = OneBotEvent.parse("{\"post_type\":\"message\",\"message_type\":\"group\","
+                + "\"group_id\":\"712345678\",\"user_id\":\" 42 \",\"message_id\":\"abc\"}");
+        assertEquals(712345678L, event.getGroupId());
+        assertEquals(42L, event.getUserId());
+        assertEquals(0L, event.getMessageId());
+        assertFalse(event.hasMessageId());
+    }
+
+    @Test
+    void missingSenderFallsBackToUnknownUser() {
+        OneBotEvent event = OneBotEvent.parse("{\"post_type\":\"notice\",\"notice_type\":\"group_increase\","
+                + "\"sub_type\":\"approve\",\"group_id\":1,\"user_id\":2}");
+        assertFalse(event.getSender().isPresent());
+        assertEquals("未知用户", event.getDisplayName());
+        assertEquals("group_increase", event.getNoticeType());
+        assertEquals("approve", event.getSubType());
+        assertNull(event.getRawMessage());
+    }
+
+    @Test
+    void cardTakesPrecedenceOverNickname() {
+        OneBotEvent withCard = OneBotEvent.parse("{\"sender\":{\"nickname\":\"n\",\"card\":\"c\"}}");
+        OneBotEvent emptyCard = OneBotEvent.parse("{\"sender\":{\"nickname\":\"n\",\"card\":\"\"}}");
+        assertEquals("c", withCard.getDisplayName());
+        assertEquals("n", emptyCard.getDisplayName());
+    }
+
+    @Test
+    void nonObjectFrameIsRejected() {
+        assertThrows(JSONException.class, () -> OneBotEvent.parse("[1,2,3]"));
+    }
+
+    @Test
+    void fromJsonObjectMatchesParse() {
+        String frame = RecordedFrames.groupMessages().get(1);
+        OneBotEvent event = OneBotEvent.from(JSONObject.parseObject(frame));
+        assertEquals(OneBotEvent.parse(frame).getRawMessage(), event.getRawMessage());
+        assertEquals(2034567891L, event.getUserId());
+    }
+
+    @Test
+    void senderIsDecodedOnFirstAccessFromItsSpan() {
+        // sender 位于帧中间且含嵌套值，按需解码只读到 sender 对象结束
+        OneBotEvent event = OneBotEvent.parse("{\"post_type\":\"message\",\"sender\":{\"user_id\":1,"
+                + "\"tags\":[{\"card\":\"x\"}],\"nickname\":\"群友\",\"card\":\"卡片\",\"role\":\"admin\"},"
+                + "\"raw_message\":\"hi\",\"card\":\"顶层\"}");
+        assertEquals("hi", event.getRawMessage());
+        assertTrue(event.getSender().isPresent());
+        assertEquals("卡片", event.getDisplayName());
+        assertEquals("群友", event.getSender().getNickname());
+        assertEquals("admin", event.getSender().getRole());
+        assertSame(event.getSender(), event.getSender());
+    }
+
+    @Test
+    void nonObjectSenderFallsBackToUnknownUser() {
+        OneBotEvent event = OneBotEvent.parse("{\"sender\":\"abc\",\"user_id\":7}");
+        assertFalse(event.getSender().isPresent());
+        assertEquals("未知用户", event.getDisplayName());
+        assertEquals(7L, event.getUserId());
+    }
+}
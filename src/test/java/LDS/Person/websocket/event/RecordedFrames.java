@@ -0,0 +1,49 @@
+package LDS.Person.websocket.event;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 测试与基准共用的 OneBot 帧样本（src/test/resources/frames，每行一帧，取自 NapCat 上报格式）
+ */
+public final class RecordedFrames {
+
+    private RecordedFrames() {
+    }
+
+    public static List<String> groupMessages() {
+        return load("/frames/group-messages.jsonl");
+    }
+
+    /**
+     * 心跳与 API 响应帧：第一行为心跳，其余为 API 响应
+     */
+    public static List<String> controlFrames() {
+        return load("/frames/control-frames.jsonl");
+    }
+
+    public static List<String> load(String resource) {
+        InputStream in = RecordedFrames.class.getResourceAsStream(resource);
+        if (in == null) {
+            throw new IllegalStateException("找不到帧样本: " + resource);
+        }
+        List<String> frames = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isBlank()) {
+                    frames.add(line);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return frames;
+    }
+}
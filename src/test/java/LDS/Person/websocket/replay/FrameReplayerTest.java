@@ -0,0 +1,148 @@
+package LDS.Person.websocket.replay;
+
+import LDS.Person.napcat.NapCatClient;
+import LDS.Person.tasks.MsgLisLogic.AtMentionBatcher;
+import LDS.Person.websocket.RemoteWebSocketClientHandler;
+import LDS.Person.websocket.dispatch.EventDispatcher;
+import LDS.Person.websocket.event.RecordedFrames;
+import LDS.Person.websocket.event.OneBotEvent;
+import LDS.Person.websocket.listener.LoadShedder;
+import LDS.Person.websocket.listener.MessageListener;
+import LDS.Person.websocket.listener.MessageListenerChain;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 回放的启用条件、文件路径限制，以及排空等待包含工作线程上仍在执行的事件
+ */
+class FrameReplayerTest {
+
+    @TempDir
+    Path captureDir;
+
+    private final NapCatClient napCatClient = mock(NapCatClient.class);
+    private final AtMentionBatcher atMentionBatcher = mock(AtMentionBatcher.class);
+    private EventDispatcher dispatcher;
+    private FrameReplayer replayer;
+
+    @BeforeEach
+    void setUp() {
+        dispatcher = new EventDispatcher();
+        when(atMentionBatcher.isIdle()).thenReturn(true);
+        replayer = new FrameReplayer(dispatcher, atMentionBatcher, napCatClient);
+        ReflectionTestUtils.setField(replayer, "captureDir", captureDir.toAbsolutePath().normalize());
+    }
+
+    @AfterEach
+    void tearDown() {
+        RemoteWebSocketClientHandler.setEventDispatcher(null);
+        RemoteWebSocketClientHandler.setListenerChain(null);
+        dispatcher.shutdown();
+    }
+
+    @Test
+    void replayIsDisabledByDefault() {
+        assertFalse(replayer.isEnabled());
+        assertThrows(IllegalStateException.class, () -> replayer.start("napcat-frames.bin", 0));
+    }
+
+    @Test
+    void refusesUnlessActionsGoToTheStub() throws IOException {
+        ReflectionTestUtils.setField(replayer, "enabled", true);
+        writeCapture(captureDir.resolve("napcat-frames.bin"), RecordedFrames.groupMessages());
+        when(napCatClient.targetsStub()).thenReturn(false);
+
+        assertThrows(IllegalStateException.class, () -> replayer.start("napcat-frames.bin", 0));
+    }
+
+    @Test
+    void fileMustStayInsideTheCaptureDirectory() throws IOException {
+        ReflectionTestUtils.setField(replayer, "enabled", true);
+        when(napCatClient.targetsStub()).thenReturn(true);
+        Path outside = Files.createTempFile("outside", ".bin");
+        try {
+            assertThrows(IllegalArgumentException.class, () -> replayer.start(outside.toString(), 0));
+            assertThrows(IllegalArgumentException.class, () -> replayer.start("../" + outside.getFileName(), 0));
+            assertThrows(IllegalArgumentException.class, () -> replayer.start("missing.bin", 0));
+        } finally {
+            Files.deleteIfExists(outside);
+        }
+    }
+
+    @Test
+    void drainWaitsForInFlightEventsAndReportsLatency() throws Exception {
+        ReflectionTestUtils.setField(replayer, "enabled", true);
+        when(napCatClient.targetsStub()).thenReturn(true);
+        List<String> frames = RecordedFrames.groupMessages();
+        writeCapture(captureDir.resolve("napcat-frames.bin"), frames);
+
+        // 每个事件在工作线程上执行 50 ms：只看队列深度会在最后几个事件执行完之前就结束
+        AtomicInteger handled = new AtomicInteger();
+        MessageListener slow = new MessageListener() {
+            @Override
+            public String getName() {
+                return "slow";
+            }
+
+            @Override
+            public boolean handleMessage(OneBotEvent event) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(50));
+                handled.incrementAndGet();
+                return true;
+            }
+        };
+        RemoteWebSocketClientHandler.setListenerChain(new MessageListenerChain(List.of(slow), mock(LoadShedder.class)));
+        RemoteWebSocketClientHandler.setEventDispatcher(dispatcher);
+
+        assertTrue(replayer.start("napcat-frames.bin", 0));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (Boolean.TRUE.equals(replayer.getStats().get("running"))) {
+            assertTrue(System.nanoTime() < deadline, "回放未在 30 秒内结束");
+            Thread.sleep(10);
+        }
+
+        Map<String, Object> stats = replayer.getStats();
+        System.out.printf("[replay] %s%n", stats);
+        assertEquals(frames.size(), handled.get(), "回放结束时所有事件都应已执行完");
+        assertEquals(frames.size(), stats.get("events_completed"));
+        assertTrue((Double) stats.get("event_p50_ms") >= 50.0);
+        assertTrue((Double) stats.get("event_p99_ms") >= (Double) stats.get("event_p50_ms"));
+        assertTrue((Double) stats.get("drain_ms") >= (Double) stats.get("event_max_ms"));
+    }
+
+    /**
+     * 按 FrameRecorder 的格式写入：[int 长度][long 到达时间][UTF-8 帧]
+     */
+    private static void writeCapture(Path file, List<String> frames) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(file))) {
+            long arrival = System.currentTimeMillis();
+            for (String frame : frames) {
+                byte[] bytes = frame.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.writeLong(arrival++);
+                out.write(bytes);
+            }
+        }
+    }
+}